@@ -62,6 +62,33 @@ tasks.bootRun {
     jvmArgs("--enable-preview")
 }
 
+// Statische Textressourcen vorkomprimieren, damit sie ohne On-the-fly-Kompression ausgeliefert
+// werden (EncodedResourceResolver). Gzip über das JDK; Brotli nur, wenn das brotli-CLI
+// installiert ist. Schriften (woff2) sind bereits komprimiert. CSS bleibt unkomprimiert: Der
+// CssLinkResourceTransformer überspringt kodierte Ressourcen, die Schrift-URLs blieben sonst ohne Hash.
+val precompressedExtensions = setOf("js", "svg")
+
+tasks.processResources {
+    doLast {
+        val staticDir = destinationDir.resolve("static")
+        if (!staticDir.isDirectory) return@doLast
+        val brotliAvailable = runCatching {
+            ProcessBuilder("brotli", "--version").redirectErrorStream(true).start().waitFor() == 0
+        }.getOrDefault(false)
+        staticDir.walkTopDown()
+            .filter { it.isFile && it.extension in precompressedExtensions }
+            .forEach { file ->
+                java.util.zip.GZIPOutputStream(file.resolveSibling(file.name + ".gz").outputStream()).use { gzip ->
+                    file.inputStream().use { it.copyTo(gzip) }
+                }
+                if (brotliAvailable) {
+                    ProcessBuilder("brotli", "--force", "--keep", "--quality=11", file.absolutePath)
+                        .inheritIO().start().waitFor()
+                }
+            }
+    }
+}
+
 springBoot {
     mainClass = "de.zugferd.invoicetool.ZugferdInvoiceToolApplication"
 }
@@ -0,0 +1,113 @@
+package de.zugferd.invoicetool.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Konfiguration für die Ausführung der E-Rechnungs-Generierung.
+ */
+@Configuration
+public class GenerationConfig {
+
+    /**
+     * Generierungs-Eigenschaften aus application.yml.
+     */
+    @Bean
+    @ConfigurationProperties(prefix = "generation")
+    public GenerationProperties generationProperties() {
+        return new GenerationProperties();
+    }
+
+    /**
+     * Konfigurationsklasse für Scheduler-Einstellungen.
+     * Die Anteile beziehen sich auf die Gesamtzahl gleichzeitiger Generierungen.
+     * Im adaptiven Modus bewegt sich diese zwischen min- und max-concurrent-jobs.
+     */
+    public static class GenerationProperties {
+        private int maxConcurrentJobs = Runtime.getRuntime().availableProcessors();
+        private int minConcurrentJobs = 1;
+        private boolean adaptive = true;
+        private double latencyTolerance = 2.0;
+        private double gcPressureThreshold = 0.15;
+        private double backoffRatio = 0.75;
+        private double interactiveShare = 1.0;
+        private double bulkShare = 0.75;
+        private int interactiveReserved = 1;
+        private double memoryBudgetRatio = 0.6;
+        private long memoryBaseBytes = 32 * 1024 * 1024;       // 32 MB
+        private double memoryBytesPerUploadByte = 8.0;
+        private double heapPauseThreshold = 0.85;
+        private double heapResumeThreshold = 0.7;
+        private long inlineMaxMillis = 1500;
+        private double costBaseMillis = 300;
+        private double costMillisPerMegabyte = 400;
+        private double costMillisPerPage = 50;
+        private double costMillisPerImageMegabyte = 300;
+        private double costPriorWeight = 5.0;
+        private double costDecay = 0.995;
+
+        public int getMaxConcurrentJobs() { return maxConcurrentJobs; }
+        public void setMaxConcurrentJobs(int maxConcurrentJobs) { this.maxConcurrentJobs = maxConcurrentJobs; }
+
+        public int getMinConcurrentJobs() { return minConcurrentJobs; }
+        public void setMinConcurrentJobs(int minConcurrentJobs) { this.minConcurrentJobs = minConcurrentJobs; }
+
+        public boolean isAdaptive() { return adaptive; }
+        public void setAdaptive(boolean adaptive) { this.adaptive = adaptive; }
+
+        public double getLatencyTolerance() { return latencyTolerance; }
+        public void setLatencyTolerance(double latencyTolerance) { this.latencyTolerance = latencyTolerance; }
+
+        public double getGcPressureThreshold() { return gcPressureThreshold; }
+        public void setGcPressureThreshold(double gcPressureThreshold) { this.gcPressureThreshold = gcPressureThreshold; }
+
+        public double getBackoffRatio() { return backoffRatio; }
+        public void setBackoffRatio(double backoffRatio) { this.backoffRatio = backoffRatio; }
+
+        public double getInteractiveShare() { return interactiveShare; }
+        public void setInteractiveShare(double interactiveShare) { this.interactiveShare = interactiveShare; }
+
+        public double getBulkShare() { return bulkShare; }
+        public void setBulkShare(double bulkShare) { this.bulkShare = bulkShare; }
+
+        public int getInteractiveReserved() { return interactiveReserved; }
+        public void setInteractiveReserved(int interactiveReserved) { this.interactiveReserved = interactiveReserved; }
+
+        public double getMemoryBudgetRatio() { return memoryBudgetRatio; }
+        public void setMemoryBudgetRatio(double memoryBudgetRatio) { this.memoryBudgetRatio = memoryBudgetRatio; }
+
+        public long getMemoryBaseBytes() { return memoryBaseBytes; }
+        public void setMemoryBaseBytes(long memoryBaseBytes) { this.memoryBaseBytes = memoryBaseBytes; }
+
+        public double getMemoryBytesPerUploadByte() { return memoryBytesPerUploadByte; }
+        public void setMemoryBytesPerUploadByte(double memoryBytesPerUploadByte) { this.memoryBytesPerUploadByte = memoryBytesPerUploadByte; }
+
+        public double getHeapPauseThreshold() { return heapPauseThreshold; }
+        public void setHeapPauseThreshold(double heapPauseThreshold) { this.heapPauseThreshold = heapPauseThreshold; }
+
+        public double getHeapResumeThreshold() { return heapResumeThreshold; }
+        public void setHeapResumeThreshold(double heapResumeThreshold) { this.heapResumeThreshold = heapResumeThreshold; }
+
+        public long getInlineMaxMillis() { return inlineMaxMillis; }
+        public void setInlineMaxMillis(long inlineMaxMillis) { this.inlineMaxMillis = inlineMaxMillis; }
+
+        public double getCostBaseMillis() { return costBaseMillis; }
+        public void setCostBaseMillis(double costBaseMillis) { this.costBaseMillis = costBaseMillis; }
+
+        public double getCostMillisPerMegabyte() { return costMillisPerMegabyte; }
+        public void setCostMillisPerMegabyte(double costMillisPerMegabyte) { this.costMillisPerMegabyte = costMillisPerMegabyte; }
+
+        public double getCostMillisPerPage() { return costMillisPerPage; }
+        public void setCostMillisPerPage(double costMillisPerPage) { this.costMillisPerPage = costMillisPerPage; }
+
+        public double getCostMillisPerImageMegabyte() { return costMillisPerImageMegabyte; }
+        public void setCostMillisPerImageMegabyte(double costMillisPerImageMegabyte) { this.costMillisPerImageMegabyte = costMillisPerImageMegabyte; }
+
+        public double getCostPriorWeight() { return costPriorWeight; }
+        public void setCostPriorWeight(double costPriorWeight) { this.costPriorWeight = costPriorWeight; }
+
+        public double getCostDecay() { return costDecay; }
+        public void setCostDecay(double costDecay) { this.costDecay = costDecay; }
+    }
+}
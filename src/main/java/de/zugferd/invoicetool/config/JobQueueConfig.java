@@ -0,0 +1,84 @@
+package de.zugferd.invoicetool.config;
+
+import de.zugferd.invoicetool.service.JobQueue;
+import de.zugferd.invoicetool.service.SharedDirectoryJobQueue;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Konfiguration der knotenübergreifenden Job-Queue für Bulk-Generierungen.
+ */
+@Configuration
+public class JobQueueConfig {
+
+    /**
+     * Job-Queue-Eigenschaften aus application.yml.
+     */
+    @Bean
+    @ConfigurationProperties(prefix = "jobs")
+    public JobQueueProperties jobQueueProperties() {
+        return new JobQueueProperties();
+    }
+
+    /**
+     * Job-Queue im gemeinsamen Verzeichnis aller Knoten.
+     */
+    @Bean
+    public JobQueue jobQueue(JobQueueProperties props) {
+        return new SharedDirectoryJobQueue(Path.of(props.getDirectory()), props.getLease());
+    }
+
+    /**
+     * Konfigurationsklasse für Job-Queue-Einstellungen.
+     * Das Lease wird nach einem Drittel seiner Laufzeit erneuert.
+     */
+    public static class JobQueueProperties {
+        private boolean workerEnabled = false;
+        private String directory = "/tmp/zugferd/jobs";
+        private String nodeId;
+        private int leaseSeconds = 60;
+        private int maxClaimedJobs = 2;
+        private long pollIntervalMillis = 1000;
+
+        public boolean isWorkerEnabled() { return workerEnabled; }
+        public void setWorkerEnabled(boolean workerEnabled) { this.workerEnabled = workerEnabled; }
+
+        public String getDirectory() { return directory; }
+        public void setDirectory(String directory) { this.directory = directory; }
+
+        public String getNodeId() {
+            if (nodeId == null || nodeId.isBlank()) {
+                nodeId = defaultNodeId();
+            }
+            return nodeId;
+        }
+        public void setNodeId(String nodeId) { this.nodeId = nodeId; }
+
+        public int getLeaseSeconds() { return leaseSeconds; }
+        public void setLeaseSeconds(int leaseSeconds) { this.leaseSeconds = leaseSeconds; }
+
+        public int getMaxClaimedJobs() { return maxClaimedJobs; }
+        public void setMaxClaimedJobs(int maxClaimedJobs) { this.maxClaimedJobs = maxClaimedJobs; }
+
+        public long getPollIntervalMillis() { return pollIntervalMillis; }
+        public void setPollIntervalMillis(long pollIntervalMillis) { this.pollIntervalMillis = pollIntervalMillis; }
+
+        public Duration getLease() { return Duration.ofSeconds(leaseSeconds); }
+
+        private static String defaultNodeId() {
+            String host;
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                host = "unknown";
+            }
+            return host + "-" + ProcessHandle.current().pid();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package de.zugferd.invoicetool.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Konfiguration für Vorschaubilder der hochgeladenen PDFs und Seitenauszüge der generierten PDFs.
+ */
+@Configuration
+public class PreviewConfig {
+
+    /**
+     * Vorschau-Eigenschaften aus application.yml.
+     */
+    @Bean
+    @ConfigurationProperties(prefix = "preview")
+    public PreviewProperties previewProperties() {
+        return new PreviewProperties();
+    }
+
+    /**
+     * Konfigurationsklasse für Vorschau-Einstellungen.
+     * Ist für das Format kein ImageIO-Writer vorhanden (WebP braucht ein Plugin), wird PNG geschrieben.
+     * Seitenauszüge werden je Session im Session-Verzeichnis gecacht.
+     */
+    public static class PreviewProperties {
+        private float thumbnailDpi = 36;
+        private String thumbnailFormat = "webp";
+        private int thumbnailConcurrency = 2;
+        private long thumbnailMaxPixels = 2_000_000;
+        private int pageRangeMaxPages = 50;
+        private int pageRangeCacheEntries = 16;
+        private int pageRangeConcurrency = 2;
+
+        public float getThumbnailDpi() { return thumbnailDpi; }
+        public void setThumbnailDpi(float thumbnailDpi) { this.thumbnailDpi = thumbnailDpi; }
+
+        public String getThumbnailFormat() { return thumbnailFormat; }
+        public void setThumbnailFormat(String thumbnailFormat) { this.thumbnailFormat = thumbnailFormat; }
+
+        public int getThumbnailConcurrency() { return thumbnailConcurrency; }
+        public void setThumbnailConcurrency(int thumbnailConcurrency) { this.thumbnailConcurrency = thumbnailConcurrency; }
+
+        public long getThumbnailMaxPixels() { return thumbnailMaxPixels; }
+        public void setThumbnailMaxPixels(long thumbnailMaxPixels) { this.thumbnailMaxPixels = thumbnailMaxPixels; }
+
+        public int getPageRangeMaxPages() { return pageRangeMaxPages; }
+        public void setPageRangeMaxPages(int pageRangeMaxPages) { this.pageRangeMaxPages = pageRangeMaxPages; }
+
+        public int getPageRangeCacheEntries() { return pageRangeCacheEntries; }
+        public void setPageRangeCacheEntries(int pageRangeCacheEntries) { this.pageRangeCacheEntries = pageRangeCacheEntries; }
+
+        public int getPageRangeConcurrency() { return pageRangeConcurrency; }
+        public void setPageRangeConcurrency(int pageRangeConcurrency) { this.pageRangeConcurrency = pageRangeConcurrency; }
+    }
+}
@@ -0,0 +1,65 @@
+package de.zugferd.invoicetool.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Konfiguration für die Ratenbegrenzung pro Client.
+ */
+@Configuration
+public class RateLimitConfig {
+
+    /**
+     * Rate-Limit-Eigenschaften aus application.yml.
+     */
+    @Bean
+    @ConfigurationProperties(prefix = "rate-limit")
+    public RateLimitProperties rateLimitProperties() {
+        return new RateLimitProperties();
+    }
+
+    /**
+     * Konfigurationsklasse für Rate-Limit-Einstellungen.
+     * Uploads werden in Bytes pro Sekunde, Generierungen in Jobs pro Minute begrenzt.
+     * Eigene Buckets pro API-Key gibt es nur für die unter {@code api-keys} eingetragenen Schlüssel,
+     * alle anderen Clients werden über ihre IP-Adresse begrenzt.
+     */
+    public static class RateLimitProperties {
+        private boolean enabled = true;
+        private String apiKeyHeader = "X-API-Key";
+        private List<String> apiKeys = new ArrayList<>();
+        private long uploadBytesPerSecond = 2 * 1024 * 1024; // 2 MB/s
+        private long uploadBurstBytes = 20 * 1024 * 1024;    // 20 MB
+        private int generationsPerMinute = 30;
+        private int generationBurst = 5;
+        private int idleEvictionMinutes = 10;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public String getApiKeyHeader() { return apiKeyHeader; }
+        public void setApiKeyHeader(String apiKeyHeader) { this.apiKeyHeader = apiKeyHeader; }
+
+        public List<String> getApiKeys() { return apiKeys; }
+        public void setApiKeys(List<String> apiKeys) { this.apiKeys = apiKeys; }
+
+        public long getUploadBytesPerSecond() { return uploadBytesPerSecond; }
+        public void setUploadBytesPerSecond(long uploadBytesPerSecond) { this.uploadBytesPerSecond = uploadBytesPerSecond; }
+
+        public long getUploadBurstBytes() { return uploadBurstBytes; }
+        public void setUploadBurstBytes(long uploadBurstBytes) { this.uploadBurstBytes = uploadBurstBytes; }
+
+        public int getGenerationsPerMinute() { return generationsPerMinute; }
+        public void setGenerationsPerMinute(int generationsPerMinute) { this.generationsPerMinute = generationsPerMinute; }
+
+        public int getGenerationBurst() { return generationBurst; }
+        public void setGenerationBurst(int generationBurst) { this.generationBurst = generationBurst; }
+
+        public int getIdleEvictionMinutes() { return idleEvictionMinutes; }
+        public void setIdleEvictionMinutes(int idleEvictionMinutes) { this.idleEvictionMinutes = idleEvictionMinutes; }
+    }
+}
@@ -1,5 +1,10 @@
 package de.zugferd.invoicetool.config;
 
+import de.zugferd.invoicetool.service.FileSessionStore;
+import de.zugferd.invoicetool.service.InMemorySessionStore;
+import de.zugferd.invoicetool.service.SessionDetailsStore;
+import de.zugferd.invoicetool.service.SessionStore;
+import de.zugferd.invoicetool.service.SharedDirectorySessionStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -35,19 +40,33 @@ public class StorageConfig {
         return new StorageDirectoryInitializer(props);
     }
 
+    /**
+     * Session-Store je nach Konfiguration: flüchtig im Speicher, persistent als Append-Only-Log
+     * oder als knotenübergreifende Registry in einem gemeinsamen Verzeichnis.
+     * Die lokalen Stores halten nur kompakte Einträge und lagern Metadaten in den Details-Store aus.
+     */
+    @Bean
+    public SessionStore sessionStore(StorageProperties props, SessionDetailsStore sessionDetailsStore) {
+        return switch (props.getSessionStore()) {
+            case MEMORY -> new InMemorySessionStore(sessionDetailsStore);
+            case FILE -> new FileSessionStore(
+                props.getSessionStorePath(),
+                props.getSessionLogCompactionMinRecords(),
+                props.getSessionLogCompactionRatio(),
+                sessionDetailsStore);
+            case SHARED -> new SharedDirectorySessionStore(
+                props.getSessionStorePath(),
+                props.getSessionCacheTtlMillis());
+        };
+    }
+
     static class StorageDirectoryInitializer {
         StorageDirectoryInitializer(StorageProperties props) {
             try {
-                Path uploadDir = Path.of(props.getUploadDir());
-                if (!Files.exists(uploadDir)) {
-                    Files.createDirectories(uploadDir);
-                    log.info("Created upload directory: {}", uploadDir.toAbsolutePath());
-                }
-
-                Path outputDir = Path.of(props.getOutputDir());
-                if (!Files.exists(outputDir)) {
-                    Files.createDirectories(outputDir);
-                    log.info("Created output directory: {}", outputDir.toAbsolutePath());
+                Path dataDir = props.getSessionDataPath();
+                if (!Files.exists(dataDir)) {
+                    Files.createDirectories(dataDir);
+                    log.info("Created session data directory: {}", dataDir.toAbsolutePath());
                 }
             } catch (IOException e) {
                 log.error("Failed to create storage directories", e);
@@ -60,10 +79,33 @@ public class StorageConfig {
      * Konfigurationsklasse für Storage-Einstellungen.
      */
     public static class StorageProperties {
+        private String sessionDataDir = "/tmp/zugferd/data";
         private String uploadDir = "/tmp/zugferd/uploads";
         private String outputDir = "/tmp/zugferd/output";
+        private int layoutMigrationBatchSize = 500;
+        private String blobDir = "/tmp/zugferd/blobs";
         private int cleanupIntervalMinutes = 5;
         private int fileRetentionMinutes = 30;
+        private long expiryPollMillis = 10_000;
+        private int cleanupBatchSize = 500;
+        private int cleanupParallelism = 4;
+        private double cleanupDeletesPerSecond = 50;
+        private SessionStoreType sessionStore = SessionStoreType.FILE;
+        private String sessionStoreDir = "/tmp/zugferd/sessions";
+        private int sessionLogCompactionMinRecords = 1000;
+        private double sessionLogCompactionRatio = 4.0;
+        private long sessionCacheTtlMillis = 2000;
+        private int sessionDetailsCacheEntries = 1024;
+        private String eventLogDir = "/tmp/zugferd/events";
+        private long eventLogSegmentBytes = 16 * 1024 * 1024;   // 16 MB
+        private int eventLogRolloverMinutes = 60;
+        private int eventLogRetentionHours = 7 * 24;
+        private long pdfCacheMaxBytes = 64 * 1024 * 1024;   // 64 MB
+        private boolean pdfCacheOffHeap = false;
+        private long diskBudgetBytes = 2L * 1024 * 1024 * 1024;   // 2 GB
+        
+        public String getSessionDataDir() { return sessionDataDir; }
+        public void setSessionDataDir(String sessionDataDir) { this.sessionDataDir = sessionDataDir; }
         
         public String getUploadDir() { return uploadDir; }
         public void setUploadDir(String uploadDir) { this.uploadDir = uploadDir; }
@@ -71,13 +113,84 @@ public class StorageConfig {
         public String getOutputDir() { return outputDir; }
         public void setOutputDir(String outputDir) { this.outputDir = outputDir; }
         
+        public int getLayoutMigrationBatchSize() { return layoutMigrationBatchSize; }
+        public void setLayoutMigrationBatchSize(int layoutMigrationBatchSize) { this.layoutMigrationBatchSize = layoutMigrationBatchSize; }
+        
+        public String getBlobDir() { return blobDir; }
+        public void setBlobDir(String blobDir) { this.blobDir = blobDir; }
+        
         public int getCleanupIntervalMinutes() { return cleanupIntervalMinutes; }
         public void setCleanupIntervalMinutes(int cleanupIntervalMinutes) { this.cleanupIntervalMinutes = cleanupIntervalMinutes; }
         
         public int getFileRetentionMinutes() { return fileRetentionMinutes; }
         public void setFileRetentionMinutes(int fileRetentionMinutes) { this.fileRetentionMinutes = fileRetentionMinutes; }
         
+        public long getExpiryPollMillis() { return expiryPollMillis; }
+        public void setExpiryPollMillis(long expiryPollMillis) { this.expiryPollMillis = expiryPollMillis; }
+
+        public int getCleanupBatchSize() { return cleanupBatchSize; }
+        public void setCleanupBatchSize(int cleanupBatchSize) { this.cleanupBatchSize = cleanupBatchSize; }
+
+        public int getCleanupParallelism() { return cleanupParallelism; }
+        public void setCleanupParallelism(int cleanupParallelism) { this.cleanupParallelism = cleanupParallelism; }
+
+        public double getCleanupDeletesPerSecond() { return cleanupDeletesPerSecond; }
+        public void setCleanupDeletesPerSecond(double cleanupDeletesPerSecond) { this.cleanupDeletesPerSecond = cleanupDeletesPerSecond; }
+
+        public SessionStoreType getSessionStore() { return sessionStore; }
+        public void setSessionStore(SessionStoreType sessionStore) { this.sessionStore = sessionStore; }
+
+        public String getSessionStoreDir() { return sessionStoreDir; }
+        public void setSessionStoreDir(String sessionStoreDir) { this.sessionStoreDir = sessionStoreDir; }
+
+        public int getSessionLogCompactionMinRecords() { return sessionLogCompactionMinRecords; }
+        public void setSessionLogCompactionMinRecords(int sessionLogCompactionMinRecords) { this.sessionLogCompactionMinRecords = sessionLogCompactionMinRecords; }
+
+        public double getSessionLogCompactionRatio() { return sessionLogCompactionRatio; }
+        public void setSessionLogCompactionRatio(double sessionLogCompactionRatio) { this.sessionLogCompactionRatio = sessionLogCompactionRatio; }
+
+        public long getSessionCacheTtlMillis() { return sessionCacheTtlMillis; }
+        public void setSessionCacheTtlMillis(long sessionCacheTtlMillis) { this.sessionCacheTtlMillis = sessionCacheTtlMillis; }
+        
+        public int getSessionDetailsCacheEntries() { return sessionDetailsCacheEntries; }
+        public void setSessionDetailsCacheEntries(int sessionDetailsCacheEntries) { this.sessionDetailsCacheEntries = sessionDetailsCacheEntries; }
+        
+        public String getEventLogDir() { return eventLogDir; }
+        public void setEventLogDir(String eventLogDir) { this.eventLogDir = eventLogDir; }
+        
+        public long getEventLogSegmentBytes() { return eventLogSegmentBytes; }
+        public void setEventLogSegmentBytes(long eventLogSegmentBytes) { this.eventLogSegmentBytes = eventLogSegmentBytes; }
+        
+        public int getEventLogRolloverMinutes() { return eventLogRolloverMinutes; }
+        public void setEventLogRolloverMinutes(int eventLogRolloverMinutes) { this.eventLogRolloverMinutes = eventLogRolloverMinutes; }
+        
+        public int getEventLogRetentionHours() { return eventLogRetentionHours; }
+        public void setEventLogRetentionHours(int eventLogRetentionHours) { this.eventLogRetentionHours = eventLogRetentionHours; }
+
+        public long getPdfCacheMaxBytes() { return pdfCacheMaxBytes; }
+        public void setPdfCacheMaxBytes(long pdfCacheMaxBytes) { this.pdfCacheMaxBytes = pdfCacheMaxBytes; }
+
+        public boolean isPdfCacheOffHeap() { return pdfCacheOffHeap; }
+        public void setPdfCacheOffHeap(boolean pdfCacheOffHeap) { this.pdfCacheOffHeap = pdfCacheOffHeap; }
+
+        public long getDiskBudgetBytes() { return diskBudgetBytes; }
+        public void setDiskBudgetBytes(long diskBudgetBytes) { this.diskBudgetBytes = diskBudgetBytes; }
+
+        public Path getSessionDataPath() { return Path.of(sessionDataDir); }
         public Path getUploadPath() { return Path.of(uploadDir); }
         public Path getOutputPath() { return Path.of(outputDir); }
+        public Path getBlobPath() { return Path.of(blobDir); }
+        public Path getSessionStorePath() { return Path.of(sessionStoreDir); }
+        public Path getEventLogPath() { return Path.of(eventLogDir); }
+    }
+
+    /**
+     * Verfügbare Session-Store-Implementierungen.
+     * Bei SHARED muss auch das Session-Datenverzeichnis auf dem gemeinsamen Speicher liegen.
+     */
+    public enum SessionStoreType {
+        MEMORY,
+        FILE,
+        SHARED
     }
 }
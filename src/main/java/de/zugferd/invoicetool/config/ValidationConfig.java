@@ -0,0 +1,48 @@
+package de.zugferd.invoicetool.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Konfiguration für die PDF/A-3 Validierung.
+ */
+@Configuration
+public class ValidationConfig {
+
+    /**
+     * Validierungs-Eigenschaften aus application.yml.
+     */
+    @Bean
+    @ConfigurationProperties(prefix = "validation")
+    public ValidationProperties validationProperties() {
+        return new ValidationProperties();
+    }
+
+    /**
+     * Konfigurationsklasse für Validierungs-Einstellungen.
+     * Im Out-of-Process Modus läuft VeraPDF in separaten JVMs mit eigenem Heap-Limit.
+     */
+    public static class ValidationProperties {
+        private boolean outOfProcess = false;
+        private int workerCount = 2;
+        private String workerHeap = "512m";
+        private int workerMaxDocuments = 100;
+        private int workerTimeoutSeconds = 120;
+
+        public boolean isOutOfProcess() { return outOfProcess; }
+        public void setOutOfProcess(boolean outOfProcess) { this.outOfProcess = outOfProcess; }
+
+        public int getWorkerCount() { return workerCount; }
+        public void setWorkerCount(int workerCount) { this.workerCount = workerCount; }
+
+        public String getWorkerHeap() { return workerHeap; }
+        public void setWorkerHeap(String workerHeap) { this.workerHeap = workerHeap; }
+
+        public int getWorkerMaxDocuments() { return workerMaxDocuments; }
+        public void setWorkerMaxDocuments(int workerMaxDocuments) { this.workerMaxDocuments = workerMaxDocuments; }
+
+        public int getWorkerTimeoutSeconds() { return workerTimeoutSeconds; }
+        public void setWorkerTimeoutSeconds(int workerTimeoutSeconds) { this.workerTimeoutSeconds = workerTimeoutSeconds; }
+    }
+}
@@ -0,0 +1,69 @@
+package de.zugferd.invoicetool.config;
+
+import de.zugferd.invoicetool.controller.RateLimitInterceptor;
+import de.zugferd.invoicetool.controller.StaticResourceCacheInterceptor;
+import de.zugferd.invoicetool.controller.UploadSizeInterceptor;
+import de.zugferd.invoicetool.service.RateLimitService;
+import de.zugferd.invoicetool.service.StorageService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.resource.EncodedResourceResolver;
+import org.springframework.web.servlet.resource.ResourceUrlEncodingFilter;
+import org.springframework.web.servlet.resource.VersionResourceResolver;
+
+/**
+ * Web-Konfiguration für Interceptoren der Rechnungs-Endpunkte und die Auslieferung
+ * statischer Ressourcen.
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private static final String[] STATIC_RESOURCE_PATTERNS = {"/css/**", "/js/**", "/fonts/**"};
+
+    private final RateLimitService rateLimitService;
+    private final StorageService storageService;
+
+    public WebConfig(RateLimitService rateLimitService, StorageService storageService) {
+        this.rateLimitService = rateLimitService;
+        this.storageService = storageService;
+    }
+
+    /**
+     * Größenprüfung vor dem Lesen des Uploads und Rate-Limit für Upload und Generierung.
+     */
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new UploadSizeInterceptor(storageService))
+            .addPathPatterns("/upload");
+        registry.addInterceptor(new RateLimitInterceptor(rateLimitService))
+            .addPathPatterns("/upload", "/generate/**");
+        registry.addInterceptor(new StaticResourceCacheInterceptor())
+            .addPathPatterns(STATIC_RESOURCE_PATTERNS);
+    }
+
+    /**
+     * Statische Ressourcen mit Inhalts-Hash im Dateinamen ({@code style-<md5>.css}). Liegen beim
+     * Build vorkomprimierte {@code .br}/{@code .gz}-Varianten bei, werden diese direkt ausgeliefert.
+     * Links in CSS-Dateien (Schriften) werden ebenfalls auf die Hash-URLs umgeschrieben; CSS wird
+     * deshalb nicht vorkomprimiert, da der Transformer kodierte Varianten unverändert ausliefert.
+     */
+    @Override
+    public void addResourceHandlers(ResourceHandlerRegistry registry) {
+        registry.addResourceHandler("/**")
+            .addResourceLocations("classpath:/static/")
+            .resourceChain(true)
+            .addResolver(new EncodedResourceResolver())
+            .addResolver(new VersionResourceResolver().addContentVersionStrategy("/**"));
+    }
+
+    /**
+     * Schreibt Ressourcen-URLs in Templates ({@code @{/css/style.css}}) auf die Hash-URLs um.
+     */
+    @Bean
+    public ResourceUrlEncodingFilter resourceUrlEncodingFilter() {
+        return new ResourceUrlEncodingFilter();
+    }
+}
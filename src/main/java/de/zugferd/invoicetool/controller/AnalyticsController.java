@@ -0,0 +1,51 @@
+package de.zugferd.invoicetool.controller;
+
+import de.zugferd.invoicetool.service.SessionEventLog;
+import de.zugferd.invoicetool.service.SessionEventLog.ThroughputReport;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Controller für Kapazitätsauswertungen aus dem Ereignislog dieses Knotens.
+ */
+@Controller
+public class AnalyticsController {
+
+    private static final Duration MAX_WINDOW = Duration.ofDays(31);
+
+    private final SessionEventLog eventLog;
+
+    public AnalyticsController(SessionEventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+
+    /**
+     * Durchsatz je Intervall sowie Perzentile von Wartezeit und Generierungsdauer.
+     * Ohne Angabe wird die letzte Stunde in 5-Minuten-Intervallen ausgewertet.
+     *
+     * @param from Beginn des Fensters (ISO-8601), Standard: {@code to} minus {@code window}
+     * @param to Ende des Fensters (ISO-8601), Standard: jetzt
+     * @param window Fensterlänge, wenn {@code from} fehlt
+     * @param bucket Intervalllänge
+     */
+    @GetMapping("/analytics/throughput")
+    public ResponseEntity<ThroughputReport> throughput(
+            @RequestParam(value = "from", required = false) Instant from,
+            @RequestParam(value = "to", required = false) Instant to,
+            @RequestParam(value = "window", defaultValue = "PT1H") Duration window,
+            @RequestParam(value = "bucket", defaultValue = "PT5M") Duration bucket) {
+
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(window);
+        if (!start.isBefore(end) || Duration.between(start, end).compareTo(MAX_WINDOW) > 0
+                || bucket.isNegative() || bucket.isZero()) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(eventLog.query(start, end, bucket));
+    }
+}
@@ -1,8 +1,18 @@
 package de.zugferd.invoicetool.controller;
 
+import de.zugferd.invoicetool.exception.InvoiceProcessingException;
+import de.zugferd.invoicetool.service.GeneratedPdfCache;
 import de.zugferd.invoicetool.service.InvoiceService;
+import de.zugferd.invoicetool.service.PageRangeService;
+import de.zugferd.invoicetool.service.StorageService;
+import de.zugferd.invoicetool.service.ThumbnailService;
+import de.zugferd.invoicetool.util.FileETags;
+import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -10,66 +20,221 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.context.request.ServletWebRequest;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
 
 /**
  * Controller für den Download der generierten E-Rechnungen.
+ * Frisch generierte PDFs kommen aus dem GeneratedPdfCache, alle anderen werden direkt aus der
+ * Datei gestreamt: vollständige Antworten per Sendfile des Containers,
+ * Teilbereiche (HTTP Range) über Spring als Resource-Regionen. Wiederholte Vorschauen
+ * werden anhand des ETags mit 304 beantwortet. Für die Seitenvorschau gibt es ein Vorschaubild
+ * der ersten Seite, das ohne die ganze PDF angezeigt werden kann, und Auszüge einzelner Seiten
+ * für große Dokumente.
  */
 @Controller
 public class DownloadController {
     
     private static final Logger log = LoggerFactory.getLogger(DownloadController.class);
     
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    
+    private static final Duration THUMBNAIL_MAX_AGE = Duration.ofMinutes(30);
+    
     private final InvoiceService invoiceService;
+    private final GeneratedPdfCache pdfCache;
+    private final StorageService storageService;
+    private final ThumbnailService thumbnailService;
+    private final PageRangeService pageRangeService;
     
-    public DownloadController(InvoiceService invoiceService) {
+    public DownloadController(InvoiceService invoiceService,
+                              GeneratedPdfCache pdfCache,
+                              StorageService storageService,
+                              ThumbnailService thumbnailService,
+                              PageRangeService pageRangeService) {
         this.invoiceService = invoiceService;
+        this.pdfCache = pdfCache;
+        this.storageService = storageService;
+        this.thumbnailService = thumbnailService;
+        this.pageRangeService = pageRangeService;
     }
     
     /**
      * Lädt die generierte E-Rechnung herunter.
      */
     @GetMapping("/download/{sessionId}")
-    public ResponseEntity<byte[]> downloadInvoice(@PathVariable String sessionId) {
+    public ResponseEntity<Resource> downloadInvoice(@PathVariable String sessionId,
+                                                    ServletWebRequest webRequest) {
         log.info("Download requested for session: {}", sessionId);
         
-        byte[] pdfContent = invoiceService.downloadInvoice(sessionId);
         String filename = invoiceService.getDownloadFilename(sessionId);
+        Path pdfPath = invoiceService.downloadInvoice(sessionId);
         
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_PDF);
-        headers.setContentDisposition(ContentDisposition.attachment()
+        return streamPdf(sessionId, pdfPath, ContentDisposition.attachment()
             .filename(filename, StandardCharsets.UTF_8)
-            .build());
-        headers.setContentLength(pdfContent.length);
-        
-        log.info("Sending PDF download: {} ({} bytes)", filename, pdfContent.length);
-        
-        return ResponseEntity.ok()
-            .headers(headers)
-            .body(pdfContent);
+            .build(), webRequest);
     }
     
     /**
      * Zeigt eine Vorschau der E-Rechnung im Browser.
+     * Die Vorschau ändert den Status der Session nicht.
      */
     @GetMapping("/preview/{sessionId}")
-    public ResponseEntity<byte[]> previewInvoice(@PathVariable String sessionId) {
+    public ResponseEntity<Resource> previewInvoice(@PathVariable String sessionId,
+                                                   ServletWebRequest webRequest) {
         log.info("Preview requested for session: {}", sessionId);
         
-        byte[] pdfContent = invoiceService.downloadInvoice(sessionId);
         String filename = invoiceService.getDownloadFilename(sessionId);
+        Path pdfPath = invoiceService.getInvoicePath(sessionId);
+        
+        return streamPdf(sessionId, pdfPath, ContentDisposition.inline()
+            .filename(filename, StandardCharsets.UTF_8)
+            .build(), webRequest);
+    }
+    
+    /**
+     * Vorschaubild der ersten Seite der hochgeladenen PDF. Es wird nach dem Upload im Hintergrund
+     * gerendert; ist es noch nicht fertig, wartet die Anfrage darauf. Das Original ändert sich
+     * während der Session nicht, daher darf der Browser das Bild für die Dauer der Session cachen.
+     */
+    @GetMapping("/preview/{sessionId}/thumbnail")
+    public ResponseEntity<Resource> thumbnail(@PathVariable String sessionId,
+                                              ServletWebRequest webRequest) {
+        storageService.getStatusOrThrow(sessionId);
+        
+        Optional<Path> thumbnail = thumbnailService.thumbnail(sessionId);
+        if (thumbnail.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        String etag = strongETag(thumbnail.get());
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(thumbnailService.contentType()))
+            .eTag(etag)
+            .cacheControl(CacheControl.maxAge(THUMBNAIL_MAX_AGE).cachePrivate())
+            .body(new FileSystemResource(thumbnail.get()));
+    }
+    
+    /**
+     * Zeigt die Seiten {@code from} bis {@code to} (1-basiert, inklusive) der E-Rechnung als
+     * eigenständige PDF. Reicht das Dokument nicht bis {@code to}, endet der Auszug mit der
+     * letzten Seite; liegt {@code from} dahinter, wird 404 geliefert. Der ETag leitet sich aus dem
+     * ETag der E-Rechnung und dem Bereich ab, da der Cache die Änderungszeit der Auszüge bei jedem
+     * Abruf neu setzt; eine Revalidierung kommt so ohne Extraktion aus.
+     */
+    @GetMapping("/preview/{sessionId}/pages/{from:\\d+}-{to:\\d+}")
+    public ResponseEntity<Resource> previewPages(@PathVariable String sessionId,
+                                                 @PathVariable int from,
+                                                 @PathVariable int to,
+                                                 ServletWebRequest webRequest) {
+        if (from < 1 || to < from || to - from + 1 > pageRangeService.maxPages()) {
+            return ResponseEntity.badRequest().build();
+        }
+        log.debug("Page preview {}-{} requested for session: {}", from, to, sessionId);
+        
+        Path pdfPath = invoiceService.getInvoicePath(sessionId);
+        String pdfETag = strongETag(pdfPath);
+        String etag = pdfETag.substring(0, pdfETag.length() - 1) + "-p" + from + "-" + to + "\"";
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        
+        Optional<Path> range = pageRangeService.extract(sessionId, pdfPath, from, to);
+        if (range.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        String filename = invoiceService.getDownloadFilename(sessionId)
+            .replaceFirst("(?i)\\.pdf$", "") + "_" + from + "-" + to + ".pdf";
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_PDF)
+            .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.inline()
+                .filename(filename, StandardCharsets.UTF_8)
+                .build().toString())
+            .eTag(etag)
+            .cacheControl(CacheControl.noCache().cachePrivate())
+            .body(new FileSystemResource(range.get()));
+    }
+    
+    /**
+     * Baut die Antwort für eine PDF-Datei, ohne sie in den Speicher zu laden.
+     * Frisch generierte PDFs werden aus dem Cache bedient.
+     */
+    private ResponseEntity<Resource> streamPdf(String sessionId, Path pdfPath, ContentDisposition disposition,
+                                               ServletWebRequest webRequest) {
+        Optional<GeneratedPdfCache.CachedPdf> cached = pdfCache.get(sessionId);
+        String etag = cached.map(GeneratedPdfCache.CachedPdf::etag).orElseGet(() -> strongETag(pdfPath));
+        
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
         
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_PDF);
-        headers.setContentDisposition(ContentDisposition.inline()
-            .filename(filename, StandardCharsets.UTF_8)
-            .build());
-        headers.setContentLength(pdfContent.length);
+        headers.setContentDisposition(disposition);
+        headers.setETag(etag);
+        headers.setCacheControl(CacheControl.noCache().cachePrivate());
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
         
+        if (cached.isPresent()) {
+            return ResponseEntity.ok()
+                .headers(headers)
+                .body(cached.get().asResource());
+        }
+        
+        HttpServletRequest request = webRequest.getRequest();
+        if (canUseSendfile(request)) {
+            // Container überträgt die Datei per Sendfile direkt aus dem Page-Cache
+            request.setAttribute(SENDFILE_FILENAME, pdfPath.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            long size = fileSize(pdfPath);
+            request.setAttribute(SENDFILE_END, size);
+            headers.setContentLength(size);
+            log.debug("Sending {} via sendfile ({} bytes)", pdfPath, size);
+            return ResponseEntity.ok().headers(headers).build();
+        }
+        
+        // Range-Requests und Container ohne Sendfile: Spring streamt die Resource bzw. Regionen daraus
         return ResponseEntity.ok()
             .headers(headers)
-            .body(pdfContent);
+            .body(new FileSystemResource(pdfPath));
+    }
+    
+    /**
+     * Sendfile nur für vollständige GET-Antworten, Teilbereiche übernimmt Spring.
+     */
+    private static boolean canUseSendfile(HttpServletRequest request) {
+        return "GET".equals(request.getMethod())
+            && request.getHeader(HttpHeaders.RANGE) == null
+            && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT));
+    }
+    
+    private static String strongETag(Path path) {
+        try {
+            return FileETags.strongETag(path);
+        } catch (IOException e) {
+            throw new InvoiceProcessingException("Fehler beim Lesen der E-Rechnung", e);
+        }
+    }
+    
+    private static long fileSize(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            throw new InvoiceProcessingException("Fehler beim Lesen der E-Rechnung", e);
+        }
     }
 }
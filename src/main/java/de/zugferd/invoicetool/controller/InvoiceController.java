@@ -3,11 +3,17 @@ package de.zugferd.invoicetool.controller;
 import de.zugferd.invoicetool.config.AppConfig;
 import de.zugferd.invoicetool.model.InvoiceFormData;
 import de.zugferd.invoicetool.model.ProcessingStatus;
+import de.zugferd.invoicetool.service.GenerationScheduler;
 import de.zugferd.invoicetool.service.InvoiceService;
+import de.zugferd.invoicetool.service.RateLimitService;
 import de.zugferd.invoicetool.service.StorageService;
+import de.zugferd.invoicetool.service.ThumbnailService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
@@ -15,10 +21,19 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
 /**
  * Controller für die E-Rechnungs-Web-UI.
  */
@@ -30,13 +45,19 @@ public class InvoiceController {
     private final StorageService storageService;
     private final InvoiceService invoiceService;
     private final AppConfig.InvoiceDefaults invoiceDefaults;
+    private final ThumbnailService thumbnailService;
+    private final RateLimitService rateLimitService;
 
     public InvoiceController(StorageService storageService,
                             InvoiceService invoiceService,
-                            AppConfig.InvoiceDefaults invoiceDefaults) {
+                            AppConfig.InvoiceDefaults invoiceDefaults,
+                            ThumbnailService thumbnailService,
+                            RateLimitService rateLimitService) {
         this.storageService = storageService;
         this.invoiceService = invoiceService;
         this.invoiceDefaults = invoiceDefaults;
+        this.thumbnailService = thumbnailService;
+        this.rateLimitService = rateLimitService;
     }
     
     /**
@@ -59,6 +80,7 @@ public class InvoiceController {
         
         try {
             String sessionId = storageService.createSession(file);
+            thumbnailService.renderAsync(sessionId);
             return "redirect:/metadata/" + sessionId;
             
         } catch (Exception e) {
@@ -68,6 +90,30 @@ public class InvoiceController {
         }
     }
     
+    /**
+     * Nimmt eine PDF als rohen Request-Body entgegen, z.B. von API-Clients.
+     * Der Body wird ohne Multipart-Zwischenspeicherung direkt in den Blob-Store gestreamt.
+     * Ohne Content-Length wird er beim Lesen auf das Upload-Rate-Limit angerechnet.
+     */
+    @PostMapping(value = "/upload", consumes = MediaType.APPLICATION_PDF_VALUE)
+    public ResponseEntity<Map<String, String>> uploadRawPdf(
+            HttpServletRequest request,
+            @RequestHeader(value = "X-Filename", required = false) String filename) throws IOException {
+        
+        String originalFilename = filename != null && !filename.isBlank() ? filename : "upload.pdf";
+        log.info("Received streamed upload: {} ({} bytes)", originalFilename, request.getContentLengthLong());
+        
+        long declaredSize = request.getContentLengthLong();
+        InputStream body = declaredSize < 0
+            ? rateLimitService.meterUpload(rateLimitService.resolveClientKey(request), request.getInputStream())
+            : request.getInputStream();
+        String sessionId = storageService.createSession(body, originalFilename, declaredSize);
+        thumbnailService.renderAsync(sessionId);
+        
+        return ResponseEntity.created(URI.create("/metadata/" + sessionId))
+            .body(Map.of("sessionId", sessionId));
+    }
+    
     /**
      * Zeigt das Metadaten-Eingabeformular.
      */
@@ -98,11 +144,18 @@ public class InvoiceController {
     
     /**
      * Verarbeitet das Metadaten-Formular und generiert die E-Rechnung.
+     * Günstige Generierungen laufen im Request; für teure schätzt das Kostenmodell die Dauer,
+     * sie laufen im Hintergrund und die Ergebnisseite zeigt die voraussichtliche Fertigstellung.
+     * Doppelte Absendungen werden zu einer Generierung zusammengefasst; API-Clients können
+     * Wiederholungen zusätzlich über den Header {@code Idempotency-Key} kennzeichnen. Der Schlüssel
+     * gilt nur für den jeweiligen Client, gleiche Schlüssel verschiedener Clients stören sich nicht.
      */
     @PostMapping("/generate/{sessionId}")
     public String generateInvoice(@PathVariable String sessionId,
                                   @Valid @ModelAttribute("invoiceForm") InvoiceFormData formData,
                                   BindingResult bindingResult,
+                                  @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                  HttpServletRequest request,
                                   Model model,
                                   RedirectAttributes redirectAttributes) {
         
@@ -121,7 +174,15 @@ public class InvoiceController {
         
         try {
             var metadata = formData.toInvoiceMetadata();
-            invoiceService.generateInvoice(sessionId, metadata);
+            var plan = invoiceService.planGeneration(sessionId);
+            String clientIdempotencyKey = idempotencyKey == null || idempotencyKey.isBlank()
+                ? null
+                : rateLimitService.resolveClientKey(request) + "|" + idempotencyKey;
+            if (plan.inline()) {
+                invoiceService.generateInvoice(sessionId, metadata, GenerationScheduler.Lane.INTERACTIVE, clientIdempotencyKey);
+            } else {
+                invoiceService.submitBackgroundGeneration(sessionId, metadata, plan, clientIdempotencyKey);
+            }
             return "redirect:/result/" + sessionId;
             
         } catch (Exception e) {
@@ -157,6 +218,16 @@ public class InvoiceController {
             }
             case ProcessingStatus.Processing p -> {
                 model.addAttribute("canDownload", false);
+                addEstimatedCompletion(sessionId, model);
+            }
+            case ProcessingStatus.Uploaded u -> {
+                // Hintergrund-Generierung wartet noch auf einen freien Slot
+                if (invoiceService.estimatedCompletion(sessionId).isEmpty()) {
+                    return "redirect:/metadata/" + sessionId;
+                }
+                model.addAttribute("statusType", "Queued");
+                model.addAttribute("canDownload", false);
+                addEstimatedCompletion(sessionId, model);
             }
             default -> {
                 return "redirect:/metadata/" + sessionId;
@@ -167,48 +238,20 @@ public class InvoiceController {
     }
     
     /**
-     * Fügt eine neue Rechnungsposition hinzu (AJAX).
+     * Fortschritt der Generierung als Server-Sent Events. Die Ergebnisseite aktualisiert damit
+     * den angezeigten Schritt und lädt erst nach Abschluss einmal neu.
      */
-    @PostMapping("/metadata/{sessionId}/add-item")
-    public String addItem(@PathVariable String sessionId,
-                         @ModelAttribute("invoiceForm") InvoiceFormData formData,
-                         Model model) {
-        formData.addItem();
-        
-        ProcessingStatus status = storageService.getStatusOrThrow(sessionId);
-        if (status instanceof ProcessingStatus.Uploaded uploaded) {
-            model.addAttribute("sessionId", sessionId);
-            model.addAttribute("originalFilename", uploaded.originalFilename());
-            model.addAttribute("fileSize", formatFileSize(uploaded.fileSizeBytes()));
-        }
-        model.addAttribute("units", getAvailableUnits());
-        model.addAttribute("vatRates", getCommonVatRates());
-        model.addAttribute("countries", getCountryCodes());
-        
-        return "metadata-form";
+    @GetMapping(value = "/result/{sessionId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter resultEvents(@PathVariable String sessionId) {
+        return invoiceService.subscribeProgress(sessionId);
     }
     
     /**
-     * Entfernt eine Rechnungsposition (AJAX).
+     * Verbleibende Sekunden bis zur voraussichtlichen Fertigstellung einer Hintergrund-Generierung.
      */
-    @PostMapping("/metadata/{sessionId}/remove-item/{index}")
-    public String removeItem(@PathVariable String sessionId,
-                            @PathVariable int index,
-                            @ModelAttribute("invoiceForm") InvoiceFormData formData,
-                            Model model) {
-        formData.removeItem(index);
-        
-        ProcessingStatus status = storageService.getStatusOrThrow(sessionId);
-        if (status instanceof ProcessingStatus.Uploaded uploaded) {
-            model.addAttribute("sessionId", sessionId);
-            model.addAttribute("originalFilename", uploaded.originalFilename());
-            model.addAttribute("fileSize", formatFileSize(uploaded.fileSizeBytes()));
-        }
-        model.addAttribute("units", getAvailableUnits());
-        model.addAttribute("vatRates", getCommonVatRates());
-        model.addAttribute("countries", getCountryCodes());
-        
-        return "metadata-form";
+    private void addEstimatedCompletion(String sessionId, Model model) {
+        invoiceService.estimatedCompletion(sessionId).ifPresent(completion -> model.addAttribute("etaSeconds",
+            Math.max(1, Duration.between(Instant.now(), completion).toSeconds())));
     }
     
     /**
@@ -0,0 +1,69 @@
+package de.zugferd.invoicetool.controller;
+
+import de.zugferd.invoicetool.service.RateLimitService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Interceptor für die Ratenbegrenzung der POST-Endpunkte des InvoiceControllers.
+ * Abgewiesene Anfragen erhalten HTTP 429 mit Retry-After Header. Rohe PDF-Uploads ohne
+ * Content-Length (chunked) werden zugelassen, solange der Bucket nicht leer ist, und beim Lesen über
+ * {@link RateLimitService#meterUpload} verrechnet. Multipart-Uploads ohne Content-Length werden mit
+ * HTTP 411 abgewiesen, da der Container sie selbst liest und sie nicht verrechnet werden können.
+ */
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private final RateLimitService rateLimitService;
+
+    public RateLimitInterceptor(RateLimitService rateLimitService) {
+        this.rateLimitService = rateLimitService;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws Exception {
+        if (!"POST".equals(request.getMethod())) {
+            return true;
+        }
+
+        String clientKey = rateLimitService.resolveClientKey(request);
+        boolean allowed;
+        long retryAfter;
+
+        if (request.getRequestURI().startsWith(request.getContextPath() + "/upload")) {
+            long bytes = request.getContentLengthLong();
+            if (bytes < 0 && rateLimitService.isEnabled() && !isRawPdf(request)) {
+                response.sendError(HttpStatus.LENGTH_REQUIRED.value(), "Content-Length erforderlich");
+                return false;
+            }
+            allowed = rateLimitService.tryAcquireUpload(clientKey, bytes);
+            retryAfter = allowed ? 0 : rateLimitService.uploadRetryAfterSeconds(clientKey, bytes);
+        } else {
+            allowed = rateLimitService.tryAcquireGeneration(clientKey);
+            retryAfter = allowed ? 0 : rateLimitService.generationRetryAfterSeconds(clientKey);
+        }
+
+        if (!allowed) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, retryAfter)));
+            response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), "Zu viele Anfragen");
+        }
+        return allowed;
+    }
+
+    private static boolean isRawPdf(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        if (contentType == null) {
+            return false;
+        }
+        try {
+            return MediaType.APPLICATION_PDF.isCompatibleWith(MediaType.parseMediaType(contentType));
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package de.zugferd.invoicetool.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.time.Duration;
+import java.util.regex.Pattern;
+
+/**
+ * Setzt Cache-Header für statische Ressourcen. URLs mit Inhalts-Hash ändern sich mit jedem
+ * neuen Inhalt und dürfen daher dauerhaft gecacht werden; URLs ohne Hash muss der Browser
+ * per ETag/Last-Modified revalidieren.
+ */
+public class StaticResourceCacheInterceptor implements HandlerInterceptor {
+
+    /** Format der {@code ContentVersionStrategy}: {@code name-<md5>.ext} */
+    private static final Pattern FINGERPRINTED = Pattern.compile(".+-[0-9a-f]{32}\\.[^/]+$");
+
+    private static final String IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365))
+        .cachePublic()
+        .immutable()
+        .getHeaderValue();
+    private static final String REVALIDATE = CacheControl.noCache().getHeaderValue();
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        boolean fingerprinted = FINGERPRINTED.matcher(request.getRequestURI()).matches();
+        response.setHeader(HttpHeaders.CACHE_CONTROL, fingerprinted ? IMMUTABLE : REVALIDATE);
+        return true;
+    }
+}
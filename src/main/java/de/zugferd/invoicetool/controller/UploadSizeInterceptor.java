@@ -0,0 +1,33 @@
+package de.zugferd.invoicetool.controller;
+
+import de.zugferd.invoicetool.service.StorageService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Weist Uploads anhand des Content-Length Headers ab, bevor der Request-Body gelesen wird.
+ * Setzt voraus, dass Multipart-Requests erst im Controller aufgelöst werden (resolve-lazily).
+ */
+public class UploadSizeInterceptor implements HandlerInterceptor {
+
+    private final StorageService storageService;
+
+    public UploadSizeInterceptor(StorageService storageService) {
+        this.storageService = storageService;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!"POST".equals(request.getMethod())) {
+            return true;
+        }
+
+        long maxBytes = storageService.getMaxUploadBytes();
+        if (maxBytes > 0 && request.getContentLengthLong() > maxBytes) {
+            throw new MaxUploadSizeExceededException(maxBytes);
+        }
+        return true;
+    }
+}
@@ -84,6 +84,30 @@ public class InvoiceProcessingException extends RuntimeException {
         );
     }
     
+    public static InvoiceProcessingException invalidTransition(String sessionId, String currentState, String targetState) {
+        return new InvoiceProcessingException(
+            "INVALID_STATE",
+            "Ungültiger Statusübergang für Sitzung " + sessionId,
+            "Aktueller Status: " + currentState + ", Ziel: " + targetState
+        );
+    }
+    
+    public static InvoiceProcessingException storageQuotaExceeded(long size, long budget) {
+        return new InvoiceProcessingException(
+            "STORAGE_QUOTA_EXCEEDED",
+            "Speicherplatz erschöpft, bitte später erneut versuchen",
+            "Budget: " + (budget / 1024 / 1024) + " MB, Angefordert: " + (size / 1024 / 1024) + " MB"
+        );
+    }
+    
+    public static InvoiceProcessingException uploadRateExceeded(long bytesRead) {
+        return new InvoiceProcessingException(
+            "RATE_LIMIT_EXCEEDED",
+            "Zu viele Anfragen, bitte später erneut versuchen",
+            "Upload nach " + (bytesRead / 1024) + " KB abgebrochen"
+        );
+    }
+    
     public static InvoiceProcessingException invalidFileType(String contentType) {
         return new InvoiceProcessingException(
             "INVALID_FILE_TYPE",
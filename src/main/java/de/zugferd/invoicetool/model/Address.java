@@ -3,6 +3,8 @@ package de.zugferd.invoicetool.model;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
 
+import java.io.Serializable;
+
 /**
  * Adressdaten für Verkäufer oder Käufer.
  */
@@ -22,7 +24,7 @@ public record Address(
     @NotBlank(message = "{validation.address.country.required}")
     @Size(min = 2, max = 2, message = "{validation.address.country.iso}")
     String countryCode
-) {
+) implements Serializable {
     /**
      * Kompakte Konstruktor-Validierung und Normalisierung.
      */
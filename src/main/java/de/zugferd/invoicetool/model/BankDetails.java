@@ -4,6 +4,8 @@ import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Size;
 
+import java.io.Serializable;
+
 /**
  * Bankverbindung für Zahlungen.
  */
@@ -20,7 +22,7 @@ public record BankDetails(
     
     @Size(max = 100)
     String accountHolder
-) {
+) implements Serializable {
     /**
      * Kompakte Konstruktor für IBAN-Normalisierung.
      */
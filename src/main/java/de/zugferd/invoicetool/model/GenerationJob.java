@@ -0,0 +1,14 @@
+package de.zugferd.invoicetool.model;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * Auftrag zur E-Rechnungs-Generierung in der knotenübergreifenden Job-Queue.
+ */
+public record GenerationJob(
+    String jobId,
+    String sessionId,
+    InvoiceMetadata metadata,
+    Instant enqueuedAt
+) implements Serializable {}
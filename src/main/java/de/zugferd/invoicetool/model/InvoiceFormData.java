@@ -148,15 +148,6 @@ public class InvoiceFormData {
         items.add(new ItemFormData());
     }
     
-    /**
-     * Entfernt eine Position nach Index.
-     */
-    public void removeItem(int index) {
-        if (index >= 0 && index < items.size()) {
-            items.remove(index);
-        }
-    }
-    
     /**
      * Initialisiert mit einer Standard-Position.
      */
@@ -4,6 +4,7 @@ import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
+import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 
@@ -30,7 +31,7 @@ public record InvoiceItem(
     @NotBlank(message = "{validation.item.unit.required}")
     @Size(max = 10)
     String unit
-) {
+) implements Serializable {
     /**
      * Standardeinheiten gemäß UN/ECE Recommendation 20.
      */
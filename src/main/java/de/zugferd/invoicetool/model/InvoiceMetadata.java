@@ -5,6 +5,7 @@ import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
+import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
@@ -55,7 +56,7 @@ public record InvoiceMetadata(
     
     @Size(max = 50)
     String orderReference
-) {
+) implements Serializable {
     /**
      * Kompakte Konstruktor mit Defaults.
      */
@@ -6,6 +6,8 @@ import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
 
+import java.io.Serializable;
+
 /**
  * Partei (Verkäufer oder Käufer) einer Rechnung.
  */
@@ -30,7 +32,7 @@ public record Party(
     
     @Size(max = 100)
     String contactName
-) {
+) implements Serializable {
     /**
      * Kompakte Konstruktor für VAT-ID Normalisierung.
      */
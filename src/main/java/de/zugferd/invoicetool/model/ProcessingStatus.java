@@ -21,14 +21,22 @@ public sealed interface ProcessingStatus {
     
     /**
      * PDF wurde hochgeladen, wartet auf Metadaten.
+     * Der SHA-256-Digest identifiziert den Inhalt im Blob-Store und kann als Cache-Schlüssel dienen.
      */
     record Uploaded(
         String sessionId,
         Instant timestamp,
         Path originalPdfPath,
         String originalFilename,
-        long fileSizeBytes
-    ) implements ProcessingStatus {}
+        long fileSizeBytes,
+        String contentDigest
+    ) implements ProcessingStatus {
+
+        public Uploaded(String sessionId, Instant timestamp, Path originalPdfPath,
+                        String originalFilename, long fileSizeBytes) {
+            this(sessionId, timestamp, originalPdfPath, originalFilename, fileSizeBytes, null);
+        }
+    }
     
     /**
      * Metadaten wurden eingegeben, Verarbeitung gestartet.
@@ -48,7 +56,17 @@ public sealed interface ProcessingStatus {
         Path generatedPdfPath,
         ValidationResult validationResult,
         InvoiceMetadata metadata
-    ) implements ProcessingStatus {}
+    ) implements ProcessingStatus {
+
+        /**
+         * Dateiname für den Download, abgeleitet aus der Rechnungsnummer.
+         */
+        public String downloadFilename() {
+            // Dateiname bereinigen
+            String safeNumber = metadata.invoiceNumber().replaceAll("[^a-zA-Z0-9.-]", "_");
+            return "E-Rechnung_" + safeNumber + ".pdf";
+        }
+    }
     
     /**
      * Verarbeitung ist fehlgeschlagen.
@@ -62,12 +80,19 @@ public sealed interface ProcessingStatus {
     
     /**
      * Datei wurde heruntergeladen und kann gelöscht werden.
+     * Der Download-Dateiname wird übernommen, da die Metadaten nicht mehr vorgehalten werden.
      */
     record Downloaded(
         String sessionId,
         Instant timestamp,
-        Path downloadedFilePath
-    ) implements ProcessingStatus {}
+        Path downloadedFilePath,
+        String downloadFilename
+    ) implements ProcessingStatus {
+
+        public Downloaded(String sessionId, Instant timestamp, Path downloadedFilePath) {
+            this(sessionId, timestamp, downloadedFilePath, null);
+        }
+    }
     
     /**
      * Pattern Matching Helper für Status-Beschreibung.
@@ -95,10 +120,28 @@ public sealed interface ProcessingStatus {
         };
     }
     
+    /**
+     * Erlaubte Statusübergänge. Alle anderen Übergänge weist der StorageService ab.
+     * Endstatus haben keine Nachfolger.
+     */
+    default boolean canTransitionTo(ProcessingStatus next) {
+        if (!sessionId().equals(next.sessionId())) {
+            return false;
+        }
+        return switch (this) {
+            case Uploaded u -> next instanceof Processing || next instanceof Failed;
+            case Processing p -> next instanceof Completed || next instanceof Failed;
+            case Completed c -> next instanceof Downloaded;
+            case Downloaded d -> false;
+            case Failed f -> false;
+        };
+    }
+    
     /**
      * Prüft ob Download möglich ist.
+     * Nach dem Download bleibt die Datei bis zur Bereinigung abrufbar.
      */
     default boolean canDownload() {
-        return this instanceof Completed;
+        return this instanceof Completed || this instanceof Downloaded;
     }
 }
@@ -0,0 +1,143 @@
+package de.zugferd.invoicetool.service;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * AIMD-Limiter für die Anzahl gleichzeitiger Generierungen.
+ * Das Limit wächst additiv, solange die Latenz nahe der Basislatenz liegt und es ausgelastet ist,
+ * und schrumpft multiplikativ bei erhöhter Latenz oder hohem GC-Anteil.
+ * Verglichen wird die Latenz im Verhältnis zur geschätzten Dauer des Jobs, damit eine große PDF
+ * nach vielen kleinen nicht als Überlast gilt und eine kleine nach großen keine verdeckt.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    /** Glättungsfaktor, mit dem die Basislatenz langsam höheren Latenzen folgt. */
+    private static final double BASELINE_DRIFT = 0.01;
+
+    /** Untergrenze der geschätzten Dauer, damit sehr kleine Schätzungen das Verhältnis nicht verzerren. */
+    private static final long MIN_EXPECTED_NANOS = 1_000_000;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double latencyTolerance;
+    private final double gcPressureThreshold;
+    private final double backoffRatio;
+    private final LongSupplier gcTimeMillis;
+    private final LongSupplier nanoClock;
+
+    private double limit;
+    private double baselineRatio;
+    private boolean decreased;
+    private long lastDecreaseNanos;
+    private long lastGcTimeMillis;
+    private long lastGcSampleNanos;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit,
+                                    double latencyTolerance, double gcPressureThreshold, double backoffRatio) {
+        this(initialLimit, minLimit, maxLimit, latencyTolerance, gcPressureThreshold, backoffRatio,
+            AdaptiveConcurrencyLimit::totalGcTimeMillis, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit,
+                             double latencyTolerance, double gcPressureThreshold, double backoffRatio,
+                             LongSupplier gcTimeMillis, LongSupplier nanoClock) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.latencyTolerance = latencyTolerance;
+        this.gcPressureThreshold = gcPressureThreshold;
+        this.backoffRatio = backoffRatio;
+        this.gcTimeMillis = gcTimeMillis;
+        this.nanoClock = nanoClock;
+        this.limit = Math.clamp(initialLimit, this.minLimit, this.maxLimit);
+        this.lastGcTimeMillis = gcTimeMillis.getAsLong();
+        this.lastGcSampleNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * Aktuelles Limit gleichzeitiger Jobs.
+     */
+    public synchronized int currentLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Verarbeitet eine gemessene Job-Latenz ohne Kostenschätzung, alle Jobs gelten als gleich teuer.
+     *
+     * @param latencyNanos Laufzeit des Jobs
+     * @param inFlight Anzahl laufender Jobs beim Start des Jobs
+     * @return das neue Limit
+     */
+    public int onSample(long latencyNanos, int inFlight) {
+        return onSample(latencyNanos, MIN_EXPECTED_NANOS, inFlight);
+    }
+
+    /**
+     * Verarbeitet eine gemessene Job-Latenz und passt das Limit an.
+     *
+     * @param latencyNanos Laufzeit des Jobs
+     * @param expectedNanos Geschätzte Dauer des Jobs laut Kostenmodell
+     * @param inFlight Anzahl laufender Jobs beim Start des Jobs
+     * @return das neue Limit
+     */
+    public synchronized int onSample(long latencyNanos, long expectedNanos, int inFlight) {
+        long now = nanoClock.getAsLong();
+        double gcPressure = sampleGcPressure(now);
+        long expected = Math.max(MIN_EXPECTED_NANOS, expectedNanos);
+        double ratio = (double) latencyNanos / expected;
+
+        if (baselineRatio == 0) {
+            baselineRatio = ratio;
+        }
+
+        boolean overloaded = ratio > baselineRatio * latencyTolerance
+            || gcPressure > gcPressureThreshold;
+
+        if (overloaded) {
+            // Höchstens eine Reduktion pro Basislatenz dieses Jobs, damit gleichzeitig endende Jobs
+            // das Limit nicht mehrfach für dieselbe Überlast halbieren. Der Ursprung von
+            // System.nanoTime() ist beliebig, daher zählt der Abstand erst ab der ersten Reduktion.
+            if (!decreased || now - lastDecreaseNanos > baselineRatio * expected) {
+                limit = Math.max(minLimit, Math.floor(limit * backoffRatio));
+                decreased = true;
+                lastDecreaseNanos = now;
+            }
+        } else if (inFlight >= limit / 2) {
+            // Additive Erhöhung um etwa einen Slot pro Limit-Anzahl erfolgreicher Jobs
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+
+        if (ratio < baselineRatio) {
+            baselineRatio = ratio;
+        } else {
+            baselineRatio += (ratio - baselineRatio) * BASELINE_DRIFT;
+        }
+        return (int) limit;
+    }
+
+    /**
+     * Anteil der Zeit, die seit der letzten Messung in der Garbage Collection verbracht wurde.
+     */
+    private double sampleGcPressure(long now) {
+        long gcTime = gcTimeMillis.getAsLong();
+        long elapsedMillis = (now - lastGcSampleNanos) / 1_000_000;
+        if (elapsedMillis < 100) {
+            return 0.0;
+        }
+        double pressure = (double) (gcTime - lastGcTimeMillis) / elapsedMillis;
+        lastGcTimeMillis = gcTime;
+        lastGcSampleNanos = now;
+        return pressure;
+    }
+
+    private static long totalGcTimeMillis() {
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        long total = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+}
@@ -0,0 +1,283 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.StorageConfig.StorageProperties;
+import de.zugferd.invoicetool.exception.InvoiceProcessingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Inhaltsadressierter Speicher für PDF-Dateien.
+ * Jeder Inhalt wird genau einmal unter seinem SHA-256-Digest abgelegt. Sessions verweisen per
+ * Hardlink auf den Blob, sodass die Linkanzahl des Dateisystems als Referenzzähler dient:
+ * Wird das letzte Session-Verzeichnis gelöscht, bleibt nur der Blob selbst übrig und er kann
+ * bei der nächsten Bereinigung entfernt werden.
+ * Die letzte Wiederverwendung eines Blobs steht in einer Markierungsdatei daneben, nicht im
+ * Zeitstempel des Blobs: Hardlinks teilen sich den Zeitstempel, und die Session-Dateien leiten
+ * daraus ihre ETags ab.
+ */
+@Service
+public class BlobStore {
+
+    private static final Logger log = LoggerFactory.getLogger(BlobStore.class);
+
+    private static final String TEMP_PREFIX = "incoming-";
+    private static final String USAGE_SUFFIX = ".used";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final Path blobDir;
+    private final Duration gracePeriod;
+    private volatile boolean linkCountSupported = true;
+
+    @Autowired
+    public BlobStore(StorageProperties storageProperties) {
+        this(storageProperties.getBlobPath(), Duration.ofMinutes(10));
+    }
+
+    BlobStore(Path blobDir, Duration gracePeriod) {
+        this.blobDir = blobDir;
+        this.gracePeriod = gracePeriod;
+        try {
+            Files.createDirectories(blobDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not initialize blob directory: " + blobDir, e);
+        }
+    }
+
+    /**
+     * Ein abgelegter Inhalt.
+     */
+    public record Blob(String digest, Path path, long size) {}
+
+    /**
+     * Schreibt einen Stream in den Store und berechnet dabei den Digest.
+     * Ist der Inhalt bereits vorhanden, wird die neue Kopie verworfen.
+     */
+    public Blob store(InputStream input) throws IOException {
+        return store(input, Long.MAX_VALUE);
+    }
+
+    /**
+     * Schreibt einen Stream in den Store und bricht ab, sobald er die maximale Größe überschreitet.
+     * Digest und Größe werden im selben Durchlauf ermittelt.
+     */
+    public Blob store(InputStream input, long maxBytes) throws IOException {
+        Path temp = Files.createTempFile(blobDir, TEMP_PREFIX, ".tmp");
+        try {
+            MessageDigest sha256 = sha256();
+            long size = 0;
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxBytes) {
+                        throw InvoiceProcessingException.fileTooLarge(size, maxBytes);
+                    }
+                    sha256.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+            String digest = HexFormat.of().formatHex(sha256.digest());
+            return commit(temp, digest, size);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Übernimmt eine fertige Datei in den Store, ohne sie zu kopieren.
+     * Existiert der Inhalt bereits, wird die Datei durch einen Verweis auf den Blob ersetzt.
+     */
+    public Blob deduplicate(Path file) throws IOException {
+        MessageDigest sha256 = sha256();
+        long size;
+        try (var digestInput = new DigestInputStream(Files.newInputStream(file), sha256)) {
+            size = digestInput.transferTo(OutputStream.nullOutputStream());
+        }
+        String digest = HexFormat.of().formatHex(sha256.digest());
+        Path blob = blobPath(digest);
+
+        try {
+            if (Files.exists(blob)) {
+                markUsed(blob);
+                replaceWithLink(blob, file);
+            } else {
+                Files.createDirectories(blob.getParent());
+                Files.createLink(blob, file);
+            }
+        } catch (FileAlreadyExistsException e) {
+            replaceWithLink(blob, file);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            log.debug("Could not deduplicate {}: {}", file, e.getMessage());
+        }
+        return new Blob(digest, blob, size);
+    }
+
+    /**
+     * Legt einen Verweis der Session auf den Blob an.
+     * Unterstützt das Dateisystem keine Hardlinks, wird kopiert.
+     */
+    public void link(Blob blob, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, blob.path());
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            log.debug("Hard link not possible, copying blob {}: {}", blob.digest(), e.getMessage());
+            Files.copy(blob.path(), target);
+        }
+    }
+
+    /**
+     * Entfernt Blobs, auf die keine Session mehr verweist.
+     * Frisch abgelegte oder wiederverwendete Blobs werden erst nach einer Karenzzeit entfernt,
+     * damit ein Upload zwischen Ablage und Verlinkung nicht seinen Blob verliert.
+     *
+     * @return Anzahl der entfernten Blobs
+     */
+    public int collectGarbage() {
+        if (!linkCountSupported) {
+            return 0;
+        }
+
+        Instant cutoff = Instant.now().minus(gracePeriod);
+        int removed = 0;
+        List<Path> candidates;
+        try (Stream<Path> files = Files.walk(blobDir, 2)) {
+            candidates = files.filter(Files::isRegularFile).toList();
+        } catch (IOException e) {
+            log.warn("Could not scan blob directory", e);
+            return 0;
+        }
+
+        for (Path blob : candidates) {
+            try {
+                if (Files.getLastModifiedTime(blob).toInstant().isAfter(cutoff)) {
+                    continue;
+                }
+                String name = blob.getFileName().toString();
+                if (name.endsWith(USAGE_SUFFIX)) {
+                    // Markierung eines bereits entfernten Blobs
+                    if (!Files.exists(blob.resolveSibling(name.substring(0, name.length() - USAGE_SUFFIX.length())))) {
+                        Files.deleteIfExists(blob);
+                    }
+                    continue;
+                }
+                if (usedSince(blob, cutoff)) {
+                    continue;
+                }
+                boolean orphanedTemp = name.startsWith(TEMP_PREFIX);
+                if (orphanedTemp || referenceCount(blob) == 0) {
+                    Files.deleteIfExists(blob);
+                    Files.deleteIfExists(usageMarker(blob));
+                    removed++;
+                }
+            } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                log.info("File system does not report link counts, blob garbage collection disabled");
+                linkCountSupported = false;
+                return removed;
+            } catch (IOException e) {
+                log.warn("Could not check blob {}", blob, e);
+            }
+        }
+
+        if (removed > 0) {
+            log.info("Removed {} unreferenced blobs", removed);
+        }
+        return removed;
+    }
+
+    /**
+     * Anzahl der Session-Verweise auf einen Blob.
+     */
+    int referenceCount(Path blob) throws IOException {
+        return ((Number) Files.getAttribute(blob, "unix:nlink")).intValue() - 1;
+    }
+
+    private Blob commit(Path temp, String digest, long size) throws IOException {
+        Path blob = blobPath(digest);
+        if (Files.exists(blob)) {
+            markUsed(blob);
+            // Die Bereinigung kann den Blob vor der Markierung entfernt haben
+            if (Files.exists(blob)) {
+                log.debug("Reusing existing blob {}", digest);
+                return new Blob(digest, blob, size);
+            }
+        }
+        Files.createDirectories(blob.getParent());
+        Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return new Blob(digest, blob, size);
+    }
+
+    /**
+     * Ersetzt eine Datei atomar durch einen Hardlink auf den Blob.
+     */
+    private void replaceWithLink(Path blob, Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".link");
+        Files.deleteIfExists(temp);
+        Files.createLink(temp, blob);
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Vermerkt die Wiederverwendung, damit die Bereinigung den Blob als frisch verwendet ansieht.
+     */
+    private static void markUsed(Path blob) throws IOException {
+        Path marker = usageMarker(blob);
+        try {
+            Files.setLastModifiedTime(marker, FileTime.from(Instant.now()));
+        } catch (NoSuchFileException e) {
+            try {
+                Files.createFile(marker);
+            } catch (FileAlreadyExistsException ignored) {
+                // Gleichzeitig von einem anderen Upload angelegt
+            }
+        }
+    }
+
+    private static boolean usedSince(Path blob, Instant cutoff) throws IOException {
+        try {
+            return Files.getLastModifiedTime(usageMarker(blob)).toInstant().isAfter(cutoff);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private static Path usageMarker(Path blob) {
+        return blob.resolveSibling(blob.getFileName() + USAGE_SUFFIX);
+    }
+
+    private Path blobPath(String digest) {
+        return blobDir.resolve(digest.substring(0, 2)).resolve(digest + ".pdf");
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.StorageConfig.StorageProperties;
+import de.zugferd.invoicetool.model.ProcessingStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Byte-Buchhaltung für die Session-Verzeichnisse mit globalem Budget.
+ * Sessions werden in Zugriffsreihenfolge geführt; wird das Budget überschritten,
+ * schlägt der Manager abgeschlossene Sessions zum Löschen vor, die am längsten
+ * nicht benutzt wurden. Sessions in Bearbeitung werden nie verdrängt.
+ * Laufende Uploads reservieren ihre Größe, bis ihre Session erfasst ist, damit gleichzeitige
+ * Uploads das Budget nicht gemeinsam überschreiten.
+ * Das Löschen selbst übernimmt der {@link StorageService}.
+ */
+@Component
+public class DiskQuotaManager {
+
+    private final long budgetBytes;
+    private final Map<String, Usage> usages = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+    private long reservedBytes;
+    private final Counter evictions;
+
+    public DiskQuotaManager(StorageProperties storageProperties, MeterRegistry meterRegistry) {
+        this.budgetBytes = storageProperties.getDiskBudgetBytes();
+
+        Gauge.builder("zugferd.storage.used", this, DiskQuotaManager::usedBytes)
+            .description("Belegter Speicher der Session-Verzeichnisse")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("zugferd.storage.budget", this, DiskQuotaManager::budgetBytes)
+            .description("Konfiguriertes Speicherbudget (0 = unbegrenzt)")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("zugferd.storage.sessions", this, DiskQuotaManager::sessionCount)
+            .description("Sessions mit belegtem Speicher")
+            .register(meterRegistry);
+        this.evictions = Counter.builder("zugferd.storage.evictions")
+            .description("Wegen Budgetüberschreitung verdrängte Sessions")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Setzt den belegten Speicher einer Session und ob sie verdrängt werden darf.
+     */
+    public synchronized void update(String sessionId, long bytes, boolean evictable) {
+        Usage previous = usages.put(sessionId, new Usage(bytes, evictable));
+        usedBytes += bytes - (previous != null ? previous.bytes : 0);
+    }
+
+    /**
+     * Übernimmt den Status einer Session, ohne den belegten Speicher zu ändern.
+     */
+    public synchronized void updateState(ProcessingStatus status) {
+        Usage usage = usages.get(status.sessionId());
+        if (usage != null) {
+            usages.put(status.sessionId(), new Usage(usage.bytes, isEvictable(status)));
+        }
+    }
+
+    /**
+     * Vermerkt einen Zugriff auf eine Session für die LRU-Reihenfolge.
+     */
+    public synchronized void touch(String sessionId) {
+        usages.get(sessionId);
+    }
+
+    /**
+     * Entfernt eine gelöschte Session aus der Buchhaltung.
+     */
+    public synchronized void remove(String sessionId) {
+        Usage removed = usages.remove(sessionId);
+        if (removed != null) {
+            usedBytes -= removed.bytes;
+        }
+    }
+
+    /**
+     * Wählt die am längsten nicht benutzten abgeschlossenen Sessions aus, deren Löschung
+     * Platz für {@code incomingBytes} zusätzliche Bytes schafft. Reicht das nicht aus,
+     * werden trotzdem alle verdrängbaren Sessions zurückgegeben.
+     *
+     * @param incomingBytes Zusätzlich benötigter Speicher in Bytes
+     * @return Zu löschende Session-IDs, älteste zuerst
+     */
+    public synchronized List<String> selectVictims(long incomingBytes) {
+        if (budgetBytes <= 0) {
+            return List.of();
+        }
+        long excess = usedBytes + reservedBytes + incomingBytes - budgetBytes;
+        List<String> victims = new ArrayList<>();
+        for (var entry : usages.entrySet()) {
+            if (excess <= 0) {
+                break;
+            }
+            if (entry.getValue().evictable) {
+                victims.add(entry.getKey());
+                excess -= entry.getValue().bytes;
+            }
+        }
+        evictions.increment(victims.size());
+        return victims;
+    }
+
+    /**
+     * Prüft ob zusätzliche Bytes noch ins Budget passen.
+     */
+    public synchronized boolean hasRoomFor(long bytes) {
+        return budgetBytes <= 0 || usedBytes + reservedBytes + bytes <= budgetBytes;
+    }
+
+    /**
+     * Reserviert Speicher für einen laufenden Upload, sofern er ins Budget passt.
+     * Die Reservierung wird geschlossen, sobald die Session mit ihrer Größe erfasst ist.
+     *
+     * @return Reservierung oder leer, wenn das Budget nicht ausreicht
+     */
+    public synchronized Optional<Reservation> tryReserve(long bytes) {
+        if (!hasRoomFor(bytes)) {
+            return Optional.empty();
+        }
+        reservedBytes += bytes;
+        return Optional.of(new Reservation(bytes));
+    }
+
+    private synchronized void release(long bytes) {
+        reservedBytes = Math.max(0, reservedBytes - bytes);
+    }
+
+    /**
+     * Verwirft die gesamte Buchhaltung, z.B. vor einem Neuaufbau nach dem Start.
+     */
+    public synchronized void clear() {
+        usages.clear();
+        usedBytes = 0;
+    }
+
+    public synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    public long budgetBytes() {
+        return budgetBytes;
+    }
+
+    synchronized int sessionCount() {
+        return usages.size();
+    }
+
+    /**
+     * Nur Sessions ohne laufende oder ausstehende Bearbeitung dürfen verdrängt werden.
+     */
+    static boolean isEvictable(ProcessingStatus status) {
+        return switch (status) {
+            case ProcessingStatus.Completed c -> true;
+            case ProcessingStatus.Downloaded d -> true;
+            case ProcessingStatus.Failed f -> true;
+            case ProcessingStatus.Uploaded u -> false;
+            case ProcessingStatus.Processing p -> false;
+        };
+    }
+
+    static boolean isEvictable(SessionSummary summary) {
+        return !summary.is(ProcessingStatus.Uploaded.class) && !summary.is(ProcessingStatus.Processing.class);
+    }
+
+    private record Usage(long bytes, boolean evictable) {}
+
+    /**
+     * Für einen laufenden Upload reservierter Speicher.
+     */
+    public final class Reservation implements AutoCloseable {
+        private final long bytes;
+        private boolean released;
+
+        private Reservation(long bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.model.ProcessingStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Persistenter Session-Store auf Basis eines Append-Only-Logs.
+ * Jede Änderung wird als Frame (Länge, CRC32, Operation, Payload) angehängt; beim Start wird
+ * der Log gelesen, parallel dekodiert und in Log-Reihenfolge angewendet. Ein abgeschnittener
+ * Frame am Ende (z.B. nach einem Absturz) wird verworfen. Überwiegen veraltete Einträge,
+ * wird der Log durch einen Snapshot der aktuellen Sessions ersetzt.
+ * Im Speicher und im Log stehen nur kompakte {@link SessionRecord}s; Metadaten und Berichte
+ * liegen im Details-Store.
+ */
+public class FileSessionStore implements SessionStore, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(FileSessionStore.class);
+
+    private static final String LOG_FILE = "sessions.log";
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_RECORD = 3;
+    private static final int HEADER_BYTES = 9;
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    private final Path directory;
+    private final Path logFile;
+    private final int compactionMinRecords;
+    private final double compactionRatio;
+    private final Map<String, SessionRecord> sessions = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final SessionDetailsStore details;
+    private final SessionLayout layout;
+
+    private FileChannel channel;
+    private long recordCount;
+
+    FileSessionStore(Path directory, int compactionMinRecords, double compactionRatio) {
+        this(directory, compactionMinRecords, compactionRatio,
+            new SessionDetailsStore(new SessionLayout(directory.resolve("details"), List.of()), 1024));
+    }
+
+    public FileSessionStore(Path directory, int compactionMinRecords, double compactionRatio,
+                            SessionDetailsStore details) {
+        this.directory = directory;
+        this.details = details;
+        this.layout = details.layout();
+        this.logFile = directory.resolve(LOG_FILE);
+        this.compactionMinRecords = compactionMinRecords;
+        this.compactionRatio = compactionRatio;
+
+        try {
+            Files.createDirectories(directory);
+            long startTime = System.nanoTime();
+            long validLength = replay();
+
+            channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (channel.size() > validLength) {
+                log.warn("Truncating {} bytes of incomplete session log records", channel.size() - validLength);
+                channel.truncate(validLength);
+            }
+            channel.position(validLength);
+
+            log.info("Restored {} sessions from {} in {} ms", sessions.size(), logFile,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open session store: " + logFile, e);
+        }
+    }
+
+    @Override
+    public Optional<ProcessingStatus> get(String sessionId) {
+        return details.resolve(sessionId, sessions::get);
+    }
+
+    @Override
+    public Optional<SessionSummary> summary(String sessionId) {
+        return Optional.ofNullable(sessions.get(sessionId)).map(SessionRecord::toSummary);
+    }
+
+    @Override
+    public void put(ProcessingStatus status) {
+        SessionRecord record = SessionRecord.of(status, layout);
+        details.save(record, status);
+        byte[] payload = encode(record);
+        SessionRecord previous;
+        writeLock.lock();
+        try {
+            append(OP_RECORD, payload);
+            previous = sessions.put(status.sessionId(), record);
+            compactIfNeeded();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not persist session " + status.sessionId(), e);
+        } finally {
+            writeLock.unlock();
+        }
+        discardIfReplaced(previous, record);
+    }
+
+    /**
+     * Ein veralteter erwarteter Status wird ohne Sperre abgewiesen; nur erfolgversprechende
+     * Übergänge serialisieren sich für das Schreiben in den Log.
+     */
+    @Override
+    public boolean compareAndSet(ProcessingStatus expected, ProcessingStatus next) {
+        String sessionId = next.sessionId();
+        SessionRecord expectedRecord = SessionRecord.of(expected, layout);
+        if (!expectedRecord.equals(sessions.get(sessionId))) {
+            return false;
+        }
+        SessionRecord nextRecord = SessionRecord.of(next, layout);
+        details.save(nextRecord, next);
+        byte[] payload = encode(nextRecord);
+        boolean replaced = false;
+        writeLock.lock();
+        try {
+            if (expectedRecord.equals(sessions.get(sessionId))) {
+                append(OP_RECORD, payload);
+                sessions.put(sessionId, nextRecord);
+                compactIfNeeded();
+                replaced = true;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not persist session " + sessionId, e);
+        } finally {
+            writeLock.unlock();
+        }
+        if (replaced) {
+            discardIfReplaced(expectedRecord, nextRecord);
+        } else {
+            discardIfReplaced(nextRecord, expectedRecord);
+        }
+        return replaced;
+    }
+
+    @Override
+    public void remove(String sessionId) {
+        SessionRecord removed;
+        writeLock.lock();
+        try {
+            removed = sessions.remove(sessionId);
+            if (removed != null) {
+                append(OP_REMOVE, sessionId.getBytes(StandardCharsets.UTF_8));
+                compactIfNeeded();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not persist removal of session " + sessionId, e);
+        } finally {
+            writeLock.unlock();
+        }
+        details.discard(removed);
+    }
+
+    @Override
+    public boolean compareAndRemove(ProcessingStatus expected) {
+        String sessionId = expected.sessionId();
+        SessionRecord expectedRecord = SessionRecord.of(expected, layout);
+        if (!expectedRecord.equals(sessions.get(sessionId))) {
+            return false;
+        }
+        writeLock.lock();
+        try {
+            if (!sessions.remove(sessionId, expectedRecord)) {
+                return false;
+            }
+            append(OP_REMOVE, sessionId.getBytes(StandardCharsets.UTF_8));
+            compactIfNeeded();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not persist removal of session " + sessionId, e);
+        } finally {
+            writeLock.unlock();
+        }
+        details.discard(expectedRecord);
+        return true;
+    }
+
+    /**
+     * Entfernt die Details des abgelösten Eintrags, sofern sie nicht zum neuen gehören.
+     */
+    private void discardIfReplaced(SessionRecord replaced, SessionRecord current) {
+        if (replaced != null && replaced.timestampNanos() != current.timestampNanos()) {
+            details.discard(replaced);
+        }
+    }
+
+    @Override
+    public boolean contains(String sessionId) {
+        return sessions.containsKey(sessionId);
+    }
+
+    @Override
+    public Set<String> sessionIds() {
+        return sessions.keySet();
+    }
+
+    /**
+     * Liest den Log sequenziell, dekodiert die Frames parallel und wendet sie in Log-Reihenfolge an.
+     *
+     * @return Länge des gültigen Log-Anteils in Bytes
+     */
+    private long replay() throws IOException {
+        if (!Files.exists(logFile)) {
+            return 0;
+        }
+
+        List<Frame> frames = new ArrayList<>();
+        long validLength = 0;
+
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logFile), 1 << 16))) {
+            while (true) {
+                Frame frame;
+                try {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    byte op = in.readByte();
+                    if (length < 0 || length > MAX_RECORD_BYTES) {
+                        log.warn("Invalid session log record length {} at offset {}", length, validLength);
+                        break;
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    if (checksum(op, payload) != checksum) {
+                        log.warn("Session log checksum mismatch at offset {}", validLength);
+                        break;
+                    }
+                    frame = new Frame(op, payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                frames.add(frame);
+                validLength += HEADER_BYTES + frame.payload.length;
+            }
+        }
+
+        List<Entry> entries = frames.parallelStream()
+            .map(this::decodeFrame)
+            .toList();
+
+        for (Entry entry : entries) {
+            if (entry == null) {
+                continue;
+            }
+            if (entry.record != null) {
+                sessions.put(entry.sessionId, entry.record);
+            } else {
+                sessions.remove(entry.sessionId);
+            }
+        }
+        recordCount = frames.size();
+        return validLength;
+    }
+
+    private Entry decodeFrame(Frame frame) {
+        try {
+            return switch (frame.op) {
+                case OP_REMOVE -> new Entry(new String(frame.payload, StandardCharsets.UTF_8), null);
+                case OP_RECORD -> {
+                    var record = SessionRecord.read(new DataInputStream(new ByteArrayInputStream(frame.payload)));
+                    yield new Entry(record.sessionId(), record);
+                }
+                default -> throw new IOException("Unknown session log operation: " + frame.op);
+            };
+        } catch (IOException e) {
+            log.warn("Skipping unreadable session log record", e);
+            return null;
+        }
+    }
+
+    /**
+     * Ersetzt den Log durch einen Snapshot, wenn er überwiegend veraltete Einträge enthält.
+     * Muss unter dem Write-Lock aufgerufen werden.
+     */
+    private void compactIfNeeded() throws IOException {
+        if (recordCount < compactionMinRecords || recordCount < sessions.size() * compactionRatio) {
+            return;
+        }
+        compact();
+    }
+
+    private void compact() throws IOException {
+        long startTime = System.nanoTime();
+        Path snapshot = directory.resolve(LOG_FILE + ".compact");
+        long written = 0;
+
+        try (FileChannel out = FileChannel.open(snapshot, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (SessionRecord record : sessions.values()) {
+                writeFrame(out, OP_RECORD, encode(record));
+                written++;
+            }
+            out.force(true);
+        }
+
+        channel.close();
+        Files.move(snapshot, logFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        channel = FileChannel.open(logFile, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+
+        log.info("Compacted session log from {} to {} records in {} ms", recordCount, written,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        recordCount = written;
+    }
+
+    private void append(byte op, byte[] payload) throws IOException {
+        writeFrame(channel, op, payload);
+        recordCount++;
+    }
+
+    private static void writeFrame(FileChannel target, byte op, byte[] payload) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        buffer.putInt(payload.length)
+            .putInt(checksum(op, payload))
+            .put(op)
+            .put(payload)
+            .flip();
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    private static int checksum(byte op, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(op);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encode(SessionRecord record) {
+        var bytes = new ByteArrayOutputStream(128);
+        try (var out = new DataOutputStream(bytes)) {
+            record.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not encode session " + record.sessionId(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            if (channel.isOpen()) {
+                channel.force(true);
+                channel.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private record Frame(byte op, byte[] payload) {
+        Frame {
+            Objects.requireNonNull(payload);
+        }
+    }
+
+    private record Entry(String sessionId, SessionRecord record) {}
+}
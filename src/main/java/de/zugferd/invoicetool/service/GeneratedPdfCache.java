@@ -0,0 +1,172 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.StorageConfig.StorageProperties;
+import de.zugferd.invoicetool.util.ByteBufferResource;
+import de.zugferd.invoicetool.util.FileETags;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Größenbegrenzter LRU-Cache für frisch generierte E-Rechnungen.
+ * Nach der Generierung rufen Ergebnisseite, Vorschau und Download dieselbe Datei innerhalb
+ * weniger Sekunden ab. Optional liegen die Inhalte außerhalb des Heaps in Direct Buffers.
+ */
+@Service
+public class GeneratedPdfCache {
+
+    private static final Logger log = LoggerFactory.getLogger(GeneratedPdfCache.class);
+
+    /**
+     * Gecachter PDF-Inhalt mit dem ETag der zugrunde liegenden Datei.
+     */
+    public record CachedPdf(ByteBuffer content, String etag) {
+
+        public long size() {
+            return content.remaining();
+        }
+
+        public Resource asResource() {
+            return new ByteBufferResource(content, etag);
+        }
+    }
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final boolean offHeap;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, CachedPdf> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Counter hits;
+    private final Counter misses;
+    private long currentBytes;
+
+    public GeneratedPdfCache(StorageProperties storageProperties, MeterRegistry meterRegistry) {
+        this.maxBytes = storageProperties.getPdfCacheMaxBytes();
+        this.maxEntryBytes = maxBytes / 4;
+        this.offHeap = storageProperties.isPdfCacheOffHeap();
+
+        this.hits = Counter.builder("zugferd.pdf.cache.gets")
+            .description("Zugriffe auf den PDF-Cache")
+            .tag("result", "hit")
+            .register(meterRegistry);
+        this.misses = Counter.builder("zugferd.pdf.cache.gets")
+            .description("Zugriffe auf den PDF-Cache")
+            .tag("result", "miss")
+            .register(meterRegistry);
+        Gauge.builder("zugferd.pdf.cache.size", this, GeneratedPdfCache::currentBytes)
+            .description("Belegte Bytes im PDF-Cache")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("zugferd.pdf.cache.entries", this, GeneratedPdfCache::entryCount)
+            .description("Anzahl gecachter PDFs")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Gibt das gecachte PDF einer Session zurück.
+     */
+    public Optional<CachedPdf> get(String sessionId) {
+        CachedPdf cached;
+        lock.lock();
+        try {
+            cached = entries.get(sessionId);
+        } finally {
+            lock.unlock();
+        }
+        (cached != null ? hits : misses).increment();
+        return Optional.ofNullable(cached);
+    }
+
+    /**
+     * Liest eine generierte Datei in den Cache. Zu große Dateien werden nicht aufgenommen.
+     */
+    public void put(String sessionId, Path pdfPath) {
+        if (maxBytes <= 0) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(pdfPath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > maxEntryBytes) {
+                log.debug("PDF for session {} too large for cache ({} bytes)", sessionId, size);
+                return;
+            }
+            String etag = FileETags.strongETag(pdfPath);
+            ByteBuffer buffer = offHeap ? ByteBuffer.allocateDirect((int) size) : ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // Datei vollständig lesen
+            }
+            buffer.flip();
+            insert(sessionId, new CachedPdf(buffer, etag));
+        } catch (IOException e) {
+            log.warn("Could not cache generated PDF for session {}", sessionId, e);
+        }
+    }
+
+    /**
+     * Entfernt das PDF einer Session aus dem Cache.
+     */
+    public void evict(String sessionId) {
+        lock.lock();
+        try {
+            CachedPdf removed = entries.remove(sessionId);
+            if (removed != null) {
+                currentBytes -= removed.size();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void insert(String sessionId, CachedPdf pdf) {
+        lock.lock();
+        try {
+            CachedPdf previous = entries.put(sessionId, pdf);
+            if (previous != null) {
+                currentBytes -= previous.size();
+            }
+            currentBytes += pdf.size();
+
+            // Am längsten nicht genutzte Einträge verdrängen
+            Iterator<Map.Entry<String, CachedPdf>> eldest = entries.entrySet().iterator();
+            while (currentBytes > maxBytes && eldest.hasNext()) {
+                currentBytes -= eldest.next().getValue().size();
+                eldest.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long currentBytes() {
+        lock.lock();
+        try {
+            return currentBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int entryCount() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
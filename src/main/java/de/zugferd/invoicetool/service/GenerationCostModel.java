@@ -0,0 +1,226 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.GenerationConfig.GenerationProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Schätzt die Dauer einer Generierung aus Upload-Größe, Seitenzahl und Bildanteil der PDF.
+ * Das Modell ist eine lineare Regression, die mit jeder gemessenen Generierung nachgeführt wird.
+ * Ältere Messungen verlieren exponentiell an Gewicht; bis genug Messungen vorliegen, dominieren
+ * die konfigurierten Startwerte (Ridge-Regression zum Prior).
+ */
+@Service
+public class GenerationCostModel {
+
+    private static final Logger log = LoggerFactory.getLogger(GenerationCostModel.class);
+
+    private static final int DIMENSIONS = 4;
+    private static final double MEGABYTE = 1024.0 * 1024.0;
+    private static final int MAX_CACHED_FEATURES = 256;
+
+    /**
+     * Für die Schätzung relevante Eigenschaften einer PDF.
+     */
+    public record Features(long fileSizeBytes, int pageCount, long imageBytes) {
+
+        private double[] vector() {
+            return new double[]{1.0, fileSizeBytes / MEGABYTE, pageCount, imageBytes / MEGABYTE};
+        }
+    }
+
+    private final double[] prior;
+    private final double priorWeight;
+    private final double decay;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final double[][] xtx = new double[DIMENSIONS][DIMENSIONS];
+    private final double[] xty = new double[DIMENSIONS];
+    private final LinkedHashMap<String, Features> features = new LinkedHashMap<>(16, 0.75f, true);
+    private double[] weights;
+    private long samples;
+
+    @Autowired
+    public GenerationCostModel(GenerationProperties properties, MeterRegistry meterRegistry) {
+        this(new double[]{
+                properties.getCostBaseMillis(),
+                properties.getCostMillisPerMegabyte(),
+                properties.getCostMillisPerPage(),
+                properties.getCostMillisPerImageMegabyte()},
+            properties.getCostPriorWeight(),
+            properties.getCostDecay());
+        Gauge.builder("zugferd.generation.cost.samples", this, GenerationCostModel::samples)
+            .description("Messungen, aus denen das Kostenmodell gelernt hat")
+            .register(meterRegistry);
+    }
+
+    GenerationCostModel(double[] priorMillis, double priorWeight, double decay) {
+        this.prior = priorMillis.clone();
+        this.priorWeight = Math.max(1e-6, priorWeight);
+        this.decay = decay;
+        this.weights = prior.clone();
+    }
+
+    /**
+     * Ermittelt die Eigenschaften der Original-PDF einer Session. Das Ergebnis wird für die spätere
+     * Messung zwischengespeichert, damit die PDF nur einmal analysiert wird.
+     */
+    public Features features(String sessionId, Path pdf, long fileSizeBytes) {
+        lock.lock();
+        try {
+            Features cached = features.get(sessionId);
+            if (cached != null) {
+                return cached;
+            }
+        } finally {
+            lock.unlock();
+        }
+        Features inspected = inspect(pdf, fileSizeBytes);
+        lock.lock();
+        try {
+            features.put(sessionId, inspected);
+            var iterator = features.entrySet().iterator();
+            while (features.size() > MAX_CACHED_FEATURES && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return inspected;
+    }
+
+    /**
+     * Zählt Seiten und summiert die kodierte Größe der Bilder. Jedes Bild zählt nur einmal,
+     * auch wenn es auf mehreren Seiten verwendet wird. Ist die PDF nicht lesbar, wird sie
+     * als einseitig ohne Bilder behandelt.
+     */
+    static Features inspect(Path pdf, long fileSizeBytes) {
+        try (PDDocument document = Loader.loadPDF(pdf.toFile())) {
+            long imageBytes = 0;
+            Set<Object> seen = new HashSet<>();
+            for (PDPage page : document.getPages()) {
+                PDResources resources = page.getResources();
+                if (resources == null) {
+                    continue;
+                }
+                for (COSName name : resources.getXObjectNames()) {
+                    if (resources.isImageXObject(name)
+                            && resources.getXObject(name) instanceof PDImageXObject image
+                            && seen.add(image.getCOSObject())) {
+                        imageBytes += image.getCOSObject().getLength();
+                    }
+                }
+            }
+            return new Features(fileSizeBytes, document.getNumberOfPages(), imageBytes);
+        } catch (IOException e) {
+            log.debug("Could not inspect {} for cost estimation", pdf, e);
+            return new Features(fileSizeBytes, 1, 0);
+        }
+    }
+
+    /**
+     * Geschätzte Dauer der Generierung inklusive Validierung.
+     */
+    public Duration estimate(Features features) {
+        double[] x = features.vector();
+        double[] w;
+        lock.lock();
+        try {
+            w = weights;
+        } finally {
+            lock.unlock();
+        }
+        double millis = 0;
+        for (int i = 0; i < DIMENSIONS; i++) {
+            millis += w[i] * x[i];
+        }
+        return Duration.ofMillis(Math.max(0, Math.round(millis)));
+    }
+
+    /**
+     * Nimmt eine gemessene Generierung in das Modell auf.
+     */
+    public void observe(String sessionId, Features features, Duration elapsed) {
+        double[] x = features.vector();
+        double y = elapsed.toNanos() / 1_000_000.0;
+        lock.lock();
+        try {
+            this.features.remove(sessionId);
+            for (int i = 0; i < DIMENSIONS; i++) {
+                for (int j = 0; j < DIMENSIONS; j++) {
+                    xtx[i][j] = xtx[i][j] * decay + x[i] * x[j];
+                }
+                xty[i] = xty[i] * decay + x[i] * y;
+            }
+            samples++;
+            weights = solve();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Löst (XᵀX + λI) w = Xᵀy + λ w₀ per Gauß-Elimination. Muss unter dem Lock aufgerufen werden.
+     */
+    private double[] solve() {
+        double[][] a = new double[DIMENSIONS][DIMENSIONS + 1];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            System.arraycopy(xtx[i], 0, a[i], 0, DIMENSIONS);
+            a[i][i] += priorWeight;
+            a[i][DIMENSIONS] = xty[i] + priorWeight * prior[i];
+        }
+        for (int col = 0; col < DIMENSIONS; col++) {
+            int pivot = col;
+            for (int row = col + 1; row < DIMENSIONS; row++) {
+                if (Math.abs(a[row][col]) > Math.abs(a[pivot][col])) {
+                    pivot = row;
+                }
+            }
+            double[] swap = a[col];
+            a[col] = a[pivot];
+            a[pivot] = swap;
+            for (int row = col + 1; row < DIMENSIONS; row++) {
+                double factor = a[row][col] / a[col][col];
+                for (int k = col; k <= DIMENSIONS; k++) {
+                    a[row][k] -= factor * a[col][k];
+                }
+            }
+        }
+        double[] solution = new double[DIMENSIONS];
+        for (int row = DIMENSIONS - 1; row >= 0; row--) {
+            double sum = a[row][DIMENSIONS];
+            for (int k = row + 1; k < DIMENSIONS; k++) {
+                sum -= a[row][k] * solution[k];
+            }
+            solution[row] = sum / a[row][row];
+        }
+        return solution;
+    }
+
+    long samples() {
+        lock.lock();
+        try {
+            return samples;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.JobQueueConfig.JobQueueProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Arbeitet Jobs aus der knotenübergreifenden Job-Queue in der Bulk-Lane ab.
+ * Beanspruchte Jobs werden während der Generierung regelmäßig verlängert und nach Abschluss
+ * entfernt. Jobs ausgefallener Knoten werden nach Ablauf ihres Leases wieder freigegeben.
+ */
+@Component
+public class GenerationJobWorker {
+
+    private static final Logger log = LoggerFactory.getLogger(GenerationJobWorker.class);
+
+    private final JobQueue jobQueue;
+    private final InvoiceService invoiceService;
+    private final JobQueueProperties properties;
+    private final Map<String, JobQueue.ClaimedJob> activeJobs = new ConcurrentHashMap<>();
+    private final Counter claimedCounter;
+    private final Counter reclaimedCounter;
+
+    public GenerationJobWorker(JobQueue jobQueue,
+                               InvoiceService invoiceService,
+                               JobQueueProperties properties,
+                               MeterRegistry meterRegistry) {
+        this.jobQueue = jobQueue;
+        this.invoiceService = invoiceService;
+        this.properties = properties;
+        this.claimedCounter = Counter.builder("zugferd.jobs.claimed")
+            .description("Von diesem Knoten beanspruchte Jobs")
+            .register(meterRegistry);
+        this.reclaimedCounter = Counter.builder("zugferd.jobs.reclaimed")
+            .description("Jobs mit abgelaufenem Lease, die wieder freigegeben wurden")
+            .register(meterRegistry);
+        Gauge.builder("zugferd.jobs.pending", jobQueue, JobQueue::pendingCount)
+            .description("Wartende Jobs in der gemeinsamen Queue")
+            .register(meterRegistry);
+        Gauge.builder("zugferd.jobs.active", activeJobs, Map::size)
+            .description("Auf diesem Knoten laufende Jobs")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Beansprucht wartende Jobs, solange dieser Knoten freie Kapazität hat.
+     */
+    @Scheduled(fixedDelayString = "${jobs.poll-interval-millis:1000}")
+    public void pollJobs() {
+        if (!properties.isWorkerEnabled()) {
+            return;
+        }
+
+        while (activeJobs.size() < properties.getMaxClaimedJobs()) {
+            Optional<JobQueue.ClaimedJob> claimed = jobQueue.claim(properties.getNodeId(), properties.getLease());
+            if (claimed.isEmpty()) {
+                return;
+            }
+            start(claimed.get());
+        }
+    }
+
+    /**
+     * Verlängert die Leases aller laufenden Jobs nach einem Drittel der Lease-Dauer.
+     */
+    @Scheduled(fixedDelayString = "#{${jobs.lease-seconds:60} * 1000 / 3}")
+    public void renewLeases() {
+        for (JobQueue.ClaimedJob claimed : activeJobs.values()) {
+            if (!jobQueue.renew(claimed, properties.getLease())) {
+                log.warn("Lost lease for job {} (session {}), it may be processed by another node",
+                    claimed.job().jobId(), claimed.job().sessionId());
+            }
+        }
+    }
+
+    /**
+     * Gibt Jobs ausgefallener Knoten wieder frei.
+     */
+    @Scheduled(fixedDelayString = "#{${jobs.lease-seconds:60} * 1000}")
+    public void reclaimExpiredLeases() {
+        if (!properties.isWorkerEnabled()) {
+            return;
+        }
+        int reclaimed = jobQueue.reclaimExpired();
+        if (reclaimed > 0) {
+            reclaimedCounter.increment(reclaimed);
+            log.info("Reclaimed {} jobs with expired leases", reclaimed);
+        }
+    }
+
+    private void start(JobQueue.ClaimedJob claimed) {
+        var job = claimed.job();
+        activeJobs.put(claimed.handle(), claimed);
+        claimedCounter.increment();
+        log.info("Processing job {} for session {}", job.jobId(), job.sessionId());
+
+        try {
+            // Die Job-ID dient als Idempotenz-Schlüssel, falls ein Job nach abgelaufenem Lease erneut zugeteilt wird
+            invoiceService.submitGeneration(job.sessionId(), job.metadata(), GenerationScheduler.Lane.BULK, job.jobId())
+                .whenComplete((status, error) -> finish(claimed, error));
+        } catch (RuntimeException e) {
+            finish(claimed, e);
+        }
+    }
+
+    /**
+     * Entfernt den Job aus der Queue. Fehlgeschlagene Generierungen werden nicht erneut versucht,
+     * da ihr Ergebnis bereits im Session-Status steht.
+     */
+    private void finish(JobQueue.ClaimedJob claimed, Throwable error) {
+        if (error != null) {
+            log.warn("Job {} for session {} failed: {}",
+                claimed.job().jobId(), claimed.job().sessionId(), error.getMessage());
+        }
+        jobQueue.complete(claimed);
+        activeJobs.remove(claimed.handle());
+    }
+}
@@ -0,0 +1,157 @@
+package de.zugferd.invoicetool.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Supplier;
+
+/**
+ * Registry der Server-Sent-Events-Verbindungen für den Fortschritt laufender Generierungen.
+ * Verbindungen werden je Session gehalten und nur beim Wechsel des Generierungsschritts
+ * vom generierenden Thread beschrieben; es gibt keinen Thread und kein Polling pro Client.
+ * Läuft die Generierung nicht auf diesem Knoten, wird der Stream nach dem gespeicherten Schritt
+ * geschlossen. Der Browser verbindet sich nach {@link #FALLBACK_RECONNECT} neu und liest so den
+ * gespeicherten Status in begrenztem Abstand.
+ */
+@Component
+public class GenerationProgress {
+
+    private static final Logger log = LoggerFactory.getLogger(GenerationProgress.class);
+    private static final Duration EMITTER_TIMEOUT = Duration.ofMinutes(10);
+    static final Duration FALLBACK_RECONNECT = Duration.ofSeconds(5);
+
+    /**
+     * Für den Benutzer sichtbare Schritte einer Generierung.
+     */
+    public enum Stage {
+        QUEUED,
+        CONVERTING,
+        EXPORTING,
+        VALIDATING,
+        DONE,
+        FAILED;
+
+        public boolean isTerminal() {
+            return this == DONE || this == FAILED;
+        }
+    }
+
+    private final Map<String, Set<SseEmitter>> emitters = new ConcurrentHashMap<>();
+    private final Map<String, Stage> stages = new ConcurrentHashMap<>();
+
+    public GenerationProgress(MeterRegistry meterRegistry) {
+        Gauge.builder("zugferd.progress.subscribers", emitters,
+                map -> map.values().stream().mapToInt(Set::size).sum())
+            .description("Offene Fortschritts-Streams")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Öffnet einen Fortschritts-Stream. Der aktuelle Schritt wird sofort gesendet; ist die
+     * Generierung bereits beendet oder läuft sie nicht auf diesem Knoten, wird der Stream danach
+     * geschlossen.
+     *
+     * @param sessionId Die Session-ID
+     * @param fallback Schritt laut gespeichertem Status, falls gerade keine Generierung läuft
+     */
+    public SseEmitter subscribe(String sessionId, Supplier<Stage> fallback) {
+        var emitter = new SseEmitter(EMITTER_TIMEOUT.toMillis());
+        emitters.compute(sessionId, (id, set) -> {
+            Set<SseEmitter> sessionEmitters = set != null ? set : new CopyOnWriteArraySet<>();
+            sessionEmitters.add(emitter);
+            return sessionEmitters;
+        });
+        Runnable unregister = () -> unregister(sessionId, emitter);
+        emitter.onCompletion(unregister);
+        emitter.onTimeout(unregister);
+        emitter.onError(error -> unregister.run());
+
+        // Erst nach der Registrierung lesen, damit kein Wechsel zwischen Lesen und Registrieren verloren geht
+        Stage current = stages.get(sessionId);
+        if (current != null) {
+            send(sessionId, emitter, current, null);
+            return emitter;
+        }
+        Stage stored = fallback.get();
+        send(sessionId, emitter, stored, FALLBACK_RECONNECT);
+        if (!stored.isTerminal()) {
+            // Ohne Generierung auf diesem Knoten käme kein weiterer Schritt an
+            emitter.complete();
+            unregister(sessionId, emitter);
+        }
+        return emitter;
+    }
+
+    /**
+     * Meldet einen neuen Schritt an alle offenen Streams der Session.
+     * Nach einem abschließenden Schritt werden die Streams geschlossen.
+     */
+    public void publish(String sessionId, Stage stage) {
+        if (stage.isTerminal()) {
+            stages.remove(sessionId);
+        } else {
+            stages.put(sessionId, stage);
+        }
+        Set<SseEmitter> sessionEmitters = emitters.get(sessionId);
+        if (sessionEmitters == null) {
+            return;
+        }
+        for (SseEmitter emitter : sessionEmitters) {
+            send(sessionId, emitter, stage, null);
+        }
+    }
+
+    /**
+     * Aktueller Schritt einer laufenden Generierung.
+     */
+    public Stage currentStage(String sessionId) {
+        return stages.get(sessionId);
+    }
+
+    int subscribers(String sessionId) {
+        Set<SseEmitter> sessionEmitters = emitters.get(sessionId);
+        return sessionEmitters != null ? sessionEmitters.size() : 0;
+    }
+
+    /**
+     * @param reconnect Wartezeit des Browsers vor dem erneuten Verbinden oder null für dessen Standard
+     */
+    private void send(String sessionId, SseEmitter emitter, Stage stage, Duration reconnect) {
+        try {
+            var event = SseEmitter.event()
+                .name("stage")
+                .data(Map.of("stage", stage.name().toLowerCase(Locale.ROOT)), MediaType.APPLICATION_JSON);
+            if (reconnect != null) {
+                event.reconnectTime(reconnect.toMillis());
+            }
+            emitter.send(event);
+            if (stage.isTerminal()) {
+                emitter.complete();
+                unregister(sessionId, emitter);
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Client hat die Verbindung getrennt oder der Stream ist bereits abgeschlossen
+            log.debug("Dropping progress stream of session {}", sessionId, e);
+            unregister(sessionId, emitter);
+        }
+    }
+
+    private void unregister(String sessionId, SseEmitter emitter) {
+        emitters.computeIfPresent(sessionId, (id, set) -> {
+            set.remove(emitter);
+            return set.isEmpty() ? null : set;
+        });
+    }
+}
@@ -0,0 +1,274 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.GenerationConfig.GenerationProperties;
+import de.zugferd.invoicetool.exception.InvoiceProcessingException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Scheduler für Generierungs-Jobs mit getrennten Prioritäts-Lanes.
+ * Interaktive Jobs werden vor Bulk-Jobs zugelassen und haben eine reservierte Mindestkapazität,
+ * damit ein großer Stapel einzelne Benutzeranfragen nicht blockiert.
+ */
+@Service
+public class GenerationScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(GenerationScheduler.class);
+
+    /**
+     * Prioritäts-Lanes des Schedulers.
+     */
+    public enum Lane {
+        INTERACTIVE,
+        BULK
+    }
+
+    private final GenerationProperties properties;
+    private final ExecutorService executor;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Lane, LaneState> lanes = new EnumMap<>(Lane.class);
+    private final AtomicInteger totalRunning = new AtomicInteger();
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+    private final MemoryGovernor memoryGovernor;
+
+    public GenerationScheduler(GenerationProperties properties,
+                               ExecutorService virtualThreadExecutor,
+                               MemoryGovernor memoryGovernor,
+                               MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.executor = virtualThreadExecutor;
+        this.memoryGovernor = memoryGovernor;
+        this.concurrencyLimit = properties.isAdaptive()
+            ? new AdaptiveConcurrencyLimit(
+                Math.min(Runtime.getRuntime().availableProcessors(), properties.getMaxConcurrentJobs()),
+                // Bulk-Jobs erhalten immer einen Slot, das Limit muss daneben die interaktive Reserve fassen
+                Math.max(properties.getMinConcurrentJobs(), properties.getInteractiveReserved() + 1),
+                properties.getMaxConcurrentJobs(),
+                properties.getLatencyTolerance(),
+                properties.getGcPressureThreshold(),
+                properties.getBackoffRatio())
+            : null;
+
+        for (Lane lane : Lane.values()) {
+            LaneState state = new LaneState(lane, lock.newCondition(), meterRegistry);
+            lanes.put(lane, state);
+        }
+        Gauge.builder("zugferd.generation.concurrency.limit", this, GenerationScheduler::totalSlots)
+            .description("Aktuelles Limit gleichzeitiger Generierungen")
+            .register(meterRegistry);
+        log.info("Generation scheduler started with {} slots (interactive: {}, bulk: {})",
+            totalSlots(), laneLimit(Lane.INTERACTIVE), laneLimit(Lane.BULK));
+    }
+
+    /**
+     * Reiht einen Job in die angegebene Lane ein.
+     * Nach Erhalt eines Lane-Slots wird das geschätzte Heap-Budget beim MemoryGovernor reserviert.
+     * So halten wartende Bulk-Jobs kein Budget, das ein interaktiver Job mit freiem Slot braucht.
+     *
+     * @param lane Die Prioritäts-Lane
+     * @param memoryBytes Geschätzter Heap-Bedarf des Jobs
+     * @param estimate Geschätzte Dauer laut Kostenmodell, normiert die Latenz für das adaptive Limit
+     * @param job Der auszuführende Job
+     * @return Future mit dem Ergebnis des Jobs
+     */
+    public <T> CompletableFuture<T> submit(Lane lane, long memoryBytes, Duration estimate, Supplier<T> job) {
+        LaneState state = lanes.get(lane);
+        long enqueuedAt = System.nanoTime();
+
+        return CompletableFuture.supplyAsync(() -> {
+            int inFlight = acquire(state);
+            try (var reservation = memoryGovernor.reserve(memoryBytes)) {
+                long startedAt = System.nanoTime();
+                state.queueTime.record(startedAt - enqueuedAt, TimeUnit.NANOSECONDS);
+                try {
+                    return job.get();
+                } finally {
+                    long latency = System.nanoTime() - startedAt;
+                    state.latency.record(latency, TimeUnit.NANOSECONDS);
+                    // Ohne Schätzung ist die Latenz nicht vergleichbar, z.B. bei sofort abgewiesenen Jobs
+                    if (concurrencyLimit != null && estimate.isPositive()) {
+                        concurrencyLimit.onSample(latency, estimate.toNanos(), inFlight);
+                    }
+                }
+            } finally {
+                release(state);
+            }
+        }, executor);
+    }
+
+    /**
+     * Reiht einen Job ohne Kostenschätzung ein. Seine Latenz fließt nicht in das adaptive Limit ein.
+     */
+    public <T> CompletableFuture<T> submit(Lane lane, long memoryBytes, Supplier<T> job) {
+        return submit(lane, memoryBytes, Duration.ZERO, job);
+    }
+
+    /**
+     * Führt einen Job in der angegebenen Lane aus und wartet auf das Ergebnis.
+     */
+    public <T> T execute(Lane lane, long memoryBytes, Supplier<T> job) {
+        try {
+            return submit(lane, memoryBytes, job).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Wartet auf einen freien Slot in der Lane.
+     *
+     * @return Anzahl laufender Jobs inklusive des gestarteten
+     */
+    private int acquire(LaneState state) {
+        lock.lock();
+        try {
+            state.waiting.incrementAndGet();
+            try {
+                while (!canStart(state)) {
+                    state.available.await();
+                }
+            } finally {
+                state.waiting.decrementAndGet();
+            }
+            state.running.incrementAndGet();
+            int inFlight = totalRunning.incrementAndGet();
+            signalWaiters();
+            return inFlight;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InvoiceProcessingException(
+                "SCHEDULER_INTERRUPTED",
+                "Generierung wurde abgebrochen",
+                "Lane: " + state.lane
+            );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gibt einen Slot frei und weckt wartende Jobs.
+     */
+    private void release(LaneState state) {
+        lock.lock();
+        try {
+            state.running.decrementAndGet();
+            totalRunning.decrementAndGet();
+            signalWaiters();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Prüft ob ein Job der Lane gestartet werden darf. Muss unter dem Lock aufgerufen werden.
+     */
+    private boolean canStart(LaneState state) {
+        if (totalRunning.get() >= totalSlots()) {
+            return false;
+        }
+        if (state.running.get() >= laneLimit(state.lane)) {
+            return false;
+        }
+        // Interaktive Jobs haben Vorrang vor Bulk-Jobs
+        return state.lane != Lane.BULK || lanes.get(Lane.INTERACTIVE).waiting.get() == 0;
+    }
+
+    /**
+     * Weckt je einen wartenden Job pro Lane, interaktive Lane zuerst.
+     */
+    private void signalWaiters() {
+        for (Lane lane : Lane.values()) {
+            LaneState state = lanes.get(lane);
+            if (state.waiting.get() > 0) {
+                state.available.signal();
+            }
+        }
+    }
+
+    /**
+     * Gesamtzahl gleichzeitig laufender Generierungen, im adaptiven Modus das aktuelle Limit.
+     */
+    int totalSlots() {
+        if (concurrencyLimit != null) {
+            return concurrencyLimit.currentLimit();
+        }
+        return Math.max(1, properties.getMaxConcurrentJobs());
+    }
+
+    /**
+     * Konkurrenzbudget einer Lane anhand ihres Anteils an den Gesamt-Slots.
+     * Bulk-Jobs dürfen die für interaktive Jobs reservierten Slots nie belegen,
+     * erhalten aber immer mindestens einen Slot.
+     */
+    int laneLimit(Lane lane) {
+        int total = totalSlots();
+        return switch (lane) {
+            case INTERACTIVE -> Math.max(
+                share(total, properties.getInteractiveShare()),
+                Math.min(total, properties.getInteractiveReserved()));
+            case BULK -> Math.max(1, Math.min(
+                share(total, properties.getBulkShare()),
+                total - properties.getInteractiveReserved()));
+        };
+    }
+
+    private static int share(int total, double fraction) {
+        return Math.max(1, (int) Math.floor(total * Math.min(1.0, fraction)));
+    }
+
+    /**
+     * Zustand und Metriken einer Lane.
+     */
+    private static final class LaneState {
+        private final Lane lane;
+        private final Condition available;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final AtomicInteger running = new AtomicInteger();
+        private final Timer queueTime;
+        private final Timer latency;
+
+        LaneState(Lane lane, Condition available, MeterRegistry meterRegistry) {
+            this.lane = lane;
+            this.available = available;
+
+            String tag = lane.name().toLowerCase(Locale.ROOT);
+            this.queueTime = Timer.builder("zugferd.generation.queue.time")
+                .description("Wartezeit bis zum Start der Generierung")
+                .tag("lane", tag)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+            this.latency = Timer.builder("zugferd.generation.latency")
+                .description("Laufzeit der Generierung")
+                .tag("lane", tag)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+            Gauge.builder("zugferd.generation.queued", waiting, AtomicInteger::get)
+                .tag("lane", tag)
+                .register(meterRegistry);
+            Gauge.builder("zugferd.generation.active", running, AtomicInteger::get)
+                .tag("lane", tag)
+                .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.model.ProcessingStatus;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Flüchtiger Session-Store. Alle Sessions gehen beim Neustart verloren.
+ * Sessions werden als kompakte {@link SessionRecord}s gehalten, Metadaten liegen im Details-Store.
+ */
+public class InMemorySessionStore implements SessionStore {
+
+    private final Map<String, SessionRecord> sessions = new ConcurrentHashMap<>();
+    private final SessionDetailsStore details;
+    private final SessionLayout layout;
+
+    public InMemorySessionStore(SessionDetailsStore details) {
+        this.details = details;
+        this.layout = details.layout();
+    }
+
+    @Override
+    public Optional<ProcessingStatus> get(String sessionId) {
+        return details.resolve(sessionId, sessions::get);
+    }
+
+    @Override
+    public Optional<SessionSummary> summary(String sessionId) {
+        return Optional.ofNullable(sessions.get(sessionId)).map(SessionRecord::toSummary);
+    }
+
+    @Override
+    public void put(ProcessingStatus status) {
+        SessionRecord record = SessionRecord.of(status, layout);
+        details.save(record, status);
+        SessionRecord previous = sessions.put(status.sessionId(), record);
+        discardIfReplaced(previous, record);
+    }
+
+    @Override
+    public boolean compareAndSet(ProcessingStatus expected, ProcessingStatus next) {
+        SessionRecord expectedRecord = SessionRecord.of(expected, layout);
+        if (!expectedRecord.equals(sessions.get(next.sessionId()))) {
+            return false;
+        }
+        SessionRecord nextRecord = SessionRecord.of(next, layout);
+        details.save(nextRecord, next);
+        if (!sessions.replace(next.sessionId(), expectedRecord, nextRecord)) {
+            discardIfReplaced(nextRecord, expectedRecord);
+            return false;
+        }
+        discardIfReplaced(expectedRecord, nextRecord);
+        return true;
+    }
+
+    @Override
+    public void remove(String sessionId) {
+        details.discard(sessions.remove(sessionId));
+    }
+
+    @Override
+    public boolean compareAndRemove(ProcessingStatus expected) {
+        SessionRecord expectedRecord = SessionRecord.of(expected, layout);
+        if (!sessions.remove(expected.sessionId(), expectedRecord)) {
+            return false;
+        }
+        details.discard(expectedRecord);
+        return true;
+    }
+
+    @Override
+    public boolean contains(String sessionId) {
+        return sessions.containsKey(sessionId);
+    }
+
+    @Override
+    public Set<String> sessionIds() {
+        return sessions.keySet();
+    }
+
+    /**
+     * Entfernt die Details des abgelösten Eintrags, sofern sie nicht zum neuen gehören.
+     */
+    private void discardIfReplaced(SessionRecord replaced, SessionRecord current) {
+        if (replaced != null && replaced.timestampNanos() != current.timestampNanos()) {
+            details.discard(replaced);
+        }
+    }
+}
@@ -1,18 +1,40 @@
 package de.zugferd.invoicetool.service;
 
 import de.zugferd.invoicetool.config.AppConfig.ZugferdProperties;
+import de.zugferd.invoicetool.config.GenerationConfig.GenerationProperties;
+import de.zugferd.invoicetool.config.JobQueueConfig.JobQueueProperties;
 import de.zugferd.invoicetool.exception.InvoiceProcessingException;
+import de.zugferd.invoicetool.model.GenerationJob;
 import de.zugferd.invoicetool.model.InvoiceMetadata;
 import de.zugferd.invoicetool.model.ProcessingStatus;
 import de.zugferd.invoicetool.model.ValidationResult;
+import de.zugferd.invoicetool.util.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
 /**
  * Orchestriert den gesamten E-Rechnungs-Workflow.
@@ -21,20 +43,400 @@ import java.time.Instant;
 public class InvoiceService {
     
     private static final Logger log = LoggerFactory.getLogger(InvoiceService.class);
+    private static final long IDEMPOTENCY_KEY_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final Duration STALE_COMPLETION = Duration.ofHours(1);
     
     private final StorageService storageService;
     private final ZugferdGeneratorService zugferdGeneratorService;
     private final ValidationService validationService;
     private final ZugferdProperties zugferdProperties;
+    private final GenerationScheduler generationScheduler;
+    private final MemoryGovernor memoryGovernor;
+    private final JobQueue jobQueue;
+    private final JobQueueProperties jobQueueProperties;
+    private final GeneratedPdfCache pdfCache;
+    private final GenerationCostModel costModel;
+    private final GenerationProperties generationProperties;
+    private final GenerationProgress progress;
+    private final SingleFlight<String, ProcessingStatus> generations = new SingleFlight<>();
+    private final Map<String, IdempotentRequest> idempotentRequests = new ConcurrentHashMap<>();
+    private final Queue<IdempotentRequest> idempotencyExpiries = new ConcurrentLinkedQueue<>();
+    private final Map<String, Instant> backgroundCompletions = new ConcurrentHashMap<>();
+    private final Counter replayedCounter;
+    private final Timer generateStageTimer;
+    private final Timer validateStageTimer;
+    private final LongSupplier millisClock;
     
+    @Autowired
     public InvoiceService(StorageService storageService,
                           ZugferdGeneratorService zugferdGeneratorService,
                           ValidationService validationService,
-                          ZugferdProperties zugferdProperties) {
+                          ZugferdProperties zugferdProperties,
+                          GenerationScheduler generationScheduler,
+                          MemoryGovernor memoryGovernor,
+                          JobQueue jobQueue,
+                          JobQueueProperties jobQueueProperties,
+                          GeneratedPdfCache pdfCache,
+                          GenerationCostModel costModel,
+                          GenerationProperties generationProperties,
+                          GenerationProgress progress,
+                          MeterRegistry meterRegistry) {
+        this(storageService, zugferdGeneratorService, validationService, zugferdProperties, generationScheduler,
+            memoryGovernor, jobQueue, jobQueueProperties, pdfCache, costModel, generationProperties, progress, meterRegistry,
+            System::currentTimeMillis);
+    }
+    
+    InvoiceService(StorageService storageService,
+                   ZugferdGeneratorService zugferdGeneratorService,
+                   ValidationService validationService,
+                   ZugferdProperties zugferdProperties,
+                   GenerationScheduler generationScheduler,
+                   MemoryGovernor memoryGovernor,
+                   JobQueue jobQueue,
+                   JobQueueProperties jobQueueProperties,
+                   GeneratedPdfCache pdfCache,
+                   GenerationCostModel costModel,
+                   GenerationProperties generationProperties,
+                   GenerationProgress progress,
+                   MeterRegistry meterRegistry,
+                   LongSupplier millisClock) {
+        this.millisClock = millisClock;
         this.storageService = storageService;
         this.zugferdGeneratorService = zugferdGeneratorService;
         this.validationService = validationService;
         this.zugferdProperties = zugferdProperties;
+        this.generationScheduler = generationScheduler;
+        this.memoryGovernor = memoryGovernor;
+        this.jobQueue = jobQueue;
+        this.jobQueueProperties = jobQueueProperties;
+        this.pdfCache = pdfCache;
+        this.costModel = costModel;
+        this.generationProperties = generationProperties;
+        this.progress = progress;
+        
+        FunctionCounter.builder("zugferd.generation.coalesced", generations, SingleFlight::coalescedCount)
+            .description("Generierungsanfragen, die sich einer laufenden Generierung angeschlossen haben")
+            .register(meterRegistry);
+        this.replayedCounter = Counter.builder("zugferd.generation.replayed")
+            .description("Wiederholte Generierungsanfragen, die das vorhandene Ergebnis erhalten haben")
+            .register(meterRegistry);
+        this.generateStageTimer = Timer.builder("zugferd.generation.stage")
+            .description("Dauer der einzelnen Generierungsschritte")
+            .tag("stage", "generate")
+            .register(meterRegistry);
+        this.validateStageTimer = Timer.builder("zugferd.generation.stage")
+            .description("Dauer der einzelnen Generierungsschritte")
+            .tag("stage", "validate")
+            .register(meterRegistry);
+        Gauge.builder("zugferd.generation.background", backgroundCompletions, Map::size)
+            .description("Im Hintergrund laufende Generierungen aus Benutzeranfragen")
+            .register(meterRegistry);
+    }
+    
+    /**
+     * Entscheidung, ob eine Generierung im Request oder im Hintergrund läuft.
+     *
+     * @param inline true, wenn die geschätzte Dauer unter {@code generation.inline-max-millis} liegt
+     * @param estimate Geschätzte Dauer laut Kostenmodell
+     */
+    public record GenerationPlan(boolean inline, Duration estimate) {}
+    
+    /**
+     * Schätzt die Dauer der Generierung und entscheidet, ob sie im Request ausgeführt wird.
+     * Sessions, die nicht mehr im Upload-Status sind, werden immer direkt behandelt, damit
+     * Wiederholungen sofort ihr Ergebnis oder ihren Fehler erhalten.
+     */
+    public GenerationPlan planGeneration(String sessionId) {
+        if (!(storageService.getStatusOrThrow(sessionId) instanceof ProcessingStatus.Uploaded uploaded)) {
+            return new GenerationPlan(true, Duration.ZERO);
+        }
+        var features = costModel.features(sessionId, uploaded.originalPdfPath(), uploaded.fileSizeBytes());
+        Duration estimate = costModel.estimate(features);
+        boolean inline = estimate.toMillis() <= generationProperties.getInlineMaxMillis();
+        log.debug("Estimated generation of session {} ({} pages, {} bytes) at {} ms, running {}",
+            sessionId, features.pageCount(), features.fileSizeBytes(), estimate.toMillis(),
+            inline ? "inline" : "in background");
+        return new GenerationPlan(inline, estimate);
+    }
+    
+    /**
+     * Startet eine teure Generierung in der Bulk-Lane, ohne auf das Ergebnis zu warten.
+     * Die voraussichtliche Fertigstellung berücksichtigt die noch laufenden Hintergrund-Generierungen.
+     * Mit {@code jobs.worker-enabled} geht die Generierung in die knotenübergreifende Job-Queue;
+     * dort dient die Job-ID als Idempotenz-Schlüssel.
+     *
+     * @return Voraussichtlicher Zeitpunkt der Fertigstellung
+     */
+    public Instant submitBackgroundGeneration(String sessionId, InvoiceMetadata metadata,
+                                              GenerationPlan plan, String idempotencyKey) {
+        Instant completion = estimateCompletion(plan.estimate());
+        if (jobQueueProperties.isWorkerEnabled()) {
+            return enqueueBackgroundGeneration(sessionId, metadata, completion);
+        }
+        backgroundCompletions.put(sessionId, completion);
+        try {
+            submitGeneration(sessionId, metadata, GenerationScheduler.Lane.BULK, idempotencyKey)
+                .whenComplete((status, error) -> {
+                    backgroundCompletions.remove(sessionId, completion);
+                    if (error != null) {
+                        log.warn("Background generation of session {} failed", sessionId, error);
+                    }
+                });
+        } catch (RuntimeException e) {
+            backgroundCompletions.remove(sessionId, completion);
+            throw e;
+        }
+        log.info("Generation of session {} runs in background, expected at {}", sessionId, completion);
+        return completion;
+    }
+    
+    /**
+     * Stellt die Generierung in die Job-Queue. Eine erneute Anfrage, während die Session noch auf
+     * ihren Job wartet, erzeugt keinen weiteren Job. Da der Job auf einem anderen Knoten enden kann,
+     * wird die voraussichtliche Fertigstellung erst entfernt, wenn die Session fertig ist.
+     */
+    private Instant enqueueBackgroundGeneration(String sessionId, InvoiceMetadata metadata, Instant completion) {
+        Instant existing = backgroundCompletions.putIfAbsent(sessionId, completion);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            enqueueGeneration(sessionId, metadata);
+        } catch (RuntimeException e) {
+            backgroundCompletions.remove(sessionId, completion);
+            throw e;
+        }
+        return completion;
+    }
+    
+    /**
+     * Voraussichtliche Fertigstellung einer Hintergrund-Generierung. Einträge von Sessions, die
+     * nicht mehr warten oder laufen, werden dabei entfernt.
+     */
+    public Optional<Instant> estimatedCompletion(String sessionId) {
+        Instant completion = backgroundCompletions.get(sessionId);
+        if (completion == null) {
+            return Optional.empty();
+        }
+        boolean pending = storageService.getStatus(sessionId)
+            .filter(status -> status instanceof ProcessingStatus.Uploaded
+                || status instanceof ProcessingStatus.Processing)
+            .isPresent();
+        if (!pending) {
+            backgroundCompletions.remove(sessionId, completion);
+            return Optional.empty();
+        }
+        return Optional.of(completion);
+    }
+    
+    /**
+     * Öffnet einen Fortschritts-Stream für die Ergebnisseite. Läuft auf diesem Knoten keine
+     * Generierung, wird der Schritt aus dem gespeicherten Status abgeleitet.
+     */
+    public SseEmitter subscribeProgress(String sessionId) {
+        // Unbekannte Sessions abweisen, bevor ein Stream registriert wird
+        storageService.getStatusOrThrow(sessionId);
+        return progress.subscribe(sessionId, () -> switch (storageService.getStatusOrThrow(sessionId)) {
+            case ProcessingStatus.Uploaded u -> estimatedCompletion(sessionId).isPresent()
+                ? GenerationProgress.Stage.QUEUED
+                // Keine Generierung angestoßen, die Seite leitet nach dem Neuladen zum Formular
+                : GenerationProgress.Stage.FAILED;
+            case ProcessingStatus.Processing p -> GenerationProgress.Stage.CONVERTING;
+            case ProcessingStatus.Completed c -> GenerationProgress.Stage.DONE;
+            case ProcessingStatus.Downloaded d -> GenerationProgress.Stage.DONE;
+            case ProcessingStatus.Failed f -> GenerationProgress.Stage.FAILED;
+        });
+    }
+    
+    /**
+     * Eigene Dauer plus der auf die Bulk-Slots verteilte Rest der laufenden Hintergrund-Generierungen.
+     */
+    private Instant estimateCompletion(Duration estimate) {
+        Instant now = Instant.now();
+        // Einträge aus der Job-Queue, deren Session nie wieder abgefragt wurde
+        backgroundCompletions.values().removeIf(completion -> completion.plus(STALE_COMPLETION).isBefore(now));
+        long backlogMillis = backgroundCompletions.values().stream()
+            .mapToLong(completion -> Math.max(0, Duration.between(now, completion).toMillis()))
+            .sum();
+        int slots = Math.max(1, generationScheduler.laneLimit(GenerationScheduler.Lane.BULK));
+        return now.plus(estimate).plusMillis(backlogMillis / slots);
+    }
+    
+    /**
+     * Generiert eine E-Rechnung über den Scheduler und wartet auf das Ergebnis.
+     *
+     * @param sessionId Die Session-ID
+     * @param metadata Die Rechnungsmetadaten
+     * @param lane Die Prioritäts-Lane
+     * @return Der neue Verarbeitungsstatus
+     */
+    public ProcessingStatus generateInvoice(String sessionId, InvoiceMetadata metadata,
+                                            GenerationScheduler.Lane lane) {
+        return generateInvoice(sessionId, metadata, lane, null);
+    }
+    
+    /**
+     * Generiert eine E-Rechnung über den Scheduler und wartet auf das Ergebnis.
+     * Wiederholungen mit demselben Idempotenz-Schlüssel erhalten das Ergebnis der ersten Anfrage.
+     *
+     * @param idempotencyKey Schlüssel des Clients oder null
+     */
+    public ProcessingStatus generateInvoice(String sessionId, InvoiceMetadata metadata,
+                                            GenerationScheduler.Lane lane, String idempotencyKey) {
+        try {
+            return submitGeneration(sessionId, metadata, lane, idempotencyKey).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Reiht eine Generierung im Scheduler ein, ohne auf das Ergebnis zu warten.
+     * Pro Session läuft höchstens eine Generierung; weitere Anfragen mit denselben Metadaten erhalten
+     * deren Ergebnis, Anfragen mit anderen Metadaten werden abgewiesen. Ist die Session bereits mit identischen Metadaten abgeschlossen, wird das vorhandene Ergebnis geliefert.
+     */
+    public CompletableFuture<ProcessingStatus> submitGeneration(String sessionId, InvoiceMetadata metadata,
+                                                                GenerationScheduler.Lane lane) {
+        var previous = completedWith(sessionId, metadata);
+        if (previous.isPresent()) {
+            replayedCounter.increment();
+            log.debug("Returning existing result for repeated generation of session {}", sessionId);
+            return CompletableFuture.completedFuture(previous.get());
+        }
+        return generations.execute(sessionId, metadata, () -> new InvoiceProcessingException(
+            "GENERATION_IN_PROGRESS",
+            "Für diese Rechnung läuft bereits eine Generierung mit anderen Daten",
+            "Session: " + sessionId
+        ), () -> {
+            progress.publish(sessionId, GenerationProgress.Stage.QUEUED);
+            return generationScheduler.submit(lane, estimateFootprint(sessionId, metadata),
+                    estimateDuration(sessionId), () -> generateInvoice(sessionId, metadata))
+                .whenComplete((status, error) -> {
+                    // Abgewiesene Generierungen (z.B. ungültiger Status) beenden offene Fortschritts-Streams
+                    if (error != null) {
+                        progress.publish(sessionId, GenerationProgress.Stage.FAILED);
+                    }
+                });
+        });
+    }
+    
+    /**
+     * Wie {@link #submitGeneration(String, InvoiceMetadata, GenerationScheduler.Lane)}, zusätzlich mit
+     * Idempotenz-Schlüssel. Derselbe Schlüssel mit anderer Session oder anderen Metadaten wird abgewiesen.
+     * Der Schlüssel muss bereits pro Client eindeutig sein, z.B. um die Client-Kennung ergänzt.
+     * Schlüssel verfallen eine Stunde nach ihrer ersten Verwendung.
+     * Schlägt die Anfrage mit einer Exception fehl, wird der Schlüssel freigegeben und kann erneut verwendet werden.
+     *
+     * @param idempotencyKey Schlüssel des Clients oder null
+     */
+    public CompletableFuture<ProcessingStatus> submitGeneration(String sessionId, InvoiceMetadata metadata,
+                                                                GenerationScheduler.Lane lane,
+                                                                String idempotencyKey) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return submitGeneration(sessionId, metadata, lane);
+        }
+        sweepIdempotentRequests();
+        
+        var candidate = new IdempotentRequest(idempotencyKey, sessionId, metadata, new CompletableFuture<>(),
+            millisClock.getAsLong());
+        IdempotentRequest existing = idempotentRequests.putIfAbsent(idempotencyKey, candidate);
+        if (existing != null) {
+            if (!existing.sessionId().equals(sessionId) || !existing.metadata().equals(metadata)) {
+                throw new InvoiceProcessingException(
+                    "IDEMPOTENCY_KEY_REUSED",
+                    "Idempotenz-Schlüssel wurde bereits für eine andere Anfrage verwendet",
+                    "Schlüssel: " + idempotencyKey
+                );
+            }
+            replayedCounter.increment();
+            return existing.result();
+        }
+        idempotencyExpiries.add(candidate);
+        
+        try {
+            submitGeneration(sessionId, metadata, lane).whenComplete((status, error) -> {
+                if (error != null) {
+                    idempotentRequests.remove(idempotencyKey, candidate);
+                    candidate.result().completeExceptionally(error);
+                } else {
+                    candidate.result().complete(status);
+                }
+            });
+        } catch (RuntimeException e) {
+            idempotentRequests.remove(idempotencyKey, candidate);
+            throw e;
+        }
+        return candidate.result();
+    }
+    
+    /**
+     * Liefert den abgeschlossenen Status, wenn die Session bereits mit denselben Metadaten generiert wurde.
+     */
+    private Optional<ProcessingStatus> completedWith(String sessionId, InvoiceMetadata metadata) {
+        return storageService.getStatus(sessionId)
+            .filter(status -> status instanceof ProcessingStatus.Completed completed
+                && completed.metadata().equals(metadata));
+    }
+    
+    /**
+     * Entfernt abgelaufene Idempotenz-Schlüssel. Die Warteschlange ist nach Erstellung sortiert,
+     * daher werden nur die tatsächlich abgelaufenen Einträge am Anfang betrachtet.
+     */
+    private void sweepIdempotentRequests() {
+        long cutoff = millisClock.getAsLong() - IDEMPOTENCY_KEY_TTL_MILLIS;
+        IdempotentRequest oldest;
+        while ((oldest = idempotencyExpiries.peek()) != null && oldest.createdAt() < cutoff) {
+            if (idempotencyExpiries.remove(oldest)) {
+                idempotentRequests.remove(oldest.key(), oldest);
+            }
+        }
+    }
+    
+    /**
+     * Stellt eine Generierung in die knotenübergreifende Job-Queue, z.B. für Monatsabschlussläufe.
+     * Der Job wird von einem beliebigen Knoten mit aktiviertem Worker in der Bulk-Lane ausgeführt.
+     *
+     * @return Die Job-ID
+     */
+    public String enqueueGeneration(String sessionId, InvoiceMetadata metadata) {
+        ProcessingStatus currentStatus = storageService.getStatusOrThrow(sessionId);
+        if (!(currentStatus instanceof ProcessingStatus.Uploaded)) {
+            throw new InvoiceProcessingException(
+                "INVALID_STATE",
+                "Ungültiger Status für E-Rechnung-Generierung",
+                "Aktueller Status: " + currentStatus.getClass().getSimpleName()
+            );
+        }
+        
+        var job = new GenerationJob(UUID.randomUUID().toString(), sessionId, metadata, Instant.now());
+        jobQueue.enqueue(job);
+        log.info("Enqueued generation job {} for session {}", job.jobId(), sessionId);
+        return job.jobId();
+    }
+    
+    /**
+     * Schätzt den Heap-Bedarf der Generierung aus den Upload-Daten.
+     */
+    private long estimateFootprint(String sessionId, InvoiceMetadata metadata) {
+        long fileSize = storageService.getStatus(sessionId)
+            .map(status -> status instanceof ProcessingStatus.Uploaded uploaded ? uploaded.fileSizeBytes() : 0L)
+            .orElse(0L);
+        return memoryGovernor.estimateFootprint(fileSize, metadata.items().size());
+    }
+    
+    /**
+     * Geschätzte Dauer laut Kostenmodell; die Eigenschaften der PDF sind meist schon aus
+     * {@link #planGeneration} zwischengespeichert.
+     */
+    private Duration estimateDuration(String sessionId) {
+        if (!(storageService.getStatus(sessionId).orElse(null) instanceof ProcessingStatus.Uploaded uploaded)) {
+            return Duration.ZERO;
+        }
+        return costModel.estimate(
+            costModel.features(sessionId, uploaded.originalPdfPath(), uploaded.fileSizeBytes()));
     }
     
     /**
@@ -58,33 +460,45 @@ public class InvoiceService {
             );
         }
         
-        // Status auf "Processing" setzen
+        // Status auf "Processing" setzen, schlägt fehl, wenn eine parallele Anfrage schneller war
         var processingStatus = new ProcessingStatus.Processing(
             sessionId,
             Instant.now(),
             metadata
         );
-        storageService.updateStatus(sessionId, processingStatus);
+        storageService.transitionOrThrow(uploaded, processingStatus);
+        progress.publish(sessionId, GenerationProgress.Stage.CONVERTING);
+        var features = costModel.features(sessionId, uploaded.originalPdfPath(), uploaded.fileSizeBytes());
+        long startedAt = System.nanoTime();
         
         try {
             // Output-Verzeichnis vorbereiten
             Path outputDir = storageService.prepareOutputDirectory(sessionId);
-            Path outputPath = outputDir.resolve("e-invoice.pdf");
+            Path outputPath = outputDir.resolve(SessionLayout.GENERATED_PDF);
+            // Evtl. vorhandene Datei kann ein Hardlink in den Blob-Store sein und darf nicht überschrieben werden
+            Files.deleteIfExists(outputPath);
             
             // E-Rechnung generieren
-            zugferdGeneratorService.generateInvoice(
+            generateStageTimer.record(() -> zugferdGeneratorService.generateInvoice(
                 uploaded.originalPdfPath(),
                 outputPath,
-                metadata
-            );
+                metadata,
+                () -> progress.publish(sessionId, GenerationProgress.Stage.EXPORTING)
+            ));
             
             // Validierung durchführen
             ValidationResult validationResult;
             if (zugferdProperties.isValidateOnGeneration()) {
-                validationResult = validationService.validatePdfA3(outputPath);
+                progress.publish(sessionId, GenerationProgress.Stage.VALIDATING);
+                validationResult = validateStageTimer.record(() -> validationService.validatePdfA3(outputPath));
             } else {
                 validationResult = ValidationResult.success("Skipped", 0);
             }
+            costModel.observe(sessionId, features, Duration.ofNanos(System.nanoTime() - startedAt));
+            
+            storageService.deduplicate(outputPath);
+            // Ergebnisseite, Vorschau und Download folgen meist unmittelbar
+            pdfCache.put(sessionId, outputPath);
             
             // Status auf "Completed" setzen
             var completedStatus = new ProcessingStatus.Completed(
@@ -94,7 +508,8 @@ public class InvoiceService {
                 validationResult,
                 metadata
             );
-            storageService.updateStatus(sessionId, completedStatus);
+            storageService.transitionOrThrow(processingStatus, completedStatus);
+            progress.publish(sessionId, GenerationProgress.Stage.DONE);
             
             log.info("Invoice generation completed for session: {} (valid: {})", 
                 sessionId, validationResult.valid());
@@ -103,29 +518,32 @@ public class InvoiceService {
             
         } catch (IOException e) {
             log.error("IO error during invoice generation", e);
-            return handleFailure(sessionId, "IO-Fehler bei der E-Rechnung-Generierung", e.getMessage());
+            return handleFailure(processingStatus, "IO-Fehler bei der E-Rechnung-Generierung", e.getMessage());
             
         } catch (InvoiceProcessingException e) {
             log.error("Processing error during invoice generation", e);
-            return handleFailure(sessionId, e.getMessage(), e.getDetails());
+            return handleFailure(processingStatus, e.getMessage(), e.getDetails());
             
         } catch (Exception e) {
             log.error("Unexpected error during invoice generation", e);
-            return handleFailure(sessionId, "Unerwarteter Fehler", e.getMessage());
+            return handleFailure(processingStatus, "Unerwarteter Fehler", e.getMessage());
         }
     }
     
     /**
      * Behandelt einen Fehler im Workflow.
      */
-    private ProcessingStatus.Failed handleFailure(String sessionId, String message, String details) {
+    private ProcessingStatus.Failed handleFailure(ProcessingStatus.Processing processingStatus,
+                                                  String message, String details) {
         var failedStatus = new ProcessingStatus.Failed(
-            sessionId,
+            processingStatus.sessionId(),
             Instant.now(),
             message,
             details
         );
-        storageService.updateStatus(sessionId, failedStatus);
+        // Wurde die Session zwischenzeitlich gelöscht, wird der Übergang abgewiesen und nur gezählt
+        storageService.transition(processingStatus, failedStatus);
+        progress.publish(processingStatus.sessionId(), GenerationProgress.Stage.FAILED);
         return failedStatus;
     }
     
@@ -137,34 +555,44 @@ public class InvoiceService {
     }
     
     /**
-     * Lädt die generierte E-Rechnung herunter.
+     * Gibt die generierte E-Rechnung für den Download zurück und markiert die Session als heruntergeladen.
+     * Die Datei wird nicht in den Speicher geladen, sondern vom Aufrufer gestreamt.
+     *
+     * @param sessionId Die Session-ID
+     * @return Pfad der PDF-Datei
+     */
+    public Path downloadInvoice(String sessionId) {
+        Path pdfPath = getInvoicePath(sessionId);
+        storageService.markAsDownloaded(sessionId);
+        return pdfPath;
+    }
+    
+    /**
+     * Gibt den Pfad der generierten E-Rechnung zurück, ohne den Status zu ändern (z.B. für die Vorschau).
+     * Auch nach dem ersten Download bleibt die Datei bis zur Bereinigung abrufbar,
+     * damit unterbrochene Downloads per Range-Request fortgesetzt werden können.
      *
      * @param sessionId Die Session-ID
-     * @return Die Bytes der PDF-Datei
+     * @return Pfad der PDF-Datei
      */
-    public byte[] downloadInvoice(String sessionId) {
+    public Path getInvoicePath(String sessionId) {
         ProcessingStatus status = storageService.getStatusOrThrow(sessionId);
         
-        if (!(status instanceof ProcessingStatus.Completed completed)) {
-            throw new InvoiceProcessingException(
+        Path pdfPath = switch (status) {
+            case ProcessingStatus.Completed completed -> completed.generatedPdfPath();
+            case ProcessingStatus.Downloaded downloaded -> downloaded.downloadedFilePath();
+            default -> throw new InvoiceProcessingException(
                 "NOT_COMPLETED",
                 "E-Rechnung wurde noch nicht erstellt",
                 "Aktueller Status: " + status.getClass().getSimpleName()
             );
-        }
+        };
         
-        try {
-            byte[] pdfBytes = Files.readAllBytes(completed.generatedPdfPath());
-            
-            // Als heruntergeladen markieren
-            storageService.markAsDownloaded(sessionId);
-            
-            return pdfBytes;
-            
-        } catch (IOException e) {
-            log.error("Failed to read generated invoice", e);
-            throw new InvoiceProcessingException("Fehler beim Lesen der E-Rechnung", e);
+        if (!Files.isReadable(pdfPath)) {
+            log.error("Generated invoice missing for session {}: {}", sessionId, pdfPath);
+            throw new InvoiceProcessingException("Fehler beim Lesen der E-Rechnung");
         }
+        return pdfPath;
     }
     
     /**
@@ -173,14 +601,13 @@ public class InvoiceService {
     public String getDownloadFilename(String sessionId) {
         ProcessingStatus status = storageService.getStatusOrThrow(sessionId);
         
-        if (status instanceof ProcessingStatus.Completed completed) {
-            String invoiceNumber = completed.metadata().invoiceNumber();
-            // Dateiname bereinigen
-            String safeNumber = invoiceNumber.replaceAll("[^a-zA-Z0-9.-]", "_");
-            return "E-Rechnung_" + safeNumber + ".pdf";
-        }
+        String filename = switch (status) {
+            case ProcessingStatus.Completed completed -> completed.downloadFilename();
+            case ProcessingStatus.Downloaded downloaded -> downloaded.downloadFilename();
+            default -> null;
+        };
         
-        return "e-rechnung.pdf";
+        return filename != null ? filename : "e-rechnung.pdf";
     }
     
     /**
@@ -198,4 +625,15 @@ public class InvoiceService {
             .map(ProcessingStatus::canDownload)
             .orElse(false);
     }
+    
+    /**
+     * Eine per Idempotenz-Schlüssel registrierte Generierungsanfrage.
+     */
+    private record IdempotentRequest(
+        String key,
+        String sessionId,
+        InvoiceMetadata metadata,
+        CompletableFuture<ProcessingStatus> result,
+        long createdAt
+    ) {}
 }
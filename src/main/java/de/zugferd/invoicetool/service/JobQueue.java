@@ -0,0 +1,59 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.model.GenerationJob;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Warteschlange für Generierungs-Jobs, aus der mehrere Knoten Jobs mit zeitlich begrenzten
+ * Leases beanspruchen. Läuft ein Lease ab, ohne erneuert zu werden, wird der Job wieder freigegeben.
+ */
+public interface JobQueue {
+
+    /**
+     * Stellt einen Job in die Warteschlange.
+     */
+    void enqueue(GenerationJob job);
+
+    /**
+     * Beansprucht den ältesten wartenden Job.
+     *
+     * @param nodeId Kennung des beanspruchenden Knotens
+     * @param lease Gültigkeitsdauer des Leases
+     * @return Der beanspruchte Job oder leer, wenn keiner wartet
+     */
+    Optional<ClaimedJob> claim(String nodeId, Duration lease);
+
+    /**
+     * Verlängert das Lease eines beanspruchten Jobs.
+     *
+     * @return false, wenn das Lease inzwischen abgelaufen und neu vergeben ist
+     */
+    boolean renew(ClaimedJob claimed, Duration lease);
+
+    /**
+     * Entfernt einen abgeschlossenen Job endgültig. Ist das Lease inzwischen an einen anderen
+     * Knoten vergeben, bleibt dessen Eintrag erhalten.
+     */
+    void complete(ClaimedJob claimed);
+
+    /**
+     * Gibt Jobs mit abgelaufenem Lease wieder frei.
+     *
+     * @return Anzahl der freigegebenen Jobs
+     */
+    int reclaimExpired();
+
+    /**
+     * Anzahl wartender Jobs.
+     */
+    int pendingCount();
+
+    /**
+     * Ein von einem Knoten beanspruchter Job.
+     *
+     * @param handle Implementierungsspezifische Kennung des Eintrags
+     */
+    record ClaimedJob(GenerationJob job, String nodeId, String handle) {}
+}
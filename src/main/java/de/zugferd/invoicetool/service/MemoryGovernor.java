@@ -0,0 +1,240 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.GenerationConfig.GenerationProperties;
+import de.zugferd.invoicetool.exception.InvoiceProcessingException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Globales Heap-Budget für gleichzeitig laufende PDF-Jobs.
+ * Jeder Job reserviert vor dem Start seinen geschätzten Speicherbedarf, erst nachdem ihm der
+ * {@link GenerationScheduler} einen Lane-Slot zugeteilt hat. Meldet die JVM nach einer
+ * Garbage Collection einen fast vollen Heap, werden neue Jobs angehalten, bis wieder genug frei ist.
+ */
+@Service
+public class MemoryGovernor {
+
+    private static final Logger log = LoggerFactory.getLogger(MemoryGovernor.class);
+    private static final long PAUSE_POLL_MILLIS = 500;
+
+    private final GenerationProperties properties;
+    private final long budgetBytes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition capacityAvailable = lock.newCondition();
+    private final List<MemoryPoolMXBean> monitoredPools = new ArrayList<>();
+    private final NotificationListener heapListener = this::onHeapNotification;
+    private final Counter pausedWaits;
+
+    private long reservedBytes;
+    private volatile boolean paused;
+
+    public MemoryGovernor(GenerationProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.budgetBytes = (long) (Runtime.getRuntime().maxMemory() * properties.getMemoryBudgetRatio());
+
+        registerHeapThresholds();
+
+        Gauge.builder("zugferd.memory.reserved", this, MemoryGovernor::reservedBytes)
+            .description("Für laufende Jobs reservierter Heap")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("zugferd.memory.budget", this, governor -> governor.budgetBytes)
+            .description("Heap-Budget für PDF-Jobs")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("zugferd.memory.paused", this, governor -> governor.paused ? 1 : 0)
+            .description("1 wenn neue Jobs wegen Heap-Druck angehalten sind")
+            .register(meterRegistry);
+        this.pausedWaits = Counter.builder("zugferd.memory.paused.waits")
+            .description("Jobs, die wegen Heap-Druck warten mussten")
+            .register(meterRegistry);
+
+        log.info("Memory governor budget: {} MB", budgetBytes / 1024 / 1024);
+    }
+
+    /**
+     * Schätzt den Heap-Bedarf einer Generierung anhand der Upload-Größe und der Positionsanzahl.
+     *
+     * @param fileSizeBytes Größe der hochgeladenen PDF
+     * @param itemCount Anzahl der Rechnungspositionen
+     * @return geschätzter Bedarf in Bytes
+     */
+    public long estimateFootprint(long fileSizeBytes, int itemCount) {
+        return properties.getMemoryBaseBytes()
+            + (long) (fileSizeBytes * properties.getMemoryBytesPerUploadByte())
+            + itemCount * 16L * 1024;
+    }
+
+    /**
+     * Reserviert Heap-Budget und blockiert, solange das Budget erschöpft oder der Heap unter Druck ist.
+     * Ist nichts reserviert, startet ein Job immer, auch wenn er allein das Budget übersteigt oder
+     * die Jobs angehalten sind; sonst könnte eine Pause ohne laufende Jobs nie enden.
+     *
+     * @param bytes geschätzter Bedarf
+     * @return Reservierung, die nach dem Job geschlossen werden muss
+     */
+    public Reservation reserve(long bytes) {
+        lock.lock();
+        try {
+            boolean waited = false;
+            while (reservedBytes > 0 && (paused || reservedBytes + bytes > budgetBytes)) {
+                if (paused && !waited) {
+                    pausedWaits.increment();
+                }
+                waited = true;
+                capacityAvailable.await(PAUSE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (paused) {
+                    checkResume();
+                }
+            }
+            reservedBytes += bytes;
+            return new Reservation(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InvoiceProcessingException(
+                "MEMORY_RESERVATION_INTERRUPTED",
+                "Generierung wurde abgebrochen",
+                "Warten auf Heap-Budget unterbrochen"
+            );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Aktuell reservierte Bytes.
+     */
+    public long reservedBytes() {
+        lock.lock();
+        try {
+            return reservedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long bytes) {
+        lock.lock();
+        try {
+            reservedBytes = Math.max(0, reservedBytes - bytes);
+            capacityAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Setzt für alle Heap-Pools mit Collection-Usage-Unterstützung eine Schwelle,
+     * deren Überschreitung nach einer GC eine Benachrichtigung auslöst.
+     */
+    private void registerHeapThresholds() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported()) {
+                continue;
+            }
+            long max = pool.getUsage().getMax();
+            if (max <= 0) {
+                continue;
+            }
+            pool.setCollectionUsageThreshold((long) (max * properties.getHeapPauseThreshold()));
+            monitoredPools.add(pool);
+        }
+
+        if (ManagementFactory.getMemoryMXBean() instanceof NotificationEmitter emitter) {
+            emitter.addNotificationListener(heapListener, null, null);
+        }
+    }
+
+    private void onHeapNotification(Notification notification, Object handback) {
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+            pause();
+        }
+    }
+
+    /**
+     * Hält neue Jobs an, bis der Heap-Druck nachlässt.
+     */
+    void pause() {
+        if (!paused) {
+            log.warn("Heap usage after GC above {}% - pausing new PDF jobs",
+                (int) (properties.getHeapPauseThreshold() * 100));
+        }
+        paused = true;
+    }
+
+    /**
+     * Hebt die Pause auf, sobald alle überwachten Pools unter der Resume-Schwelle liegen. Maßgeblich
+     * ist die Belegung nach der letzten GC; da ein Pool ohne Last womöglich nie wieder gesammelt wird,
+     * genügt auch eine aktuelle Belegung unter der Schwelle. Muss unter dem Lock aufgerufen werden.
+     */
+    private void checkResume() {
+        for (MemoryPoolMXBean pool : monitoredPools) {
+            if (aboveResumeThreshold(pool.getCollectionUsage()) && aboveResumeThreshold(pool.getUsage())) {
+                return;
+            }
+        }
+        paused = false;
+        log.info("Heap pressure relieved - resuming PDF jobs");
+        capacityAvailable.signalAll();
+    }
+
+    private boolean aboveResumeThreshold(MemoryUsage usage) {
+        return usage != null && usage.getMax() > 0
+            && usage.getUsed() > usage.getMax() * properties.getHeapResumeThreshold();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (ManagementFactory.getMemoryMXBean() instanceof NotificationEmitter emitter) {
+            try {
+                emitter.removeNotificationListener(heapListener);
+            } catch (ListenerNotFoundException e) {
+                log.debug("Heap listener was not registered");
+            }
+        }
+    }
+
+    /**
+     * Reserviertes Heap-Budget eines Jobs.
+     */
+    public final class Reservation implements AutoCloseable {
+        private final long bytes;
+        private boolean released;
+
+        private Reservation(long bytes) {
+            this.bytes = bytes;
+        }
+
+        public long bytes() {
+            return bytes;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release(bytes);
+            }
+        }
+    }
+}
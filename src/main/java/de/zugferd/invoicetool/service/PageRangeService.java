@@ -0,0 +1,203 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.PreviewConfig.PreviewProperties;
+import de.zugferd.invoicetool.exception.InvoiceProcessingException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.multipdf.PageExtractor;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * Erzeugt Auszüge einzelner Seiten aus der generierten PDF, damit große Dokumente seitenweise
+ * angesehen werden können, ohne die ganze Datei zu laden. PDFBox liest beim Öffnen nur die
+ * Querverweistabelle und löst Objekte erst bei Zugriff auf; kopiert werden nur die Objekte der
+ * angeforderten Seiten. Auszüge werden im Session-Verzeichnis gecacht, die am längsten nicht
+ * abgerufenen werden oberhalb der konfigurierten Anzahl gelöscht. Wie beim Rendern der
+ * Vorschaubilder ist die Zahl paralleler Extraktionen begrenzt; ihr Heap-Bedarf wird beim
+ * MemoryGovernor reserviert, damit Auszüge nicht mit laufenden Generierungen um den Heap konkurrieren.
+ */
+@Service
+public class PageRangeService {
+
+    private static final Logger log = LoggerFactory.getLogger(PageRangeService.class);
+
+    private final SessionLayout layout;
+    private final int maxPages;
+    private final int cacheEntries;
+    private final Semaphore extractPermits;
+    private final MemoryGovernor memoryGovernor;
+    private final Timer extractTimer;
+    private final Counter cacheHits;
+
+    @Autowired
+    public PageRangeService(SessionLayout layout,
+                            PreviewProperties properties,
+                            MemoryGovernor memoryGovernor,
+                            MeterRegistry meterRegistry) {
+        this(layout, properties.getPageRangeMaxPages(), properties.getPageRangeCacheEntries(),
+            properties.getPageRangeConcurrency(), memoryGovernor, meterRegistry);
+    }
+
+    PageRangeService(SessionLayout layout, int maxPages, int cacheEntries, int concurrency,
+                     MemoryGovernor memoryGovernor, MeterRegistry meterRegistry) {
+        this.layout = layout;
+        this.maxPages = Math.max(1, maxPages);
+        this.cacheEntries = Math.max(1, cacheEntries);
+        this.extractPermits = new Semaphore(Math.max(1, concurrency));
+        this.memoryGovernor = memoryGovernor;
+        this.extractTimer = Timer.builder("zugferd.preview.pages.extract")
+            .description("Dauer der Extraktion eines Seitenauszugs")
+            .register(meterRegistry);
+        this.cacheHits = Counter.builder("zugferd.preview.pages.cache.hits")
+            .description("Aus dem Cache bediente Seitenauszüge")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Höchstzahl der Seiten eines Auszugs.
+     */
+    public int maxPages() {
+        return maxPages;
+    }
+
+    /**
+     * Liefert die Seiten {@code fromPage} bis {@code toPage} (1-basiert, inklusive) als eigenständige PDF.
+     * Reicht das Dokument nicht bis {@code toPage}, endet der Auszug mit der letzten Seite;
+     * gecacht wird er unter dem gekürzten Bereich, sodass überlange Anfragen ihn wiederverwenden.
+     *
+     * @param sessionId Die Session-ID
+     * @param pdf Die generierte PDF
+     * @return Pfad des Auszugs oder leer, wenn {@code fromPage} hinter der letzten Seite liegt
+     */
+    public Optional<Path> extract(String sessionId, Path pdf, int fromPage, int toPage) {
+        if (fromPage < 1 || toPage < fromPage || toPage - fromPage + 1 > maxPages) {
+            throw new IllegalArgumentException("Invalid page range " + fromPage + "-" + toPage);
+        }
+
+        // Gespeichert werden nur gekürzte Bereiche, ein Treffer liegt also vollständig im Dokument
+        Optional<Path> cached = cachedRange(sessionId, fromPage, toPage);
+        if (cached.isPresent()) {
+            return cached;
+        }
+
+        extractPermits.acquireUninterruptibly();
+        Timer.Sample sample = Timer.start();
+        Path temp = null;
+        Path target;
+        try (var reservation = memoryGovernor.reserve(estimateFootprint(pdf));
+             PDDocument document = Loader.loadPDF(pdf.toFile())) {
+            int pageCount = document.getNumberOfPages();
+            if (fromPage > pageCount) {
+                return Optional.empty();
+            }
+            int lastPage = Math.min(toPage, pageCount);
+            if (lastPage < toPage) {
+                cached = cachedRange(sessionId, fromPage, lastPage);
+                if (cached.isPresent()) {
+                    return cached;
+                }
+            }
+            target = layout.pageRange(sessionId, fromPage, lastPage);
+            try (PDDocument range = new PageExtractor(document, fromPage, lastPage).extract()) {
+                // Erst vollständig schreiben, dann umbenennen, damit nie ein halber Auszug gelesen wird
+                temp = Files.createTempFile(target.getParent(), SessionLayout.PAGE_RANGE_PREFIX, ".tmp");
+                range.save(temp.toFile());
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            log.debug("Extracted pages {}-{} of {} for session {}", fromPage, lastPage, pageCount, sessionId);
+        } catch (IOException e) {
+            throw new InvoiceProcessingException("Fehler beim Erstellen des Seitenauszugs", e);
+        } finally {
+            sample.stop(extractTimer);
+            extractPermits.release();
+            deleteQuietly(temp);
+        }
+
+        evictOldest(sessionId);
+        return Optional.of(target);
+    }
+
+    private Optional<Path> cachedRange(String sessionId, int fromPage, int toPage) {
+        Path cached = layout.pageRange(sessionId, fromPage, toPage);
+        if (!Files.exists(cached)) {
+            return Optional.empty();
+        }
+        cacheHits.increment();
+        touch(cached);
+        return Optional.of(cached);
+    }
+
+    /**
+     * Heap-Bedarf einer Extraktion, geschätzt wie bei einer Generierung ohne Positionen.
+     */
+    private long estimateFootprint(Path pdf) throws IOException {
+        return memoryGovernor.estimateFootprint(Files.size(pdf), 0);
+    }
+
+    /**
+     * Löscht die am längsten nicht abgerufenen Auszüge einer Session oberhalb der Cache-Größe.
+     */
+    private void evictOldest(String sessionId) {
+        List<Path> ranges;
+        try (Stream<Path> files = Files.list(layout.sessionDir(sessionId))) {
+            ranges = files
+                .filter(file -> {
+                    String name = file.getFileName().toString();
+                    return name.startsWith(SessionLayout.PAGE_RANGE_PREFIX) && name.endsWith(".pdf");
+                })
+                .sorted(Comparator.comparing(PageRangeService::lastModified).reversed())
+                .toList();
+        } catch (IOException e) {
+            log.debug("Could not list page ranges of session {}", sessionId, e);
+            return;
+        }
+        for (Path stale : ranges.subList(Math.min(cacheEntries, ranges.size()), ranges.size())) {
+            deleteQuietly(stale);
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            log.debug("Could not touch {}", file, e);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.debug("Could not delete {}", path, e);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.model.InvoiceMetadata;
+import de.zugferd.invoicetool.model.ProcessingStatus;
+import de.zugferd.invoicetool.model.ValidationResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * Binäre Kodierung von Verarbeitungsstatus für persistente Session-Stores.
+ * Metadaten werden per Java-Serialisierung mit Allowlist-Filter geschrieben.
+ */
+final class ProcessingStatusCodec {
+
+    private static final byte UPLOADED = 1;
+    private static final byte PROCESSING = 2;
+    private static final byte COMPLETED = 3;
+    private static final byte FAILED = 4;
+    private static final byte DOWNLOADED = 5;
+
+    private static final ObjectInputFilter INPUT_FILTER = ObjectInputFilter.Config.createFilter(
+        "de.zugferd.invoicetool.model.*;java.base/*;!*");
+
+    private ProcessingStatusCodec() {
+    }
+
+    static byte[] encode(ProcessingStatus status) throws IOException {
+        var bytes = new ByteArrayOutputStream(256);
+        try (var out = new ObjectOutputStream(bytes)) {
+            out.writeUTF(status.sessionId());
+            out.writeLong(status.timestamp().getEpochSecond());
+            out.writeInt(status.timestamp().getNano());
+
+            switch (status) {
+                case ProcessingStatus.Uploaded u -> {
+                    out.writeByte(UPLOADED);
+                    out.writeUTF(u.originalPdfPath().toString());
+                    ValidationResultCodec.writeNullable(out, u.originalFilename());
+                    out.writeLong(u.fileSizeBytes());
+                    ValidationResultCodec.writeNullable(out, u.contentDigest());
+                }
+                case ProcessingStatus.Processing p -> {
+                    out.writeByte(PROCESSING);
+                    out.writeObject(p.metadata());
+                }
+                case ProcessingStatus.Completed c -> {
+                    out.writeByte(COMPLETED);
+                    out.writeUTF(c.generatedPdfPath().toString());
+                    ValidationResultCodec.write(out, c.validationResult());
+                    out.writeObject(c.metadata());
+                }
+                case ProcessingStatus.Failed f -> {
+                    out.writeByte(FAILED);
+                    ValidationResultCodec.writeNullable(out, f.errorMessage());
+                    ValidationResultCodec.writeNullable(out, f.errorDetails());
+                }
+                case ProcessingStatus.Downloaded d -> {
+                    out.writeByte(DOWNLOADED);
+                    out.writeUTF(d.downloadedFilePath().toString());
+                    ValidationResultCodec.writeNullable(out, d.downloadFilename());
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Kodiert Metadaten und optional den Validierungsbericht für den {@link SessionDetailsStore}.
+     */
+    static byte[] encodeDetails(InvoiceMetadata metadata, ValidationResult validationResult) throws IOException {
+        var bytes = new ByteArrayOutputStream(1024);
+        try (var out = new ObjectOutputStream(bytes)) {
+            out.writeObject(metadata);
+            out.writeBoolean(validationResult != null);
+            if (validationResult != null) {
+                ValidationResultCodec.write(out, validationResult);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static SessionDetailsStore.Details decodeDetails(byte[] data) throws IOException {
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            in.setObjectInputFilter(INPUT_FILTER);
+            var metadata = (InvoiceMetadata) in.readObject();
+            ValidationResult validationResult = in.readBoolean() ? ValidationResultCodec.read(in) : null;
+            return new SessionDetailsStore.Details(metadata, validationResult);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Invalid session details", e);
+        }
+    }
+
+    static ProcessingStatus decode(byte[] data) throws IOException {
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            in.setObjectInputFilter(INPUT_FILTER);
+
+            String sessionId = in.readUTF();
+            Instant timestamp = Instant.ofEpochSecond(in.readLong(), in.readInt());
+            byte type = in.readByte();
+
+            return switch (type) {
+                case UPLOADED -> new ProcessingStatus.Uploaded(
+                    sessionId, timestamp,
+                    Path.of(in.readUTF()),
+                    ValidationResultCodec.readNullable(in),
+                    in.readLong(),
+                    ValidationResultCodec.readNullable(in));
+                case PROCESSING -> new ProcessingStatus.Processing(
+                    sessionId, timestamp,
+                    (InvoiceMetadata) in.readObject());
+                case COMPLETED -> new ProcessingStatus.Completed(
+                    sessionId, timestamp,
+                    Path.of(in.readUTF()),
+                    ValidationResultCodec.read(in),
+                    (InvoiceMetadata) in.readObject());
+                case FAILED -> new ProcessingStatus.Failed(
+                    sessionId, timestamp,
+                    ValidationResultCodec.readNullable(in),
+                    ValidationResultCodec.readNullable(in));
+                case DOWNLOADED -> new ProcessingStatus.Downloaded(
+                    sessionId, timestamp,
+                    Path.of(in.readUTF()),
+                    // Ältere Einträge enden nach dem Pfad
+                    in.available() > 0 ? ValidationResultCodec.readNullable(in) : null);
+                default -> throw new IOException("Unknown status type: " + type);
+            };
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Invalid status record", e);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.RateLimitConfig.RateLimitProperties;
+import de.zugferd.invoicetool.exception.InvoiceProcessingException;
+import de.zugferd.invoicetool.util.TokenBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service für die Ratenbegrenzung von Uploads und Generierungen pro Client.
+ * Clients werden über einen konfigurierten API-Key oder ihre IP-Adresse identifiziert.
+ * Unbekannte Keys zählen zur IP-Adresse, damit wechselnde Header-Werte das Limit nicht umgehen
+ * und keine beliebig vielen Buckets anlegen.
+ */
+@Service
+public class RateLimitService {
+
+    private static final Logger log = LoggerFactory.getLogger(RateLimitService.class);
+
+    private final RateLimitProperties properties;
+    private final List<byte[]> apiKeys;
+    private final Map<String, TokenBucket> uploadBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> generationBuckets = new ConcurrentHashMap<>();
+    private final Counter rejectedUploads;
+    private final Counter rejectedGenerations;
+
+    public RateLimitService(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.apiKeys = properties.getApiKeys().stream()
+            .filter(key -> key != null && !key.isBlank())
+            .map(key -> key.getBytes(StandardCharsets.UTF_8))
+            .toList();
+        this.rejectedUploads = Counter.builder("zugferd.ratelimit.rejected")
+            .description("Durch das Rate-Limit abgewiesene Anfragen")
+            .tag("endpoint", "upload")
+            .register(meterRegistry);
+        this.rejectedGenerations = Counter.builder("zugferd.ratelimit.rejected")
+            .description("Durch das Rate-Limit abgewiesene Anfragen")
+            .tag("endpoint", "generate")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Gibt an, ob die Ratenbegrenzung aktiv ist.
+     */
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Ermittelt den Client-Schlüssel: konfigurierter API-Key falls vorhanden, sonst IP-Adresse.
+     * Der Key selbst erscheint weder im Schlüssel noch in Logs, nur sein Fingerabdruck.
+     */
+    public String resolveClientKey(HttpServletRequest request) {
+        String apiKey = request.getHeader(properties.getApiKeyHeader());
+        if (apiKey != null && isKnownApiKey(apiKey)) {
+            return "key:" + fingerprint(apiKey);
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    private boolean isKnownApiKey(String apiKey) {
+        byte[] candidate = apiKey.getBytes(StandardCharsets.UTF_8);
+        boolean known = false;
+        for (byte[] configured : apiKeys) {
+            // Zeitkonstanter Vergleich, alle Keys werden geprüft
+            known |= MessageDigest.isEqual(configured, candidate);
+        }
+        return known;
+    }
+
+    private static String fingerprint(String apiKey) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(apiKey.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 6);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Prüft ob ein Client die angegebene Upload-Größe übertragen darf.
+     *
+     * @param clientKey Schlüssel aus {@link #resolveClientKey}
+     * @param bytes Größe des Uploads in Bytes
+     * @return true wenn der Upload erlaubt ist
+     */
+    public boolean tryAcquireUpload(String clientKey, long bytes) {
+        if (!properties.isEnabled()) {
+            return true;
+        }
+        if (uploadBucket(clientKey).tryConsume(Math.max(bytes, 1))) {
+            return true;
+        }
+        rejectedUploads.increment();
+        log.warn("Upload rate limit exceeded for client {} ({} bytes)", clientKey, bytes);
+        return false;
+    }
+
+    /**
+     * Verrechnet einen Upload unbekannter Größe (chunked) während des Lesens. Jeder gelesene Block
+     * wird dem Bucket des Clients entnommen; reicht das Guthaben nicht, bricht der Upload mit
+     * {@link InvoiceProcessingException} ab.
+     *
+     * @param clientKey Schlüssel aus {@link #resolveClientKey}
+     * @param input Request-Body
+     * @return Der verrechnende Stream, bei deaktivierter Ratenbegrenzung {@code input} selbst
+     */
+    public InputStream meterUpload(String clientKey, InputStream input) {
+        if (!properties.isEnabled()) {
+            return input;
+        }
+        return new MeteredInputStream(input, clientKey, uploadBucket(clientKey));
+    }
+
+    private TokenBucket uploadBucket(String clientKey) {
+        return uploadBuckets.computeIfAbsent(clientKey, key -> new TokenBucket(
+            properties.getUploadBurstBytes(),
+            properties.getUploadBytesPerSecond()));
+    }
+
+    /**
+     * Prüft ob ein Client eine weitere Generierung starten darf.
+     *
+     * @param clientKey Schlüssel aus {@link #resolveClientKey}
+     * @return true wenn die Generierung erlaubt ist
+     */
+    public boolean tryAcquireGeneration(String clientKey) {
+        if (!properties.isEnabled()) {
+            return true;
+        }
+        TokenBucket bucket = generationBuckets.computeIfAbsent(clientKey, key -> new TokenBucket(
+            properties.getGenerationBurst(),
+            properties.getGenerationsPerMinute() / 60.0));
+
+        if (bucket.tryConsume(1)) {
+            return true;
+        }
+        rejectedGenerations.increment();
+        log.warn("Generation rate limit exceeded for client {}", clientKey);
+        return false;
+    }
+
+    /**
+     * Sekunden bis ein Client wieder hochladen darf (für den Retry-After Header).
+     */
+    public long uploadRetryAfterSeconds(String clientKey, long bytes) {
+        TokenBucket bucket = uploadBuckets.get(clientKey);
+        return bucket != null ? bucket.secondsUntilAvailable(bytes) : 0;
+    }
+
+    /**
+     * Sekunden bis ein Client wieder generieren darf (für den Retry-After Header).
+     */
+    public long generationRetryAfterSeconds(String clientKey) {
+        TokenBucket bucket = generationBuckets.get(clientKey);
+        return bucket != null ? bucket.secondsUntilAvailable(1) : 0;
+    }
+
+    /**
+     * Entfernt Buckets von Clients, die länger nicht aktiv waren.
+     */
+    @Scheduled(fixedRate = 60000)
+    public void evictIdleBuckets() {
+        long threshold = System.nanoTime()
+            - Duration.ofMinutes(properties.getIdleEvictionMinutes()).toNanos();
+        uploadBuckets.values().removeIf(bucket -> bucket.isIdleSince(threshold));
+        generationBuckets.values().removeIf(bucket -> bucket.isIdleSince(threshold));
+    }
+
+    /**
+     * Stream, der gelesene Bytes dem Upload-Bucket eines Clients entnimmt.
+     */
+    private class MeteredInputStream extends FilterInputStream {
+
+        private final String clientKey;
+        private final TokenBucket bucket;
+        private long bytesRead;
+
+        MeteredInputStream(InputStream input, String clientKey, TokenBucket bucket) {
+            super(input);
+            this.clientKey = clientKey;
+            this.bucket = bucket;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                charge(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                charge(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if (skipped > 0) {
+                charge(skipped);
+            }
+            return skipped;
+        }
+
+        private void charge(long bytes) {
+            bytesRead += bytes;
+            if (!bucket.tryConsume(bytes)) {
+                rejectedUploads.increment();
+                log.warn("Upload rate limit exceeded for client {} after {} streamed bytes", clientKey, bytesRead);
+                throw InvoiceProcessingException.uploadRateExceeded(bytesRead);
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.StorageConfig.StorageProperties;
+import de.zugferd.invoicetool.model.InvoiceMetadata;
+import de.zugferd.invoicetool.model.ProcessingStatus;
+import de.zugferd.invoicetool.model.ValidationResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Ablage für Metadaten und Validierungsbericht laufender und abgeschlossener Sessions.
+ * Die Daten liegen als Datei im Session-Verzeichnis und werden erst geladen, wenn der vollständige
+ * Status benötigt wird, z.B. für die Ergebnisseite. Zuletzt geladene Einträge hält ein kleiner
+ * LRU-Cache. Der Dateiname enthält den Zeitstempel des Status, sodass ein konkurrierender
+ * Statusübergang die Daten des aktuellen Status nie überschreibt.
+ */
+@Component
+public class SessionDetailsStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionDetailsStore.class);
+
+    /**
+     * Auf die Platte ausgelagerte Teile eines Status.
+     */
+    public record Details(InvoiceMetadata metadata, ValidationResult validationResult) {}
+
+    private final SessionLayout layout;
+    private final int maxCachedEntries;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Path, Details> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Autowired
+    public SessionDetailsStore(SessionLayout layout, StorageProperties storageProperties) {
+        this(layout, storageProperties.getSessionDetailsCacheEntries());
+    }
+
+    SessionDetailsStore(SessionLayout layout, int maxCachedEntries) {
+        this.layout = layout;
+        this.maxCachedEntries = maxCachedEntries;
+    }
+
+    public SessionLayout layout() {
+        return layout;
+    }
+
+    /**
+     * Schreibt die Details eines Status, sofern er welche hat.
+     */
+    void save(SessionRecord record, ProcessingStatus status) {
+        Details details = switch (status) {
+            case ProcessingStatus.Processing p -> new Details(p.metadata(), null);
+            case ProcessingStatus.Completed c -> new Details(c.metadata(), c.validationResult());
+            default -> null;
+        };
+        if (details == null) {
+            return;
+        }
+        Path file = file(record);
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp-" + UUID.randomUUID());
+            Files.write(temp, ProcessingStatusCodec.encodeDetails(details.metadata(), details.validationResult()));
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write details of session " + record.sessionId(), e);
+        }
+        cache(file, details);
+    }
+
+    /**
+     * Lädt die Details eines Status, bevorzugt aus dem Cache.
+     */
+    Details load(SessionRecord record) {
+        Path file = file(record);
+        lock.lock();
+        try {
+            Details cached = cache.get(file);
+            if (cached != null) {
+                return cached;
+            }
+        } finally {
+            lock.unlock();
+        }
+        try {
+            Details details = ProcessingStatusCodec.decodeDetails(Files.readAllBytes(file));
+            cache(file, details);
+            return details;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read details of session " + record.sessionId(), e);
+        }
+    }
+
+    /**
+     * Baut den vollständigen Status aus dem aktuellen Eintrag einer Session auf.
+     * Ein Statusübergang setzt erst den neuen Eintrag und löscht danach die Details des alten.
+     * Fehlt die Datei eines eben gelesenen Eintrags, wird deshalb mit dem inzwischen aktuellen
+     * Eintrag erneut gelesen; nur bei unverändertem Eintrag ist es ein echter Lesefehler.
+     *
+     * @param records Liefert den aktuellen Eintrag einer Session oder {@code null}
+     */
+    Optional<ProcessingStatus> resolve(String sessionId, Function<String, SessionRecord> records) {
+        SessionRecord record = records.apply(sessionId);
+        while (record != null) {
+            try {
+                return Optional.of(record.toStatus(layout, this));
+            } catch (UncheckedIOException e) {
+                SessionRecord current = records.apply(sessionId);
+                if (Objects.equals(record, current)) {
+                    throw e;
+                }
+                log.debug("Status of session {} changed while loading its details, retrying", sessionId);
+                record = current;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Entfernt die Details eines nicht mehr aktuellen Status.
+     */
+    void discard(SessionRecord record) {
+        if (record == null || !record.hasDetails()) {
+            return;
+        }
+        Path file = file(record);
+        lock.lock();
+        try {
+            cache.remove(file);
+        } finally {
+            lock.unlock();
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete {}", file, e);
+        }
+    }
+
+    private void cache(Path file, Details details) {
+        if (maxCachedEntries <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            cache.put(file, details);
+            var iterator = cache.entrySet().iterator();
+            while (cache.size() > maxCachedEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Path file(SessionRecord record) {
+        return layout.sessionDir(record.sessionId()).resolve("status-" + record.timestampNanos() + ".details");
+    }
+}
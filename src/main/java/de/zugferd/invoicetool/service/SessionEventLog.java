@@ -0,0 +1,531 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.StorageConfig.StorageProperties;
+import de.zugferd.invoicetool.model.ProcessingStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Append-Only-Ereignislog aller Statusübergänge für Durchsatz- und Latenzauswertungen.
+ * Jeder Übergang wird als Datensatz fester Länge in ein per Memory-Map beschriebenes Segment
+ * geschrieben; {@code fsync} erfolgt gebündelt im Hintergrund. Segmente werden nach Größe oder
+ * Alter gewechselt und nach Ablauf der Aufbewahrungszeit gelöscht. Da die Zeitstempel innerhalb
+ * des Logs monoton steigen, findet eine Abfrage Segmente über den Dateinamen und den Startpunkt
+ * im Segment per Binärsuche, ohne den gesamten Log zu lesen.
+ * Jeder Knoten schreibt seinen eigenen Log.
+ */
+@Component
+public class SessionEventLog {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionEventLog.class);
+
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final long[] SIZE_CLASS_LIMITS = {100L * 1024, 1024L * 1024, 10L * 1024 * 1024, Long.MAX_VALUE};
+    private static final int MAX_BUCKETS = 1000;
+
+    // Datensatz: Zeitstempel, Session-Schlüssel, Verweildauer, Upload-Größe, Von-Zustand, Nach-Zustand
+    static final int RECORD_BYTES = 40;
+    private static final int TIMESTAMP_OFFSET = 0;
+    private static final int SESSION_OFFSET = 8;
+    private static final int DURATION_OFFSET = 16;
+    private static final int INPUT_BYTES_OFFSET = 24;
+    private static final int FROM_OFFSET = 32;
+    private static final int TO_OFFSET = 33;
+    private static final byte NO_STATE = -1;
+    private static final int UPLOADED = SessionRecord.State.UPLOADED.ordinal();
+    private static final int PROCESSING = SessionRecord.State.PROCESSING.ordinal();
+    private static final int COMPLETED = SessionRecord.State.COMPLETED.ordinal();
+    private static final int FAILED = SessionRecord.State.FAILED.ordinal();
+    private static final int DOWNLOADED = SessionRecord.State.DOWNLOADED.ordinal();
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final Duration rolloverAfter;
+    private final Duration retention;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Counter writeFailures;
+
+    private Segment active;
+    private long lastTimestampNanos;
+    private boolean dirty;
+
+    @Autowired
+    public SessionEventLog(StorageProperties storageProperties, MeterRegistry meterRegistry) {
+        this(storageProperties.getEventLogPath(),
+            storageProperties.getEventLogSegmentBytes(),
+            Duration.ofMinutes(storageProperties.getEventLogRolloverMinutes()),
+            Duration.ofHours(storageProperties.getEventLogRetentionHours()),
+            meterRegistry);
+    }
+
+    SessionEventLog(Path directory, long segmentBytes, Duration rolloverAfter, Duration retention,
+                    MeterRegistry meterRegistry) {
+        this.directory = directory;
+        this.segmentRecords = (int) Math.max(1, Math.min(Integer.MAX_VALUE, segmentBytes) / RECORD_BYTES);
+        this.rolloverAfter = rolloverAfter;
+        this.retention = retention;
+        this.writeFailures = Counter.builder("zugferd.events.write.failures")
+            .description("Nicht protokollierte Statusübergänge")
+            .register(meterRegistry);
+        try {
+            Files.createDirectories(directory);
+            List<Path> segments = segmentFiles();
+            if (!segments.isEmpty()) {
+                Segment last = Segment.open(segments.getLast(), segmentRecords);
+                if (last.count > 0) {
+                    lastTimestampNanos = last.timestampAt(last.count - 1);
+                }
+                active = last;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open event log: " + directory, e);
+        }
+    }
+
+    /**
+     * Protokolliert einen Statusübergang. Fehler beim Schreiben werden nur gezählt,
+     * damit die Verarbeitung der Session nicht an der Auswertung scheitert.
+     *
+     * @param previous Der vorherige Status oder null bei einer neuen Session
+     * @param next Der neue Status
+     * @param inputBytes Größe der hochgeladenen PDF oder -1, wenn unbekannt
+     */
+    public void record(ProcessingStatus previous, ProcessingStatus next, long inputBytes) {
+        long durationNanos = previous != null
+            ? Math.max(0, SessionRecord.toNanos(next.timestamp()) - SessionRecord.toNanos(previous.timestamp()))
+            : 0;
+        byte from = previous != null ? (byte) SessionRecord.State.of(previous).ordinal() : NO_STATE;
+        byte to = (byte) SessionRecord.State.of(next).ordinal();
+        try {
+            append(SessionRecord.toNanos(Instant.now()), sessionKey(next.sessionId()), from, to, durationNanos, inputBytes);
+        } catch (IOException | RuntimeException e) {
+            writeFailures.increment();
+            log.warn("Could not record transition of session {}", next.sessionId(), e);
+        }
+    }
+
+    void append(long timestampNanos, long sessionKey, byte from, byte to, long durationNanos, long inputBytes)
+            throws IOException {
+        lock.lock();
+        try {
+            // Monotone Zeitstempel sind Voraussetzung für die Binärsuche
+            long timestamp = Math.max(timestampNanos, Math.max(lastTimestampNanos, 1));
+            if (active == null || active.isFull() || isTooOld(active, timestamp)) {
+                rollover(timestamp);
+                timestamp = Math.max(timestamp, active.startNanos);
+            }
+            active.write(timestamp, sessionKey, from, to, durationNanos, inputBytes);
+            lastTimestampNanos = timestamp;
+            dirty = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isTooOld(Segment segment, long timestampNanos) {
+        return timestampNanos - segment.startNanos >= rolloverAfter.toNanos();
+    }
+
+    private void rollover(long timestampNanos) throws IOException {
+        long startNanos = timestampNanos;
+        if (active != null) {
+            active.buffer.force();
+            active.close();
+            startNanos = Math.max(startNanos, active.startNanos + 1);
+        }
+        Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, startNanos, SEGMENT_SUFFIX));
+        active = Segment.open(file, segmentRecords);
+        dirty = false;
+        log.debug("Started event log segment {}", file.getFileName());
+    }
+
+    /**
+     * Schreibt gepufferte Ereignisse gebündelt auf die Platte.
+     */
+    @Scheduled(fixedDelayString = "${storage.event-log-flush-millis:1000}")
+    public void flush() {
+        lock.lock();
+        try {
+            if (active != null && dirty) {
+                active.buffer.force();
+                dirty = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Löscht Segmente, deren jüngstes Ereignis älter als die Aufbewahrungszeit ist.
+     *
+     * @return Anzahl gelöschter Segmente
+     */
+    @Scheduled(fixedRate = 3_600_000)
+    public int deleteExpiredSegments() {
+        long threshold = SessionRecord.toNanos(Instant.now().minus(retention));
+        List<Path> segments = segmentFiles();
+        int deleted = 0;
+        // Ein Segment endet, wo das nächste beginnt; das aktive Segment bleibt immer erhalten
+        for (int i = 0; i + 1 < segments.size() && startOf(segments.get(i + 1)) < threshold; i++) {
+            try {
+                Files.deleteIfExists(segments.get(i));
+                deleted++;
+            } catch (IOException e) {
+                log.warn("Could not delete event log segment {}", segments.get(i), e);
+            }
+        }
+        if (deleted > 0) {
+            log.info("Deleted {} expired event log segments", deleted);
+        }
+        return deleted;
+    }
+
+    @PreDestroy
+    public void close() {
+        lock.lock();
+        try {
+            if (active != null) {
+                active.buffer.force();
+                active.close();
+                active = null;
+            }
+        } catch (IOException e) {
+            log.warn("Could not close event log segment", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wertet die Ereignisse eines Zeitfensters aus: Übergänge je Intervall, Wartezeit bis zum
+     * Start der Generierung, Generierungsdauer und Generierungsdauer je Größenklasse.
+     *
+     * @param from Beginn des Fensters (inklusive)
+     * @param to Ende des Fensters (exklusive)
+     * @param bucket Länge eines Intervalls
+     */
+    public ThroughputReport query(Instant from, Instant to, Duration bucket) {
+        long fromNanos = SessionRecord.toNanos(from);
+        long toNanos = SessionRecord.toNanos(to);
+        long bucketNanos = Math.max(bucket.toNanos(), Math.ceilDiv(Math.max(1, toNanos - fromNanos), MAX_BUCKETS));
+        int bucketCount = (int) Math.max(1, Math.ceilDiv(toNanos - fromNanos, bucketNanos));
+
+        var counts = new long[bucketCount][SessionRecord.State.values().length];
+        var waits = new LongList();
+        var processing = new LongList();
+        var processingBySize = new LongList[SIZE_CLASS_LIMITS.length];
+        Arrays.setAll(processingBySize, i -> new LongList());
+
+        forEachEvent(fromNanos, toNanos, (timestamp, fromState, toState, duration, inputBytes) -> {
+            counts[(int) ((timestamp - fromNanos) / bucketNanos)][toState]++;
+            if (fromState == UPLOADED && toState == PROCESSING) {
+                waits.add(duration);
+            } else if (fromState == PROCESSING && toState == COMPLETED) {
+                processing.add(duration);
+                if (inputBytes >= 0) {
+                    processingBySize[sizeClass(inputBytes)].add(duration);
+                }
+            }
+        });
+
+        List<Bucket> buckets = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            long[] transitions = counts[i];
+            buckets.add(new Bucket(
+                SessionRecord.toInstant(fromNanos + i * bucketNanos),
+                transitions[UPLOADED],
+                transitions[PROCESSING],
+                transitions[COMPLETED],
+                transitions[FAILED],
+                transitions[DOWNLOADED]));
+        }
+        List<SizeClass> sizeClasses = new ArrayList<>(SIZE_CLASS_LIMITS.length);
+        for (int i = 0; i < SIZE_CLASS_LIMITS.length; i++) {
+            long limit = SIZE_CLASS_LIMITS[i];
+            sizeClasses.add(new SizeClass(limit == Long.MAX_VALUE ? -1 : limit, processingBySize[i].summarize()));
+        }
+        return new ThroughputReport(from, to, Duration.ofNanos(bucketNanos), buckets,
+            waits.summarize(), processing.summarize(), sizeClasses);
+    }
+
+    private static int sizeClass(long inputBytes) {
+        int i = 0;
+        while (inputBytes >= SIZE_CLASS_LIMITS[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Liest alle Ereignisse im Fenster [from, to). Nur Segmente, die das Fenster überlappen,
+     * werden geöffnet; der erste Datensatz wird per Binärsuche gefunden.
+     */
+    private void forEachEvent(long fromNanos, long toNanos, EventVisitor visitor) {
+        List<Path> segments = segmentFiles();
+        for (int i = 0; i < segments.size(); i++) {
+            Path file = segments.get(i);
+            if (startOf(file) >= toNanos) {
+                break;
+            }
+            if (i + 1 < segments.size() && startOf(segments.get(i + 1)) <= fromNanos) {
+                continue;
+            }
+            try {
+                visitSegment(file, fromNanos, toNanos, visitor);
+            } catch (IOException e) {
+                log.warn("Could not read event log segment {}", file, e);
+            }
+        }
+    }
+
+    private void visitSegment(Path file, long fromNanos, long toNanos, EventVisitor visitor) throws IOException {
+        MappedByteBuffer buffer;
+        int count;
+        lock.lock();
+        try {
+            if (active != null && active.file.equals(file)) {
+                buffer = active.buffer;
+                count = active.count;
+            } else {
+                buffer = null;
+                count = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (buffer == null) {
+            try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            count = Segment.countRecords(buffer);
+        }
+        for (int index = Segment.firstAtOrAfter(buffer, count, fromNanos); index < count; index++) {
+            int offset = index * RECORD_BYTES;
+            long timestamp = buffer.getLong(offset + TIMESTAMP_OFFSET);
+            if (timestamp >= toNanos) {
+                break;
+            }
+            visitor.visit(timestamp, buffer.get(offset + FROM_OFFSET), buffer.get(offset + TO_OFFSET),
+                buffer.getLong(offset + DURATION_OFFSET), buffer.getLong(offset + INPUT_BYTES_OFFSET));
+        }
+    }
+
+    private List<Path> segmentFiles() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .filter(file -> {
+                    String name = file.getFileName().toString();
+                    return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                })
+                .sorted()
+                .toList();
+        } catch (IOException e) {
+            log.warn("Could not list event log segments in {}", directory, e);
+            return List.of();
+        }
+    }
+
+    private static long startOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * 64-Bit-FNV-1a-Hash der Session-ID, um Ereignisse einer Session zuordnen zu können.
+     */
+    static long sessionKey(String sessionId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < sessionId.length(); i++) {
+            hash ^= sessionId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @FunctionalInterface
+    private interface EventVisitor {
+        void visit(long timestampNanos, int from, int to, long durationNanos, long inputBytes);
+    }
+
+    /**
+     * Ein per Memory-Map beschriebenes Segment. Nicht belegte Datensätze sind genullt,
+     * ein Zeitstempel ungleich 0 markiert einen vollständig geschriebenen Datensatz.
+     */
+    private static final class Segment {
+        private final Path file;
+        private final long startNanos;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private int count;
+
+        private Segment(Path file, FileChannel channel, MappedByteBuffer buffer, int capacity) {
+            this.file = file;
+            this.startNanos = startOf(file);
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = capacity;
+            this.count = countRecords(buffer);
+        }
+
+        static Segment open(Path file, int segmentRecords) throws IOException {
+            var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+            // Bestehende Segmente behalten ihre Größe, auch wenn sich die Konfiguration geändert hat
+            long size = channel.size() > 0 ? channel.size() / RECORD_BYTES * RECORD_BYTES
+                : (long) segmentRecords * RECORD_BYTES;
+            var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new Segment(file, channel, buffer, (int) (size / RECORD_BYTES));
+        }
+
+        boolean isFull() {
+            return count >= capacity;
+        }
+
+        long timestampAt(int index) {
+            return buffer.getLong(index * RECORD_BYTES + TIMESTAMP_OFFSET);
+        }
+
+        void write(long timestampNanos, long sessionKey, byte from, byte to, long durationNanos, long inputBytes) {
+            int offset = count * RECORD_BYTES;
+            buffer.putLong(offset + SESSION_OFFSET, sessionKey);
+            buffer.putLong(offset + DURATION_OFFSET, durationNanos);
+            buffer.putLong(offset + INPUT_BYTES_OFFSET, inputBytes);
+            buffer.put(offset + FROM_OFFSET, from);
+            buffer.put(offset + TO_OFFSET, to);
+            // Zeitstempel zuletzt, damit ein abgebrochener Schreibvorgang keinen halben Datensatz hinterlässt
+            buffer.putLong(offset + TIMESTAMP_OFFSET, timestampNanos);
+            count++;
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+
+        /**
+         * Anzahl geschriebener Datensätze, per Binärsuche nach dem ersten leeren Datensatz.
+         */
+        static int countRecords(MappedByteBuffer buffer) {
+            int low = 0;
+            int high = buffer.capacity() / RECORD_BYTES;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (buffer.getLong(mid * RECORD_BYTES + TIMESTAMP_OFFSET) != 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Index des ersten Datensatzes mit einem Zeitstempel ab {@code timestampNanos}.
+         */
+        static int firstAtOrAfter(MappedByteBuffer buffer, int count, long timestampNanos) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (buffer.getLong(mid * RECORD_BYTES + TIMESTAMP_OFFSET) < timestampNanos) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Sortierbare Liste primitiver Werte für die Perzentilberechnung.
+     */
+    private static final class LongList {
+        private long[] values = new long[64];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        LatencySummary summarize() {
+            if (size == 0) {
+                return new LatencySummary(0, null, null, null, null, null);
+            }
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            long total = 0;
+            for (long value : sorted) {
+                total += value;
+            }
+            return new LatencySummary(size,
+                Duration.ofNanos(total / size),
+                Duration.ofNanos(percentile(sorted, 0.5)),
+                Duration.ofNanos(percentile(sorted, 0.95)),
+                Duration.ofNanos(percentile(sorted, 0.99)),
+                Duration.ofNanos(sorted[size - 1]));
+        }
+
+        private static long percentile(long[] sorted, double quantile) {
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+    }
+
+    /**
+     * Auswertung eines Zeitfensters.
+     *
+     * @param queueWait Zeit vom Upload bis zum Start der Generierung
+     * @param processing Dauer der Generierung bis zum Abschluss
+     * @param processingBySize Generierungsdauer nach Größe der hochgeladenen PDF
+     */
+    public record ThroughputReport(
+        Instant from,
+        Instant to,
+        Duration bucket,
+        List<Bucket> buckets,
+        LatencySummary queueWait,
+        LatencySummary processing,
+        List<SizeClass> processingBySize
+    ) {}
+
+    /**
+     * Anzahl der Übergänge in einen Zustand innerhalb eines Intervalls.
+     */
+    public record Bucket(Instant start, long uploaded, long started, long completed, long failed, long downloaded) {}
+
+    /**
+     * Verteilung einer Dauer; ohne Messwerte sind alle Werte null.
+     */
+    public record LatencySummary(long count, Duration mean, Duration p50, Duration p95, Duration p99, Duration max) {}
+
+    /**
+     * Generierungsdauer für Uploads unterhalb von {@code maxBytes} (-1 = unbegrenzt).
+     */
+    public record SizeClass(long maxBytes, LatencySummary processing) {}
+}
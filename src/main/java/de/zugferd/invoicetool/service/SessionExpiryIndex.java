@@ -0,0 +1,145 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.StorageConfig.StorageProperties;
+import de.zugferd.invoicetool.model.ProcessingStatus;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nach Ablaufzeit sortierter Index aller Sessions.
+ * Bei jeder Statusänderung wird ein neuer Eintrag eingereiht, sofern sich die Ablaufzeit ändert.
+ * Gültig ist nur die zuletzt eingereihte Ablaufzeit je Session; überholte Einträge bleiben bis zu
+ * ihrer Fälligkeit liegen und werden beim Entnehmen verworfen. Die Bereinigung muss so nicht
+ * mehr alle Sessions durchlaufen, sondern nur die tatsächlich fälligen.
+ */
+@Component
+public class SessionExpiryIndex {
+
+    private final DelayQueue<Expiry> queue = new DelayQueue<>();
+    private final Map<String, Long> deadlines = new ConcurrentHashMap<>();
+    private final Duration retention;
+    private final Duration downloadedRetention;
+
+    public SessionExpiryIndex(StorageProperties storageProperties, MeterRegistry meterRegistry) {
+        this.retention = Duration.ofMinutes(storageProperties.getFileRetentionMinutes());
+        // Heruntergeladene Dateien bleiben kurz erhalten, damit unterbrochene Downloads fortgesetzt werden können
+        this.downloadedRetention = Duration.ofMinutes(
+            Math.min(storageProperties.getCleanupIntervalMinutes(), storageProperties.getFileRetentionMinutes()));
+
+        Gauge.builder("zugferd.sessions.expiry.queued", queue, DelayQueue::size)
+            .description("Einträge im Ablauf-Index")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Reiht eine Session mit der Ablaufzeit ihres aktuellen Status ein.
+     */
+    public void schedule(ProcessingStatus status) {
+        schedule(SessionSummary.of(status));
+    }
+
+    /**
+     * Reiht eine Session anhand ihrer Zusammenfassung ein, ohne die Details zu laden.
+     */
+    public void schedule(SessionSummary summary) {
+        enqueue(summary.sessionId(), deadlineOf(summary).toEpochMilli());
+    }
+
+    /**
+     * Reiht eine Session zu einem festen Zeitpunkt erneut ein, z.B. nach einer fehlgeschlagenen Löschung.
+     */
+    public void scheduleAt(String sessionId, Instant deadline) {
+        enqueue(sessionId, deadline.toEpochMilli());
+    }
+
+    /**
+     * Verwirft alle Einträge, z.B. vor einem Neuaufbau aus dem Session-Store.
+     */
+    public void clear() {
+        deadlines.clear();
+        queue.clear();
+    }
+
+    private void enqueue(String sessionId, long deadlineMillis) {
+        Long previous = deadlines.put(sessionId, deadlineMillis);
+        if (previous == null || previous != deadlineMillis) {
+            queue.add(new Expiry(sessionId, deadlineMillis));
+        }
+    }
+
+    /**
+     * Ablaufzeit eines Status.
+     */
+    public Instant deadlineOf(ProcessingStatus status) {
+        return deadlineOf(SessionSummary.of(status));
+    }
+
+    /**
+     * Ablaufzeit einer Session anhand ihrer Zusammenfassung.
+     */
+    public Instant deadlineOf(SessionSummary summary) {
+        return summary.is(ProcessingStatus.Downloaded.class)
+            ? summary.timestamp().plus(downloadedRetention)
+            : summary.timestamp().plus(retention);
+    }
+
+    /**
+     * Prüft ob der aktuelle Status einer Session abgelaufen ist.
+     */
+    public boolean isExpired(ProcessingStatus status, Instant now) {
+        return isExpired(SessionSummary.of(status), now);
+    }
+
+    /**
+     * Prüft anhand der Zusammenfassung, ob eine Session abgelaufen ist.
+     */
+    public boolean isExpired(SessionSummary summary, Instant now) {
+        return !deadlineOf(summary).isAfter(now);
+    }
+
+    /**
+     * Entnimmt höchstens {@code max} fällige Sessions, ohne zu blockieren.
+     * Entnommene Sessions muss der Aufrufer bei einem Fehler mit {@link #scheduleAt} erneut einreihen.
+     */
+    public List<String> pollExpired(int max) {
+        List<Expiry> due = new ArrayList<>();
+        queue.drainTo(due, max);
+        var sessionIds = new LinkedHashSet<String>();
+        for (Expiry expiry : due) {
+            // Überholte Einträge verwerfen, es gilt nur die zuletzt eingereihte Ablaufzeit
+            if (deadlines.remove(expiry.sessionId, expiry.deadlineMillis)) {
+                sessionIds.add(expiry.sessionId);
+            }
+        }
+        return List.copyOf(sessionIds);
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    private record Expiry(String sessionId, long deadlineMillis) implements Delayed {
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(deadlineMillis, ((Expiry) other).deadlineMillis);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.StorageConfig.StorageProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Verzeichnisstruktur der Session-Dateien.
+ * Jede Session hat genau ein Verzeichnis für Original, Zwischenstände und Ergebnis. Es liegt unter
+ * zwei Ebenen aus dem Hash der Session-ID ({@code ab/cd/{sessionId}}), damit kein Verzeichnis
+ * mehr als einige hundert Einträge enthält. Das frühere flache Layout mit getrennten Upload- und
+ * Output-Verzeichnissen wird nur noch für die Migration gelesen.
+ */
+@Component
+public class SessionLayout {
+
+    public static final String ORIGINAL_PDF = "original.pdf";
+    public static final String GENERATED_PDF = "e-invoice.pdf";
+    public static final String THUMBNAIL = "thumbnail";
+    public static final String PAGE_RANGE_PREFIX = "pages-";
+
+    private static final int SHARD_DEPTH = 2;
+
+    private final Path dataRoot;
+    private final List<Path> legacyRoots;
+
+    @Autowired
+    public SessionLayout(StorageProperties storageProperties) {
+        this(storageProperties.getSessionDataPath(),
+            List.of(storageProperties.getUploadPath(), storageProperties.getOutputPath()));
+    }
+
+    SessionLayout(Path dataRoot, List<Path> legacyRoots) {
+        this.dataRoot = dataRoot;
+        this.legacyRoots = List.copyOf(legacyRoots);
+    }
+
+    /**
+     * Wurzel des gesharderten Layouts.
+     */
+    public Path dataRoot() {
+        return dataRoot;
+    }
+
+    /**
+     * Verzeichnis einer Session, z.B. {@code data/3f/a9/{sessionId}}.
+     */
+    public Path sessionDir(String sessionId) {
+        String hash = shardHash(sessionId);
+        return dataRoot.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(sessionId);
+    }
+
+    public Path originalPdf(String sessionId) {
+        return sessionDir(sessionId).resolve(ORIGINAL_PDF);
+    }
+
+    public Path generatedPdf(String sessionId) {
+        return sessionDir(sessionId).resolve(GENERATED_PDF);
+    }
+
+    /**
+     * Vorschaubild der ersten Seite, z.B. {@code thumbnail.webp}.
+     */
+    public Path thumbnail(String sessionId, String extension) {
+        return sessionDir(sessionId).resolve(THUMBNAIL + "." + extension);
+    }
+
+    /**
+     * Gecachter Seitenauszug der generierten PDF, z.B. {@code pages-3-7.pdf}.
+     */
+    public Path pageRange(String sessionId, int fromPage, int toPage) {
+        return sessionDir(sessionId).resolve(PAGE_RANGE_PREFIX + fromPage + "-" + toPage + ".pdf");
+    }
+
+    /**
+     * Prüft ob ein Pfad im gesharderten Layout liegt.
+     */
+    public boolean isInLayout(Path path) {
+        return path.toAbsolutePath().normalize().startsWith(dataRoot.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Verzeichnisse einer Session im alten flachen Layout.
+     */
+    public List<Path> legacyDirs(String sessionId) {
+        return legacyRoots.stream().map(root -> root.resolve(sessionId)).toList();
+    }
+
+    /**
+     * Wurzeln des alten flachen Layouts.
+     */
+    public List<Path> legacyRoots() {
+        return legacyRoots;
+    }
+
+    /**
+     * Alle Session-Verzeichnisse im gesharderten Layout.
+     * Der Stream muss vom Aufrufer geschlossen werden.
+     */
+    public Stream<Path> sessionDirs() throws IOException {
+        if (!Files.isDirectory(dataRoot)) {
+            return Stream.empty();
+        }
+        return Files.find(dataRoot, SHARD_DEPTH + 1,
+            (path, attributes) -> attributes.isDirectory()
+                && dataRoot.relativize(path).getNameCount() == SHARD_DEPTH + 1);
+    }
+
+    private static String shardHash(String sessionId) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest(sessionId.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 2);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
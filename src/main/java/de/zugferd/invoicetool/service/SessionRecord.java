@@ -0,0 +1,166 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.model.ProcessingStatus;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * Kompakte Darstellung eines Session-Status für Stores mit sehr vielen Sessions.
+ * Statt Pfaden, Instants und vollständiger Metadaten hält der Eintrag nur den Zustand als Enum,
+ * den Zeitstempel in Nanosekunden seit Epoch und wenige kurze Felder. Dateipfade werden aus der
+ * Session-ID abgeleitet; nur abweichende Pfade (z.B. aus dem alten Layout) werden gespeichert.
+ * Metadaten und Validierungsbericht liegen im {@link SessionDetailsStore} auf der Platte.
+ * Bei heruntergeladenen Sessions hält {@code originalFilename} den Download-Dateinamen.
+ */
+record SessionRecord(
+    String sessionId,
+    State state,
+    long timestampNanos,
+    String originalFilename,
+    long fileSizeBytes,
+    String contentDigest,
+    String errorMessage,
+    String errorDetails,
+    String filePath
+) {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    enum State {
+        UPLOADED,
+        PROCESSING,
+        COMPLETED,
+        FAILED,
+        DOWNLOADED;
+
+        Class<? extends ProcessingStatus> type() {
+            return switch (this) {
+                case UPLOADED -> ProcessingStatus.Uploaded.class;
+                case PROCESSING -> ProcessingStatus.Processing.class;
+                case COMPLETED -> ProcessingStatus.Completed.class;
+                case FAILED -> ProcessingStatus.Failed.class;
+                case DOWNLOADED -> ProcessingStatus.Downloaded.class;
+            };
+        }
+
+        static State of(ProcessingStatus status) {
+            return switch (status) {
+                case ProcessingStatus.Uploaded u -> UPLOADED;
+                case ProcessingStatus.Processing p -> PROCESSING;
+                case ProcessingStatus.Completed c -> COMPLETED;
+                case ProcessingStatus.Failed f -> FAILED;
+                case ProcessingStatus.Downloaded d -> DOWNLOADED;
+            };
+        }
+    }
+
+    /**
+     * Erstellt den kompakten Eintrag zu einem Status.
+     */
+    static SessionRecord of(ProcessingStatus status, SessionLayout layout) {
+        String id = status.sessionId();
+        long nanos = toNanos(status.timestamp());
+        return switch (status) {
+            case ProcessingStatus.Uploaded u -> new SessionRecord(id, State.UPLOADED, nanos,
+                u.originalFilename(), u.fileSizeBytes(), u.contentDigest(), null, null,
+                pathUnlessDerived(u.originalPdfPath(), layout.originalPdf(id)));
+            case ProcessingStatus.Processing p -> new SessionRecord(id, State.PROCESSING, nanos,
+                null, 0, null, null, null, null);
+            case ProcessingStatus.Completed c -> new SessionRecord(id, State.COMPLETED, nanos,
+                null, 0, null, null, null,
+                pathUnlessDerived(c.generatedPdfPath(), layout.generatedPdf(id)));
+            case ProcessingStatus.Failed f -> new SessionRecord(id, State.FAILED, nanos,
+                null, 0, null, f.errorMessage(), f.errorDetails(), null);
+            case ProcessingStatus.Downloaded d -> new SessionRecord(id, State.DOWNLOADED, nanos,
+                d.downloadFilename(), 0, null, null, null,
+                pathUnlessDerived(d.downloadedFilePath(), layout.generatedPdf(id)));
+        };
+    }
+
+    /**
+     * Baut den vollständigen Status wieder auf. Metadaten und Validierungsbericht werden
+     * nur für laufende und abgeschlossene Sessions aus dem Details-Store geladen.
+     */
+    ProcessingStatus toStatus(SessionLayout layout, SessionDetailsStore details) {
+        Instant timestamp = toInstant(timestampNanos);
+        return switch (state) {
+            case UPLOADED -> new ProcessingStatus.Uploaded(sessionId, timestamp,
+                path(layout.originalPdf(sessionId)), originalFilename, fileSizeBytes, contentDigest);
+            case PROCESSING -> new ProcessingStatus.Processing(sessionId, timestamp,
+                details.load(this).metadata());
+            case COMPLETED -> {
+                var loaded = details.load(this);
+                yield new ProcessingStatus.Completed(sessionId, timestamp,
+                    path(layout.generatedPdf(sessionId)), loaded.validationResult(), loaded.metadata());
+            }
+            case FAILED -> new ProcessingStatus.Failed(sessionId, timestamp, errorMessage, errorDetails);
+            case DOWNLOADED -> new ProcessingStatus.Downloaded(sessionId, timestamp,
+                path(layout.generatedPdf(sessionId)), originalFilename);
+        };
+    }
+
+    /**
+     * Zusammenfassung ohne Zugriff auf den Details-Store.
+     */
+    SessionSummary toSummary() {
+        long size = state == State.UPLOADED ? fileSizeBytes : 0;
+        return new SessionSummary(sessionId, state.type(), toInstant(timestampNanos), size);
+    }
+
+    /**
+     * Gibt an, ob zum Status Metadaten im Details-Store gehören.
+     */
+    boolean hasDetails() {
+        return state == State.PROCESSING || state == State.COMPLETED;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeUTF(sessionId);
+        out.writeByte(state.ordinal());
+        out.writeLong(timestampNanos);
+        ValidationResultCodec.writeNullable(out, originalFilename);
+        out.writeLong(fileSizeBytes);
+        ValidationResultCodec.writeNullable(out, contentDigest);
+        ValidationResultCodec.writeNullable(out, errorMessage);
+        ValidationResultCodec.writeNullable(out, errorDetails);
+        ValidationResultCodec.writeNullable(out, filePath);
+    }
+
+    static SessionRecord read(DataInput in) throws IOException {
+        String sessionId = in.readUTF();
+        int ordinal = in.readByte();
+        if (ordinal < 0 || ordinal >= State.values().length) {
+            throw new IOException("Unknown session state: " + ordinal);
+        }
+        return new SessionRecord(
+            sessionId,
+            State.values()[ordinal],
+            in.readLong(),
+            ValidationResultCodec.readNullable(in),
+            in.readLong(),
+            ValidationResultCodec.readNullable(in),
+            ValidationResultCodec.readNullable(in),
+            ValidationResultCodec.readNullable(in),
+            ValidationResultCodec.readNullable(in));
+    }
+
+    private Path path(Path derived) {
+        return filePath != null ? Path.of(filePath) : derived;
+    }
+
+    private static String pathUnlessDerived(Path path, Path derived) {
+        return path.equals(derived) ? null : path.toString();
+    }
+
+    static long toNanos(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), NANOS_PER_SECOND), instant.getNano());
+    }
+
+    static Instant toInstant(long nanos) {
+        return Instant.ofEpochSecond(Math.floorDiv(nanos, NANOS_PER_SECOND), Math.floorMod(nanos, NANOS_PER_SECOND));
+    }
+}
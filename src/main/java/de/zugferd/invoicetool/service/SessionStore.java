@@ -0,0 +1,96 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.model.ProcessingStatus;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Ablage für den Verarbeitungsstatus aller Sessions.
+ * Implementierungen können rein im Speicher oder persistent arbeiten.
+ */
+public interface SessionStore {
+
+    /**
+     * Gibt den Status einer Session zurück.
+     */
+    Optional<ProcessingStatus> get(String sessionId);
+
+    /**
+     * Gibt Zustand und Zeitstempel einer Session zurück, ohne Metadaten und Validierungsbericht zu laden.
+     * Für Wartungsaufgaben, die über alle Sessions laufen.
+     */
+    default Optional<SessionSummary> summary(String sessionId) {
+        return get(sessionId).map(SessionSummary::of);
+    }
+
+    /**
+     * Speichert oder ersetzt den Status einer Session.
+     */
+    void put(ProcessingStatus status);
+
+    /**
+     * Ersetzt den Status nur, wenn der gespeicherte Status noch {@code expected} entspricht.
+     * Verglichen wird per {@code equals}, die Status-Records vergleichen also ihren Inhalt.
+     *
+     * @return true, wenn der Status ersetzt wurde
+     */
+    boolean compareAndSet(ProcessingStatus expected, ProcessingStatus next);
+
+    /**
+     * Entfernt eine Session.
+     */
+    void remove(String sessionId);
+
+    /**
+     * Entfernt eine Session nur, wenn ihr gespeicherter Status noch {@code expected} entspricht.
+     *
+     * @return true, wenn die Session entfernt wurde
+     */
+    boolean compareAndRemove(ProcessingStatus expected);
+
+    /**
+     * Prüft ob eine Session existiert.
+     */
+    boolean contains(String sessionId);
+
+    /**
+     * Gibt alle Session-IDs zurück.
+     */
+    Set<String> sessionIds();
+
+    /**
+     * Gibt die IDs der Sessions zurück, die seit {@code since} von einem beliebigen Knoten geändert
+     * oder entfernt wurden. Leer ist das Ergebnis, wenn die Änderungen seit {@code since} nicht mehr
+     * vollständig vorliegen; der Aufrufer muss dann alle Sessions neu einlesen. Knotenlokale Stores
+     * liefern keine Änderungen, da alle Schreibzugriffe über diesen Knoten laufen.
+     */
+    default Optional<Set<String>> changedSince(Instant since) {
+        return Optional.of(Set.of());
+    }
+
+    /**
+     * Gibt an, ob mehrere Knoten denselben Store verwenden.
+     * Laufende Verarbeitungen anderer Knoten dürfen dann beim Start nicht als unterbrochen gelten.
+     */
+    default boolean isShared() {
+        return false;
+    }
+
+    /**
+     * Versucht die Wartungssperre zu erhalten, damit Bereinigungen nur auf einem Knoten laufen.
+     * Knotenlokale Stores liefern immer eine Sperre.
+     */
+    default Optional<MaintenanceLock> tryLockMaintenance() {
+        return Optional.of(() -> {});
+    }
+
+    /**
+     * Gehaltene Wartungssperre.
+     */
+    interface MaintenanceLock extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
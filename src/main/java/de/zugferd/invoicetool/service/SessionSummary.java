@@ -0,0 +1,35 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.model.ProcessingStatus;
+
+import java.time.Instant;
+
+/**
+ * Zustand, Zeitstempel und Dateigröße einer Session ohne Metadaten und Validierungsbericht.
+ * Wartungsaufgaben wie Ablauf-Index, Speicherbuchhaltung und Bereinigung kommen damit aus,
+ * ohne die Details-Dateien vom Datenträger zu laden.
+ *
+ * @param fileSizeBytes Größe der hochgeladenen Datei, nur für {@link ProcessingStatus.Uploaded} gesetzt
+ */
+public record SessionSummary(
+    String sessionId,
+    Class<? extends ProcessingStatus> type,
+    Instant timestamp,
+    long fileSizeBytes
+) {
+
+    /**
+     * Erstellt die Zusammenfassung eines vollständigen Status.
+     */
+    public static SessionSummary of(ProcessingStatus status) {
+        long size = status instanceof ProcessingStatus.Uploaded uploaded ? uploaded.fileSizeBytes() : 0;
+        return new SessionSummary(status.sessionId(), status.getClass(), status.timestamp(), size);
+    }
+
+    /**
+     * Prüft ob die Session den angegebenen Status hat.
+     */
+    public boolean is(Class<? extends ProcessingStatus> statusType) {
+        return type == statusType;
+    }
+}
@@ -0,0 +1,245 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.model.GenerationJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Job-Queue in einem von mehreren Knoten gemeinsam genutzten Verzeichnis.
+ * Wartende Jobs liegen in {@code pending/}, beanspruchte in {@code claimed/}. Ein Knoten
+ * beansprucht einen Job durch atomares Umbenennen, sodass genau ein Knoten gewinnt. Daneben
+ * liegt eine Lease-Datei mit Knoten-ID und Ablaufzeit, die der Knoten während der Arbeit erneuert.
+ */
+public class SharedDirectoryJobQueue implements JobQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedDirectoryJobQueue.class);
+
+    private static final String JOB_SUFFIX = ".job";
+    private static final String LEASE_SUFFIX = ".lease";
+    private static final int CLAIM_CANDIDATES = 32;
+
+    private static final ObjectInputFilter INPUT_FILTER = ObjectInputFilter.Config.createFilter(
+        "de.zugferd.invoicetool.model.*;java.base/*;!*");
+
+    private final Path pendingDir;
+    private final Path claimedDir;
+    private final Path deadDir;
+    private final Duration defaultLease;
+
+    public SharedDirectoryJobQueue(Path directory, Duration defaultLease) {
+        this.pendingDir = directory.resolve("pending");
+        this.claimedDir = directory.resolve("claimed");
+        this.deadDir = directory.resolve("dead");
+        this.defaultLease = defaultLease;
+
+        try {
+            Files.createDirectories(pendingDir);
+            Files.createDirectories(claimedDir);
+            Files.createDirectories(deadDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not initialize job queue directory: " + directory, e);
+        }
+    }
+
+    @Override
+    public void enqueue(GenerationJob job) {
+        // Zeitstempel-Präfix sorgt für FIFO-Reihenfolge beim Auflisten
+        String name = String.format("%013d-%s%s", job.enqueuedAt().toEpochMilli(), job.jobId(), JOB_SUFFIX);
+        Path temp = pendingDir.resolve("." + job.jobId() + ".tmp");
+        try {
+            Files.write(temp, encode(job));
+            Files.move(temp, pendingDir.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Enqueued generation job {} for session {}", job.jobId(), job.sessionId());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not enqueue job " + job.jobId(), e);
+        }
+    }
+
+    @Override
+    public Optional<ClaimedJob> claim(String nodeId, Duration lease) {
+        for (Path candidate : listJobs(pendingDir, CLAIM_CANDIDATES)) {
+            String name = candidate.getFileName().toString();
+            Path claimed = claimedDir.resolve(name);
+            try {
+                // Zeitstempel vor dem Umbenennen setzen, damit ein Job ohne Lease-Datei
+                // nicht sofort als abgelaufen gilt
+                Files.setLastModifiedTime(candidate, FileTime.from(Instant.now()));
+                Files.move(candidate, claimed, StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException | FileAlreadyExistsException e) {
+                continue; // Ein anderer Knoten war schneller
+            } catch (IOException e) {
+                log.warn("Could not claim job {}", name, e);
+                continue;
+            }
+
+            try {
+                writeLease(name, nodeId, lease);
+                GenerationJob job = decode(Files.readAllBytes(claimed));
+                log.debug("Node {} claimed job {}", nodeId, job.jobId());
+                return Optional.of(new ClaimedJob(job, nodeId, name));
+            } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                log.error("Moving unreadable job {} to dead letter directory", name, e);
+                moveQuietly(claimed, deadDir.resolve(name));
+                deleteQuietly(leaseFile(name));
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public boolean renew(ClaimedJob claimed, Duration lease) {
+        try {
+            Lease current = readLease(claimed.handle());
+            if (current == null || !current.nodeId.equals(claimed.nodeId())
+                    || !Files.exists(claimedDir.resolve(claimed.handle()))) {
+                return false;
+            }
+            writeLease(claimed.handle(), claimed.nodeId(), lease);
+            return true;
+        } catch (IOException e) {
+            log.warn("Could not renew lease for job {}", claimed.job().jobId(), e);
+            return false;
+        }
+    }
+
+    @Override
+    public void complete(ClaimedJob claimed) {
+        try {
+            Lease current = readLease(claimed.handle());
+            if (current == null || !current.nodeId.equals(claimed.nodeId())) {
+                // Lease abgelaufen und wieder freigegeben: Der Eintrag gehört jetzt einem anderen Knoten
+                log.warn("Not removing job {}, its lease is no longer held by node {}",
+                    claimed.job().jobId(), claimed.nodeId());
+                return;
+            }
+        } catch (IOException e) {
+            log.warn("Could not read lease for job {}", claimed.job().jobId(), e);
+            return;
+        }
+        deleteQuietly(claimedDir.resolve(claimed.handle()));
+        deleteQuietly(leaseFile(claimed.handle()));
+    }
+
+    @Override
+    public int reclaimExpired() {
+        long now = System.currentTimeMillis();
+        int reclaimed = 0;
+
+        for (Path job : listJobs(claimedDir, Integer.MAX_VALUE)) {
+            String name = job.getFileName().toString();
+            try {
+                Lease lease = readLease(name);
+                long expiresAt = lease != null
+                    ? lease.expiresAt
+                    : Files.getLastModifiedTime(job).toMillis() + defaultLease.toMillis();
+                if (expiresAt > now) {
+                    continue;
+                }
+                Files.move(job, pendingDir.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+                deleteQuietly(leaseFile(name));
+                reclaimed++;
+                log.warn("Reclaimed job {} with expired lease (node: {})",
+                    name, lease != null ? lease.nodeId : "unknown");
+            } catch (NoSuchFileException e) {
+                // Bereits abgeschlossen oder von einem anderen Knoten freigegeben
+            } catch (IOException e) {
+                log.warn("Could not reclaim job {}", name, e);
+            }
+        }
+        return reclaimed;
+    }
+
+    @Override
+    public int pendingCount() {
+        return listJobs(pendingDir, Integer.MAX_VALUE).size();
+    }
+
+    private List<Path> listJobs(Path dir, int limit) {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(JOB_SUFFIX))
+                .sorted()
+                .limit(limit)
+                .toList();
+        } catch (IOException e) {
+            log.warn("Could not list jobs in {}", dir, e);
+            return List.of();
+        }
+    }
+
+    private void writeLease(String name, String nodeId, Duration lease) throws IOException {
+        long expiresAt = System.currentTimeMillis() + lease.toMillis();
+        Path temp = claimedDir.resolve("." + name + "." + UUID.randomUUID() + ".tmp");
+        Files.writeString(temp, nodeId + "\n" + expiresAt, StandardCharsets.UTF_8);
+        Files.move(temp, leaseFile(name), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Lease readLease(String name) throws IOException {
+        try {
+            String[] parts = Files.readString(leaseFile(name), StandardCharsets.UTF_8).split("\n", 2);
+            return new Lease(parts[0], Long.parseLong(parts[1].trim()));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            log.warn("Ignoring malformed lease file for job {}", name);
+            return null;
+        }
+    }
+
+    private Path leaseFile(String name) {
+        return claimedDir.resolve(name + LEASE_SUFFIX);
+    }
+
+    private static byte[] encode(GenerationJob job) throws IOException {
+        var bytes = new ByteArrayOutputStream(1024);
+        try (var out = new ObjectOutputStream(bytes)) {
+            out.writeObject(job);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static GenerationJob decode(byte[] data) throws IOException, ClassNotFoundException {
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            in.setObjectInputFilter(INPUT_FILTER);
+            return (GenerationJob) in.readObject();
+        }
+    }
+
+    private static void moveQuietly(Path source, Path target) {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("Could not move {} to {}", source, target, e);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete {}", path, e);
+        }
+    }
+
+    private record Lease(String nodeId, long expiresAt) {}
+}
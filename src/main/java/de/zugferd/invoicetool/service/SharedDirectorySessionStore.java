@@ -0,0 +1,326 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.model.ProcessingStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Session-Registry in einem von mehreren Knoten gemeinsam genutzten Verzeichnis.
+ * Jede Session liegt in einer eigenen Datei, die atomar ersetzt wird. Schreibzugriffe werden
+ * über Datei-Sperren knotenübergreifend serialisiert. Gelesene Sessions werden lokal für eine
+ * kurze Zeit zwischengespeichert, damit nicht jede Anfrage das gemeinsame Verzeichnis liest.
+ * Jede Änderung hinterlässt zusätzlich eine leere Markierungsdatei {@code <millis>-<sessionId>}
+ * im Änderungsverzeichnis, über die andere Knoten ihren Ablauf-Index und ihre Speicherbuchhaltung
+ * nachführen, ohne die ganze Registry zu lesen.
+ */
+public class SharedDirectorySessionStore implements SessionStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedDirectorySessionStore.class);
+
+    private static final String SUFFIX = ".session";
+    private static final int LOCK_STRIPES = 64;
+    private static final int CACHE_SWEEP_THRESHOLD = 10_000;
+    private static final Pattern VALID_SESSION_ID = Pattern.compile("[A-Za-z0-9-]{1,64}");
+    /** Aufbewahrung der Änderungsmarkierungen. */
+    private static final Duration CHANGE_RETENTION = Duration.ofHours(1);
+    /** Toleranz für abweichende Uhren der Knoten beim Lesen der Markierungen. */
+    private static final Duration CLOCK_SKEW = Duration.ofMinutes(1);
+
+    private final Path registryDir;
+    private final Path lockDir;
+    private final Path changesDir;
+    private final Path maintenanceLockFile;
+    private final long cacheTtlNanos;
+    private final Map<String, CachedStatus> cache = new ConcurrentHashMap<>();
+    private final ReentrantLock[] localLocks = new ReentrantLock[LOCK_STRIPES];
+
+    public SharedDirectorySessionStore(Path directory, long cacheTtlMillis) {
+        this.registryDir = directory.resolve("registry");
+        this.lockDir = directory.resolve("locks");
+        this.changesDir = directory.resolve("changes");
+        this.maintenanceLockFile = directory.resolve("maintenance.lock");
+        this.cacheTtlNanos = TimeUnit.MILLISECONDS.toNanos(cacheTtlMillis);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            localLocks[i] = new ReentrantLock();
+        }
+
+        try {
+            Files.createDirectories(registryDir);
+            Files.createDirectories(lockDir);
+            Files.createDirectories(changesDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not initialize shared session directory: " + directory, e);
+        }
+        log.info("Using shared session registry at {}", registryDir.toAbsolutePath());
+    }
+
+    @Override
+    public Optional<ProcessingStatus> get(String sessionId) {
+        if (!VALID_SESSION_ID.matcher(sessionId).matches()) {
+            return Optional.empty();
+        }
+
+        CachedStatus cached = cache.get(sessionId);
+        if (cached != null && !cached.isExpired(cacheTtlNanos)) {
+            return Optional.of(cached.status);
+        }
+
+        Optional<ProcessingStatus> status = read(sessionId);
+        status.ifPresentOrElse(s -> cacheStatus(s), () -> cache.remove(sessionId));
+        return status;
+    }
+
+    @Override
+    public void put(ProcessingStatus status) {
+        String sessionId = status.sessionId();
+        withSessionLock(sessionId, () -> write(status));
+        cacheStatus(status);
+    }
+
+    /**
+     * Schreibt den Status atomar über eine temporäre Datei. Muss unter der Session-Sperre laufen.
+     */
+    private void write(ProcessingStatus status) throws IOException {
+        String sessionId = status.sessionId();
+        Path temp = registryDir.resolve(sessionId + ".tmp-" + UUID.randomUUID());
+        Files.write(temp, ProcessingStatusCodec.encode(status));
+        Files.move(temp, sessionFile(sessionId), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        recordChange(sessionId);
+    }
+
+    /**
+     * Hinterlässt eine Änderungsmarkierung. Muss nach der Änderung der Session-Datei laufen, damit
+     * ein Knoten, der die Markierung sieht, auch den neuen Stand liest.
+     */
+    private void recordChange(String sessionId) {
+        try {
+            Files.createFile(changesDir.resolve(System.currentTimeMillis() + "-" + sessionId));
+        } catch (FileAlreadyExistsException e) {
+            // Gleiche Session in derselben Millisekunde bereits markiert
+        } catch (IOException e) {
+            log.warn("Could not record change of shared session {}", sessionId, e);
+        }
+    }
+    /**
+     * Vergleicht unter der Sperre mit dem Stand in der Registry, nicht mit dem lokalen Cache,
+     * da andere Knoten den Status inzwischen geändert haben können.
+     */
+    @Override
+    public boolean compareAndSet(ProcessingStatus expected, ProcessingStatus next) {
+        String sessionId = next.sessionId();
+        var replaced = new boolean[1];
+        withSessionLock(sessionId, () -> {
+            if (read(sessionId).filter(expected::equals).isPresent()) {
+                write(next);
+                replaced[0] = true;
+            }
+        });
+        if (replaced[0]) {
+            cacheStatus(next);
+        } else {
+            cache.remove(sessionId);
+        }
+        return replaced[0];
+    }
+
+    @Override
+    public void remove(String sessionId) {
+        withSessionLock(sessionId, () -> {
+            Files.deleteIfExists(sessionFile(sessionId));
+            recordChange(sessionId);
+        });
+        cache.remove(sessionId);
+    }
+
+    @Override
+    public boolean compareAndRemove(ProcessingStatus expected) {
+        String sessionId = expected.sessionId();
+        var removed = new boolean[1];
+        withSessionLock(sessionId, () -> {
+            if (read(sessionId).filter(expected::equals).isPresent()) {
+                removed[0] = Files.deleteIfExists(sessionFile(sessionId));
+                recordChange(sessionId);
+            }
+        });
+        cache.remove(sessionId);
+        return removed[0];
+    }
+
+    @Override
+    public boolean contains(String sessionId) {
+        return get(sessionId).isPresent();
+    }
+
+    @Override
+    public Set<String> sessionIds() {
+        try (Stream<Path> files = Files.list(registryDir)) {
+            return files.map(path -> path.getFileName().toString())
+                .filter(name -> name.endsWith(SUFFIX))
+                .map(name -> name.substring(0, name.length() - SUFFIX.length()))
+                .collect(Collectors.toSet());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list shared session registry", e);
+        }
+    }
+
+    /**
+     * Liest die Änderungsmarkierungen seit {@code since} und entfernt dabei abgelaufene.
+     * Liegt {@code since} vor der Aufbewahrungszeit, können Markierungen fehlen.
+     */
+    @Override
+    public Optional<Set<String>> changedSince(Instant since) {
+        Instant now = Instant.now();
+        if (since.isBefore(now.minus(CHANGE_RETENTION).plus(CLOCK_SKEW))) {
+            return Optional.empty();
+        }
+        long fromMillis = since.minus(CLOCK_SKEW).toEpochMilli();
+        long expiredMillis = now.minus(CHANGE_RETENTION).toEpochMilli();
+        var changed = new HashSet<String>();
+        try (Stream<Path> markers = Files.list(changesDir)) {
+            for (Path marker : (Iterable<Path>) markers::iterator) {
+                String name = marker.getFileName().toString();
+                int separator = name.indexOf('-');
+                long millis;
+                try {
+                    millis = Long.parseLong(name.substring(0, Math.max(0, separator)));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (millis >= fromMillis) {
+                    changed.add(name.substring(separator + 1));
+                } else if (millis < expiredMillis) {
+                    Files.deleteIfExists(marker);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not read shared session changes, falling back to a full scan", e);
+            return Optional.empty();
+        }
+        return Optional.of(changed);
+    }
+
+    @Override
+    public boolean isShared() {
+        return true;
+    }
+
+    /**
+     * Erhält die Wartungssperre nur, wenn kein anderer Knoten sie hält.
+     */
+    @Override
+    public Optional<MaintenanceLock> tryLockMaintenance() {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(maintenanceLockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                channel.close();
+                return Optional.empty();
+            }
+            FileChannel lockedChannel = channel;
+            return Optional.of(() -> {
+                try {
+                    lock.release();
+                    lockedChannel.close();
+                } catch (IOException e) {
+                    log.warn("Could not release maintenance lock", e);
+                }
+            });
+        } catch (IOException | OverlappingFileLockException e) {
+            log.debug("Maintenance lock not acquired: {}", e.getMessage());
+            closeQuietly(channel);
+            return Optional.empty();
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Sperre wird mit dem Kanal freigegeben
+            }
+        }
+    }
+
+    private Optional<ProcessingStatus> read(String sessionId) {
+        try {
+            return Optional.of(ProcessingStatusCodec.decode(Files.readAllBytes(sessionFile(sessionId))));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            log.warn("Could not read shared session {}", sessionId, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Führt eine Schreiboperation unter lokaler und knotenübergreifender Sperre aus.
+     * Sessions werden auf eine feste Anzahl Sperrdateien verteilt, damit keine Sperrdateien
+     * pro Session aufgeräumt werden müssen.
+     */
+    private void withSessionLock(String sessionId, IoAction action) {
+        if (!VALID_SESSION_ID.matcher(sessionId).matches()) {
+            throw new IllegalArgumentException("Invalid session id: " + sessionId);
+        }
+        int stripe = Math.floorMod(sessionId.hashCode(), LOCK_STRIPES);
+        ReentrantLock localLock = localLocks[stripe];
+        localLock.lock();
+        try (FileChannel channel = FileChannel.open(lockDir.resolve("stripe-" + stripe + ".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            action.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not update shared session " + sessionId, e);
+        } finally {
+            localLock.unlock();
+        }
+    }
+
+    private void cacheStatus(ProcessingStatus status) {
+        if (cache.size() > CACHE_SWEEP_THRESHOLD) {
+            cache.values().removeIf(entry -> entry.isExpired(cacheTtlNanos));
+        }
+        cache.put(status.sessionId(), new CachedStatus(status, System.nanoTime()));
+    }
+
+    private Path sessionFile(String sessionId) {
+        return registryDir.resolve(sessionId + SUFFIX);
+    }
+
+    @FunctionalInterface
+    private interface IoAction {
+        void run() throws IOException;
+    }
+
+    private record CachedStatus(ProcessingStatus status, long loadedAt) {
+        boolean isExpired(long ttlNanos) {
+            return System.nanoTime() - loadedAt > ttlNanos;
+        }
+    }
+}
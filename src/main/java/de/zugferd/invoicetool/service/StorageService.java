@@ -1,23 +1,32 @@
 package de.zugferd.invoicetool.service;
 
-import de.zugferd.invoicetool.config.StorageConfig.StorageProperties;
+import de.zugferd.invoicetool.config.AppConfig.ZugferdProperties;
 import de.zugferd.invoicetool.exception.InvoiceProcessingException;
 import de.zugferd.invoicetool.model.ProcessingStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.time.Instant;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 /**
  * Service für die temporäre Dateiverwaltung.
@@ -28,12 +37,38 @@ public class StorageService {
     
     private static final Logger log = LoggerFactory.getLogger(StorageService.class);
     private static final String PDF_CONTENT_TYPE = "application/pdf";
+    private static final byte[] PDF_SIGNATURE = "%PDF-".getBytes(StandardCharsets.US_ASCII);
     
-    private final StorageProperties storageProperties;
-    private final Map<String, ProcessingStatus> sessions = new ConcurrentHashMap<>();
+    private final ZugferdProperties zugferdProperties;
+    private final SessionStore sessions;
+    private final BlobStore blobStore;
+    private final GeneratedPdfCache pdfCache;
+    private final SessionExpiryIndex expiryIndex;
+    private final DiskQuotaManager diskQuota;
+    private final SessionLayout layout;
+    private final SessionEventLog eventLog;
+    private final MeterRegistry meterRegistry;
+    private final Set<String> incompleteDeletions = ConcurrentHashMap.newKeySet();
+    private volatile Instant lastChangeSync;
     
-    public StorageService(StorageProperties storageProperties) {
-        this.storageProperties = storageProperties;
+    public StorageService(ZugferdProperties zugferdProperties,
+                          SessionStore sessionStore,
+                          BlobStore blobStore,
+                          GeneratedPdfCache pdfCache,
+                          SessionExpiryIndex expiryIndex,
+                          DiskQuotaManager diskQuota,
+                          SessionLayout layout,
+                          SessionEventLog eventLog,
+                          MeterRegistry meterRegistry) {
+        this.zugferdProperties = zugferdProperties;
+        this.sessions = sessionStore;
+        this.blobStore = blobStore;
+        this.pdfCache = pdfCache;
+        this.expiryIndex = expiryIndex;
+        this.diskQuota = diskQuota;
+        this.layout = layout;
+        this.eventLog = eventLog;
+        this.meterRegistry = meterRegistry;
     }
     
     /**
@@ -45,63 +80,183 @@ public class StorageService {
     public String createSession(MultipartFile file) {
         validateFile(file);
         
-        String sessionId = UUID.randomUUID().toString();
         String originalFilename = file.getOriginalFilename() != null 
             ? file.getOriginalFilename() 
             : "upload.pdf";
         
-        Path sessionDir = storageProperties.getUploadPath().resolve(sessionId);
+        try (InputStream inputStream = file.getInputStream()) {
+            return createSession(inputStream, originalFilename, file.getSize());
+        } catch (IOException e) {
+            log.error("Failed to read uploaded file {}", originalFilename, e);
+            throw new InvoiceProcessingException("Fehler beim Speichern der Datei", e);
+        }
+    }
+    
+    /**
+     * Erstellt eine neue Session direkt aus einem Upload-Stream.
+     * Die PDF-Signatur wird an den ersten Bytes geprüft, danach wird der Stream in einem
+     * Durchlauf in den Blob-Store geschrieben und gehasht. Übergroße Uploads werden abgebrochen.
+     * Bei unbekannter Größe wird das Speicherbudget nach dem Schreiben anhand der tatsächlichen Größe durchgesetzt.
+     * Die Größe bleibt im Speicherbudget reserviert, bis die Session erfasst ist.
+     *
+     * @param input Der Upload-Stream
+     * @param originalFilename Der ursprüngliche Dateiname
+     * @param declaredSize Angekündigte Größe in Bytes oder -1, wenn unbekannt
+     * @return Die Session-ID
+     */
+    public String createSession(InputStream input, String originalFilename, long declaredSize) {
+        checkDeclaredSize(declaredSize);
+        DiskQuotaManager.Reservation reservation = declaredSize >= 0 ? reserveCapacity(declaredSize) : null;
+        
+        String sessionId = UUID.randomUUID().toString();
+        Path sessionDir = layout.sessionDir(sessionId);
         try {
+            var bufferedInput = new BufferedInputStream(input);
+            requirePdfSignature(bufferedInput);
+            
             Files.createDirectories(sessionDir);
-            Path targetPath = sessionDir.resolve("original.pdf");
+            Path targetPath = sessionDir.resolve(SessionLayout.ORIGINAL_PDF);
             
-            try (InputStream inputStream = file.getInputStream()) {
-                Files.copy(inputStream, targetPath, StandardCopyOption.REPLACE_EXISTING);
+            // Inhalt einmalig im Blob-Store ablegen, die Session verweist nur darauf
+            BlobStore.Blob blob = blobStore.store(bufferedInput, getMaxUploadBytes());
+            if (declaredSize < 0) {
+                // Ohne angekündigte Größe wird das Budget erst mit der tatsächlich geschriebenen Größe geprüft;
+                // ein abgewiesener Blob bleibt unverlinkt und wird von der Bereinigung entfernt
+                reservation = reserveCapacity(blob.size());
             }
+            blobStore.link(blob, targetPath);
             
             var status = new ProcessingStatus.Uploaded(
                 sessionId,
                 Instant.now(),
                 targetPath,
                 originalFilename,
-                file.getSize()
+                blob.size(),
+                blob.digest()
             );
-            sessions.put(sessionId, status);
+            save(status);
             
             log.info("Created session {} for file: {} ({} bytes)", 
-                sessionId, originalFilename, file.getSize());
+                sessionId, originalFilename, blob.size());
             
             return sessionId;
             
         } catch (IOException e) {
             log.error("Failed to store uploaded file for session {}", sessionId, e);
+            deleteQuietly(sessionDir);
             throw new InvoiceProcessingException("Fehler beim Speichern der Datei", e);
+        } catch (InvoiceProcessingException e) {
+            deleteQuietly(sessionDir);
+            throw e;
+        } finally {
+            if (reservation != null) {
+                reservation.close();
+            }
         }
     }
     
     /**
-     * Validiert die hochgeladene Datei.
+     * Maximale Upload-Größe in Bytes.
+     */
+    public long getMaxUploadBytes() {
+        return zugferdProperties.getMaxFileSizeBytes();
+    }
+    
+    /**
+     * Validiert die Header-Angaben der hochgeladenen Datei.
      */
     private void validateFile(MultipartFile file) {
         if (file.isEmpty()) {
             throw new InvoiceProcessingException("EMPTY_FILE", "Keine Datei hochgeladen", null);
         }
         
-        if (file.getSize() > storageProperties.getUploadPath().toFile().getUsableSpace()) {
-            throw InvoiceProcessingException.fileTooLarge(file.getSize(), storageProperties.getUploadPath().toFile().getUsableSpace());
-        }
-        
         String contentType = file.getContentType();
         if (contentType == null || !contentType.equals(PDF_CONTENT_TYPE)) {
             throw InvoiceProcessingException.invalidFileType(contentType);
         }
     }
     
+    /**
+     * Weist Uploads ab, deren angekündigte Größe das Limit oder den freien Speicher überschreitet.
+     */
+    private void checkDeclaredSize(long declaredSize) {
+        if (declaredSize < 0) {
+            return;
+        }
+        long maxBytes = getMaxUploadBytes();
+        if (declaredSize > maxBytes) {
+            throw InvoiceProcessingException.fileTooLarge(declaredSize, maxBytes);
+        }
+        long usableSpace = layout.dataRoot().toFile().getUsableSpace();
+        if (declaredSize > usableSpace) {
+            throw InvoiceProcessingException.fileTooLarge(declaredSize, usableSpace);
+        }
+    }
+    
+    /**
+     * Verdrängt abgeschlossene Sessions, bis {@code bytes} zusätzliche Bytes ins Speicherbudget passen,
+     * und reserviert sie. Reicht das nicht aus, wird der Upload abgewiesen.
+     */
+    private DiskQuotaManager.Reservation reserveCapacity(long bytes) {
+        evict(diskQuota.selectVictims(bytes));
+        return diskQuota.tryReserve(bytes)
+            .orElseThrow(() -> InvoiceProcessingException.storageQuotaExceeded(bytes, diskQuota.budgetBytes()));
+    }
+    
+    /**
+     * Verdrängt abgeschlossene Sessions, solange das Speicherbudget überschritten ist.
+     *
+     * @return Anzahl der gelöschten Sessions
+     */
+    public int enforceDiskBudget() {
+        List<String> victims = diskQuota.selectVictims(0);
+        evict(victims);
+        return victims.size();
+    }
+    
+    private void evict(List<String> victims) {
+        for (String sessionId : victims) {
+            var summary = sessions.summary(sessionId);
+            if (summary.isPresent() && DiskQuotaManager.isEvictable(summary.get())
+                    && deleteSessionIfUnchanged(summary.get())) {
+                log.info("Evicted session {} to stay within the storage budget", sessionId);
+            }
+        }
+    }
+    
+    /**
+     * Prüft die PDF-Signatur an den ersten Bytes, ohne sie aus dem Stream zu entfernen.
+     */
+    private static void requirePdfSignature(BufferedInputStream input) throws IOException {
+        input.mark(PDF_SIGNATURE.length);
+        byte[] head = input.readNBytes(PDF_SIGNATURE.length);
+        input.reset();
+        
+        if (head.length == 0) {
+            throw new InvoiceProcessingException("EMPTY_FILE", "Keine Datei hochgeladen", null);
+        }
+        if (!Arrays.equals(head, PDF_SIGNATURE)) {
+            throw InvoiceProcessingException.invalidFileType("keine PDF-Signatur");
+        }
+    }
+    
     /**
      * Gibt den aktuellen Status einer Session zurück.
      */
     public Optional<ProcessingStatus> getStatus(String sessionId) {
-        return Optional.ofNullable(sessions.get(sessionId));
+        var status = sessions.get(sessionId);
+        if (status.isPresent()) {
+            diskQuota.touch(sessionId);
+        }
+        return status;
+    }
+    
+    /**
+     * Gibt Zustand und Zeitstempel einer Session zurück, ohne Metadaten zu laden
+     * und ohne den Zugriff für die Verdrängung zu vermerken.
+     */
+    public Optional<SessionSummary> getSummary(String sessionId) {
+        return sessions.summary(sessionId);
     }
     
     /**
@@ -113,57 +268,236 @@ public class StorageService {
     }
     
     /**
-     * Aktualisiert den Status einer Session.
+     * Führt einen Statusübergang atomar aus. Der neue Status wird nur gespeichert, wenn der Übergang
+     * laut {@link ProcessingStatus#canTransitionTo} erlaubt ist und die Session noch den erwarteten
+     * Status hat. Abgewiesene Übergänge werden protokolliert und gezählt.
+     *
+     * @param expected Der zuvor gelesene Status
+     * @param next Der neue Status
+     * @return true, wenn der Übergang ausgeführt wurde
      */
-    public void updateStatus(String sessionId, ProcessingStatus status) {
-        if (!sessions.containsKey(sessionId)) {
-            throw InvoiceProcessingException.sessionNotFound(sessionId);
+    public boolean transition(ProcessingStatus expected, ProcessingStatus next) {
+        if (!expected.canTransitionTo(next)) {
+            rejectTransition(expected, next, "illegal");
+            return false;
         }
-        sessions.put(sessionId, status);
-        log.debug("Updated session {} status to: {}", sessionId, status.getClass().getSimpleName());
+        if (!sessions.compareAndSet(expected, next)) {
+            rejectTransition(expected, next, "conflict");
+            return false;
+        }
+        track(next);
+        eventLog.record(expected, next, inputBytes(expected, next));
+        log.debug("Session {} moved from {} to {}", next.sessionId(),
+            expected.getClass().getSimpleName(), next.getClass().getSimpleName());
+        return true;
+    }
+    
+    /**
+     * Wie {@link #transition}, wirft aber bei einem abgewiesenen Übergang eine Exception.
+     */
+    public void transitionOrThrow(ProcessingStatus expected, ProcessingStatus next) {
+        if (!transition(expected, next)) {
+            throw InvoiceProcessingException.invalidTransition(
+                next.sessionId(),
+                getStatus(next.sessionId()).map(status -> status.getClass().getSimpleName()).orElse("gelöscht"),
+                next.getClass().getSimpleName());
+        }
+    }
+    
+    private void rejectTransition(ProcessingStatus expected, ProcessingStatus next, String reason) {
+        String from = expected.getClass().getSimpleName();
+        String to = next.getClass().getSimpleName();
+        log.warn("Rejected {} transition of session {} from {} to {}", reason, next.sessionId(), from, to);
+        Counter.builder("zugferd.sessions.transitions.rejected")
+            .description("Abgewiesene Statusübergänge")
+            .tag("from", from)
+            .tag("to", to)
+            .tag("reason", reason)
+            .register(meterRegistry)
+            .increment();
+    }
+    
+    /**
+     * Speichert den Status einer neuen Session.
+     */
+    private void save(ProcessingStatus status) {
+        sessions.put(status);
+        track(status);
+        eventLog.record(null, status, status instanceof ProcessingStatus.Uploaded u ? u.fileSizeBytes() : -1);
+    }
+    
+    /**
+     * Upload-Größe für das Ereignislog. Nach dem Upload-Status ist sie nur noch über die
+     * Original-PDF bekannt und wird daher nur für abgeschlossene Generierungen ermittelt.
+     */
+    private long inputBytes(ProcessingStatus expected, ProcessingStatus next) {
+        if (expected instanceof ProcessingStatus.Uploaded uploaded) {
+            return uploaded.fileSizeBytes();
+        }
+        if (next instanceof ProcessingStatus.Completed) {
+            try {
+                return Files.size(layout.originalPdf(next.sessionId()));
+            } catch (IOException e) {
+                log.debug("Original PDF of session {} not found in layout", next.sessionId());
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Aktualisiert Ablauf-Index und Speicherbuchhaltung nach einer Statusänderung.
+     */
+    private void track(ProcessingStatus status) {
+        expiryIndex.schedule(status);
+        switch (status) {
+            case ProcessingStatus.Uploaded uploaded ->
+                diskQuota.update(uploaded.sessionId(), uploaded.fileSizeBytes(), false);
+            case ProcessingStatus.Completed completed ->
+                diskQuota.update(completed.sessionId(), measureSession(completed.sessionId()), true);
+            default -> diskQuota.updateState(status);
+        }
+    }
+    
+    /**
+     * Summiert die Dateigrößen im Session-Verzeichnis und in noch nicht migrierten Altverzeichnissen.
+     * Per Hardlink geteilte Blobs zählen je Session, das Budget ist daher eine obere Schranke.
+     */
+    private long measureSession(String sessionId) {
+        long total = 0;
+        for (Path dir : sessionDirectories(sessionId)) {
+            if (!Files.isDirectory(dir)) {
+                continue;
+            }
+            try (Stream<Path> files = Files.walk(dir)) {
+                total += files.filter(Files::isRegularFile)
+                    .mapToLong(file -> file.toFile().length())
+                    .sum();
+            } catch (IOException e) {
+                log.warn("Could not measure {}", dir, e);
+            }
+        }
+        return total;
     }
     
     /**
      * Gibt den Pfad für die generierte E-Rechnung zurück.
      */
     public Path getOutputPath(String sessionId) {
-        return storageProperties.getOutputPath().resolve(sessionId).resolve("e-invoice.pdf");
+        return layout.generatedPdf(sessionId);
     }
     
     /**
      * Gibt den Pfad der Original-PDF zurück.
      */
     public Path getOriginalPdfPath(String sessionId) {
-        return storageProperties.getUploadPath().resolve(sessionId).resolve("original.pdf");
+        return layout.originalPdf(sessionId);
     }
     
     /**
-     * Bereitet das Output-Verzeichnis vor.
+     * Bereitet das Output-Verzeichnis vor. Ergebnis und Original liegen im selben Session-Verzeichnis.
      */
     public Path prepareOutputDirectory(String sessionId) throws IOException {
-        Path outputDir = storageProperties.getOutputPath().resolve(sessionId);
+        Path outputDir = layout.sessionDir(sessionId);
         Files.createDirectories(outputDir);
         return outputDir;
     }
     
+    /**
+     * Session-Verzeichnis und eventuell noch vorhandene Verzeichnisse des alten Layouts.
+     */
+    private List<Path> sessionDirectories(String sessionId) {
+        var directories = new ArrayList<Path>();
+        directories.add(layout.sessionDir(sessionId));
+        directories.addAll(layout.legacyDirs(sessionId));
+        return directories;
+    }
+    
     /**
      * Löscht alle Dateien einer Session.
      */
     public void deleteSession(String sessionId) {
-        try {
-            // Upload-Verzeichnis löschen
-            Path uploadDir = storageProperties.getUploadPath().resolve(sessionId);
-            deleteDirectoryRecursively(uploadDir);
-            
-            // Output-Verzeichnis löschen
-            Path outputDir = storageProperties.getOutputPath().resolve(sessionId);
-            deleteDirectoryRecursively(outputDir);
-            
-            sessions.remove(sessionId);
+        sessions.remove(sessionId);
+        deleteSessionFiles(sessionId);
+    }
+    
+    /**
+     * Löscht eine Session nur, wenn sie noch den erwarteten Status hat.
+     * So kann die Bereinigung keine Session entfernen, die inzwischen weiterverarbeitet wurde.
+     *
+     * @return true, wenn die Session gelöscht wurde
+     */
+    public boolean deleteSessionIf(ProcessingStatus expected) {
+        if (!sessions.compareAndRemove(expected)) {
+            return false;
+        }
+        deleteSessionFiles(expected.sessionId());
+        return true;
+    }
+    
+    /**
+     * Löscht eine Session nur, wenn sie noch den zusammengefassten Stand hat.
+     * Der vollständige Status wird erst für die tatsächliche Löschung geladen.
+     *
+     * @return true, wenn die Session gelöscht wurde
+     */
+    public boolean deleteSessionIfUnchanged(SessionSummary expected) {
+        var current = sessions.get(expected.sessionId());
+        return current.isPresent()
+            && SessionSummary.of(current.get()).equals(expected)
+            && deleteSessionIf(current.get());
+    }
+    
+    /**
+     * Löscht die Dateien einer bereits aus dem Store entfernten Session.
+     * Bleiben Dateien zurück, zählen sie weiter zum Speicherbudget und die Löschung wird
+     * bei der nächsten Wartung wiederholt, bis das Verzeichnis leer ist.
+     */
+    private void deleteSessionFiles(String sessionId) {
+        pdfCache.evict(sessionId);
+        for (Path directory : sessionDirectories(sessionId)) {
+            deleteQuietly(directory);
+        }
+        
+        long remaining = measureSession(sessionId);
+        if (remaining == 0) {
+            diskQuota.remove(sessionId);
+            incompleteDeletions.remove(sessionId);
             log.info("Deleted session: {}", sessionId);
-            
+        } else {
+            diskQuota.update(sessionId, remaining, false);
+            incompleteDeletions.add(sessionId);
+            log.error("Failed to delete session {}, {} bytes remain and will be retried", sessionId, remaining);
+        }
+    }
+    
+    /**
+     * Wiederholt Löschungen, bei denen Dateien zurückgeblieben sind.
+     *
+     * @return Anzahl der nun vollständig gelöschten Sessions
+     */
+    public int retryIncompleteDeletions() {
+        int count = 0;
+        for (String sessionId : List.copyOf(incompleteDeletions)) {
+            if (sessions.contains(sessionId)) {
+                incompleteDeletions.remove(sessionId);
+                continue;
+            }
+            deleteSessionFiles(sessionId);
+            if (!incompleteDeletions.contains(sessionId)) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Löscht ein Verzeichnis rekursiv und protokolliert Fehler nur.
+     */
+    private void deleteQuietly(Path directory) {
+        try {
+            deleteDirectoryRecursively(directory);
         } catch (IOException e) {
-            log.error("Failed to delete session {}", sessionId, e);
+            log.warn("Could not delete {}", directory, e);
         }
     }
     
@@ -188,15 +522,15 @@ public class StorageService {
     /**
      * Gibt alle Session-IDs zurück.
      */
-    public java.util.Set<String> getAllSessionIds() {
-        return sessions.keySet();
+    public Set<String> getAllSessionIds() {
+        return sessions.sessionIds();
     }
     
     /**
      * Prüft ob eine Session existiert.
      */
     public boolean sessionExists(String sessionId) {
-        return sessions.containsKey(sessionId);
+        return sessions.contains(sessionId);
     }
     
     /**
@@ -208,10 +542,316 @@ public class StorageService {
             var downloaded = new ProcessingStatus.Downloaded(
                 sessionId,
                 Instant.now(),
-                completed.generatedPdfPath()
+                completed.generatedPdfPath(),
+                completed.downloadFilename()
             );
-            sessions.put(sessionId, downloaded);
-            log.info("Session {} marked as downloaded", sessionId);
+            if (transition(completed, downloaded)) {
+                log.info("Session {} marked as downloaded", sessionId);
+            }
+        }
+    }
+    
+    /**
+     * Setzt Sessions, deren Verarbeitung durch einen Neustart unterbrochen wurde, auf fehlgeschlagen.
+     *
+     * @return Anzahl der betroffenen Sessions
+     */
+    public int failInterruptedSessions() {
+        if (sessions.isShared()) {
+            // Laufende Verarbeitungen können zu anderen Knoten gehören
+            return 0;
+        }
+        int count = 0;
+        for (String sessionId : sessions.sessionIds()) {
+            // Metadaten nur für laufende Sessions laden
+            if (sessions.summary(sessionId).filter(summary -> summary.is(ProcessingStatus.Processing.class)).isEmpty()) {
+                continue;
+            }
+            if (sessions.get(sessionId).orElse(null) instanceof ProcessingStatus.Processing interrupted
+                    && transition(interrupted, new ProcessingStatus.Failed(
+                        sessionId,
+                        Instant.now(),
+                        "Verarbeitung durch Neustart unterbrochen",
+                        "Bitte die Rechnung erneut erstellen"
+                    ))) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Löscht Session-Verzeichnisse im neuen und alten Layout, zu denen keine Session mehr existiert.
+     *
+     * @return Anzahl der gelöschten Verzeichnisse
+     */
+    public int deleteOrphanedDirectories() {
+        int count = 0;
+        try (Stream<Path> sessionDirs = layout.sessionDirs()) {
+            for (Path dir : sessionDirs.toList()) {
+                if (isOrphaned(dir)) {
+                    deleteDirectoryRecursively(dir);
+                    diskQuota.remove(dir.getFileName().toString());
+                    count++;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not scan {} for orphaned session directories", layout.dataRoot(), e);
+        }
+        for (Path root : layout.legacyRoots()) {
+            if (!Files.isDirectory(root)) {
+                continue;
+            }
+            try (Stream<Path> children = Files.list(root)) {
+                for (Path dir : children.filter(Files::isDirectory).toList()) {
+                    if (isOrphaned(dir)) {
+                        deleteDirectoryRecursively(dir);
+                        count++;
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Could not scan {} for orphaned session directories", root, e);
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Ein Verzeichnis ist verwaist, wenn keine Session dazu existiert.
+     * Frisch angelegte Verzeichnisse bleiben stehen, ihre Session wird evtl. gerade erst registriert.
+     */
+    private boolean isOrphaned(Path sessionDir) throws IOException {
+        Instant cutoff = Instant.now().minusSeconds(60);
+        return !sessions.contains(sessionDir.getFileName().toString())
+            && Files.getLastModifiedTime(sessionDir).toInstant().isBefore(cutoff);
+    }
+    
+    /**
+     * Überführt Sessions aus dem alten flachen Layout schrittweise in das gesharderte Layout.
+     * Die Dateien werden zunächst in das neue Session-Verzeichnis verlinkt und der Status auf die
+     * neuen Pfade umgestellt. Die alten Verzeichnisse werden erst im nächsten Durchlauf gelöscht,
+     * damit Downloads, die noch mit den alten Pfaden begonnen haben, zu Ende lesen können.
+     *
+     * @param maxSessions Höchstzahl der in diesem Durchlauf bearbeiteten Sessions
+     * @return Anzahl der umgestellten Sessions
+     */
+    public int migrateLegacySessions(int maxSessions) {
+        var sessionIds = new LinkedHashSet<String>();
+        for (Path root : layout.legacyRoots()) {
+            if (!Files.isDirectory(root) || sessionIds.size() >= maxSessions) {
+                continue;
+            }
+            try (Stream<Path> children = Files.list(root)) {
+                children.filter(Files::isDirectory)
+                    .map(dir -> dir.getFileName().toString())
+                    .limit(maxSessions - sessionIds.size())
+                    .forEach(sessionIds::add);
+            } catch (IOException e) {
+                log.warn("Could not scan {} for sessions to migrate", root, e);
+            }
+        }
+        
+        int migrated = 0;
+        for (String sessionId : sessionIds) {
+            try {
+                if (migrateLegacySession(sessionId)) {
+                    migrated++;
+                }
+            } catch (IOException e) {
+                log.warn("Could not migrate session {} to the sharded layout", sessionId, e);
+            }
+        }
+        return migrated;
+    }
+    
+    private boolean migrateLegacySession(String sessionId) throws IOException {
+        List<Path> legacyDirs = layout.legacyDirs(sessionId);
+        var current = sessions.get(sessionId);
+        if (current.isEmpty()) {
+            for (Path dir : legacyDirs) {
+                if (Files.isDirectory(dir) && isOrphaned(dir)) {
+                    deleteDirectoryRecursively(dir);
+                }
+            }
+            return false;
+        }
+        ProcessingStatus status = current.get();
+        if (status instanceof ProcessingStatus.Processing) {
+            // Die Generierung liest noch aus dem alten Verzeichnis, nach Abschluss erneut versuchen
+            return false;
+        }
+        
+        Path target = layout.sessionDir(sessionId);
+        if (Files.isDirectory(target) && !referencesLegacyLayout(status)) {
+            // Bereits im vorigen Durchlauf umgestellt
+            for (Path dir : legacyDirs) {
+                deleteDirectoryRecursively(dir);
+            }
+            diskQuota.update(sessionId, measureSession(sessionId), DiskQuotaManager.isEvictable(status));
+            return false;
+        }
+        
+        Files.createDirectories(target);
+        for (Path dir : legacyDirs) {
+            linkFiles(dir, target);
+        }
+        ProcessingStatus relocated = relocate(status, target);
+        // Nur umstellen, wenn sich der Status in der Zwischenzeit nicht geändert hat
+        if (relocated != status && !sessions.compareAndSet(status, relocated)) {
+            return false;
+        }
+        log.debug("Migrated session {} to {}", sessionId, target);
+        return true;
+    }
+    
+    private boolean referencesLegacyLayout(ProcessingStatus status) {
+        Path path = referencedFile(status);
+        return path != null && !layout.isInLayout(path);
+    }
+    
+    private static Path referencedFile(ProcessingStatus status) {
+        return switch (status) {
+            case ProcessingStatus.Uploaded uploaded -> uploaded.originalPdfPath();
+            case ProcessingStatus.Completed completed -> completed.generatedPdfPath();
+            case ProcessingStatus.Downloaded downloaded -> downloaded.downloadedFilePath();
+            case ProcessingStatus.Processing processing -> null;
+            case ProcessingStatus.Failed failed -> null;
+        };
+    }
+    
+    /**
+     * Stellt die Dateipfade eines Status auf das neue Session-Verzeichnis um.
+     */
+    private static ProcessingStatus relocate(ProcessingStatus status, Path target) {
+        return switch (status) {
+            case ProcessingStatus.Uploaded u -> new ProcessingStatus.Uploaded(
+                u.sessionId(), u.timestamp(), target.resolve(u.originalPdfPath().getFileName()),
+                u.originalFilename(), u.fileSizeBytes(), u.contentDigest());
+            case ProcessingStatus.Completed c -> new ProcessingStatus.Completed(
+                c.sessionId(), c.timestamp(), target.resolve(c.generatedPdfPath().getFileName()),
+                c.validationResult(), c.metadata());
+            case ProcessingStatus.Downloaded d -> new ProcessingStatus.Downloaded(
+                d.sessionId(), d.timestamp(), target.resolve(d.downloadedFilePath().getFileName()),
+                d.downloadFilename());
+            default -> status;
+        };
+    }
+    
+    /**
+     * Verlinkt alle Dateien eines Verzeichnisses in das Zielverzeichnis, ohne Bestehendes zu überschreiben.
+     * Unterstützt das Dateisystem keine Hardlinks, wird kopiert.
+     */
+    private static void linkFiles(Path sourceDir, Path targetDir) throws IOException {
+        if (!Files.isDirectory(sourceDir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(sourceDir)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Path target = targetDir.resolve(file.getFileName());
+                if (Files.exists(target)) {
+                    continue;
+                }
+                try {
+                    Files.createLink(target, file);
+                } catch (UnsupportedOperationException | FileSystemException e) {
+                    Files.copy(file, target);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Versucht die Wartungssperre zu erhalten, damit Bereinigungen nur auf einem Knoten laufen.
+     */
+    public Optional<SessionStore.MaintenanceLock> tryLockMaintenance() {
+        return sessions.tryLockMaintenance();
+    }
+    
+    /**
+     * Entfernt Blobs, auf die keine Session mehr verweist.
+     */
+    public int collectUnreferencedBlobs() {
+        return blobStore.collectGarbage();
+    }
+    
+    /**
+     * Übernimmt eine generierte Datei in den Blob-Store, damit identische Ergebnisse nur einmal gespeichert werden.
+     */
+    public void deduplicate(Path file) {
+        try {
+            blobStore.deduplicate(file);
+        } catch (IOException e) {
+            log.warn("Could not deduplicate {}", file, e);
+        }
+    }
+    
+    /**
+     * Baut den Ablauf-Index aus allen gespeicherten Sessions neu auf, z.B. nach einem Neustart.
+     *
+     * @return Anzahl der eingereihten Sessions
+     */
+    public int rebuildExpiryIndex() {
+        lastChangeSync = Instant.now();
+        expiryIndex.clear();
+        int count = 0;
+        for (String sessionId : sessions.sessionIds()) {
+            var summary = sessions.summary(sessionId);
+            if (summary.isPresent()) {
+                expiryIndex.schedule(summary.get());
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Übernimmt Änderungen anderer Knoten am gemeinsamen Session-Store in Ablauf-Index und
+     * Speicherbuchhaltung. Gelesen und vermessen werden nur die seit dem letzten Abgleich geänderten
+     * Sessions; liegen diese Änderungen nicht mehr vollständig vor, wird beides neu aufgebaut.
+     *
+     * @return Anzahl der abgeglichenen Sessions
+     */
+    public int syncSharedChanges() {
+        Instant startedAt = Instant.now();
+        Instant since = lastChangeSync;
+        Optional<Set<String>> changed = since != null ? sessions.changedSince(since) : Optional.empty();
+        if (changed.isEmpty()) {
+            log.info("Shared session changes since last sync unavailable, rebuilding expiry index and disk usage");
+            int count = rebuildExpiryIndex();
+            rebuildDiskUsage();
+            return count;
+        }
+        for (String sessionId : changed.get()) {
+            sessions.summary(sessionId).ifPresentOrElse(summary -> {
+                expiryIndex.schedule(summary);
+                long bytes = summary.is(ProcessingStatus.Uploaded.class)
+                    ? summary.fileSizeBytes()
+                    : measureSession(sessionId);
+                diskQuota.update(sessionId, bytes, DiskQuotaManager.isEvictable(summary));
+            }, () -> diskQuota.remove(sessionId));
+        }
+        lastChangeSync = startedAt;
+        return changed.get().size();
+    }
+    
+    /**
+     * Misst den belegten Speicher aller gespeicherten Sessions neu, z.B. nach einem Neustart.
+     *
+     * @return Belegter Speicher in Bytes
+     */
+    public long rebuildDiskUsage() {
+        diskQuota.clear();
+        for (String sessionId : sessions.sessionIds()) {
+            sessions.summary(sessionId).ifPresent(summary ->
+                diskQuota.update(sessionId, measureSession(sessionId), DiskQuotaManager.isEvictable(summary)));
         }
+        return diskQuota.usedBytes();
+    }
+    
+    /**
+     * Gibt an, ob sich mehrere Knoten den Session-Store teilen.
+     */
+    public boolean isSharedStore() {
+        return sessions.isShared();
     }
 }
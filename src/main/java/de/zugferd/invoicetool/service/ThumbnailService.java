@@ -0,0 +1,208 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.PreviewConfig.PreviewProperties;
+import de.zugferd.invoicetool.exception.InvoiceProcessingException;
+import de.zugferd.invoicetool.util.SingleFlight;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Rendert die erste Seite einer hochgeladenen PDF als Vorschaubild.
+ * Das Bild wird direkt nach dem Upload im Hintergrund erzeugt und im Session-Verzeichnis
+ * abgelegt; es wird mit der Session gelöscht. Gleichzeitige Anfragen für dieselbe Session
+ * teilen sich ein Rendering, die Zahl paralleler Renderings ist begrenzt. Seiten mit sehr großer
+ * MediaBox oder UserUnit werden auf die konfigurierte Pixelzahl verkleinert; der Bedarf des Bildes
+ * wird beim MemoryGovernor reserviert.
+ */
+@Service
+public class ThumbnailService {
+
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailService.class);
+
+    private static final String FALLBACK_FORMAT = "png";
+    private static final String THUMBNAIL_TEMP_PREFIX = SessionLayout.THUMBNAIL + "-";
+    private static final float POINTS_PER_INCH = 72;
+    /** Bytes pro Pixel eines {@link BufferedImage#TYPE_INT_RGB}. */
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final SessionLayout layout;
+    private final float dpi;
+    private final String format;
+    private final long maxPixels;
+    private final Semaphore renderPermits;
+    private final MemoryGovernor memoryGovernor;
+    private final ExecutorService executor;
+    private final SingleFlight<String, Path> renders = new SingleFlight<>();
+    private final Timer renderTimer;
+
+    @Autowired
+    public ThumbnailService(SessionLayout layout,
+                            PreviewProperties properties,
+                            MemoryGovernor memoryGovernor,
+                            ExecutorService virtualThreadExecutor,
+                            MeterRegistry meterRegistry) {
+        this(layout, properties.getThumbnailDpi(), properties.getThumbnailFormat(),
+            properties.getThumbnailConcurrency(), properties.getThumbnailMaxPixels(),
+            memoryGovernor, virtualThreadExecutor, meterRegistry);
+    }
+
+    ThumbnailService(SessionLayout layout, float dpi, String format, int concurrency, long maxPixels,
+                     MemoryGovernor memoryGovernor, ExecutorService executor, MeterRegistry meterRegistry) {
+        this.layout = layout;
+        this.dpi = dpi;
+        this.format = supportedFormat(format);
+        this.maxPixels = Math.max(1, maxPixels);
+        this.renderPermits = new Semaphore(Math.max(1, concurrency));
+        this.memoryGovernor = memoryGovernor;
+        this.executor = executor;
+        this.renderTimer = Timer.builder("zugferd.thumbnail.render")
+            .description("Dauer des Renderns eines Vorschaubilds")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Startet das Rendern im Hintergrund. Fehler werden nur protokolliert; die Vorschau
+     * wird dann beim ersten Abruf erneut versucht.
+     */
+    public void renderAsync(String sessionId) {
+        render(sessionId).exceptionally(error -> {
+            log.warn("Could not render thumbnail for session {}", sessionId, error);
+            return null;
+        });
+    }
+
+    /**
+     * Liefert das Vorschaubild einer Session. Ist es noch nicht fertig, wird auf das laufende
+     * Rendering gewartet bzw. eines gestartet.
+     *
+     * @return Pfad des Bildes oder leer, wenn die PDF nicht gerendert werden kann
+     */
+    public Optional<Path> thumbnail(String sessionId) {
+        Path target = layout.thumbnail(sessionId, format);
+        if (Files.exists(target)) {
+            return Optional.of(target);
+        }
+        try {
+            return Optional.of(render(sessionId).join());
+        } catch (CompletionException e) {
+            log.debug("No thumbnail available for session {}", sessionId, e.getCause());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * MIME-Type der geschriebenen Vorschaubilder.
+     */
+    public String contentType() {
+        return "image/" + format;
+    }
+
+    CompletableFuture<Path> render(String sessionId) {
+        return renders.execute(sessionId,
+            () -> CompletableFuture.supplyAsync(() -> renderFirstPage(sessionId), executor));
+    }
+
+    private Path renderFirstPage(String sessionId) {
+        Path target = layout.thumbnail(sessionId, format);
+        if (Files.exists(target)) {
+            return target;
+        }
+        Path source = layout.originalPdf(sessionId);
+        renderPermits.acquireUninterruptibly();
+        Timer.Sample sample = Timer.start();
+        Path temp = null;
+        try (PDDocument document = Loader.loadPDF(source.toFile())) {
+            if (document.getNumberOfPages() == 0) {
+                throw new InvoiceProcessingException("PDF enthält keine Seiten");
+            }
+            PDPage page = document.getPage(0);
+            float scale = scale(page);
+            BufferedImage image;
+            try (var reservation = memoryGovernor.reserve(
+                    memoryGovernor.estimateFootprint(Files.size(source), 0) + pixels(page, scale) * BYTES_PER_PIXEL)) {
+                image = new PDFRenderer(document).renderImage(0, scale, ImageType.RGB);
+            }
+
+            // Erst vollständig schreiben, dann umbenennen, damit nie ein halbes Bild ausgeliefert wird
+            temp = Files.createTempFile(target.getParent(), THUMBNAIL_TEMP_PREFIX, ".tmp");
+            if (!ImageIO.write(image, format, temp.toFile())) {
+                throw new IOException("No ImageIO writer for " + format);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            log.debug("Rendered thumbnail for session {} ({}x{})", sessionId, image.getWidth(), image.getHeight());
+            return target;
+        } catch (IOException e) {
+            throw new InvoiceProcessingException("Fehler beim Erstellen des Vorschaubilds", e);
+        } finally {
+            sample.stop(renderTimer);
+            renderPermits.release();
+            deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * Skalierung für die konfigurierte DPI, verkleinert, falls das Bild sonst mehr als
+     * {@code maxPixels} Pixel hätte.
+     */
+    private float scale(PDPage page) {
+        float scale = dpi / POINTS_PER_INCH;
+        long pixels = pixels(page, scale);
+        if (pixels > maxPixels) {
+            scale *= (float) Math.sqrt((double) maxPixels / pixels);
+        }
+        return scale;
+    }
+
+    /**
+     * Geschätzte Pixelzahl der gerenderten Seite. Die UserUnit wird mitgerechnet, damit auch
+     * Seiten mit vergrößerter Einheit unter der Grenze bleiben.
+     */
+    private static long pixels(PDPage page, float scale) {
+        PDRectangle box = page.getCropBox();
+        double unitScale = (double) scale * page.getUserUnit();
+        return (long) Math.ceil(box.getWidth() * unitScale) * (long) Math.ceil(box.getHeight() * unitScale);
+    }
+
+    private static String supportedFormat(String requested) {
+        String normalized = requested == null ? FALLBACK_FORMAT : requested.toLowerCase(Locale.ROOT);
+        if (ImageIO.getImageWritersByFormatName(normalized).hasNext()) {
+            return normalized;
+        }
+        log.info("No ImageIO writer for thumbnail format {}, using {}", normalized, FALLBACK_FORMAT);
+        return FALLBACK_FORMAT;
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.debug("Could not delete {}", path, e);
+        }
+    }
+}
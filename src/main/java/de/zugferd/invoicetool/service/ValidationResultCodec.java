@@ -0,0 +1,104 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.model.ValidationResult;
+import de.zugferd.invoicetool.model.ValidationResult.ValidationError;
+import de.zugferd.invoicetool.model.ValidationResult.ValidationWarning;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binäre Kodierung von Validierungsergebnissen für die Kommunikation mit Worker-Prozessen.
+ * Unplausible Längen und Anzahlen werden beim Lesen als IOException gemeldet, damit ein
+ * aus dem Takt geratener Worker keine riesigen Puffer anlegen lässt.
+ */
+final class ValidationResultCodec {
+
+    private static final int MAX_STRING_BYTES = 16 * 1024 * 1024;
+    private static final int MAX_ENTRIES = 100_000;
+
+    private ValidationResultCodec() {
+    }
+
+    static void write(DataOutput out, ValidationResult result) throws IOException {
+        out.writeBoolean(result.valid());
+        writeNullable(out, result.profileName());
+        out.writeLong(result.processingTimeMs());
+
+        List<ValidationError> errors = result.errors() != null ? result.errors() : List.of();
+        out.writeInt(errors.size());
+        for (ValidationError error : errors) {
+            writeNullable(out, error.ruleId());
+            writeNullable(out, error.specification());
+            writeNullable(out, error.clause());
+            writeNullable(out, error.description());
+            writeNullable(out, error.context());
+        }
+
+        List<ValidationWarning> warnings = result.warnings() != null ? result.warnings() : List.of();
+        out.writeInt(warnings.size());
+        for (ValidationWarning warning : warnings) {
+            writeNullable(out, warning.ruleId());
+            writeNullable(out, warning.message());
+        }
+    }
+
+    static ValidationResult read(DataInput in) throws IOException {
+        boolean valid = in.readBoolean();
+        String profileName = readNullable(in);
+        long processingTimeMs = in.readLong();
+
+        int errorCount = readCount(in);
+        List<ValidationError> errors = new ArrayList<>(errorCount);
+        for (int i = 0; i < errorCount; i++) {
+            errors.add(new ValidationError(
+                readNullable(in), readNullable(in), readNullable(in), readNullable(in), readNullable(in)));
+        }
+
+        int warningCount = readCount(in);
+        List<ValidationWarning> warnings = new ArrayList<>(warningCount);
+        for (int i = 0; i < warningCount; i++) {
+            warnings.add(new ValidationWarning(readNullable(in), readNullable(in)));
+        }
+
+        return new ValidationResult(valid, profileName, List.copyOf(errors), List.copyOf(warnings), processingTimeMs);
+    }
+
+    /**
+     * Schreibt einen String als Längen-präfixiertes UTF-8, da writeUTF auf 64 KB begrenzt ist.
+     */
+    static void writeNullable(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readNullable(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readCount(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > MAX_ENTRIES) {
+            throw new IOException("Invalid entry count: " + count);
+        }
+        return count;
+    }
+}
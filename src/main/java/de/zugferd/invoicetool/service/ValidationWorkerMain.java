@@ -0,0 +1,50 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.model.ValidationResult;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Einstiegspunkt für einen separaten Validierungs-Prozess.
+ * Liest PDF-Pfade von stdin und schreibt kodierte Validierungsergebnisse nach stdout.
+ * Log-Ausgaben werden auf stderr umgeleitet, damit stdout dem Protokoll vorbehalten bleibt.
+ */
+public final class ValidationWorkerMain {
+
+    private ValidationWorkerMain() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        var protocolOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        var protocolIn = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+        System.setOut(System.err);
+
+        VeraPdfValidator validator = new VeraPdfValidator();
+
+        while (true) {
+            String path;
+            try {
+                path = ValidationResultCodec.readNullable(protocolIn);
+            } catch (EOFException e) {
+                // Hauptprozess hat stdin geschlossen
+                return;
+            }
+            if (path == null) {
+                return;
+            }
+
+            ValidationResult result = validator.validate(Path.of(path));
+            ValidationResultCodec.write(protocolOut, result);
+            protocolOut.flush();
+        }
+    }
+}
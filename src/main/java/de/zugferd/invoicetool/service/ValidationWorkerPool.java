@@ -0,0 +1,261 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.ValidationConfig.ValidationProperties;
+import de.zugferd.invoicetool.model.ValidationResult;
+import de.zugferd.invoicetool.model.ValidationResult.ValidationError;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool von separaten JVM-Prozessen für die VeraPDF-Validierung.
+ * Jeder Worker hat ein eigenes Heap-Limit und wird nach einer konfigurierten Anzahl
+ * Dokumenten oder nach einem Absturz (z.B. OutOfMemoryError) neu gestartet.
+ * Die Kommunikation erfolgt über stdin/stdout des Worker-Prozesses.
+ */
+@Service
+public class ValidationWorkerPool {
+
+    private static final Logger log = LoggerFactory.getLogger(ValidationWorkerPool.class);
+
+    /** Exit-Code der JVM bei -XX:+ExitOnOutOfMemoryError. */
+    private static final int OOM_EXIT_CODE = 3;
+    private static final String BOOT_LAUNCHER = "org.springframework.boot.loader.launch.PropertiesLauncher";
+
+    private final ValidationProperties properties;
+    private final Semaphore permits;
+    private final Queue<Worker> idleWorkers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger workerSequence = new AtomicInteger();
+    private final List<String> command;
+
+    @Autowired
+    public ValidationWorkerPool(ValidationProperties properties) {
+        this(properties, workerCommand(properties));
+    }
+
+    ValidationWorkerPool(ValidationProperties properties, List<String> command) {
+        this.properties = properties;
+        this.command = List.copyOf(command);
+        this.permits = new Semaphore(Math.max(1, properties.getWorkerCount()), true);
+    }
+
+    /**
+     * Prüft ob die Validierung in separaten Prozessen erfolgen soll.
+     */
+    public boolean isEnabled() {
+        return properties.isOutOfProcess();
+    }
+
+    /**
+     * Validiert eine PDF-Datei in einem Worker-Prozess.
+     *
+     * @param pdfPath Pfad zur zu validierenden PDF
+     * @return Validierungsergebnis
+     */
+    public ValidationResult validate(Path pdfPath) {
+        long startTime = System.currentTimeMillis();
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return createErrorResult("WORKER_INTERRUPTED",
+                "Validierung wurde abgebrochen",
+                System.currentTimeMillis() - startTime);
+        }
+
+        Worker worker = null;
+        try {
+            worker = borrowWorker();
+            ValidationResult result = worker.validate(pdfPath);
+
+            if (worker.documents >= properties.getWorkerMaxDocuments()) {
+                log.info("Recycling validation worker {} after {} documents", worker.id, worker.documents);
+                worker.retire();
+            } else {
+                idleWorkers.offer(worker);
+            }
+            return result;
+
+        } catch (IOException | RuntimeException e) {
+            // Auch bei fehlerhafter Antwort ist der Protokollzustand des Workers unbekannt, er wird beendet
+            int exitCode = worker != null ? worker.terminate() : -1;
+            if (exitCode == OOM_EXIT_CODE) {
+                log.error("Validation worker ran out of memory while validating {}", pdfPath);
+            } else {
+                log.error("Validation worker failed (exit code {}) while validating {}", exitCode, pdfPath, e);
+            }
+            return createErrorResult("WORKER_FAILED",
+                "Validierungs-Worker ist ausgefallen (Exit-Code " + exitCode + ")",
+                System.currentTimeMillis() - startTime);
+
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Holt einen laufenden Worker aus dem Pool oder startet einen neuen.
+     */
+    private Worker borrowWorker() throws IOException {
+        Worker worker;
+        while ((worker = idleWorkers.poll()) != null) {
+            if (worker.process.isAlive()) {
+                return worker;
+            }
+            log.warn("Discarding dead validation worker {}", worker.id);
+        }
+        return startWorker();
+    }
+
+    private Worker startWorker() throws IOException {
+        int id = workerSequence.incrementAndGet();
+        Process process = new ProcessBuilder(command)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+        log.info("Started validation worker {} (pid {}, heap {})", id, process.pid(), properties.getWorkerHeap());
+        return new Worker(id, process);
+    }
+
+    /**
+     * Baut die Kommandozeile für einen Worker-Prozess mit dem Classpath der Anwendung.
+     * Im ausführbaren Spring-Boot-JAR wird der Worker über den PropertiesLauncher gestartet.
+     */
+    private static List<String> workerCommand(ValidationProperties properties) {
+        String javaBin = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        String classPath = System.getProperty("java.class.path");
+
+        List<String> command = new ArrayList<>(List.of(
+            javaBin,
+            "-Xmx" + properties.getWorkerHeap(),
+            "-XX:+ExitOnOutOfMemoryError",
+            "--enable-preview",
+            "-cp", classPath
+        ));
+        if (!classPath.contains(File.pathSeparator) && classPath.endsWith(".jar")) {
+            command.add("-Dloader.main=" + ValidationWorkerMain.class.getName());
+            command.add(BOOT_LAUNCHER);
+        } else {
+            command.add(ValidationWorkerMain.class.getName());
+        }
+        return command;
+    }
+
+    /**
+     * Anzahl der bisher gestarteten Worker-Prozesse.
+     */
+    int startedWorkers() {
+        return workerSequence.get();
+    }
+
+    /**
+     * Erstellt ein Fehler-Validierungsergebnis ohne VeraPDF im Hauptprozess zu laden.
+     */
+    private ValidationResult createErrorResult(String ruleId, String message, long processingTime) {
+        return ValidationResult.failure(
+            "PDF/A-3B",
+            List.of(new ValidationError(ruleId, "VeraPDF", ruleId, message, null)),
+            List.of(),
+            processingTime
+        );
+    }
+
+    /**
+     * Beendet alle Worker beim Herunterfahren.
+     */
+    @PreDestroy
+    public void shutdown() {
+        Worker worker;
+        while ((worker = idleWorkers.poll()) != null) {
+            worker.retire();
+        }
+    }
+
+    /**
+     * Ein laufender Worker-Prozess.
+     */
+    private final class Worker {
+        private final int id;
+        private final Process process;
+        private final DataOutputStream requests;
+        private final DataInputStream responses;
+        private int documents;
+
+        Worker(int id, Process process) {
+            this.id = id;
+            this.process = process;
+            this.requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.responses = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+
+        /**
+         * Sendet einen Validierungsauftrag. Ein Watchdog beendet den Prozess nach dem Timeout,
+         * wodurch das blockierende Lesen mit einer IOException abbricht.
+         */
+        ValidationResult validate(Path pdfPath) throws IOException {
+            var watchdog = CompletableFuture.runAsync(process::destroyForcibly,
+                CompletableFuture.delayedExecutor(properties.getWorkerTimeoutSeconds(), TimeUnit.SECONDS));
+            try {
+                ValidationResultCodec.writeNullable(requests, pdfPath.toAbsolutePath().toString());
+                requests.flush();
+                ValidationResult result = ValidationResultCodec.read(responses);
+                documents++;
+                return result;
+            } finally {
+                watchdog.cancel(false);
+            }
+        }
+
+        /**
+         * Beendet den Worker regulär durch Schließen von stdin.
+         */
+        void retire() {
+            try {
+                requests.close();
+                if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (IOException e) {
+                process.destroyForcibly();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                process.destroyForcibly();
+            }
+        }
+
+        /**
+         * Beendet den Worker sofort und gibt den Exit-Code zurück.
+         */
+        int terminate() {
+            try {
+                if (!process.waitFor(1, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                    process.waitFor(5, TimeUnit.SECONDS);
+                }
+                return process.isAlive() ? -1 : process.exitValue();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                process.destroyForcibly();
+                return -1;
+            }
+        }
+    }
+}
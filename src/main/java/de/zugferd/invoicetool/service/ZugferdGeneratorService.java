@@ -46,11 +46,23 @@ public class ZugferdGeneratorService {
      * @param metadata Rechnungsmetadaten
      */
     public void generateInvoice(Path inputPdfPath, Path outputPdfPath, InvoiceMetadata metadata) {
+        generateInvoice(inputPdfPath, outputPdfPath, metadata, () -> {});
+    }
+    
+    /**
+     * Wie {@link #generateInvoice(Path, Path, InvoiceMetadata)}, meldet zusätzlich das Ende der
+     * PDF/A-3-Konvertierung, z.B. für die Fortschrittsanzeige.
+     *
+     * @param onConverted Wird nach der Konvertierung und vor dem ZUGFeRD-Export aufgerufen
+     */
+    public void generateInvoice(Path inputPdfPath, Path outputPdfPath, InvoiceMetadata metadata,
+                                Runnable onConverted) {
         log.info("Generating ZUGFeRD invoice: {} -> {}", inputPdfPath, outputPdfPath);
         
         try (ZUGFeRDExporterFromA3 exporter = new ZUGFeRDExporterFromA3()) {
             // Zuerst PDF/A-3 konvertieren
             Path pdfA3Path = pdfA3ConverterService.convertToPdfA3(inputPdfPath);
+            onConverted.run();
             
             // Output-Verzeichnis erstellen
             Files.createDirectories(outputPdfPath.getParent());
@@ -1,76 +1,230 @@
 package de.zugferd.invoicetool.util;
 
 import de.zugferd.invoicetool.config.StorageConfig.StorageProperties;
-import de.zugferd.invoicetool.model.ProcessingStatus;
+import de.zugferd.invoicetool.service.SessionExpiryIndex;
+import de.zugferd.invoicetool.service.SessionStore;
+import de.zugferd.invoicetool.service.SessionSummary;
 import de.zugferd.invoicetool.service.StorageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Scheduled Task für die automatische Bereinigung alter Sessions.
+ * Fällige Sessions kommen aus dem {@link SessionExpiryIndex} und werden in kleinen Stapeln
+ * parallel auf Virtual Threads gelöscht. Anzahl gleichzeitiger Löschungen und Löschrate sind
+ * begrenzt, damit die Bereinigung die Platte nicht für laufende Anfragen blockiert.
  */
 @Component
 public class FileCleanupScheduler {
     
     private static final Logger log = LoggerFactory.getLogger(FileCleanupScheduler.class);
+    private static final Duration RETRY_DELAY = Duration.ofMinutes(1);
     
     private final StorageService storageService;
     private final StorageProperties storageProperties;
+    private final SessionExpiryIndex expiryIndex;
+    private final ExecutorService executor;
+    private final Semaphore deletionPermits;
+    private final TokenBucket deletionRate;
+    private final AtomicBoolean batchRunning = new AtomicBoolean();
     
-    public FileCleanupScheduler(StorageService storageService, StorageProperties storageProperties) {
+    public FileCleanupScheduler(StorageService storageService,
+                                StorageProperties storageProperties,
+                                SessionExpiryIndex expiryIndex,
+                                ExecutorService virtualThreadExecutor) {
         this.storageService = storageService;
         this.storageProperties = storageProperties;
+        this.expiryIndex = expiryIndex;
+        this.executor = virtualThreadExecutor;
+        this.deletionPermits = new Semaphore(Math.max(1, storageProperties.getCleanupParallelism()));
+        double deletesPerSecond = Math.max(1, storageProperties.getCleanupDeletesPerSecond());
+        this.deletionRate = new TokenBucket(deletesPerSecond, deletesPerSecond);
     }
     
     /**
-     * Bereinigt abgelaufene Sessions in regelmäßigen Abständen.
-     * Standard: alle 5 Minuten.
+     * Gleicht beim Start die wiederhergestellten Sessions mit dem Dateisystem ab.
+     * Der Ablauf-Index wird auf jedem Knoten aufgebaut; unterbrochene Verarbeitungen und
+     * verwaiste Verzeichnisse behandelt nur der Knoten mit der Wartungssperre.
      */
-    @Scheduled(fixedRateString = "#{${storage.cleanup-interval-minutes:5} * 60000}")
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileAfterStartup() {
+        var maintenanceLock = storageService.tryLockMaintenance();
+        if (maintenanceLock.isEmpty()) {
+            log.debug("Startup reconciliation skipped, another node holds the maintenance lock");
+            storageService.rebuildExpiryIndex();
+            storageService.rebuildDiskUsage();
+            return;
+        }
+        try (var lock = maintenanceLock.get()) {
+            int interrupted = storageService.failInterruptedSessions();
+            int indexed = storageService.rebuildExpiryIndex();
+            int orphaned = storageService.deleteOrphanedDirectories();
+            long usedBytes = storageService.rebuildDiskUsage();
+            log.info("Startup reconciliation: {} sessions restored, {} interrupted, {} orphaned directories removed, {} bytes in use",
+                indexed, interrupted, orphaned, usedBytes);
+        }
+    }
+    
+    /**
+     * Löscht fällige Sessions aus dem Ablauf-Index.
+     * Ein Stapel läuft im Hintergrund; solange er nicht abgeschlossen ist, wird kein weiterer gestartet.
+     */
+    @Scheduled(fixedDelayString = "${storage.expiry-poll-millis:10000}")
     public void cleanupExpiredSessions() {
-        log.debug("Running scheduled cleanup of expired sessions");
+        if (!batchRunning.compareAndSet(false, true)) {
+            return;
+        }
         
-        int retentionMinutes = storageProperties.getFileRetentionMinutes();
-        Instant expirationThreshold = Instant.now().minus(Duration.ofMinutes(retentionMinutes));
+        var maintenanceLock = storageService.tryLockMaintenance();
+        if (maintenanceLock.isEmpty()) {
+            log.debug("Cleanup skipped, another node holds the maintenance lock");
+            batchRunning.set(false);
+            return;
+        }
         
-        int cleanedCount = 0;
+        List<String> expired = expiryIndex.pollExpired(storageProperties.getCleanupBatchSize());
+        if (expired.isEmpty()) {
+            finishBatch(maintenanceLock.get());
+            return;
+        }
         
-        for (String sessionId : storageService.getAllSessionIds()) {
-            try {
-                var statusOpt = storageService.getStatus(sessionId);
-                if (statusOpt.isEmpty()) {
-                    continue;
-                }
-                
-                ProcessingStatus status = statusOpt.get();
-                
-                // Session löschen wenn:
-                // 1. Sie bereits heruntergeladen wurde
-                // 2. Sie älter als die Retention-Zeit ist
-                boolean shouldClean = switch (status) {
-                    case ProcessingStatus.Downloaded p -> true;
-                    default -> status.timestamp().isBefore(expirationThreshold);
-                };
-                
-                if (shouldClean) {
-                    storageService.deleteSession(sessionId);
-                    cleanedCount++;
-                    log.info("Cleaned up session: {} (status: {})", 
-                        sessionId, status.getClass().getSimpleName());
+        log.debug("Cleaning up {} expired sessions", expired.size());
+        var deletions = expired.stream()
+            .map(sessionId -> CompletableFuture.supplyAsync(() -> deleteIfExpired(sessionId), executor))
+            .toList();
+        
+        CompletableFuture.allOf(deletions.toArray(CompletableFuture[]::new))
+            .whenComplete((ignored, error) -> {
+                long cleanedCount = deletions.stream()
+                    .filter(deletion -> Boolean.TRUE.equals(deletion.getNow(false)))
+                    .count();
+                if (cleanedCount > 0) {
+                    log.info("Cleanup completed: {} sessions removed", cleanedCount);
                 }
-                
-            } catch (Exception e) {
-                log.error("Error cleaning up session: {}", sessionId, e);
+                finishBatch(maintenanceLock.get());
+            });
+    }
+    
+    /**
+     * Periodische Wartung: fehlgeschlagene Löschungen wiederholen, Speicherbudget durchsetzen
+     * und Blobs ohne Verweis entfernen.
+     * Bei einem gemeinsamen Session-Store übernimmt jeder Knoten zuvor die Änderungen anderer
+     * Knoten in Ablauf-Index und Speicherbuchhaltung, damit er nach Erhalt der Wartungssperre
+     * alle Sessions kennt.
+     * Standard: alle 5 Minuten.
+     */
+    @Scheduled(fixedRateString = "#{${storage.cleanup-interval-minutes:5} * 60000}")
+    public void runMaintenance() {
+        if (storageService.isSharedStore()) {
+            storageService.syncSharedChanges();
+        }
+        var maintenanceLock = storageService.tryLockMaintenance();
+        if (maintenanceLock.isEmpty()) {
+            return;
+        }
+        try (var lock = maintenanceLock.get()) {
+            int retried = storageService.retryIncompleteDeletions();
+            if (retried > 0) {
+                log.info("Completed {} previously failed session deletions", retried);
             }
+            int evicted = storageService.enforceDiskBudget();
+            if (evicted > 0) {
+                log.info("Storage budget exceeded: {} sessions evicted", evicted);
+            }
+            storageService.collectUnreferencedBlobs();
         }
-        
-        if (cleanedCount > 0) {
-            log.info("Cleanup completed: {} sessions removed", cleanedCount);
+    }
+    
+    /**
+     * Überführt Sessions aus dem alten flachen Layout schrittweise in das gesharderte Layout.
+     * Läuft im Hintergrund, bis keine Altverzeichnisse mehr vorhanden sind.
+     */
+    @Scheduled(initialDelay = 30_000, fixedDelayString = "${storage.expiry-poll-millis:10000}")
+    public void migrateLegacyLayout() {
+        var maintenanceLock = storageService.tryLockMaintenance();
+        if (maintenanceLock.isEmpty()) {
+            return;
+        }
+        try (var lock = maintenanceLock.get()) {
+            int migrated = storageService.migrateLegacySessions(storageProperties.getLayoutMigrationBatchSize());
+            if (migrated > 0) {
+                log.info("Layout migration: {} sessions moved to the sharded layout", migrated);
+            }
+        }
+    }
+    
+    /**
+     * Löscht eine Session, sofern ihr aktueller Status noch abgelaufen ist.
+     * Hat sich der Status seit dem Einreihen geändert, wird sie mit der neuen Ablaufzeit eingereiht.
+     * Schlägt die Löschung fehl oder wird sie unterbrochen, wird die Session erneut eingereiht.
+     */
+    private boolean deleteIfExpired(String sessionId) {
+        try {
+            deletionPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            retryLater(sessionId);
+            return false;
         }
+        try {
+            var summaryOpt = storageService.getSummary(sessionId);
+            if (summaryOpt.isEmpty()) {
+                return false;
+            }
+            SessionSummary summary = summaryOpt.get();
+            if (!expiryIndex.isExpired(summary, Instant.now())) {
+                // Status wurde z.B. auf einem anderen Knoten geändert, mit der neuen Ablaufzeit einreihen
+                expiryIndex.schedule(summary);
+                return false;
+            }
+            
+            awaitDeletionRate();
+            if (!storageService.deleteSessionIfUnchanged(summary)) {
+                // Status hat sich seit der Prüfung geändert, der neue Index-Eintrag gilt
+                return false;
+            }
+            log.info("Cleaned up session: {} (status: {})", 
+                sessionId, summary.type().getSimpleName());
+            return true;
+            
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            retryLater(sessionId);
+            return false;
+        } catch (Exception e) {
+            log.error("Error cleaning up session: {}", sessionId, e);
+            retryLater(sessionId);
+            return false;
+        } finally {
+            deletionPermits.release();
+        }
+    }
+    
+    private void retryLater(String sessionId) {
+        expiryIndex.scheduleAt(sessionId, Instant.now().plus(RETRY_DELAY));
+    }
+    
+    private void awaitDeletionRate() throws InterruptedException {
+        long pauseMillis = Math.max(1, (long) (1000 / Math.max(1, storageProperties.getCleanupDeletesPerSecond())));
+        while (!deletionRate.tryConsume(1)) {
+            Thread.sleep(pauseMillis);
+        }
+    }
+    
+    private void finishBatch(SessionStore.MaintenanceLock lock) {
+        lock.close();
+        batchRunning.set(false);
     }
 }
@@ -0,0 +1,27 @@
+package de.zugferd.invoicetool.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/**
+ * Erzeugt ETags für generierte Dateien.
+ */
+public final class FileETags {
+
+    private FileETags() {
+    }
+
+    /**
+     * Starker ETag aus Dateischlüssel, Größe und Änderungszeit.
+     * Generierte Dateien werden nie an Ort und Stelle verändert, sondern neu angelegt.
+     */
+    public static String strongETag(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return "\"" + Long.toHexString(attributes.size())
+            + "-" + Long.toHexString(attributes.lastModifiedTime().toMillis())
+            + "-" + Integer.toHexString(Objects.hashCode(attributes.fileKey())) + "\"";
+    }
+}
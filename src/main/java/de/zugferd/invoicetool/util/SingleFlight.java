@@ -0,0 +1,87 @@
+package de.zugferd.invoicetool.util;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Fasst gleichzeitige Aufrufe mit demselben Schlüssel zu einer Ausführung zusammen.
+ * Solange eine Ausführung läuft, erhalten alle weiteren Aufrufer dasselbe Future.
+ * Nach Abschluss wird der Schlüssel freigegeben, bevor das Ergebnis gesetzt wird,
+ * sodass ein Aufrufer, der auf das Ergebnis reagiert, eine neue Ausführung starten kann.
+ * Optional wird das Argument der Ausführung mitgeführt; Aufrufer mit abweichendem Argument
+ * schließen sich dann nicht an, sondern werden abgewiesen.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Startet die Ausführung, falls für den Schlüssel keine läuft, und schließt sich sonst der laufenden an.
+     *
+     * @param key Schlüssel, z.B. die Session-ID
+     * @param call Startet die eigentliche Ausführung
+     * @return Future mit dem gemeinsamen Ergebnis
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        return execute(key, null, () -> new IllegalStateException("Conflicting call for " + key), call);
+    }
+
+    /**
+     * Wie {@link #execute(Object, Supplier)}, schließt sich einer laufenden Ausführung aber nur an,
+     * wenn sie mit einem gleichen Argument gestartet wurde.
+     *
+     * @param argument Eingabe der Ausführung, verglichen per {@code equals}
+     * @param conflict Liefert die Exception für einen Aufruf mit abweichendem Argument
+     */
+    public CompletableFuture<V> execute(K key, Object argument, Supplier<? extends RuntimeException> conflict,
+                                        Supplier<CompletableFuture<V>> call) {
+        var candidate = new Flight<V>(argument, new CompletableFuture<>());
+        Flight<V> existing = inFlight.putIfAbsent(key, candidate);
+        if (existing != null) {
+            if (!Objects.equals(existing.argument(), argument)) {
+                throw conflict.get();
+            }
+            coalesced.incrementAndGet();
+            return existing.future();
+        }
+
+        try {
+            call.get().whenComplete((result, error) -> {
+                inFlight.remove(key, candidate);
+                if (error != null) {
+                    candidate.future().completeExceptionally(error);
+                } else {
+                    candidate.future().complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, candidate);
+            candidate.future().completeExceptionally(e);
+        }
+        return candidate.future();
+    }
+
+    /**
+     * Prüft ob für den Schlüssel eine Ausführung läuft.
+     */
+    public boolean isInFlight(K key) {
+        return inFlight.containsKey(key);
+    }
+
+    /**
+     * Anzahl der Aufrufe, die sich einer laufenden Ausführung angeschlossen haben.
+     */
+    public long coalescedCount() {
+        return coalesced.get();
+    }
+
+    public int size() {
+        return inFlight.size();
+    }
+
+    private record Flight<V>(Object argument, CompletableFuture<V> future) {}
+}
@@ -0,0 +1,77 @@
+package de.zugferd.invoicetool.util;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Einfacher Token-Bucket für die Ratenbegrenzung.
+ * Tokens werden kontinuierlich mit der konfigurierten Rate aufgefüllt, bis die Kapazität erreicht ist.
+ */
+public class TokenBucket {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private final double capacity;
+    private final double refillPerSecond;
+    private final LongSupplier nanoClock;
+
+    private double tokens;
+    private long lastRefillNanos;
+    private volatile long lastAccessNanos;
+
+    public TokenBucket(double capacity, double refillPerSecond) {
+        this(capacity, refillPerSecond, System::nanoTime);
+    }
+
+    public TokenBucket(double capacity, double refillPerSecond, LongSupplier nanoClock) {
+        if (capacity <= 0 || refillPerSecond <= 0) {
+            throw new IllegalArgumentException("Capacity and refill rate must be positive");
+        }
+        this.capacity = capacity;
+        this.refillPerSecond = refillPerSecond;
+        this.nanoClock = nanoClock;
+        this.tokens = capacity;
+        this.lastRefillNanos = nanoClock.getAsLong();
+        this.lastAccessNanos = lastRefillNanos;
+    }
+
+    /**
+     * Versucht die angegebene Anzahl Tokens zu entnehmen.
+     *
+     * @param amount Anzahl der benötigten Tokens
+     * @return true wenn genügend Tokens vorhanden waren
+     */
+    public synchronized boolean tryConsume(double amount) {
+        refill();
+        if (amount > tokens) {
+            return false;
+        }
+        tokens -= amount;
+        return true;
+    }
+
+    /**
+     * Sekunden bis die angegebene Anzahl Tokens wieder verfügbar ist.
+     */
+    public synchronized long secondsUntilAvailable(double amount) {
+        refill();
+        double missing = Math.min(amount, capacity) - tokens;
+        return missing <= 0 ? 0 : (long) Math.ceil(missing / refillPerSecond);
+    }
+
+    /**
+     * Prüft ob der Bucket seit der angegebenen Zeit nicht mehr verwendet wurde.
+     */
+    public boolean isIdleSince(long nanos) {
+        return lastAccessNanos < nanos;
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        double elapsedSeconds = (now - lastRefillNanos) / NANOS_PER_SECOND;
+        if (elapsedSeconds > 0) {
+            tokens = Math.min(capacity, tokens + elapsedSeconds * refillPerSecond);
+            lastRefillNanos = now;
+        }
+        lastAccessNanos = now;
+    }
+}
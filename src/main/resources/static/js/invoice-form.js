@@ -2,8 +2,18 @@
  * Invoice Form - Dynamic form handling
  */
 
+/**
+ * Rounds an amount to cents (half up), like InvoiceItem on the server.
+ * @param {number} value - The amount
+ * @returns {number} Rounded amount
+ */
+function roundCents(value) {
+    return Math.round((value + Number.EPSILON) * 100) / 100;
+}
+
 /**
  * Calculates and updates all totals in the invoice form.
+ * Net and VAT are rounded per line, so the totals match the generated invoice.
  */
 function calculateTotals() {
     let totalNet = 0;
@@ -22,8 +32,8 @@ function calculateTotals() {
             const price = parseFloat(priceInput.value) || 0;
             const vatRate = parseFloat(vatSelect.value) || 0;
             
-            const net = qty * price;
-            const vat = net * vatRate / 100;
+            const net = roundCents(qty * price);
+            const vat = roundCents(net * vatRate / 100);
             
             if (netDisplay) {
                 netDisplay.value = net.toFixed(2);
@@ -44,6 +54,123 @@ function calculateTotals() {
     if (totalGrossEl) totalGrossEl.textContent = (totalNet + totalVat).toFixed(2);
 }
 
+/**
+ * Returns a localized validation message provided by the page, or the fallback.
+ * @param {string} key - Key in the page's itemMessages object
+ * @param {string} fallback - Message if the page provides none
+ * @returns {string} The message
+ */
+function itemMessage(key, fallback) {
+    if (typeof itemMessages !== 'undefined' && itemMessages[key]) {
+        return itemMessages[key];
+    }
+    return fallback;
+}
+
+/**
+ * Checks a line item against the same constraints as InvoiceItem on the server
+ * (description required, quantity >= 0.001, unit price >= 0) and reports
+ * violations through the browser's constraint validation.
+ * @param {HTMLTableRowElement} row - The item row
+ * @returns {boolean} True if the row is valid
+ */
+function validateItemRow(row) {
+    const description = row.querySelector('.item-description');
+    const qtyInput = row.querySelector('.item-quantity');
+    const priceInput = row.querySelector('.item-price');
+    
+    if (description) {
+        description.setCustomValidity(description.value.trim() === ''
+            ? itemMessage('description', 'Beschreibung ist erforderlich') : '');
+    }
+    if (qtyInput) {
+        const qty = parseFloat(qtyInput.value);
+        if (qtyInput.value === '' || isNaN(qty)) {
+            qtyInput.setCustomValidity(itemMessage('quantityRequired', 'Menge ist erforderlich'));
+        } else if (qty < 0.001) {
+            qtyInput.setCustomValidity(itemMessage('quantityPositive', 'Menge muss positiv sein'));
+        } else {
+            qtyInput.setCustomValidity('');
+        }
+    }
+    if (priceInput) {
+        const price = parseFloat(priceInput.value);
+        if (priceInput.value === '' || isNaN(price)) {
+            priceInput.setCustomValidity(itemMessage('unitPriceRequired', 'Einzelpreis ist erforderlich'));
+        } else if (price < 0) {
+            priceInput.setCustomValidity(itemMessage('unitPricePositive', 'Einzelpreis muss positiv sein'));
+        } else {
+            priceInput.setCustomValidity('');
+        }
+    }
+    
+    return Array.from(row.querySelectorAll('input, select')).every(function(el) {
+        return el.checkValidity();
+    });
+}
+
+/**
+ * Renumbers the item rows so the field names stay contiguous (items[0], items[1], ...)
+ * and Spring binds exactly the rows shown. Enables the remove buttons only if more
+ * than one row exists.
+ */
+function renumberItems() {
+    const rows = document.querySelectorAll('#itemsBody tr');
+    
+    rows.forEach(function(row, index) {
+        row.id = 'item-row-' + index;
+        row.querySelectorAll('[name^="items["]').forEach(function(el) {
+            el.name = el.name.replace(/^items\[\d+\]/, 'items[' + index + ']');
+            if (el.id) {
+                el.id = el.id.replace(/^items\d+/, 'items' + index);
+            }
+        });
+        row.querySelectorAll('[id^="item-net-"]').forEach(function(el) {
+            el.id = 'item-net-' + index;
+        });
+        const removeButton = row.querySelector('.item-remove');
+        if (removeButton) {
+            removeButton.disabled = rows.length === 1;
+        }
+    });
+}
+
+/**
+ * Appends an empty line item from the row template and focuses its description.
+ */
+function addItem() {
+    const template = document.getElementById('itemRowTemplate');
+    const body = document.getElementById('itemsBody');
+    if (!template || !body) return;
+    
+    const index = body.querySelectorAll('tr').length;
+    const html = template.innerHTML.replace(/__index__/g, String(index));
+    body.insertAdjacentHTML('beforeend', html);
+    
+    renumberItems();
+    calculateTotals();
+    
+    const row = body.lastElementChild;
+    const description = row && row.querySelector('.item-description');
+    if (description) {
+        description.focus();
+    }
+}
+
+/**
+ * Removes the line item containing the given element. The last row is kept.
+ * @param {HTMLElement} element - An element inside the row
+ */
+function removeItem(element) {
+    const row = element.closest('tr');
+    const body = document.getElementById('itemsBody');
+    if (!row || !body || body.querySelectorAll('tr').length <= 1) return;
+    
+    row.remove();
+    renumberItems();
+    calculateTotals();
+}
+
 /**
  * Formats a number as currency.
  * @param {number} value - The value to format
@@ -112,11 +239,31 @@ document.addEventListener('DOMContentLoaded', function() {
     // Calculate totals on page load
     calculateTotals();
     
-    // Add event listeners for quantity, price, and VAT changes
-    document.querySelectorAll('.item-quantity, .item-price, .item-vat').forEach(function(el) {
-        el.addEventListener('change', calculateTotals);
-        el.addEventListener('input', calculateTotals);
-    });
+    // Line items: one delegated listener covers server-rendered and added rows
+    const itemsBody = document.getElementById('itemsBody');
+    if (itemsBody) {
+        const onItemChange = function(e) {
+            const row = e.target.closest('tr');
+            if (row) {
+                validateItemRow(row);
+            }
+            calculateTotals();
+        };
+        itemsBody.addEventListener('input', onItemChange);
+        itemsBody.addEventListener('change', onItemChange);
+        itemsBody.addEventListener('click', function(e) {
+            const removeButton = e.target.closest('.item-remove');
+            if (removeButton) {
+                removeItem(removeButton);
+            }
+        });
+        itemsBody.querySelectorAll('tr').forEach(validateItemRow);
+    }
+    
+    const addItemButton = document.getElementById('addItemBtn');
+    if (addItemButton) {
+        addItemButton.addEventListener('click', addItem);
+    }
     
     // IBAN formatting
     const ibanInput = document.querySelector('input[name="bankIban"]');
@@ -158,7 +305,20 @@ document.addEventListener('DOMContentLoaded', function() {
             const items = document.querySelectorAll('#itemsBody tr');
             if (items.length === 0) {
                 e.preventDefault();
-                alert('Bitte fügen Sie mindestens eine Rechnungsposition hinzu.');
+                alert(itemMessage('itemsRequired', 'Bitte fügen Sie mindestens eine Rechnungsposition hinzu.'));
+                return false;
+            }
+            
+            // Validate line items like the server does
+            const invalidRow = Array.from(items).find(function(row) {
+                return !validateItemRow(row);
+            });
+            if (invalidRow) {
+                e.preventDefault();
+                const invalidField = invalidRow.querySelector(':invalid');
+                if (invalidField) {
+                    invalidField.reportValidity();
+                }
                 return false;
             }
             
@@ -0,0 +1,66 @@
+package de.zugferd.invoicetool.config;
+
+import de.zugferd.invoicetool.controller.LocaleController;
+import de.zugferd.invoicetool.service.RateLimitService;
+import de.zugferd.invoicetool.service.StorageService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Integration tests for WebConfig.
+ */
+@WebMvcTest(LocaleController.class)
+class WebConfigTest {
+
+    private static final Pattern FINGERPRINTED_FONT =
+        Pattern.compile("url\\('(noto-sans-400-latin-[0-9a-f]{32}\\.woff2)'\\)");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private RateLimitService rateLimitService;
+
+    @MockitoBean
+    private StorageService storageService;
+
+    @Test
+    @DisplayName("Font URLs in the stylesheet should be rewritten to immutable fingerprinted URLs")
+    void shouldServeFingerprintedFontUrls() throws Exception {
+        // Given: der Browser akzeptiert komprimierte Varianten
+        String css = mockMvc.perform(get("/fonts/noto-sans.css")
+                .header(HttpHeaders.ACCEPT_ENCODING, "br, gzip"))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString();
+
+        // When
+        Matcher matcher = FINGERPRINTED_FONT.matcher(css);
+        assertTrue(matcher.find(), "Font URL was not fingerprinted: " + css);
+
+        // Then
+        mockMvc.perform(get("/fonts/" + matcher.group(1)))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.CACHE_CONTROL, containsString("immutable")));
+    }
+
+    @Test
+    @DisplayName("Resources requested without a fingerprint should be revalidated")
+    void shouldRevalidateUnversionedResources() throws Exception {
+        mockMvc.perform(get("/fonts/noto-sans.css"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"));
+    }
+}
@@ -0,0 +1,207 @@
+package de.zugferd.invoicetool.controller;
+
+import de.zugferd.invoicetool.service.GeneratedPdfCache;
+import de.zugferd.invoicetool.service.InvoiceService;
+import de.zugferd.invoicetool.service.PageRangeService;
+import de.zugferd.invoicetool.service.RateLimitService;
+import de.zugferd.invoicetool.service.StorageService;
+import de.zugferd.invoicetool.service.ThumbnailService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Integration tests for DownloadController.
+ */
+@WebMvcTest(DownloadController.class)
+class DownloadControllerTest {
+
+    private static final String SESSION_ID = "download-session";
+    private static final String CONTENT = "%PDF-1.7 generated invoice";
+
+    @TempDir
+    Path tempDir;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private InvoiceService invoiceService;
+
+    @MockitoBean
+    private GeneratedPdfCache pdfCache;
+
+    @MockitoBean
+    private StorageService storageService;
+
+    @MockitoBean
+    private RateLimitService rateLimitService;
+
+    @MockitoBean
+    private ThumbnailService thumbnailService;
+
+    @MockitoBean
+    private PageRangeService pageRangeService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path pdf = Files.writeString(tempDir.resolve("e-invoice.pdf"), CONTENT, StandardCharsets.US_ASCII);
+        when(invoiceService.downloadInvoice(SESSION_ID)).thenReturn(pdf);
+        when(invoiceService.getInvoicePath(SESSION_ID)).thenReturn(pdf);
+        when(invoiceService.getDownloadFilename(SESSION_ID)).thenReturn("E-Rechnung_1.pdf");
+    }
+
+    @Test
+    @DisplayName("Should stream the PDF with a strong ETag")
+    void shouldStreamPdfWithETag() throws Exception {
+        mockMvc.perform(get("/download/{sessionId}", SESSION_ID))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/pdf"))
+            .andExpect(header().string(HttpHeaders.ETAG, startsWith("\"")))
+            .andExpect(content().string(CONTENT));
+    }
+
+    @Test
+    @DisplayName("Should answer a repeated preview with 304 Not Modified")
+    void shouldReturnNotModifiedForRepeatedPreview() throws Exception {
+        // Given
+        String etag = mockMvc.perform(get("/preview/{sessionId}", SESSION_ID))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // When/Then
+        mockMvc.perform(get("/preview/{sessionId}", SESSION_ID).header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified());
+    }
+
+    @Test
+    @DisplayName("Should serve byte ranges")
+    void shouldServeByteRanges() throws Exception {
+        mockMvc.perform(get("/download/{sessionId}", SESSION_ID).header(HttpHeaders.RANGE, "bytes=0-4"))
+            .andExpect(status().isPartialContent())
+            .andExpect(content().string("%PDF-"));
+    }
+
+    @Test
+    @DisplayName("Preview should not mark the session as downloaded")
+    void previewShouldNotMarkDownloaded() throws Exception {
+        mockMvc.perform(get("/preview/{sessionId}", SESSION_ID))
+            .andExpect(status().isOk());
+
+        verify(invoiceService, never()).downloadInvoice(any());
+    }
+
+    @Test
+    @DisplayName("Should serve a freshly generated PDF from the cache")
+    void shouldServeFromCache() throws Exception {
+        // Given
+        var cached = new GeneratedPdfCache.CachedPdf(
+            ByteBuffer.wrap("%PDF-1.7 cached".getBytes(StandardCharsets.US_ASCII)), "\"cached\"");
+        when(pdfCache.get(SESSION_ID)).thenReturn(Optional.of(cached));
+
+        // When/Then
+        mockMvc.perform(get("/preview/{sessionId}", SESSION_ID))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"cached\""))
+            .andExpect(content().string("%PDF-1.7 cached"));
+    }
+
+    @Test
+    @DisplayName("Should serve the first-page thumbnail with a private cache header")
+    void shouldServeThumbnail() throws Exception {
+        // Given
+        Path thumbnail = Files.write(tempDir.resolve("thumbnail.png"), new byte[]{(byte) 0x89, 'P', 'N', 'G'});
+        when(thumbnailService.thumbnail(SESSION_ID)).thenReturn(Optional.of(thumbnail));
+        when(thumbnailService.contentType()).thenReturn("image/png");
+
+        // When/Then
+        mockMvc.perform(get("/preview/{sessionId}/thumbnail", SESSION_ID))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "image/png"))
+            .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=1800, private"))
+            .andExpect(header().string(HttpHeaders.ETAG, startsWith("\"")));
+    }
+
+    @Test
+    @DisplayName("Should answer 404 if no thumbnail can be rendered")
+    void shouldReturnNotFoundWithoutThumbnail() throws Exception {
+        // Given
+        when(thumbnailService.thumbnail(SESSION_ID)).thenReturn(Optional.empty());
+
+        // When/Then
+        mockMvc.perform(get("/preview/{sessionId}/thumbnail", SESSION_ID))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("Should serve an extracted page range inline")
+    void shouldServePageRange() throws Exception {
+        // Given
+        Path range = Files.writeString(tempDir.resolve("pages-3-5.pdf"), "%PDF-1.7 pages", StandardCharsets.US_ASCII);
+        when(pageRangeService.maxPages()).thenReturn(50);
+        when(pageRangeService.extract(eq(SESSION_ID), any(), eq(3), eq(5))).thenReturn(Optional.of(range));
+
+        // When/Then
+        mockMvc.perform(get("/preview/{sessionId}/pages/3-5", SESSION_ID))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/pdf"))
+            .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, startsWith("inline")))
+            .andExpect(content().string("%PDF-1.7 pages"));
+    }
+
+    @Test
+    @DisplayName("Should answer a repeated page range request with 304 even after the cache touched the extract")
+    void shouldReturnNotModifiedForRepeatedPageRange() throws Exception {
+        // Given
+        Path range = Files.writeString(tempDir.resolve("pages-3-5.pdf"), "%PDF-1.7 pages", StandardCharsets.US_ASCII);
+        when(pageRangeService.maxPages()).thenReturn(50);
+        when(pageRangeService.extract(eq(SESSION_ID), any(), eq(3), eq(5))).thenReturn(Optional.of(range));
+        String etag = mockMvc.perform(get("/preview/{sessionId}/pages/3-5", SESSION_ID))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        Files.setLastModifiedTime(range, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+
+        // When/Then
+        mockMvc.perform(get("/preview/{sessionId}/pages/3-5", SESSION_ID).header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified());
+        verify(pageRangeService, times(1)).extract(any(), any(), anyInt(), anyInt());
+    }
+
+    @Test
+    @DisplayName("Should reject page ranges that are reversed or too large")
+    void shouldRejectInvalidPageRange() throws Exception {
+        // Given
+        when(pageRangeService.maxPages()).thenReturn(50);
+
+        // When/Then
+        mockMvc.perform(get("/preview/{sessionId}/pages/5-3", SESSION_ID))
+            .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/preview/{sessionId}/pages/1-51", SESSION_ID))
+            .andExpect(status().isBadRequest());
+        verify(pageRangeService, never()).extract(any(), any(), anyInt(), anyInt());
+    }
+}
@@ -2,19 +2,28 @@ package de.zugferd.invoicetool.controller;
 
 import de.zugferd.invoicetool.model.ProcessingStatus;
 import de.zugferd.invoicetool.service.InvoiceService;
+import de.zugferd.invoicetool.service.RateLimitService;
 import de.zugferd.invoicetool.service.StorageService;
+import de.zugferd.invoicetool.service.ThumbnailService;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.time.Instant;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -34,6 +43,18 @@ class InvoiceControllerTest {
     @MockitoBean
     private InvoiceService invoiceService;
     
+    @MockitoBean
+    private RateLimitService rateLimitService;
+    
+    @MockitoBean
+    private ThumbnailService thumbnailService;
+    
+    @BeforeEach
+    void setUp() {
+        when(rateLimitService.tryAcquireUpload(any(), anyLong())).thenReturn(true);
+        when(rateLimitService.tryAcquireGeneration(any())).thenReturn(true);
+    }
+    
     @Test
     @DisplayName("Should display index page")
     void shouldDisplayIndexPage() throws Exception {
@@ -60,6 +81,40 @@ class InvoiceControllerTest {
         mockMvc.perform(multipart("/upload").file(file))
             .andExpect(status().is3xxRedirection())
             .andExpect(redirectedUrl("/metadata/" + sessionId));
+        verify(thumbnailService).renderAsync(sessionId);
+    }
+    
+    @Test
+    @DisplayName("Should accept a raw PDF body and return the new session")
+    void shouldHandleRawPdfUpload() throws Exception {
+        // Given
+        String sessionId = "raw-session-123";
+        when(storageService.createSession(any(InputStream.class), eq("rechnung.pdf"), anyLong()))
+            .thenReturn(sessionId);
+        
+        // When/Then
+        mockMvc.perform(post("/upload")
+                .contentType(MediaType.APPLICATION_PDF)
+                .header("X-Filename", "rechnung.pdf")
+                .content("%PDF-1.4 test content".getBytes()))
+            .andExpect(status().isCreated())
+            .andExpect(header().string("Location", "/metadata/" + sessionId))
+            .andExpect(jsonPath("$.sessionId").value(sessionId));
+    }
+    
+    @Test
+    @DisplayName("Should reject uploads whose Content-Length exceeds the limit before reading them")
+    void shouldRejectOversizeUploadEarly() throws Exception {
+        // Given
+        when(storageService.getMaxUploadBytes()).thenReturn(10L);
+        
+        // When/Then
+        mockMvc.perform(post("/upload")
+                .contentType(MediaType.APPLICATION_PDF)
+                .content("%PDF-1.4 more than ten bytes".getBytes()))
+            .andExpect(status().is3xxRedirection())
+            .andExpect(redirectedUrl("/"));
+        verify(storageService, never()).createSession(any(InputStream.class), any(), anyLong());
     }
     
     @Test
@@ -0,0 +1,118 @@
+package de.zugferd.invoicetool.controller;
+
+import de.zugferd.invoicetool.config.RateLimitConfig.RateLimitProperties;
+import de.zugferd.invoicetool.service.RateLimitService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RateLimitInterceptor.
+ */
+class RateLimitInterceptorTest {
+
+    private RateLimitProperties properties;
+    private RateLimitInterceptor interceptor;
+
+    @BeforeEach
+    void setUp() {
+        properties = new RateLimitProperties();
+        properties.setGenerationBurst(1);
+        properties.setGenerationsPerMinute(1);
+        properties.setUploadBurstBytes(1000);
+        properties.setUploadBytesPerSecond(100);
+        interceptor = new RateLimitInterceptor(new RateLimitService(properties, new SimpleMeterRegistry()));
+    }
+
+    @Test
+    @DisplayName("Should reject generations over the limit with 429 and Retry-After")
+    void shouldRejectGenerationWith429() throws Exception {
+        // Given
+        assertTrue(interceptor.preHandle(post("/generate/session-1"), new MockHttpServletResponse(), null));
+        var response = new MockHttpServletResponse();
+
+        // When
+        boolean allowed = interceptor.preHandle(post("/generate/session-1"), response, null);
+
+        // Then
+        assertFalse(allowed);
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), response.getStatus());
+        assertEquals("60", response.getHeader(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    @DisplayName("Should charge uploads by their Content-Length")
+    void shouldRejectUploadOverByteBudget() throws Exception {
+        // Given
+        var first = post("/upload");
+        first.setContent(new byte[800]);
+        assertTrue(interceptor.preHandle(first, new MockHttpServletResponse(), null));
+        var second = post("/upload");
+        second.setContent(new byte[500]);
+        var response = new MockHttpServletResponse();
+
+        // When
+        boolean allowed = interceptor.preHandle(second, response, null);
+
+        // Then
+        assertFalse(allowed);
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), response.getStatus());
+        assertEquals("3", response.getHeader(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    @DisplayName("Should reject uploads without Content-Length with 411")
+    void shouldRejectUploadOfUnknownLength() throws Exception {
+        // Given
+        var request = post("/upload");
+        var response = new MockHttpServletResponse();
+
+        // When
+        boolean allowed = interceptor.preHandle(request, response, null);
+
+        // Then
+        assertFalse(allowed);
+        assertEquals(HttpStatus.LENGTH_REQUIRED.value(), response.getStatus());
+    }
+
+    @Test
+    @DisplayName("Should admit raw PDF uploads without Content-Length for metering while streaming")
+    void shouldAdmitChunkedPdfUpload() throws Exception {
+        // Given
+        var request = post("/upload");
+        request.setContentType("application/pdf");
+        var response = new MockHttpServletResponse();
+
+        // When
+        boolean allowed = interceptor.preHandle(request, response, null);
+
+        // Then
+        assertTrue(allowed);
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+    }
+
+    @Test
+    @DisplayName("Should not limit GET requests")
+    void shouldIgnoreGetRequests() throws Exception {
+        // Given
+        var request = new MockHttpServletRequest("GET", "/upload");
+
+        // When / Then
+        for (int i = 0; i < 5; i++) {
+            assertTrue(interceptor.preHandle(request, new MockHttpServletResponse(), null));
+        }
+    }
+
+    private static MockHttpServletRequest post(String uri) {
+        var request = new MockHttpServletRequest("POST", uri);
+        request.setRemoteAddr("10.0.0.1");
+        return request;
+    }
+}
@@ -0,0 +1,145 @@
+package de.zugferd.invoicetool.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for AdaptiveConcurrencyLimit.
+ */
+class AdaptiveConcurrencyLimitTest {
+    
+    private static final long BASE_LATENCY = TimeUnit.MILLISECONDS.toNanos(500);
+    
+    private AtomicLong clock;
+    private AtomicLong gcTime;
+    private AdaptiveConcurrencyLimit limit;
+    
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong();
+        gcTime = new AtomicLong();
+        limit = new AdaptiveConcurrencyLimit(4, 1, 8, 2.0, 0.2, 0.5, gcTime::get, clock::get);
+    }
+    
+    @Test
+    @DisplayName("Should grow limit while latency stays near baseline")
+    void shouldGrowLimitWhileHealthy() {
+        for (int i = 0; i < 50; i++) {
+            clock.addAndGet(BASE_LATENCY);
+            limit.onSample(BASE_LATENCY, limit.currentLimit());
+        }
+        
+        assertEquals(8, limit.currentLimit());
+    }
+    
+    @Test
+    @DisplayName("Should not grow limit when it is not utilized")
+    void shouldNotGrowWhenIdle() {
+        for (int i = 0; i < 50; i++) {
+            clock.addAndGet(BASE_LATENCY);
+            limit.onSample(BASE_LATENCY, 1);
+        }
+        
+        assertEquals(4, limit.currentLimit());
+    }
+    
+    @Test
+    @DisplayName("Should back off when latency exceeds tolerance")
+    void shouldBackOffOnLatencySpike() {
+        // Given
+        clock.addAndGet(BASE_LATENCY);
+        limit.onSample(BASE_LATENCY, 4);
+        
+        // When
+        clock.addAndGet(BASE_LATENCY * 2);
+        limit.onSample(BASE_LATENCY * 5, 4);
+        
+        // Then
+        assertEquals(2, limit.currentLimit());
+    }
+    
+    @Test
+    @DisplayName("Should back off on the first overload even with a negative clock origin")
+    void shouldBackOffWithNegativeClockOrigin() {
+        // Given
+        clock.set(-TimeUnit.DAYS.toNanos(1));
+        limit = new AdaptiveConcurrencyLimit(4, 1, 8, 2.0, 0.2, 0.5, gcTime::get, clock::get);
+        clock.addAndGet(BASE_LATENCY);
+        limit.onSample(BASE_LATENCY, 4);
+        
+        // When
+        clock.addAndGet(BASE_LATENCY * 2);
+        limit.onSample(BASE_LATENCY * 5, 4);
+        
+        // Then
+        assertEquals(2, limit.currentLimit());
+    }
+    
+    @Test
+    @DisplayName("Should back off under GC pressure")
+    void shouldBackOffUnderGcPressure() {
+        // Given
+        clock.addAndGet(BASE_LATENCY);
+        limit.onSample(BASE_LATENCY, 4);
+        
+        // When: 50% der Zeit in GC
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        gcTime.addAndGet(1000);
+        limit.onSample(BASE_LATENCY, 4);
+        
+        // Then
+        assertEquals(2, limit.currentLimit());
+    }
+    
+    @Test
+    @DisplayName("Should never drop below minimum")
+    void shouldRespectMinimum() {
+        clock.addAndGet(BASE_LATENCY);
+        limit.onSample(BASE_LATENCY, 4);
+        
+        for (int i = 0; i < 10; i++) {
+            clock.addAndGet(BASE_LATENCY * 10);
+            limit.onSample(BASE_LATENCY * 10, 4);
+        }
+        
+        assertEquals(1, limit.currentLimit());
+    }
+    
+    @Test
+    @DisplayName("A slow but expensive job should not count as overload")
+    void shouldNormalizeLatencyByEstimatedCost() {
+        // Given: kleine Jobs bestimmen die Basislatenz
+        for (int i = 0; i < 5; i++) {
+            clock.addAndGet(BASE_LATENCY);
+            limit.onSample(BASE_LATENCY, BASE_LATENCY, 4);
+        }
+        
+        // When: ein zehnmal so teurer Job braucht zehnmal so lange
+        clock.addAndGet(BASE_LATENCY * 10);
+        limit.onSample(BASE_LATENCY * 10, BASE_LATENCY * 10, 4);
+        
+        // Then
+        assertTrue(limit.currentLimit() >= 4);
+    }
+    
+    @Test
+    @DisplayName("A job much slower than its estimate should still trigger a back-off")
+    void shouldBackOffWhenSlowerThanEstimate() {
+        // Given
+        clock.addAndGet(BASE_LATENCY);
+        limit.onSample(BASE_LATENCY, BASE_LATENCY, 4);
+        
+        // When
+        clock.addAndGet(BASE_LATENCY * 5);
+        limit.onSample(BASE_LATENCY * 5, BASE_LATENCY, 4);
+        
+        // Then
+        assertEquals(2, limit.currentLimit());
+    }
+}
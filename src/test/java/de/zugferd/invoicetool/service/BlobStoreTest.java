@@ -0,0 +1,151 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.exception.InvoiceProcessingException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for BlobStore.
+ */
+class BlobStoreTest {
+
+    private static final byte[] CONTENT = "%PDF-1.7 test content".getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path tempDir;
+
+    private BlobStore blobStore;
+
+    @BeforeEach
+    void setUp() {
+        blobStore = new BlobStore(tempDir.resolve("blobs"), Duration.ZERO);
+    }
+
+    @Test
+    @DisplayName("Identical uploads should share a single blob")
+    void identicalUploadsShouldShareBlob() throws IOException {
+        // Given
+        var first = blobStore.store(new ByteArrayInputStream(CONTENT));
+        var second = blobStore.store(new ByteArrayInputStream(CONTENT));
+
+        // When
+        blobStore.link(first, tempDir.resolve("session-1/original.pdf"));
+        blobStore.link(second, tempDir.resolve("session-2/original.pdf"));
+
+        // Then
+        assertEquals(first.digest(), second.digest());
+        assertEquals(first.path(), second.path());
+        assertEquals(CONTENT.length, first.size());
+        assertEquals(2, blobStore.referenceCount(first.path()));
+        assertArrayEquals(CONTENT, Files.readAllBytes(tempDir.resolve("session-2/original.pdf")));
+    }
+
+    @Test
+    @DisplayName("Blob should be removed only after its last reference is gone")
+    void blobShouldBeRemovedAfterLastReference() throws IOException {
+        // Given
+        var blob = blobStore.store(new ByteArrayInputStream(CONTENT));
+        Path first = tempDir.resolve("session-1/original.pdf");
+        Path second = tempDir.resolve("session-2/original.pdf");
+        blobStore.link(blob, first);
+        blobStore.link(blob, second);
+        makeOld(blob.path());
+
+        // When
+        Files.delete(first);
+        int removedWhileReferenced = blobStore.collectGarbage();
+        Files.delete(second);
+        int removedAfterLastReference = blobStore.collectGarbage();
+
+        // Then
+        assertEquals(0, removedWhileReferenced);
+        assertEquals(1, removedAfterLastReference);
+        assertFalse(Files.exists(blob.path()));
+    }
+
+    @Test
+    @DisplayName("Freshly stored blobs should survive garbage collection during the grace period")
+    void freshBlobsShouldSurviveGracePeriod() throws IOException {
+        // Given
+        var store = new BlobStore(tempDir.resolve("blobs"), Duration.ofMinutes(10));
+        var blob = store.store(new ByteArrayInputStream(CONTENT));
+
+        // When
+        int removed = store.collectGarbage();
+
+        // Then
+        assertEquals(0, removed);
+        assertTrue(Files.exists(blob.path()));
+    }
+
+    @Test
+    @DisplayName("Reusing a blob should protect it from garbage collection without touching linked files")
+    void reusedBlobShouldSurviveGracePeriodWithoutChangingLinkedFiles() throws IOException {
+        // Given
+        var store = new BlobStore(tempDir.resolve("blobs"), Duration.ofMinutes(10));
+        var blob = store.store(new ByteArrayInputStream(CONTENT));
+        Path sessionFile = tempDir.resolve("session-1/original.pdf");
+        store.link(blob, sessionFile);
+        makeOld(blob.path());
+        FileTime linkedTime = Files.getLastModifiedTime(sessionFile);
+        Files.delete(sessionFile);
+
+        // When
+        var reused = store.store(new ByteArrayInputStream(CONTENT));
+        int removed = store.collectGarbage();
+
+        // Then
+        assertEquals(0, removed);
+        assertTrue(Files.exists(reused.path()));
+        assertEquals(linkedTime, Files.getLastModifiedTime(reused.path()), "blob timestamp must stay unchanged");
+    }
+
+    @Test
+    @DisplayName("Deduplicating a file with known content should replace it with a link")
+    void deduplicateShouldLinkKnownContent() throws IOException {
+        // Given
+        var blob = blobStore.store(new ByteArrayInputStream(CONTENT));
+        Path output = tempDir.resolve("output/e-invoice.pdf");
+        Files.createDirectories(output.getParent());
+        Files.write(output, CONTENT);
+
+        // When
+        var deduplicated = blobStore.deduplicate(output);
+
+        // Then
+        assertEquals(blob.digest(), deduplicated.digest());
+        assertEquals(1, blobStore.referenceCount(blob.path()));
+        assertArrayEquals(CONTENT, Files.readAllBytes(output));
+    }
+
+    @Test
+    @DisplayName("Should abort storing a stream that exceeds the size limit")
+    void shouldAbortOversizeStream() throws IOException {
+        // Given
+        var input = new ByteArrayInputStream(CONTENT);
+
+        // When/Then
+        var exception = assertThrows(InvoiceProcessingException.class, () -> blobStore.store(input, 8));
+        assertEquals("FILE_TOO_LARGE", exception.getErrorCode());
+        try (var files = Files.list(tempDir.resolve("blobs"))) {
+            assertEquals(0, files.count(), "no partial blob should remain");
+        }
+    }
+
+    private static void makeOld(Path path) throws IOException {
+        Files.setLastModifiedTime(path, FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+    }
+}
@@ -0,0 +1,95 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.StorageConfig.StorageProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for DiskQuotaManager.
+ */
+class DiskQuotaManagerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private DiskQuotaManager quota;
+
+    @BeforeEach
+    void setUp() {
+        var properties = new StorageProperties();
+        properties.setDiskBudgetBytes(1000);
+        meterRegistry = new SimpleMeterRegistry();
+        quota = new DiskQuotaManager(properties, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Should select least recently used completed sessions first")
+    void shouldSelectLeastRecentlyUsedCompletedSessions() {
+        // Given
+        quota.update("session-1", 300, true);
+        quota.update("session-2", 300, true);
+        quota.update("session-3", 300, true);
+        quota.touch("session-1");
+
+        // When
+        List<String> victims = quota.selectVictims(200);
+
+        // Then
+        assertEquals(List.of("session-2"), victims);
+    }
+
+    @Test
+    @DisplayName("Should never select sessions that are still being processed")
+    void shouldSkipSessionsInProgress() {
+        // Given
+        quota.update("uploaded", 600, false);
+        quota.update("completed", 300, true);
+
+        // When
+        List<String> victims = quota.selectVictims(500);
+
+        // Then
+        assertEquals(List.of("completed"), victims);
+        quota.remove("completed");
+        assertFalse(quota.hasRoomFor(500));
+    }
+
+    @Test
+    @DisplayName("Concurrent uploads should not both fit into the budget through their reservations")
+    void shouldReserveBytesOfRunningUploads() {
+        // Given
+        quota.update("session-1", 300, true);
+        var first = quota.tryReserve(500).orElseThrow();
+
+        // When
+        var second = quota.tryReserve(500);
+
+        // Then
+        assertTrue(second.isEmpty());
+        assertEquals(List.of("session-1"), quota.selectVictims(500));
+        first.close();
+        first.close();
+        assertTrue(quota.tryReserve(500).isPresent());
+    }
+
+    @Test
+    @DisplayName("Should track used bytes when sessions are updated and removed")
+    void shouldTrackUsedBytes() {
+        // Given
+        quota.update("session-1", 100, false);
+        quota.update("session-1", 250, true);
+        quota.update("session-2", 50, false);
+
+        // When
+        quota.remove("session-2");
+
+        // Then
+        assertEquals(250, quota.usedBytes());
+        assertEquals(250, meterRegistry.get("zugferd.storage.used").gauge().value());
+        assertTrue(quota.selectVictims(0).isEmpty());
+    }
+}
@@ -0,0 +1,278 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.model.InvoiceItem;
+import de.zugferd.invoicetool.model.InvoiceMetadata;
+import de.zugferd.invoicetool.model.ProcessingStatus;
+import de.zugferd.invoicetool.model.ValidationResult;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for FileSessionStore.
+ */
+class FileSessionStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Should restore sessions after reopening the store")
+    void shouldRestoreSessionsAfterReopen() throws IOException {
+        // Given
+        var uploaded = uploaded("session-1");
+        try (var store = new FileSessionStore(tempDir, 1000, 4.0)) {
+            store.put(uploaded);
+            store.put(new ProcessingStatus.Failed("session-2", now(), "Fehler", "Details"));
+        }
+
+        // When
+        try (var reopened = new FileSessionStore(tempDir, 1000, 4.0)) {
+
+            // Then
+            assertEquals(2, reopened.sessionIds().size());
+            assertEquals(uploaded, reopened.get("session-1").orElseThrow());
+            assertInstanceOf(ProcessingStatus.Failed.class, reopened.get("session-2").orElseThrow());
+        }
+    }
+
+    @Test
+    @DisplayName("Should restore the download filename of downloaded sessions")
+    void shouldRestoreDownloadFilename() throws IOException {
+        // Given
+        var downloaded = new ProcessingStatus.Downloaded("session-1", now(),
+            Path.of("/tmp", "session-1", "invoice.pdf"), "E-Rechnung_RE-1.pdf");
+        try (var store = new FileSessionStore(tempDir, 1000, 4.0)) {
+            store.put(downloaded);
+        }
+
+        // When
+        try (var reopened = new FileSessionStore(tempDir, 1000, 4.0)) {
+
+            // Then
+            assertEquals(downloaded, reopened.get("session-1").orElseThrow());
+        }
+    }
+
+    @Test
+    @DisplayName("Should persist removals")
+    void shouldPersistRemovals() throws IOException {
+        // Given
+        try (var store = new FileSessionStore(tempDir, 1000, 4.0)) {
+            store.put(uploaded("session-1"));
+            store.put(uploaded("session-2"));
+            store.remove("session-1");
+        }
+
+        // When
+        try (var reopened = new FileSessionStore(tempDir, 1000, 4.0)) {
+
+            // Then
+            assertFalse(reopened.contains("session-1"));
+            assertTrue(reopened.contains("session-2"));
+        }
+    }
+
+    @Test
+    @DisplayName("Should ignore an incomplete record at the end of the log")
+    void shouldIgnoreTornTail() throws IOException {
+        // Given
+        try (var store = new FileSessionStore(tempDir, 1000, 4.0)) {
+            store.put(uploaded("session-1"));
+        }
+        Files.write(tempDir.resolve("sessions.log"), new byte[]{0, 0, 1, 0, 7}, StandardOpenOption.APPEND);
+
+        // When
+        try (var reopened = new FileSessionStore(tempDir, 1000, 4.0)) {
+            reopened.put(uploaded("session-2"));
+        }
+
+        // Then
+        try (var reopened = new FileSessionStore(tempDir, 1000, 4.0)) {
+            assertTrue(reopened.contains("session-1"));
+            assertTrue(reopened.contains("session-2"));
+        }
+    }
+
+    @Test
+    @DisplayName("Should keep the latest state when compacting the log")
+    void shouldKeepLatestStateWhenCompacting() throws IOException {
+        // Given
+        try (var store = new FileSessionStore(tempDir, 10, 2.0)) {
+            for (int i = 0; i < 50; i++) {
+                store.put(new ProcessingStatus.Failed("session-1", now(), "Fehler " + i, null));
+            }
+        }
+
+        // When
+        long logSize = Files.size(tempDir.resolve("sessions.log"));
+        try (var reopened = new FileSessionStore(tempDir, 10, 2.0)) {
+
+            // Then
+            var status = (ProcessingStatus.Failed) reopened.get("session-1").orElseThrow();
+            assertEquals("Fehler 49", status.errorMessage());
+            assertTrue(logSize < 50 * 40, "log should have been compacted");
+        }
+    }
+
+    @Test
+    @DisplayName("Compare-and-set should only replace the expected status")
+    void compareAndSetShouldRejectStaleExpectation() throws IOException {
+        // Given
+        var uploaded = uploaded("session-1");
+        var failed = new ProcessingStatus.Failed("session-1", now(), "Fehler", null);
+        try (var store = new FileSessionStore(tempDir, 1000, 4.0)) {
+            store.put(uploaded);
+
+            // When
+            boolean first = store.compareAndSet(uploaded, failed);
+            boolean second = store.compareAndSet(uploaded, new ProcessingStatus.Failed("session-1", now(), "Andere", null));
+
+            // Then
+            assertTrue(first);
+            assertFalse(second);
+            assertFalse(store.compareAndRemove(uploaded));
+        }
+        try (var reopened = new FileSessionStore(tempDir, 1000, 4.0)) {
+            assertEquals(failed, reopened.get("session-1").orElseThrow());
+        }
+    }
+
+    @Test
+    @DisplayName("Should keep metadata of completed sessions in details files")
+    void shouldRestoreCompletedSessionWithDetails() throws IOException {
+        // Given
+        var layout = new SessionLayout(tempDir.resolve("data"), List.of());
+        var metadata = InvoiceMetadata.builder()
+            .invoiceNumber("INV-2024-001")
+            .issueDate(LocalDate.of(2024, 1, 15))
+            .items(List.of(InvoiceItem.of("Beratung", 2, 100.00, 19.0)))
+            .currency(Currency.getInstance("EUR"))
+            .build();
+        var completed = new ProcessingStatus.Completed("session-1", now(), layout.generatedPdf("session-1"),
+            ValidationResult.success("PDF/A-3B", 120), metadata);
+        try (var store = new FileSessionStore(tempDir, 1000, 4.0, new SessionDetailsStore(layout, 0))) {
+            store.put(completed);
+        }
+
+        // When
+        try (var reopened = new FileSessionStore(tempDir, 1000, 4.0, new SessionDetailsStore(layout, 0))) {
+
+            // Then
+            assertEquals(completed, reopened.get("session-1").orElseThrow());
+            try (var files = Files.list(layout.sessionDir("session-1"))) {
+                assertEquals(1, files.filter(f -> f.toString().endsWith(".details")).count());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Should discard details of replaced statuses")
+    void shouldDiscardDetailsOfReplacedStatus() throws IOException {
+        // Given
+        var layout = new SessionLayout(tempDir.resolve("data"), List.of());
+        var processing = new ProcessingStatus.Processing("session-1", now(), InvoiceMetadata.builder()
+            .invoiceNumber("INV-2024-002")
+            .build());
+        try (var store = new FileSessionStore(tempDir, 1000, 4.0, new SessionDetailsStore(layout, 16))) {
+            store.put(processing);
+
+            // When
+            store.compareAndSet(processing, new ProcessingStatus.Failed("session-1", now(), "Fehler", null));
+
+            // Then
+            try (var files = Files.list(layout.sessionDir("session-1"))) {
+                assertEquals(0, files.filter(f -> f.toString().endsWith(".details")).count());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Concurrent reads should not fail while a transition discards the previous details")
+    void getShouldSurviveConcurrentTransitions() throws Exception {
+        // Given
+        var layout = new SessionLayout(tempDir.resolve("data"), List.of());
+        var metadata = InvoiceMetadata.builder().invoiceNumber("INV-2024-003").build();
+        var base = now();
+        var failure = new AtomicReference<Throwable>();
+        var done = new AtomicBoolean();
+        try (var store = new FileSessionStore(tempDir, 100_000, 4.0, new SessionDetailsStore(layout, 0))) {
+            store.put(new ProcessingStatus.Processing("session-1", base, metadata));
+            Thread reader = new Thread(() -> {
+                while (!done.get() && failure.get() == null) {
+                    try {
+                        store.get("session-1").orElseThrow();
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            });
+            reader.start();
+
+            // When
+            for (int i = 1; i <= 500 && failure.get() == null; i++) {
+                var processing = new ProcessingStatus.Processing("session-1", base.plusMillis(2L * i), metadata);
+                store.put(processing);
+                store.compareAndSet(processing, new ProcessingStatus.Completed("session-1",
+                    base.plusMillis(2L * i + 1), layout.generatedPdf("session-1"),
+                    ValidationResult.success("PDF/A-3B", 10), metadata));
+            }
+            done.set(true);
+            reader.join();
+
+            // Then
+            assertNull(failure.get(), () -> "Concurrent get failed: " + failure.get());
+        }
+    }
+
+    @Test
+    @DisplayName("Summaries should not read details files")
+    void summaryShouldNotLoadDetails() throws IOException {
+        // Given
+        var layout = new SessionLayout(tempDir.resolve("data"), List.of());
+        var timestamp = now();
+        var processing = new ProcessingStatus.Processing("session-1", timestamp, InvoiceMetadata.builder()
+            .invoiceNumber("INV-2024-004")
+            .build());
+        try (var store = new FileSessionStore(tempDir, 1000, 4.0, new SessionDetailsStore(layout, 0))) {
+            store.put(processing);
+            try (var files = Files.list(layout.sessionDir("session-1"))) {
+                for (Path file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+
+            // When
+            var summary = store.summary("session-1").orElseThrow();
+
+            // Then
+            assertTrue(summary.is(ProcessingStatus.Processing.class));
+            assertEquals(timestamp, summary.timestamp());
+            assertThrows(UncheckedIOException.class, () -> store.get("session-1"));
+        }
+    }
+
+    private static ProcessingStatus.Uploaded uploaded(String sessionId) {
+        return new ProcessingStatus.Uploaded(sessionId, now(), Path.of("/tmp", sessionId, "original.pdf"),
+            "rechnung.pdf", 1234);
+    }
+
+    private static Instant now() {
+        return Instant.now().truncatedTo(ChronoUnit.MICROS);
+    }
+}
@@ -0,0 +1,84 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.StorageConfig.StorageProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for GeneratedPdfCache.
+ */
+class GeneratedPdfCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private SimpleMeterRegistry meterRegistry;
+    private GeneratedPdfCache cache;
+
+    @BeforeEach
+    void setUp() {
+        var properties = new StorageProperties();
+        properties.setPdfCacheMaxBytes(400);
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new GeneratedPdfCache(properties, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Should evict least recently used entries when the byte budget is exceeded")
+    void shouldEvictLeastRecentlyUsed() throws IOException {
+        // Given
+        cache.put("session-1", pdf("a.pdf", 100));
+        cache.put("session-2", pdf("b.pdf", 100));
+        cache.put("session-3", pdf("c.pdf", 100));
+        cache.get("session-1");
+
+        // When
+        cache.put("session-4", pdf("d.pdf", 100));
+        cache.put("session-5", pdf("e.pdf", 100));
+
+        // Then
+        assertTrue(cache.get("session-1").isPresent());
+        assertTrue(cache.get("session-2").isEmpty());
+        assertTrue(cache.currentBytes() <= 400);
+    }
+
+    @Test
+    @DisplayName("Should not cache files larger than a quarter of the budget")
+    void shouldSkipLargeFiles() throws IOException {
+        // When
+        cache.put("session-1", pdf("large.pdf", 101));
+
+        // Then
+        assertTrue(cache.get("session-1").isEmpty());
+        assertEquals(0, cache.currentBytes());
+    }
+
+    @Test
+    @DisplayName("Should drop an entry on eviction and record hits and misses")
+    void shouldEvictAndCountHits() throws IOException {
+        // Given
+        cache.put("session-1", pdf("a.pdf", 50));
+        assertEquals(50, cache.get("session-1").orElseThrow().size());
+
+        // When
+        cache.evict("session-1");
+
+        // Then
+        assertTrue(cache.get("session-1").isEmpty());
+        assertEquals(1.0, meterRegistry.get("zugferd.pdf.cache.gets").tag("result", "hit").counter().count());
+        assertEquals(1.0, meterRegistry.get("zugferd.pdf.cache.gets").tag("result", "miss").counter().count());
+    }
+
+    private Path pdf(String name, int size) throws IOException {
+        return Files.write(tempDir.resolve(name), new byte[size]);
+    }
+}
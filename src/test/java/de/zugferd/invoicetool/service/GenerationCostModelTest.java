@@ -0,0 +1,93 @@
+package de.zugferd.invoicetool.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for GenerationCostModel.
+ */
+class GenerationCostModelTest {
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Should use the prior before any measurement")
+    void shouldUsePriorWithoutSamples() {
+        // Given
+        var model = new GenerationCostModel(new double[]{300, 400, 50, 300}, 5.0, 1.0);
+
+        // When
+        Duration estimate = model.estimate(new GenerationCostModel.Features(2 * MEGABYTE, 4, MEGABYTE));
+
+        // Then
+        assertEquals(Duration.ofMillis(300 + 800 + 200 + 300), estimate);
+    }
+
+    @Test
+    @DisplayName("Should learn processing time from measurements")
+    void shouldLearnFromMeasurements() {
+        // Given
+        var model = new GenerationCostModel(new double[]{300, 400, 50, 300}, 1.0, 1.0);
+
+        // When
+        for (int i = 0; i < 200; i++) {
+            long size = (i % 10 + 1) * MEGABYTE;
+            int pages = i % 7 + 1;
+            var features = new GenerationCostModel.Features(size, pages, 0);
+            model.observe("session-" + i, features, Duration.ofMillis(100 + 2000 * (size / MEGABYTE) + 10L * pages));
+        }
+
+        // Then
+        long estimate = model.estimate(new GenerationCostModel.Features(5 * MEGABYTE, 3, 0)).toMillis();
+        assertEquals(100 + 10_000 + 30, estimate, 100);
+        assertEquals(200, model.samples());
+    }
+
+    @Test
+    @DisplayName("Should count pages of a PDF")
+    void shouldInspectPageCount() throws IOException {
+        // Given
+        Path pdf = tempDir.resolve("three-pages.pdf");
+        try (var document = new PDDocument()) {
+            for (int i = 0; i < 3; i++) {
+                document.addPage(new PDPage());
+            }
+            document.save(pdf.toFile());
+        }
+
+        // When
+        var features = GenerationCostModel.inspect(pdf, Files.size(pdf));
+
+        // Then
+        assertEquals(3, features.pageCount());
+        assertEquals(0, features.imageBytes());
+    }
+
+    @Test
+    @DisplayName("Should fall back to a single page for unreadable files")
+    void shouldFallBackForUnreadableFile() throws IOException {
+        // Given
+        Path broken = tempDir.resolve("broken.pdf");
+        Files.writeString(broken, "not a pdf");
+
+        // When
+        var features = GenerationCostModel.inspect(broken, 9);
+
+        // Then
+        assertEquals(1, features.pageCount());
+        assertEquals(9, features.fileSizeBytes());
+    }
+}
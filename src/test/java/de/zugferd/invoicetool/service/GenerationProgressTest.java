@@ -0,0 +1,73 @@
+package de.zugferd.invoicetool.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for GenerationProgress.
+ */
+class GenerationProgressTest {
+
+    private GenerationProgress progress;
+
+    @BeforeEach
+    void setUp() {
+        progress = new GenerationProgress(new SimpleMeterRegistry());
+    }
+
+    @Test
+    @DisplayName("Should keep subscribers of a running generation until it finishes")
+    void shouldReleaseSubscribersWhenDone() {
+        // Given
+        progress.publish("session-1", GenerationProgress.Stage.CONVERTING);
+        progress.subscribe("session-1", () -> GenerationProgress.Stage.QUEUED);
+        progress.subscribe("session-1", () -> GenerationProgress.Stage.QUEUED);
+
+        // When
+        progress.publish("session-1", GenerationProgress.Stage.EXPORTING);
+        int whileRunning = progress.subscribers("session-1");
+        progress.publish("session-1", GenerationProgress.Stage.DONE);
+
+        // Then
+        assertEquals(2, whileRunning);
+        assertEquals(0, progress.subscribers("session-1"));
+        assertNull(progress.currentStage("session-1"));
+    }
+
+    @Test
+    @DisplayName("Should close the stream at once for a finished generation")
+    void shouldCompleteImmediatelyForFinishedSession() {
+        // When
+        progress.subscribe("session-1", () -> GenerationProgress.Stage.DONE);
+
+        // Then
+        assertEquals(0, progress.subscribers("session-1"));
+    }
+
+    @Test
+    @DisplayName("Should close the stream after the stored stage when the generation runs elsewhere")
+    void shouldCloseStreamForStageFromStoredStatus() {
+        // When
+        progress.subscribe("session-1", () -> GenerationProgress.Stage.CONVERTING);
+
+        // Then
+        assertEquals(0, progress.subscribers("session-1"));
+        assertNull(progress.currentStage("session-1"));
+    }
+
+    @Test
+    @DisplayName("Should prefer the live stage over the stored status")
+    void shouldTrackCurrentStage() {
+        // When
+        progress.publish("session-1", GenerationProgress.Stage.VALIDATING);
+        progress.subscribe("session-1", () -> GenerationProgress.Stage.DONE);
+
+        // Then
+        assertEquals(GenerationProgress.Stage.VALIDATING, progress.currentStage("session-1"));
+        assertEquals(1, progress.subscribers("session-1"));
+    }
+}
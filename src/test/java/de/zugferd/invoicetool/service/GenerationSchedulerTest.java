@@ -0,0 +1,208 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.GenerationConfig.GenerationProperties;
+import de.zugferd.invoicetool.service.GenerationScheduler.Lane;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for GenerationScheduler.
+ */
+class GenerationSchedulerTest {
+
+    private GenerationProperties properties;
+    private ExecutorService executor;
+    private MemoryGovernor memoryGovernor;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        properties = new GenerationProperties();
+        properties.setAdaptive(false);
+        properties.setMaxConcurrentJobs(2);
+        properties.setInteractiveReserved(1);
+        properties.setBulkShare(1.0);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        if (memoryGovernor != null) {
+            memoryGovernor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Queued bulk jobs should not hold heap budget needed by an interactive job")
+    void queuedBulkJobsShouldNotReserveMemory() throws Exception {
+        // Given
+        var scheduler = scheduler();
+        long budget = (long) (Runtime.getRuntime().maxMemory() * properties.getMemoryBudgetRatio());
+        var bulkStarted = new CountDownLatch(1);
+        var releaseBulk = new CountDownLatch(1);
+        var running = scheduler.submit(Lane.BULK, budget / 4, () -> {
+            bulkStarted.countDown();
+            return await(releaseBulk);
+        });
+        assertTrue(bulkStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 3; i++) {
+            scheduler.submit(Lane.BULK, budget / 4, () -> await(releaseBulk));
+        }
+        Thread.sleep(100);
+
+        // When
+        var interactive = scheduler.submit(Lane.INTERACTIVE, budget / 2, () -> "interactive");
+
+        // Then
+        assertEquals("interactive", interactive.get(5, TimeUnit.SECONDS));
+        assertEquals(budget / 4, memoryGovernor.reservedBytes());
+        releaseBulk.countDown();
+        running.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    @DisplayName("The adaptive limit should never drop below the interactive reservation plus one bulk slot")
+    void adaptiveFloorShouldCoverInteractiveReservation() {
+        // Given
+        properties.setAdaptive(true);
+        properties.setMinConcurrentJobs(1);
+        properties.setInteractiveReserved(2);
+        properties.setMaxConcurrentJobs(1);
+
+        // When
+        var scheduler = scheduler();
+
+        // Then
+        assertEquals(3, scheduler.totalSlots());
+        assertEquals(1, scheduler.laneLimit(Lane.BULK));
+        assertEquals(3, scheduler.laneLimit(Lane.INTERACTIVE));
+    }
+
+    @Test
+    @DisplayName("Lane limits should split the slots by share and keep the interactive reservation free of bulk jobs")
+    void laneLimitsShouldRespectSharesAndReservation() {
+        // Given
+        properties.setMaxConcurrentJobs(4);
+        properties.setInteractiveReserved(1);
+        properties.setBulkShare(0.5);
+
+        // When
+        var scheduler = scheduler();
+
+        // Then
+        assertEquals(4, scheduler.totalSlots());
+        assertEquals(2, scheduler.laneLimit(Lane.BULK));
+        assertEquals(4, scheduler.laneLimit(Lane.INTERACTIVE));
+
+        // Given: der Anteil allein würde die Reserve belegen
+        properties.setBulkShare(1.0);
+        properties.setInteractiveReserved(3);
+
+        // Then: Bulk behält mindestens einen Slot
+        assertEquals(1, scheduler.laneLimit(Lane.BULK));
+    }
+
+    @Test
+    @DisplayName("An interactive job should start while the bulk lane is saturated")
+    void interactiveJobShouldStartWhileBulkLaneIsSaturated() throws Exception {
+        // Given
+        var scheduler = scheduler();
+        var releaseBulk = new CountDownLatch(1);
+        var bulkStarted = new CountDownLatch(1);
+        var running = scheduler.submit(Lane.BULK, 0, () -> {
+            bulkStarted.countDown();
+            return await(releaseBulk);
+        });
+        assertTrue(bulkStarted.await(5, TimeUnit.SECONDS));
+        var queued = scheduler.submit(Lane.BULK, 0, () -> "queued");
+        awaitQueued(Lane.BULK, 1);
+
+        // When
+        var interactive = scheduler.submit(Lane.INTERACTIVE, 0, () -> "interactive");
+
+        // Then
+        assertEquals("interactive", interactive.get(5, TimeUnit.SECONDS));
+        assertFalse(queued.isDone());
+        releaseBulk.countDown();
+        assertEquals("bulk", running.get(5, TimeUnit.SECONDS));
+        assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("A freed slot should go to a waiting interactive job before a waiting bulk job")
+    void waitingInteractiveJobShouldHoldBackBulkJobs() throws Exception {
+        // Given: beide Slots belegt, je ein Bulk- und ein interaktiver Job warten
+        var scheduler = scheduler();
+        var releaseBulk = new CountDownLatch(1);
+        var releaseInteractive = new CountDownLatch(1);
+        var started = new CountDownLatch(2);
+        var bulk = scheduler.submit(Lane.BULK, 0, () -> {
+            started.countDown();
+            return await(releaseBulk);
+        });
+        var interactive = scheduler.submit(Lane.INTERACTIVE, 0, () -> {
+            started.countDown();
+            return await(releaseInteractive);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        var waitingBulk = scheduler.submit(Lane.BULK, 0, () -> "waiting bulk");
+        awaitQueued(Lane.BULK, 1);
+        var interactiveStarted = new CountDownLatch(1);
+        var waitingInteractive = scheduler.submit(Lane.INTERACTIVE, 0, () -> {
+            interactiveStarted.countDown();
+            return await(releaseInteractive);
+        });
+        awaitQueued(Lane.INTERACTIVE, 1);
+
+        // When: der Bulk-Slot wird frei
+        releaseBulk.countDown();
+
+        // Then: der interaktive Job erhält den Slot, obwohl der Bulk-Job länger wartet
+        assertTrue(interactiveStarted.await(5, TimeUnit.SECONDS));
+        assertEquals("bulk", bulk.get(5, TimeUnit.SECONDS));
+        assertFalse(waitingBulk.isDone());
+        releaseInteractive.countDown();
+        assertEquals("bulk", interactive.get(5, TimeUnit.SECONDS));
+        assertEquals("bulk", waitingInteractive.get(5, TimeUnit.SECONDS));
+        assertEquals("waiting bulk", waitingBulk.get(5, TimeUnit.SECONDS));
+    }
+
+    private GenerationScheduler scheduler() {
+        meterRegistry = new SimpleMeterRegistry();
+        memoryGovernor = new MemoryGovernor(properties, meterRegistry);
+        return new GenerationScheduler(properties, executor, memoryGovernor, meterRegistry);
+    }
+
+    private void awaitQueued(Lane lane, int expected) throws InterruptedException {
+        var gauge = meterRegistry.get("zugferd.generation.queued")
+            .tag("lane", lane.name().toLowerCase(Locale.ROOT))
+            .gauge();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (gauge.value() < expected) {
+            assertTrue(System.nanoTime() < deadline, "Job was not queued in lane " + lane);
+            Thread.sleep(10);
+        }
+    }
+
+    private static String await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            return "bulk";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.AppConfig.ZugferdProperties;
+import de.zugferd.invoicetool.config.GenerationConfig.GenerationProperties;
+import de.zugferd.invoicetool.config.JobQueueConfig.JobQueueProperties;
+import de.zugferd.invoicetool.exception.InvoiceProcessingException;
+import de.zugferd.invoicetool.model.GenerationJob;
+import de.zugferd.invoicetool.model.InvoiceMetadata;
+import de.zugferd.invoicetool.model.ProcessingStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for InvoiceService.
+ */
+class InvoiceServiceTest {
+
+    private static final String SESSION_ID = "session-1";
+
+    private StorageService storageService;
+    private GenerationScheduler scheduler;
+    private JobQueue jobQueue;
+    private JobQueueProperties jobQueueProperties;
+    private CompletableFuture<ProcessingStatus> pending;
+    private AtomicLong clock;
+    private InvoiceService invoiceService;
+
+    @BeforeEach
+    void setUp() {
+        storageService = mock(StorageService.class);
+        scheduler = mock(GenerationScheduler.class);
+        pending = new CompletableFuture<>();
+        when(scheduler.<ProcessingStatus>submit(any(), anyLong(), any(), any())).thenReturn(pending);
+        clock = new AtomicLong(1_000_000);
+        jobQueue = mock(JobQueue.class);
+        jobQueueProperties = new JobQueueProperties();
+        invoiceService = new InvoiceService(
+            storageService,
+            mock(ZugferdGeneratorService.class),
+            mock(ValidationService.class),
+            new ZugferdProperties(),
+            scheduler,
+            mock(MemoryGovernor.class),
+            jobQueue,
+            jobQueueProperties,
+            mock(GeneratedPdfCache.class),
+            mock(GenerationCostModel.class),
+            new GenerationProperties(),
+            mock(GenerationProgress.class),
+            new SimpleMeterRegistry(),
+            clock::get);
+    }
+
+    @Test
+    @DisplayName("Concurrent requests with the same metadata should share one generation")
+    void shouldCoalesceIdenticalRequests() {
+        // Given
+        var first = invoiceService.submitGeneration(SESSION_ID, metadata("INV-1"), GenerationScheduler.Lane.INTERACTIVE);
+
+        // When
+        var second = invoiceService.submitGeneration(SESSION_ID, metadata("INV-1"), GenerationScheduler.Lane.INTERACTIVE);
+        var status = result();
+        pending.complete(status);
+
+        // Then
+        verify(scheduler, times(1)).submit(any(), anyLong(), any(), any());
+        assertSame(status, first.join());
+        assertSame(status, second.join());
+    }
+
+    @Test
+    @DisplayName("A concurrent request with different metadata should be rejected, not given the first result")
+    void shouldRejectMismatchedConcurrentRequest() {
+        // Given
+        invoiceService.submitGeneration(SESSION_ID, metadata("INV-1"), GenerationScheduler.Lane.INTERACTIVE);
+
+        // When
+        var error = assertThrows(InvoiceProcessingException.class, () ->
+            invoiceService.submitGeneration(SESSION_ID, metadata("INV-2"), GenerationScheduler.Lane.INTERACTIVE));
+
+        // Then
+        assertEquals("GENERATION_IN_PROGRESS", error.getErrorCode());
+        verify(scheduler, times(1)).submit(any(), anyLong(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Repeated idempotency keys should replay the first request")
+    void shouldReplayIdempotentRequest() {
+        // Given
+        var first = invoiceService.submitGeneration(SESSION_ID, metadata("INV-1"),
+            GenerationScheduler.Lane.INTERACTIVE, "client|key-1");
+        pending.complete(result());
+
+        // When
+        var replay = invoiceService.submitGeneration(SESSION_ID, metadata("INV-1"),
+            GenerationScheduler.Lane.INTERACTIVE, "client|key-1");
+
+        // Then
+        assertSame(first.join(), replay.join());
+        verify(scheduler, times(1)).submit(any(), anyLong(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Reusing an idempotency key for other metadata should be rejected")
+    void shouldRejectReusedIdempotencyKey() {
+        // Given
+        invoiceService.submitGeneration(SESSION_ID, metadata("INV-1"), GenerationScheduler.Lane.INTERACTIVE, "client|key-1");
+        pending.complete(result());
+
+        // When
+        var error = assertThrows(InvoiceProcessingException.class, () -> invoiceService.submitGeneration(
+            SESSION_ID, metadata("INV-2"), GenerationScheduler.Lane.INTERACTIVE, "client|key-1"));
+
+        // Then
+        assertEquals("IDEMPOTENCY_KEY_REUSED", error.getErrorCode());
+    }
+
+    @Test
+    @DisplayName("Idempotency keys should expire after their time to live")
+    void shouldExpireIdempotencyKeys() {
+        // Given
+        invoiceService.submitGeneration(SESSION_ID, metadata("INV-1"), GenerationScheduler.Lane.INTERACTIVE, "client|key-1");
+        pending.complete(result());
+        clock.addAndGet(TimeUnit.HOURS.toMillis(1) + 1);
+
+        // When
+        var next = invoiceService.submitGeneration(SESSION_ID, metadata("INV-2"),
+            GenerationScheduler.Lane.INTERACTIVE, "client|key-1");
+
+        // Then
+        assertNotNull(next);
+        verify(scheduler, times(2)).submit(any(), anyLong(), any(), any());
+    }
+
+    @Test
+    @DisplayName("A downloaded session should keep the filename derived from its invoice number")
+    void shouldKeepDownloadFilenameAfterDownload() {
+        // Given
+        var completed = new ProcessingStatus.Completed(SESSION_ID, Instant.now(), Path.of("invoice.pdf"),
+            null, metadata("RE 2024/17"));
+        var downloaded = new ProcessingStatus.Downloaded(SESSION_ID, Instant.now(), Path.of("invoice.pdf"),
+            completed.downloadFilename());
+        when(storageService.getStatusOrThrow(SESSION_ID)).thenReturn(downloaded);
+
+        // When
+        String filename = invoiceService.getDownloadFilename(SESSION_ID);
+
+        // Then
+        assertEquals("E-Rechnung_RE_2024_17.pdf", filename);
+    }
+
+    @Test
+    @DisplayName("A downloaded session without a stored filename should fall back to the generic name")
+    void shouldFallBackForDownloadedSessionWithoutFilename() {
+        // Given
+        when(storageService.getStatusOrThrow(SESSION_ID))
+            .thenReturn(new ProcessingStatus.Downloaded(SESSION_ID, Instant.now(), Path.of("invoice.pdf")));
+
+        // When
+        String filename = invoiceService.getDownloadFilename(SESSION_ID);
+
+        // Then
+        assertEquals("e-rechnung.pdf", filename);
+    }
+
+    @Test
+    @DisplayName("Background generations should go to the job queue when the worker is enabled")
+    void shouldEnqueueBackgroundGenerationWithWorkerEnabled() {
+        // Given
+        jobQueueProperties.setWorkerEnabled(true);
+        var uploaded = new ProcessingStatus.Uploaded(SESSION_ID, Instant.now(), Path.of("upload.pdf"),
+            "upload.pdf", 1024, "digest");
+        when(storageService.getStatusOrThrow(SESSION_ID)).thenReturn(uploaded);
+        when(storageService.getStatus(SESSION_ID)).thenReturn(Optional.of(uploaded));
+        var plan = new InvoiceService.GenerationPlan(false, Duration.ofSeconds(30));
+
+        // When
+        Instant first = invoiceService.submitBackgroundGeneration(SESSION_ID, metadata("INV-1"), plan, null);
+        Instant repeated = invoiceService.submitBackgroundGeneration(SESSION_ID, metadata("INV-1"), plan, null);
+
+        // Then
+        verify(jobQueue, times(1)).enqueue(any(GenerationJob.class));
+        verify(scheduler, never()).submit(any(), anyLong(), any(), any());
+        assertEquals(first, repeated);
+        assertEquals(Optional.of(first), invoiceService.estimatedCompletion(SESSION_ID));
+    }
+
+    @Test
+    @DisplayName("The estimated completion of a queued job should be dropped once the session is finished")
+    void shouldDropEstimatedCompletionOfFinishedQueuedJob() {
+        // Given
+        jobQueueProperties.setWorkerEnabled(true);
+        var uploaded = new ProcessingStatus.Uploaded(SESSION_ID, Instant.now(), Path.of("upload.pdf"),
+            "upload.pdf", 1024, "digest");
+        when(storageService.getStatusOrThrow(SESSION_ID)).thenReturn(uploaded);
+        invoiceService.submitBackgroundGeneration(SESSION_ID, metadata("INV-1"),
+            new InvoiceService.GenerationPlan(false, Duration.ofSeconds(30)), null);
+
+        // When
+        when(storageService.getStatus(SESSION_ID)).thenReturn(Optional.of(result()));
+
+        // Then
+        assertTrue(invoiceService.estimatedCompletion(SESSION_ID).isEmpty());
+    }
+
+    private static InvoiceMetadata metadata(String invoiceNumber) {
+        return InvoiceMetadata.builder().invoiceNumber(invoiceNumber).build();
+    }
+
+    private static ProcessingStatus result() {
+        return new ProcessingStatus.Failed(SESSION_ID, Instant.now(), "Fehler", null);
+    }
+}
@@ -0,0 +1,65 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.GenerationConfig.GenerationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for MemoryGovernor.
+ */
+class MemoryGovernorTest {
+
+    private MemoryGovernor memoryGovernor;
+
+    @BeforeEach
+    void setUp() {
+        memoryGovernor = new MemoryGovernor(new GenerationProperties(), new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        memoryGovernor.shutdown();
+    }
+
+    @Test
+    @DisplayName("A paused governor should still admit a job when nothing is reserved")
+    void shouldAdmitJobWhilePausedWithoutReservations() {
+        // Given
+        memoryGovernor.pause();
+
+        // When
+        var reservation = assertTimeoutPreemptively(Duration.ofSeconds(1), () -> memoryGovernor.reserve(1024));
+
+        // Then
+        assertEquals(1024, memoryGovernor.reservedBytes());
+        reservation.close();
+        assertEquals(0, memoryGovernor.reservedBytes());
+    }
+
+    @Test
+    @DisplayName("A pause should end once the current heap usage is low, even without a new GC")
+    void shouldResumeOnLowCurrentUsage() throws Exception {
+        // Given
+        var running = memoryGovernor.reserve(1024);
+        memoryGovernor.pause();
+
+        // When
+        var waiting = CompletableFuture.supplyAsync(() -> memoryGovernor.reserve(1024));
+
+        // Then
+        try (var reservation = waiting.get(5, TimeUnit.SECONDS)) {
+            assertEquals(2048, memoryGovernor.reservedBytes());
+        } finally {
+            running.close();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.GenerationConfig.GenerationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PageRangeService.
+ */
+class PageRangeServiceTest {
+
+    private static final String SESSION_ID = "page-range-session";
+
+    @TempDir
+    Path tempDir;
+
+    private SessionLayout layout;
+    private MemoryGovernor memoryGovernor;
+    private PageRangeService pageRangeService;
+    private Path pdf;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        layout = new SessionLayout(tempDir, List.of());
+        var meterRegistry = new SimpleMeterRegistry();
+        memoryGovernor = new MemoryGovernor(new GenerationProperties(), meterRegistry);
+        pageRangeService = new PageRangeService(layout, 5, 2, 1, memoryGovernor, meterRegistry);
+        Files.createDirectories(layout.sessionDir(SESSION_ID));
+        pdf = layout.generatedPdf(SESSION_ID);
+        try (var document = new PDDocument()) {
+            // Page width encodes the page number so the extracted pages can be identified
+            for (int page = 1; page <= 10; page++) {
+                document.addPage(new PDPage(new PDRectangle(100 + page, 200)));
+            }
+            document.save(pdf.toFile());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        memoryGovernor.shutdown();
+    }
+
+    @Test
+    @DisplayName("Should extract the requested pages into a standalone PDF")
+    void shouldExtractPageRange() throws IOException {
+        // When
+        Optional<Path> range = pageRangeService.extract(SESSION_ID, pdf, 3, 5);
+
+        // Then
+        assertTrue(range.isPresent());
+        try (PDDocument extracted = Loader.loadPDF(range.get().toFile())) {
+            assertEquals(3, extracted.getNumberOfPages());
+            assertEquals(103, extracted.getPage(0).getMediaBox().getWidth());
+            assertEquals(105, extracted.getPage(2).getMediaBox().getWidth());
+        }
+    }
+
+    @Test
+    @DisplayName("Should serve a cached range without reading the source again")
+    void shouldServeCachedRange() throws IOException {
+        // Given
+        Path first = pageRangeService.extract(SESSION_ID, pdf, 1, 2).orElseThrow();
+        Files.delete(pdf);
+
+        // When
+        Optional<Path> second = pageRangeService.extract(SESSION_ID, pdf, 1, 2);
+
+        // Then
+        assertEquals(Optional.of(first), second);
+    }
+
+    @Test
+    @DisplayName("Should end the range at the last page and reject ranges behind it")
+    void shouldClampToDocument() throws IOException {
+        // When
+        Optional<Path> tail = pageRangeService.extract(SESSION_ID, pdf, 9, 12);
+        Optional<Path> behind = pageRangeService.extract(SESSION_ID, pdf, 11, 12);
+
+        // Then
+        try (PDDocument extracted = Loader.loadPDF(tail.orElseThrow().toFile())) {
+            assertEquals(2, extracted.getNumberOfPages());
+        }
+        assertTrue(behind.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should cache a clamped range under the pages it actually contains")
+    void shouldCacheClampedRangeByActualPages() throws IOException {
+        // Given
+        Path tail = pageRangeService.extract(SESSION_ID, pdf, 9, 12).orElseThrow();
+
+        // When
+        Optional<Path> longer = pageRangeService.extract(SESSION_ID, pdf, 9, 13);
+
+        // Then
+        assertEquals(layout.pageRange(SESSION_ID, 9, 10), tail);
+        assertEquals(Optional.of(tail), longer);
+        assertFalse(Files.exists(layout.pageRange(SESSION_ID, 9, 12)));
+    }
+
+    @Test
+    @DisplayName("Should release the heap reservation after extracting")
+    void shouldReleaseMemoryReservation() {
+        // When
+        pageRangeService.extract(SESSION_ID, pdf, 1, 3);
+
+        // Then
+        assertEquals(0, memoryGovernor.reservedBytes());
+    }
+
+    @Test
+    @DisplayName("Should reject ranges larger than the configured maximum")
+    void shouldRejectOversizedRange() {
+        assertThrows(IllegalArgumentException.class, () -> pageRangeService.extract(SESSION_ID, pdf, 1, 6));
+        assertThrows(IllegalArgumentException.class, () -> pageRangeService.extract(SESSION_ID, pdf, 4, 3));
+    }
+
+    @Test
+    @DisplayName("Should keep only the most recently used ranges per session")
+    void shouldEvictLeastRecentlyUsedRanges() throws IOException {
+        // Given
+        Path oldest = pageRangeService.extract(SESSION_ID, pdf, 1, 1).orElseThrow();
+        Files.setLastModifiedTime(oldest, FileTime.fromMillis(1_000));
+        pageRangeService.extract(SESSION_ID, pdf, 2, 2);
+
+        // When
+        pageRangeService.extract(SESSION_ID, pdf, 3, 3);
+
+        // Then
+        assertFalse(Files.exists(oldest));
+        assertTrue(Files.exists(layout.pageRange(SESSION_ID, 2, 2)));
+        assertTrue(Files.exists(layout.pageRange(SESSION_ID, 3, 3)));
+    }
+}
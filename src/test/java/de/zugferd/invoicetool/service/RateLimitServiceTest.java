@@ -0,0 +1,121 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.RateLimitConfig.RateLimitProperties;
+import de.zugferd.invoicetool.exception.InvoiceProcessingException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RateLimitService.
+ */
+class RateLimitServiceTest {
+
+    private static final String API_KEY = "known-client-key";
+
+    private RateLimitProperties properties;
+    private RateLimitService rateLimitService;
+
+    @BeforeEach
+    void setUp() {
+        properties = new RateLimitProperties();
+        properties.setApiKeys(List.of(API_KEY));
+        properties.setGenerationBurst(2);
+        rateLimitService = new RateLimitService(properties, new SimpleMeterRegistry());
+    }
+
+    @Test
+    @DisplayName("Should key configured API keys by fingerprint, not by the raw key")
+    void shouldKeyKnownApiKeyByFingerprint() {
+        // Given
+        var request = request("10.0.0.1", API_KEY);
+
+        // When
+        String clientKey = rateLimitService.resolveClientKey(request);
+
+        // Then
+        assertTrue(clientKey.startsWith("key:"));
+        assertFalse(clientKey.contains(API_KEY));
+        assertEquals(clientKey, rateLimitService.resolveClientKey(request("10.0.0.2", API_KEY)));
+    }
+
+    @Test
+    @DisplayName("Should fall back to the remote address for unknown API keys")
+    void shouldIgnoreUnknownApiKey() {
+        // When
+        String first = rateLimitService.resolveClientKey(request("10.0.0.1", "random-1"));
+        String second = rateLimitService.resolveClientKey(request("10.0.0.1", "random-2"));
+
+        // Then
+        assertEquals("ip:10.0.0.1", first);
+        assertEquals(first, second);
+    }
+
+    @Test
+    @DisplayName("Rotating unknown API keys should not bypass the generation limit")
+    void rotatingKeysShouldShareOneBucket() {
+        // Given
+        int allowed = 0;
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            String clientKey = rateLimitService.resolveClientKey(request("10.0.0.1", "random-" + i));
+            if (rateLimitService.tryAcquireGeneration(clientKey)) {
+                allowed++;
+            }
+        }
+
+        // Then
+        assertEquals(2, allowed);
+        assertTrue(rateLimitService.generationRetryAfterSeconds("ip:10.0.0.1") > 0);
+    }
+
+
+    @Test
+    @DisplayName("Should charge streamed uploads as they are read and abort when the budget is exhausted")
+    void shouldMeterStreamedUpload() throws IOException {
+        // Given
+        properties.setUploadBurstBytes(1000);
+        properties.setUploadBytesPerSecond(1);
+        String clientKey = "ip:10.0.0.1";
+        var input = rateLimitService.meterUpload(clientKey, new ByteArrayInputStream(new byte[1500]));
+        byte[] buffer = new byte[500];
+
+        // When
+        int first = input.read(buffer);
+        int second = input.read(buffer);
+
+        // Then
+        assertEquals(500, first);
+        assertEquals(500, second);
+        var exception = assertThrows(InvoiceProcessingException.class, () -> input.read(buffer));
+        assertEquals("RATE_LIMIT_EXCEEDED", exception.getErrorCode());
+        assertFalse(rateLimitService.tryAcquireUpload(clientKey, 100));
+    }
+
+    @Test
+    @DisplayName("Should not wrap streamed uploads when rate limiting is disabled")
+    void shouldNotMeterWhenDisabled() {
+        // Given
+        properties.setEnabled(false);
+        var input = new ByteArrayInputStream(new byte[10]);
+
+        // When / Then
+        assertSame(input, rateLimitService.meterUpload("ip:10.0.0.1", input));
+    }
+
+    private static MockHttpServletRequest request(String remoteAddr, String apiKey) {
+        var request = new MockHttpServletRequest("POST", "/generate/session-1");
+        request.setRemoteAddr(remoteAddr);
+        request.addHeader("X-API-Key", apiKey);
+        return request;
+    }
+}
@@ -0,0 +1,109 @@
+package de.zugferd.invoicetool.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SessionEventLog.
+ */
+class SessionEventLogTest {
+
+    private static final Instant START = Instant.parse("2024-01-15T10:00:00Z");
+    private static final byte UPLOADED = (byte) SessionRecord.State.UPLOADED.ordinal();
+    private static final byte PROCESSING = (byte) SessionRecord.State.PROCESSING.ordinal();
+    private static final byte COMPLETED = (byte) SessionRecord.State.COMPLETED.ordinal();
+    private static final byte FAILED = (byte) SessionRecord.State.FAILED.ordinal();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Should count transitions per bucket and compute latency percentiles")
+    void shouldAggregateWindow() throws IOException {
+        // Given
+        var eventLog = newLog(1024 * 1024);
+        for (int i = 0; i < 10; i++) {
+            long at = nanos(START.plusSeconds(i * 60L));
+            eventLog.append(at, i, UPLOADED, PROCESSING, Duration.ofSeconds(i + 1).toNanos(), 50_000);
+            eventLog.append(at + 1, i, PROCESSING, COMPLETED, Duration.ofMillis(100L * (i + 1)).toNanos(), 50_000);
+        }
+        eventLog.append(nanos(START.plusSeconds(400)), 99, PROCESSING, FAILED, 0, -1);
+
+        // When
+        var report = eventLog.query(START, START.plusSeconds(600), Duration.ofMinutes(5));
+
+        // Then
+        assertEquals(2, report.buckets().size());
+        assertEquals(5, report.buckets().get(0).completed());
+        assertEquals(5, report.buckets().get(1).completed());
+        assertEquals(1, report.buckets().get(1).failed());
+        assertEquals(10, report.queueWait().count());
+        assertEquals(Duration.ofSeconds(5), report.queueWait().p50());
+        assertEquals(Duration.ofSeconds(10), report.queueWait().max());
+        assertEquals(Duration.ofMillis(1000), report.processing().p99());
+        assertEquals(10, report.processingBySize().get(0).processing().count());
+        eventLog.close();
+    }
+
+    @Test
+    @DisplayName("Should only return events inside the window across rolled over segments")
+    void shouldQueryAcrossSegments() throws IOException {
+        // Given
+        var eventLog = newLog(4 * SessionEventLog.RECORD_BYTES);
+        for (int i = 0; i < 20; i++) {
+            eventLog.append(nanos(START.plusSeconds(i)), i, UPLOADED, PROCESSING, 1_000, 1_000);
+        }
+        eventLog.close();
+
+        // When
+        var reopened = newLog(4 * SessionEventLog.RECORD_BYTES);
+        reopened.append(nanos(START.plusSeconds(20)), 20, UPLOADED, PROCESSING, 1_000, 1_000);
+        var report = reopened.query(START.plusSeconds(6), START.plusSeconds(21), Duration.ofMinutes(1));
+
+        // Then
+        assertEquals(15, report.buckets().getFirst().started());
+        try (var files = Files.list(tempDir)) {
+            assertEquals(6, files.count());
+        }
+        reopened.close();
+    }
+
+    @Test
+    @DisplayName("Should delete segments older than the retention but keep the active one")
+    void shouldDeleteExpiredSegments() throws IOException {
+        // Given
+        var eventLog = newLog(2 * SessionEventLog.RECORD_BYTES);
+        for (int i = 0; i < 6; i++) {
+            eventLog.append(nanos(START.plusSeconds(i)), i, UPLOADED, PROCESSING, 0, 0);
+        }
+
+        // When
+        int deleted = eventLog.deleteExpiredSegments();
+
+        // Then
+        assertEquals(2, deleted);
+        try (var files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+        eventLog.close();
+    }
+
+    private SessionEventLog newLog(long segmentBytes) {
+        return new SessionEventLog(tempDir, segmentBytes, Duration.ofHours(1), Duration.ofHours(1),
+            new SimpleMeterRegistry());
+    }
+
+    private static long nanos(Instant instant) {
+        return SessionRecord.toNanos(instant);
+    }
+}
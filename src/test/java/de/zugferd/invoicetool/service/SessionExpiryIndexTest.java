@@ -0,0 +1,127 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.StorageConfig.StorageProperties;
+import de.zugferd.invoicetool.model.ProcessingStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SessionExpiryIndex.
+ */
+class SessionExpiryIndexTest {
+
+    private SessionExpiryIndex index;
+
+    @BeforeEach
+    void setUp() {
+        var properties = new StorageProperties();
+        properties.setFileRetentionMinutes(30);
+        properties.setCleanupIntervalMinutes(5);
+        index = new SessionExpiryIndex(properties, new SimpleMeterRegistry());
+    }
+
+    @Test
+    @DisplayName("Should only return sessions whose deadline has passed")
+    void shouldOnlyReturnDueSessions() {
+        // Given
+        Instant now = Instant.now();
+        index.schedule(uploaded("expired", now.minus(Duration.ofMinutes(31))));
+        index.schedule(uploaded("fresh", now));
+
+        // When
+        List<String> expired = index.pollExpired(10);
+
+        // Then
+        assertEquals(List.of("expired"), expired);
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    @DisplayName("Should hand out a rescheduled session again once its retry time has passed")
+    void shouldReturnRescheduledSessionWhenDue() {
+        // Given
+        index.schedule(uploaded("session-1", Instant.now().minus(Duration.ofHours(1))));
+        assertEquals(List.of("session-1"), index.pollExpired(10));
+
+        // When
+        index.scheduleAt("session-1", Instant.now().plusSeconds(60));
+        index.scheduleAt("session-2", Instant.now().minusSeconds(1));
+
+        // Then
+        assertEquals(List.of("session-2"), index.pollExpired(10));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    @DisplayName("Should report each session once even if it was scheduled several times")
+    void shouldCollapseDuplicateEntries() {
+        // Given
+        Instant old = Instant.now().minus(Duration.ofHours(1));
+        index.schedule(uploaded("session-1", old));
+        index.schedule(uploaded("session-1", old.plusSeconds(1)));
+
+        // When
+        List<String> expired = index.pollExpired(10);
+
+        // Then
+        assertEquals(List.of("session-1"), expired);
+    }
+
+    @Test
+    @DisplayName("Should only hold the latest deadline of a session")
+    void shouldDiscardSupersededDeadlines() {
+        // Given
+        Instant old = Instant.now().minus(Duration.ofHours(1));
+        index.schedule(uploaded("session-1", old));
+        index.schedule(uploaded("session-1", old));
+
+        // When: die Session wurde inzwischen erneut geändert
+        index.schedule(uploaded("session-1", Instant.now()));
+
+        // Then
+        assertEquals(2, index.size());
+        assertTrue(index.pollExpired(10).isEmpty());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    @DisplayName("Should drop all entries when cleared before a rebuild")
+    void shouldClearEntries() {
+        // Given
+        index.schedule(uploaded("session-1", Instant.now().minus(Duration.ofHours(1))));
+
+        // When
+        index.clear();
+        index.schedule(uploaded("session-1", Instant.now().minus(Duration.ofHours(1))));
+
+        // Then
+        assertEquals(1, index.size());
+        assertEquals(List.of("session-1"), index.pollExpired(10));
+    }
+
+    @Test
+    @DisplayName("Downloaded sessions should expire after the shorter grace period")
+    void downloadedSessionsShouldExpireEarlier() {
+        // Given
+        Instant now = Instant.now();
+        var downloaded = new ProcessingStatus.Downloaded("session-1", now.minus(Duration.ofMinutes(6)), Path.of("out.pdf"));
+        var uploaded = uploaded("session-2", now.minus(Duration.ofMinutes(6)));
+
+        // Then
+        assertTrue(index.isExpired(downloaded, now));
+        assertFalse(index.isExpired(uploaded, now));
+    }
+
+    private static ProcessingStatus.Uploaded uploaded(String sessionId, Instant timestamp) {
+        return new ProcessingStatus.Uploaded(sessionId, timestamp, Path.of("in.pdf"), "in.pdf", 100);
+    }
+}
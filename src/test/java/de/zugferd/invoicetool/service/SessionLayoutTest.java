@@ -0,0 +1,74 @@
+package de.zugferd.invoicetool.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SessionLayout.
+ */
+class SessionLayoutTest {
+
+    @TempDir
+    Path tempDir;
+
+    private SessionLayout layout;
+
+    @BeforeEach
+    void setUp() {
+        layout = new SessionLayout(tempDir.resolve("data"),
+            List.of(tempDir.resolve("uploads"), tempDir.resolve("output")));
+    }
+
+    @Test
+    @DisplayName("Should place sessions two hash levels below the data root")
+    void shouldShardSessionDirectories() {
+        // When
+        Path dir = layout.sessionDir("3b1f7c2e-0000-4000-8000-000000000001");
+
+        // Then
+        Path relative = tempDir.resolve("data").relativize(dir);
+        assertEquals(3, relative.getNameCount());
+        assertTrue(relative.getName(0).toString().matches("[0-9a-f]{2}"));
+        assertTrue(relative.getName(1).toString().matches("[0-9a-f]{2}"));
+        assertEquals("3b1f7c2e-0000-4000-8000-000000000001", relative.getName(2).toString());
+        assertEquals(dir, layout.sessionDir("3b1f7c2e-0000-4000-8000-000000000001"));
+        assertTrue(layout.isInLayout(layout.generatedPdf("3b1f7c2e-0000-4000-8000-000000000001")));
+        assertFalse(layout.isInLayout(tempDir.resolve("output/session-1/e-invoice.pdf")));
+    }
+
+    @Test
+    @DisplayName("Should list only session directories, not shard directories")
+    void shouldListSessionDirectories() throws IOException {
+        // Given
+        Files.createDirectories(layout.sessionDir("session-1"));
+        Files.createDirectories(layout.sessionDir("session-2"));
+
+        // When
+        List<String> names;
+        try (var dirs = layout.sessionDirs()) {
+            names = dirs.map(dir -> dir.getFileName().toString()).sorted().toList();
+        }
+
+        // Then
+        assertEquals(List.of("session-1", "session-2"), names);
+    }
+
+    @Test
+    @DisplayName("Should resolve legacy directories in upload and output roots")
+    void shouldResolveLegacyDirectories() {
+        // When
+        List<Path> legacy = layout.legacyDirs("session-1");
+
+        // Then
+        assertEquals(List.of(tempDir.resolve("uploads/session-1"), tempDir.resolve("output/session-1")), legacy);
+    }
+}
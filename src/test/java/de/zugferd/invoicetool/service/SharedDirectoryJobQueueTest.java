@@ -0,0 +1,130 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.model.GenerationJob;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SharedDirectoryJobQueue, simulating two nodes on one shared directory.
+ */
+class SharedDirectoryJobQueueTest {
+
+    private static final Duration LEASE = Duration.ofMinutes(1);
+
+    @TempDir
+    Path sharedDir;
+
+    private SharedDirectoryJobQueue nodeA;
+    private SharedDirectoryJobQueue nodeB;
+
+    @BeforeEach
+    void setUp() {
+        nodeA = new SharedDirectoryJobQueue(sharedDir, LEASE);
+        nodeB = new SharedDirectoryJobQueue(sharedDir, LEASE);
+    }
+
+    @Test
+    @DisplayName("A job should be claimed by exactly one node")
+    void jobShouldBeClaimedOnce() {
+        // Given
+        nodeA.enqueue(job("job-1", "session-1"));
+
+        // When
+        var first = nodeA.claim("node-a", LEASE);
+        var second = nodeB.claim("node-b", LEASE);
+
+        // Then
+        assertTrue(first.isPresent());
+        assertEquals("session-1", first.get().job().sessionId());
+        assertTrue(second.isEmpty());
+        assertEquals(0, nodeB.pendingCount());
+    }
+
+    @Test
+    @DisplayName("Jobs should be claimed in enqueue order")
+    void jobsShouldBeClaimedInOrder() {
+        // Given
+        nodeA.enqueue(new GenerationJob("job-2", "session-2", null, Instant.ofEpochMilli(2000)));
+        nodeA.enqueue(new GenerationJob("job-1", "session-1", null, Instant.ofEpochMilli(1000)));
+
+        // When/Then
+        assertEquals("job-1", nodeB.claim("node-b", LEASE).orElseThrow().job().jobId());
+        assertEquals("job-2", nodeB.claim("node-b", LEASE).orElseThrow().job().jobId());
+    }
+
+    @Test
+    @DisplayName("Completed jobs should not be reclaimed")
+    void completedJobsShouldBeRemoved() {
+        // Given
+        nodeA.enqueue(job("job-1", "session-1"));
+        var claimed = nodeA.claim("node-a", Duration.ZERO).orElseThrow();
+
+        // When
+        nodeA.complete(claimed);
+
+        // Then
+        assertEquals(0, nodeB.reclaimExpired());
+        assertTrue(nodeB.claim("node-b", LEASE).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Jobs with an expired lease should be reclaimed by another node")
+    void expiredLeaseShouldBeReclaimed() {
+        // Given
+        nodeA.enqueue(job("job-1", "session-1"));
+        var lost = nodeA.claim("node-a", Duration.ZERO).orElseThrow();
+
+        // When
+        int reclaimed = nodeB.reclaimExpired();
+        var reclaimedJob = nodeB.claim("node-b", LEASE);
+
+        // Then
+        assertEquals(1, reclaimed);
+        assertEquals("job-1", reclaimedJob.orElseThrow().job().jobId());
+        assertFalse(nodeA.renew(lost, LEASE), "previous owner must not renew a reassigned lease");
+    }
+
+    @Test
+    @DisplayName("Completing a job after losing its lease should keep the new owner's claim")
+    void completeAfterLostLeaseShouldKeepNewClaim() {
+        // Given
+        nodeA.enqueue(job("job-1", "session-1"));
+        var lost = nodeA.claim("node-a", Duration.ZERO).orElseThrow();
+        nodeB.reclaimExpired();
+        var current = nodeB.claim("node-b", LEASE).orElseThrow();
+
+        // When
+        nodeA.complete(lost);
+
+        // Then
+        assertTrue(nodeB.renew(current, LEASE), "new owner must keep its claim and lease");
+        nodeB.complete(current);
+        assertFalse(nodeB.renew(current, LEASE));
+    }
+
+    @Test
+    @DisplayName("Renewed leases should not be reclaimed")
+    void renewedLeaseShouldNotBeReclaimed() {
+        // Given
+        nodeA.enqueue(job("job-1", "session-1"));
+        var claimed = nodeA.claim("node-a", Duration.ZERO).orElseThrow();
+
+        // When
+        assertTrue(nodeA.renew(claimed, LEASE));
+
+        // Then
+        assertEquals(0, nodeB.reclaimExpired());
+    }
+
+    private static GenerationJob job(String jobId, String sessionId) {
+        return new GenerationJob(jobId, sessionId, null, Instant.now());
+    }
+}
@@ -0,0 +1,147 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.model.ProcessingStatus;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SharedDirectorySessionStore, simulating two nodes on one shared directory.
+ */
+class SharedDirectorySessionStoreTest {
+
+    @TempDir
+    Path sharedDir;
+
+    @Test
+    @DisplayName("Session written by one node should be visible on another")
+    void shouldShareSessionsBetweenNodes() {
+        // Given
+        var nodeA = new SharedDirectorySessionStore(sharedDir, 0);
+        var nodeB = new SharedDirectorySessionStore(sharedDir, 0);
+        var status = new ProcessingStatus.Uploaded("session-1", now(), sharedDir.resolve("original.pdf"),
+            "rechnung.pdf", 1234);
+
+        // When
+        nodeA.put(status);
+
+        // Then
+        assertEquals(status, nodeB.get("session-1").orElseThrow());
+        assertTrue(nodeB.sessionIds().contains("session-1"));
+    }
+
+    @Test
+    @DisplayName("Removal on one node should be visible on another after the cache expires")
+    void shouldPropagateRemoval() {
+        // Given
+        var nodeA = new SharedDirectorySessionStore(sharedDir, 0);
+        var nodeB = new SharedDirectorySessionStore(sharedDir, 0);
+        nodeA.put(new ProcessingStatus.Failed("session-1", now(), "Fehler", null));
+        assertTrue(nodeB.contains("session-1"));
+
+        // When
+        nodeA.remove("session-1");
+
+        // Then
+        assertFalse(nodeB.contains("session-1"));
+        assertTrue(nodeB.sessionIds().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Changes on one node should be reported to another without reading the whole registry")
+    void shouldReportChangesSince() {
+        // Given
+        var nodeA = new SharedDirectorySessionStore(sharedDir, 0);
+        var nodeB = new SharedDirectorySessionStore(sharedDir, 0);
+        nodeA.put(new ProcessingStatus.Failed("session-1", now(), "Fehler", null));
+        Instant since = Instant.now();
+
+        // When
+        nodeA.put(new ProcessingStatus.Failed("session-2", now(), "Fehler", null));
+        nodeA.remove("session-3");
+
+        // Then
+        var changed = nodeB.changedSince(since).orElseThrow();
+        assertTrue(changed.containsAll(Set.of("session-2", "session-3")));
+        assertTrue(nodeB.changedSince(Instant.now().minus(Duration.ofDays(1))).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should serve reads from the local cache within the TTL")
+    void shouldServeReadsFromCache() {
+        // Given
+        var nodeA = new SharedDirectorySessionStore(sharedDir, 0);
+        var nodeB = new SharedDirectorySessionStore(sharedDir, 60_000);
+        nodeA.put(new ProcessingStatus.Failed("session-1", now(), "alt", null));
+        nodeB.get("session-1");
+
+        // When
+        nodeA.put(new ProcessingStatus.Failed("session-1", now(), "neu", null));
+
+        // Then
+        var cached = (ProcessingStatus.Failed) nodeB.get("session-1").orElseThrow();
+        assertEquals("alt", cached.errorMessage());
+    }
+
+    @Test
+    @DisplayName("Maintenance lock should be held by only one node at a time")
+    void maintenanceLockShouldBeExclusive() {
+        // Given
+        var nodeA = new SharedDirectorySessionStore(sharedDir, 0);
+        var nodeB = new SharedDirectorySessionStore(sharedDir, 0);
+
+        // When
+        try (var lock = nodeA.tryLockMaintenance().orElseThrow()) {
+
+            // Then
+            assertTrue(nodeB.tryLockMaintenance().isEmpty());
+        }
+        var afterRelease = nodeB.tryLockMaintenance();
+        assertTrue(afterRelease.isPresent());
+        afterRelease.get().close();
+    }
+
+    @Test
+    @DisplayName("Only one node should win a concurrent transition from the same status")
+    void compareAndSetShouldLetOnlyOneNodeWin() {
+        // Given
+        var nodeA = new SharedDirectorySessionStore(sharedDir, 60_000);
+        var nodeB = new SharedDirectorySessionStore(sharedDir, 60_000);
+        var uploaded = new ProcessingStatus.Uploaded("session-1", now(), sharedDir.resolve("original.pdf"),
+            "rechnung.pdf", 1234);
+        nodeA.put(uploaded);
+        nodeB.get("session-1");
+
+        // When
+        boolean wonByA = nodeA.compareAndSet(uploaded, new ProcessingStatus.Failed("session-1", now(), "A", null));
+        boolean wonByB = nodeB.compareAndSet(uploaded, new ProcessingStatus.Failed("session-1", now(), "B", null));
+
+        // Then
+        assertTrue(wonByA);
+        assertFalse(wonByB);
+        var status = (ProcessingStatus.Failed) nodeB.get("session-1").orElseThrow();
+        assertEquals("A", status.errorMessage());
+    }
+
+    @Test
+    @DisplayName("Should reject session ids that are not plain identifiers")
+    void shouldRejectPathLikeSessionIds() {
+        // Given
+        var store = new SharedDirectorySessionStore(sharedDir, 0);
+
+        // When/Then
+        assertTrue(store.get("../registry/x").isEmpty());
+    }
+
+    private static Instant now() {
+        return Instant.now().truncatedTo(ChronoUnit.MICROS);
+    }
+}
@@ -0,0 +1,49 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.model.ValidationResult;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Worker-Prozess für Tests des ValidationWorkerPool, der VeraPDF nicht lädt.
+ * Das Verhalten wird über das erste Argument gewählt: {@code valid}, {@code hang}, {@code oom} oder {@code garbage}.
+ */
+public final class StubValidationWorker {
+
+    private StubValidationWorker() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        var in = new DataInputStream(new BufferedInputStream(System.in));
+        var out = new DataOutputStream(new BufferedOutputStream(System.out));
+        String mode = args[0];
+
+        while (true) {
+            try {
+                if (ValidationResultCodec.readNullable(in) == null) {
+                    return;
+                }
+            } catch (EOFException e) {
+                return;
+            }
+            switch (mode) {
+                case "valid" -> ValidationResultCodec.write(out, ValidationResult.success("PDF/A-3B", 1));
+                case "hang" -> Thread.sleep(Long.MAX_VALUE);
+                case "oom" -> System.exit(3);
+                case "garbage" -> {
+                    out.writeBoolean(true);
+                    out.writeInt(-1);
+                    out.writeLong(0);
+                    out.writeInt(-5);
+                }
+                default -> throw new IOException("Unknown mode " + mode);
+            }
+            out.flush();
+        }
+    }
+}
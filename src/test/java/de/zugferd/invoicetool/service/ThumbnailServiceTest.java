@@ -0,0 +1,130 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.GenerationConfig.GenerationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ThumbnailService.
+ */
+class ThumbnailServiceTest {
+
+    private static final String SESSION_ID = "thumbnail-session";
+
+    @TempDir
+    Path tempDir;
+
+    private SessionLayout layout;
+    private ExecutorService executor;
+    private MemoryGovernor memoryGovernor;
+    private ThumbnailService thumbnailService;
+
+    @BeforeEach
+    void setUp() {
+        layout = new SessionLayout(tempDir, List.of());
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        var meterRegistry = new SimpleMeterRegistry();
+        memoryGovernor = new MemoryGovernor(new GenerationProperties(), meterRegistry);
+        thumbnailService = new ThumbnailService(layout, 36, "png", 1, 1_000_000, memoryGovernor, executor, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        memoryGovernor.shutdown();
+    }
+
+    @Test
+    @DisplayName("Should render the first page at the configured DPI")
+    void shouldRenderFirstPage() throws IOException {
+        // Given
+        writePdf(PDRectangle.A4, PDRectangle.A3);
+
+        // When
+        Optional<Path> thumbnail = thumbnailService.thumbnail(SESSION_ID);
+
+        // Then
+        assertTrue(thumbnail.isPresent());
+        assertEquals(layout.thumbnail(SESSION_ID, "png"), thumbnail.get());
+        BufferedImage image = ImageIO.read(thumbnail.get().toFile());
+        assertEquals((int) Math.floor(PDRectangle.A4.getWidth() * 36 / 72), image.getWidth());
+        assertEquals("image/png", thumbnailService.contentType());
+    }
+
+    @Test
+    @DisplayName("Should scale down oversized pages to the pixel limit and release the heap reservation")
+    void shouldLimitPixelsOfOversizedPages() throws IOException {
+        // Given: größte zulässige Seite, bei 36 DPI rund 7200 x 7200 Pixel
+        writePdf(new PDRectangle(14_400, 14_400));
+
+        // When
+        Optional<Path> thumbnail = thumbnailService.thumbnail(SESSION_ID);
+
+        // Then
+        BufferedImage image = ImageIO.read(thumbnail.orElseThrow().toFile());
+        assertTrue((long) image.getWidth() * image.getHeight() <= 1_000_000);
+        assertTrue(image.getWidth() >= 990);
+        assertEquals(0, memoryGovernor.reservedBytes());
+    }
+
+    @Test
+    @DisplayName("Should reuse a rendered thumbnail instead of rendering again")
+    void shouldReuseRenderedThumbnail() throws IOException {
+        // Given
+        writePdf(PDRectangle.A4);
+        Path first = thumbnailService.render(SESSION_ID).join();
+        Files.delete(layout.originalPdf(SESSION_ID));
+
+        // When
+        Optional<Path> second = thumbnailService.thumbnail(SESSION_ID);
+
+        // Then
+        assertEquals(Optional.of(first), second);
+    }
+
+    @Test
+    @DisplayName("Should return empty for an unreadable upload")
+    void shouldReturnEmptyForUnreadableUpload() throws IOException {
+        // Given
+        Files.createDirectories(layout.sessionDir(SESSION_ID));
+        Files.writeString(layout.originalPdf(SESSION_ID), "not a pdf");
+
+        // When
+        Optional<Path> thumbnail = thumbnailService.thumbnail(SESSION_ID);
+
+        // Then
+        assertTrue(thumbnail.isEmpty());
+        try (var files = Files.list(layout.sessionDir(SESSION_ID))) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    private void writePdf(PDRectangle... pageSizes) throws IOException {
+        Files.createDirectories(layout.sessionDir(SESSION_ID));
+        try (var document = new PDDocument()) {
+            for (PDRectangle size : pageSizes) {
+                document.addPage(new PDPage(size));
+            }
+            document.save(layout.originalPdf(SESSION_ID).toFile());
+        }
+    }
+}
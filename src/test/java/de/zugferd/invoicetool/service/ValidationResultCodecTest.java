@@ -0,0 +1,88 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.model.ValidationResult;
+import de.zugferd.invoicetool.model.ValidationResult.ValidationError;
+import de.zugferd.invoicetool.model.ValidationResult.ValidationWarning;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ValidationResultCodec.
+ */
+class ValidationResultCodecTest {
+
+    @Test
+    @DisplayName("Should round-trip a failed result with errors, warnings and null fields")
+    void shouldRoundTripResult() throws IOException {
+        // Given
+        var result = ValidationResult.failure(
+            "PDF/A-3B",
+            List.of(new ValidationError("6.2.3", "ISO 19005-3", "6.2.3", "Ungültiger Farbraum äöü", null)),
+            List.of(new ValidationWarning("W-1", "Hinweis")),
+            42);
+
+        // When
+        var decoded = ValidationResultCodec.read(new DataInputStream(new ByteArrayInputStream(encode(result))));
+
+        // Then
+        assertEquals(result, decoded);
+    }
+
+    @Test
+    @DisplayName("Should round-trip a successful result without errors")
+    void shouldRoundTripSuccess() throws IOException {
+        // Given
+        var result = ValidationResult.success("PDF/A-3B", 120);
+
+        // When
+        var decoded = ValidationResultCodec.read(new DataInputStream(new ByteArrayInputStream(encode(result))));
+
+        // Then
+        assertEquals(result, decoded);
+    }
+
+    @Test
+    @DisplayName("Should reject implausible counts instead of allocating for them")
+    void shouldRejectInvalidCounts() throws IOException {
+        // Given
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        out.writeBoolean(true);
+        ValidationResultCodec.writeNullable(out, "PDF/A-3B");
+        out.writeLong(0);
+        out.writeInt(Integer.MAX_VALUE);
+
+        // When / Then
+        assertThrows(IOException.class, () ->
+            ValidationResultCodec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test
+    @DisplayName("Should reject negative string lengths other than the null marker")
+    void shouldRejectInvalidStringLength() throws IOException {
+        // Given
+        var bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(-7);
+
+        // When / Then
+        assertThrows(IOException.class, () ->
+            ValidationResultCodec.readNullable(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    private static byte[] encode(ValidationResult result) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        ValidationResultCodec.write(out, result);
+        out.flush();
+        return bytes.toByteArray();
+    }
+}
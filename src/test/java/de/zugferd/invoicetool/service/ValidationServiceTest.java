@@ -1,5 +1,6 @@
 package de.zugferd.invoicetool.service;
 
+import de.zugferd.invoicetool.config.ValidationConfig.ValidationProperties;
 import de.zugferd.invoicetool.model.ValidationResult;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -24,7 +25,7 @@ class ValidationServiceTest {
     
     @BeforeEach
     void setUp() {
-        validationService = new ValidationService();
+        validationService = new ValidationService(new ValidationWorkerPool(new ValidationProperties()));
     }
     
     @Test
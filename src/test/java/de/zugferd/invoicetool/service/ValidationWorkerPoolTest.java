@@ -0,0 +1,105 @@
+package de.zugferd.invoicetool.service;
+
+import de.zugferd.invoicetool.config.ValidationConfig.ValidationProperties;
+import de.zugferd.invoicetool.model.ValidationResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ValidationWorkerPool.
+ */
+class ValidationWorkerPoolTest {
+
+    private static final Path PDF = Path.of("/tmp/invoice.pdf");
+
+    private ValidationProperties properties;
+    private ValidationWorkerPool pool;
+
+    @BeforeEach
+    void setUp() {
+        properties = new ValidationProperties();
+        properties.setWorkerCount(1);
+        properties.setWorkerTimeoutSeconds(2);
+        properties.setWorkerMaxDocuments(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Should reuse a worker and recycle it after the configured number of documents")
+    void shouldRecycleWorkerAfterMaxDocuments() {
+        // Given
+        pool = pool("valid");
+
+        // When
+        for (int i = 0; i < 3; i++) {
+            assertTrue(pool.validate(PDF).valid());
+        }
+
+        // Then
+        assertEquals(2, pool.startedWorkers());
+    }
+
+    @Test
+    @DisplayName("Should kill a hanging worker after the timeout and report a failure")
+    void shouldFailOnTimeout() {
+        // Given
+        pool = pool("hang");
+
+        // When
+        ValidationResult result = pool.validate(PDF);
+
+        // Then
+        assertFalse(result.valid());
+        assertEquals("WORKER_FAILED", result.errors().getFirst().ruleId());
+    }
+
+    @Test
+    @DisplayName("Should report the OOM exit code of a crashed worker")
+    void shouldReportOutOfMemoryExit() {
+        // Given
+        pool = pool("oom");
+
+        // When
+        ValidationResult result = pool.validate(PDF);
+
+        // Then
+        assertFalse(result.valid());
+        assertTrue(result.errors().getFirst().description().contains("Exit-Code 3"));
+    }
+
+    @Test
+    @DisplayName("Should discard a worker that sends an undecodable response")
+    void shouldDiscardWorkerOnGarbageResponse() {
+        // Given
+        pool = pool("garbage");
+
+        // When
+        ValidationResult first = pool.validate(PDF);
+        ValidationResult second = pool.validate(PDF);
+
+        // Then
+        assertEquals("WORKER_FAILED", first.errors().getFirst().ruleId());
+        assertEquals("WORKER_FAILED", second.errors().getFirst().ruleId());
+        assertEquals(2, pool.startedWorkers());
+    }
+
+    private ValidationWorkerPool pool(String mode) {
+        String javaBin = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        return new ValidationWorkerPool(properties, List.of(
+            javaBin, "--enable-preview", "-cp", System.getProperty("java.class.path"),
+            StubValidationWorker.class.getName(), mode));
+    }
+}
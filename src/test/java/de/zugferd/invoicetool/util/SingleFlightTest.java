@@ -0,0 +1,95 @@
+package de.zugferd.invoicetool.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SingleFlight.
+ */
+class SingleFlightTest {
+
+    @Test
+    @DisplayName("Concurrent calls with the same key should share one execution")
+    void shouldCoalesceConcurrentCalls() {
+        // Given
+        var singleFlight = new SingleFlight<String, String>();
+        var executions = new AtomicInteger();
+        var pending = new CompletableFuture<String>();
+
+        // When
+        var first = singleFlight.execute("session-1", () -> {
+            executions.incrementAndGet();
+            return pending;
+        });
+        var second = singleFlight.execute("session-1", () -> {
+            executions.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+        pending.complete("result");
+
+        // Then
+        assertEquals(1, executions.get());
+        assertEquals("result", first.join());
+        assertEquals("result", second.join());
+        assertEquals(1, singleFlight.coalescedCount());
+        assertFalse(singleFlight.isInFlight("session-1"));
+    }
+
+    @Test
+    @DisplayName("Should start a new execution once the previous one has finished")
+    void shouldReleaseKeyAfterCompletion() {
+        // Given
+        var singleFlight = new SingleFlight<String, Integer>();
+        var executions = new AtomicInteger();
+
+        // When
+        singleFlight.execute("session-1", () -> CompletableFuture.completedFuture(executions.incrementAndGet())).join();
+        int second = singleFlight.execute("session-1",
+            () -> CompletableFuture.completedFuture(executions.incrementAndGet())).join();
+
+        // Then
+        assertEquals(2, second);
+        assertEquals(0, singleFlight.coalescedCount());
+    }
+
+    @Test
+    @DisplayName("Should release the key when the call fails immediately")
+    void shouldReleaseKeyOnFailure() {
+        // Given
+        var singleFlight = new SingleFlight<String, String>();
+
+        // When
+        var failed = singleFlight.execute("session-1", () -> {
+            throw new IllegalStateException("boom");
+        });
+
+        // Then
+        assertTrue(failed.isCompletedExceptionally());
+        assertFalse(singleFlight.isInFlight("session-1"));
+    }
+
+    @Test
+    @DisplayName("Should reject a call whose argument differs from the running execution")
+    void shouldRejectConflictingArgument() {
+        // Given
+        var singleFlight = new SingleFlight<String, String>();
+        var pending = new CompletableFuture<String>();
+        var first = singleFlight.execute("session-1", "metadata-1", IllegalStateException::new, () -> pending);
+
+        // When
+        var same = singleFlight.execute("session-1", "metadata-1", IllegalStateException::new,
+            () -> CompletableFuture.completedFuture("other"));
+
+        // Then
+        assertSame(first, same);
+        assertThrows(IllegalStateException.class, () -> singleFlight.execute("session-1", "metadata-2",
+            IllegalStateException::new, () -> CompletableFuture.completedFuture("other")));
+        pending.complete("result");
+        assertEquals("result", same.join());
+    }
+}
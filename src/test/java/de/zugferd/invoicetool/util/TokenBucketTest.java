@@ -0,0 +1,75 @@
+package de.zugferd.invoicetool.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for TokenBucket.
+ */
+class TokenBucketTest {
+    
+    private AtomicLong clock;
+    private TokenBucket bucket;
+    
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong();
+        bucket = new TokenBucket(10, 2, clock::get);
+    }
+    
+    @Test
+    @DisplayName("Should allow bursts up to capacity")
+    void shouldAllowBurstUpToCapacity() {
+        assertTrue(bucket.tryConsume(10));
+        assertFalse(bucket.tryConsume(1));
+    }
+    
+    @Test
+    @DisplayName("Should refill tokens over time")
+    void shouldRefillTokensOverTime() {
+        // Given
+        assertTrue(bucket.tryConsume(10));
+        
+        // When
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        
+        // Then
+        assertTrue(bucket.tryConsume(4));
+        assertFalse(bucket.tryConsume(1));
+    }
+    
+    @Test
+    @DisplayName("Should not refill beyond capacity")
+    void shouldNotRefillBeyondCapacity() {
+        // When
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(5));
+        
+        // Then
+        assertTrue(bucket.tryConsume(10));
+        assertFalse(bucket.tryConsume(1));
+    }
+    
+    @Test
+    @DisplayName("Should report wait time until tokens are available")
+    void shouldReportWaitTime() {
+        // Given
+        assertTrue(bucket.tryConsume(10));
+        
+        // When/Then
+        assertEquals(3, bucket.secondsUntilAvailable(5));
+        assertEquals(0, new TokenBucket(10, 2, clock::get).secondsUntilAvailable(5));
+    }
+    
+    @Test
+    @DisplayName("Should reject invalid configuration")
+    void shouldRejectInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0));
+    }
+}